@@ -0,0 +1,201 @@
+package com.springboot.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Open-loop HTTP load at a fixed rate. Request {@code i} is due at
+ * {@code start + i / rps}; workers take turns sending them and a worker that
+ * falls behind sends straight away. Latency is measured from when a request
+ * was due, so a stalled server shows up in the percentiles instead of quietly
+ * lowering the request rate. Service time, from send to response, is recorded
+ * next to it.
+ */
+public final class LoadGenerator {
+
+	private static final byte[] DRAIN = new byte[8192];
+
+	private final String baseUrl;
+
+	private final int workers;
+
+	public LoadGenerator(String baseUrl, int workers) {
+		this.baseUrl = baseUrl;
+		this.workers = workers;
+	}
+
+	/**
+	 * Posts {@code requests} bodies to {@code path} at {@code rps} requests per
+	 * second. {@code body} builds the JSON body of request {@code i}.
+	 */
+	public Result run(String name, String path, double rps, long requests, LongFunction<String> body)
+			throws InterruptedException {
+		URL url;
+		try {
+			url = new URL(baseUrl + path);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(baseUrl + path, e);
+		}
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+		AtomicLong next = new AtomicLong();
+		List<Worker> running = new ArrayList<>(workers);
+		for (int w = 0; w < workers; w++) {
+			Worker worker = new Worker(url, body, next, requests, start, intervalNanos);
+			worker.setName("load-" + name + "-" + w);
+			worker.setDaemon(true);
+			worker.start();
+			running.add(worker);
+		}
+		Result result = new Result(name, rps);
+		for (Worker worker : running) {
+			worker.join();
+			result.add(worker);
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	private static final class Worker extends Thread {
+
+		final Histogram latency = new Histogram(3);
+
+		final Histogram serviceTime = new Histogram(3);
+
+		long requests;
+
+		long errors;
+
+		private final URL url;
+
+		private final LongFunction<String> body;
+
+		private final AtomicLong next;
+
+		private final long total;
+
+		private final long start;
+
+		private final long intervalNanos;
+
+		Worker(URL url, LongFunction<String> body, AtomicLong next, long total, long start, long intervalNanos) {
+			this.url = url;
+			this.body = body;
+			this.next = next;
+			this.total = total;
+			this.start = start;
+			this.intervalNanos = intervalNanos;
+		}
+
+		@Override
+		public void run() {
+			for (long i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+				long due = start + i * intervalNanos;
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				long sent = System.nanoTime();
+				if (!post(body.apply(i))) {
+					errors++;
+				}
+				long done = System.nanoTime();
+				latency.recordValue(done - due);
+				serviceTime.recordValue(done - sent);
+				requests++;
+			}
+		}
+
+		private boolean post(String json) {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+				connection.setRequestMethod("POST");
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(json.getBytes(StandardCharsets.UTF_8));
+				}
+				int status = connection.getResponseCode();
+				try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+					if (in != null) {
+						while (in.read(DRAIN) >= 0) {
+							// read to the end so the connection is kept alive
+						}
+					}
+				}
+				return status < 400;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+
+	public static final class Result {
+
+		final String name;
+
+		final double targetRps;
+
+		final Histogram latency = new Histogram(3);
+
+		final Histogram serviceTime = new Histogram(3);
+
+		long requests;
+
+		long errors;
+
+		long elapsedNanos;
+
+		Result(String name, double targetRps) {
+			this.name = name;
+			this.targetRps = targetRps;
+		}
+
+		void add(Worker worker) {
+			latency.add(worker.latency);
+			serviceTime.add(worker.serviceTime);
+			requests += worker.requests;
+			errors += worker.errors;
+		}
+
+		public Histogram getLatency() {
+			return latency;
+		}
+
+		public void print(PrintStream out) {
+			double achieved = requests * 1e9 / Math.max(1, elapsedNanos);
+			out.printf("%s: target=%.0f rps achieved=%.1f rps requests=%d errors=%d%n", name, targetRps, achieved,
+					requests, errors);
+			out.println("  latency ms      " + percentiles(latency));
+			out.println("  service time ms " + percentiles(serviceTime));
+		}
+
+		private static String percentiles(Histogram histogram) {
+			return String.format("p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f",
+					ms(histogram.getValueAtPercentile(50)), ms(histogram.getValueAtPercentile(90)),
+					ms(histogram.getValueAtPercentile(99)), ms(histogram.getValueAtPercentile(99.9)),
+					ms(histogram.getMaxValue()));
+		}
+
+		private static double ms(long nanos) {
+			return nanos / 1e6;
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.springboot.loadtest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Starts the segment stub, loads offers through {@code /api/v1/offer} and
+ * then drives {@code /api/v1/cart/apply_offer} at a fixed rate, printing
+ * latency percentiles for both. The service under test is started
+ * separately, pointed at the stub with {@code --segment.base-url}. The feed
+ * options need the stub, whose answers the pushed segments follow.
+ * <p>
+ * Options, all {@code --name=value}:
+ * <pre>
+ * target           service base url                  http://localhost:8081
+ * rps              apply_offer requests per second   500
+ * duration         measured seconds                  30
+ * warmup           unmeasured seconds before that    10
+ * workers          concurrent connections            64
+ * restaurants      restaurants offers are spread on  1000
+ * users            users carts are spread on         10000
+ * offers           offers posted before the run      10000
+ * offer-rps        offer posts per second            1000
+ * expectations     mockserver expectations           mockserver/initializerJson.json
+ * stub-port        segment stub port, 0 for none     1080
+ * stub-latency-ms  delay of every stub answer        5
+ * stub-jitter-ms   extra random delay up to          0
+ * stub-error-rate  fraction answered with 500        0
+ * stub-only        only run the stub, until killed   false
+ * feed-resync      post every user's segment to
+ *                  /api/v1/segment/resync first      false
+ * feed-rps         segment changes posted to
+ *                  /api/v1/segment/events per second
+ *                  while apply_offer runs, 0 for none 0
+ * hgrm             file to write the apply_offer latency distribution to
+ * </pre>
+ */
+public final class LoadTest {
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parse(args);
+		int stubPort = Integer.parseInt(option(options, "stub-port", "1080"));
+		int users = Integer.parseInt(option(options, "users", "10000"));
+		SegmentStub stub = null;
+		List<String> segments = Arrays.asList("p1", "p2", "p3");
+		if (stubPort > 0) {
+			stub = new SegmentStub(new File(option(options, "expectations", "mockserver/initializerJson.json")), users,
+					Long.parseLong(option(options, "stub-latency-ms", "5")),
+					Long.parseLong(option(options, "stub-jitter-ms", "0")),
+					Double.parseDouble(option(options, "stub-error-rate", "0")));
+			stub.start(stubPort);
+			segments = stub.segmentNames();
+			System.out.println("segment stub listening on port " + stubPort);
+			if (Boolean.parseBoolean(option(options, "stub-only", "false"))) {
+				Thread.currentThread().join();
+			}
+		}
+		try {
+			run(options, users, segments, stub);
+		} finally {
+			if (stub != null) {
+				System.out.printf("segment stub: calls=%d injected_errors=%d%n", stub.calls(), stub.errors());
+				stub.stop();
+			}
+		}
+	}
+
+	private static void run(Map<String, String> options, int users, List<String> segments, SegmentStub stub)
+			throws Exception {
+		String target = option(options, "target", "http://localhost:8081");
+		LoadGenerator generator = new LoadGenerator(target, Integer.parseInt(option(options, "workers", "64")));
+		boolean feedResync = Boolean.parseBoolean(option(options, "feed-resync", "false"));
+		double feedRps = Double.parseDouble(option(options, "feed-rps", "0"));
+		if ((feedResync || feedRps > 0) && stub == null) {
+			throw new IllegalArgumentException("feed-resync and feed-rps need the segment stub, set stub-port");
+		}
+		int restaurants = Integer.parseInt(option(options, "restaurants", "1000"));
+		int offers = Integer.parseInt(option(options, "offers", "10000"));
+		double rps = Double.parseDouble(option(options, "rps", "500"));
+		long duration = Long.parseLong(option(options, "duration", "30"));
+		long warmup = Long.parseLong(option(options, "warmup", "10"));
+
+		if (offers > 0) {
+			generator.run("offer", "/api/v1/offer", Double.parseDouble(option(options, "offer-rps", "1000")), offers,
+					i -> offer(i, restaurants, segments)).print(System.out);
+		}
+		SegmentFeedProducer feed = null;
+		if (feedResync || feedRps > 0) {
+			feed = new SegmentFeedProducer(target, stub, segments, users);
+		}
+		if (feedResync) {
+			feed.resync();
+			System.out.println("segment feed: resynced " + users + " users");
+		}
+		if (feedRps > 0) {
+			feed.start(feedRps);
+		}
+		if (warmup > 0) {
+			generator.run("warmup", "/api/v1/cart/apply_offer", rps, (long) (rps * warmup),
+					i -> cart(-1 - i, restaurants, users));
+		}
+		LoadGenerator.Result result = generator.run("apply_offer", "/api/v1/cart/apply_offer", rps,
+				(long) (rps * duration), i -> cart(i, restaurants, users));
+		result.print(System.out);
+		if (feedRps > 0) {
+			feed.stop();
+			System.out.printf("segment feed: events=%d failed_posts=%d%n", feed.events(), feed.errors());
+		}
+		String hgrm = options.get("hgrm");
+		if (hgrm != null) {
+			try (PrintStream out = new PrintStream(new FileOutputStream(hgrm))) {
+				result.getLatency().outputPercentileDistribution(out, 1e6);
+			}
+		}
+	}
+
+	private static String offer(long i, int restaurants, List<String> segments) {
+		SplittableRandom random = new SplittableRandom(i);
+		boolean flat = random.nextBoolean();
+		return "{\"restaurant_id\":" + (1 + i % restaurants)
+				+ ",\"offer_type\":\"" + (flat ? "FLATX" : "FLATP")
+				+ "\",\"offer_value\":" + (flat ? 10 + random.nextInt(91) : 5 + random.nextInt(26))
+				+ ",\"customer_segment\":[\"" + segments.get(random.nextInt(segments.size())) + "\"]}";
+	}
+
+	private static String cart(long i, int restaurants, int users) {
+		SplittableRandom random = new SplittableRandom(i);
+		return "{\"cart_value\":" + (50 + random.nextInt(1000))
+				+ ",\"restaurant_id\":" + (1 + random.nextInt(restaurants))
+				+ ",\"user_id\":" + (1 + random.nextInt(users)) + "}";
+	}
+
+	private static Map<String, String> parse(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				throw new IOException("expected --name=value but got " + arg);
+			}
+			int equals = arg.indexOf('=');
+			if (equals < 0) {
+				options.put(arg.substring(2), "true");
+			} else {
+				options.put(arg.substring(2, equals), arg.substring(equals + 1));
+			}
+		}
+		return options;
+	}
+
+	private static String option(Map<String, String> options, String name, String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+
+}
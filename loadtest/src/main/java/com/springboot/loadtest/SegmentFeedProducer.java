@@ -0,0 +1,134 @@
+package com.springboot.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays the segment service's side of the segment feed against the service
+ * under test: {@link #resync} posts every user's segment as one NDJSON
+ * snapshot to {@code /api/v1/segment/resync}, and {@link #start} moves
+ * {@code eventsPerSecond} random users to another segment in the
+ * {@link SegmentStub} and posts each change to {@code /api/v1/segment/events},
+ * in batches every {@link #TICK_MS} milliseconds. A batch without changes is
+ * posted all the same, as the heartbeat that keeps the feed live.
+ */
+public final class SegmentFeedProducer {
+
+	static final long TICK_MS = 100;
+
+	private final String baseUrl;
+
+	private final SegmentStub stub;
+
+	private final List<String> segments;
+
+	private final int users;
+
+	private final LongAdder events = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private long version;
+
+	private Thread thread;
+
+	public SegmentFeedProducer(String baseUrl, SegmentStub stub, List<String> segments, int users) {
+		this.baseUrl = baseUrl;
+		this.stub = stub;
+		this.segments = segments;
+		this.users = users;
+	}
+
+	/** Posts the segment of every user up to {@code users}. */
+	public void resync() throws IOException {
+		StringBuilder snapshot = new StringBuilder();
+		for (int userId = 1; userId <= users; userId++) {
+			snapshot.append(event(userId, stub.segmentOf(userId), 0)).append('\n');
+		}
+		if (!post("/api/v1/segment/resync", "application/x-ndjson", snapshot.toString())) {
+			throw new IOException("segment resync was not accepted by " + baseUrl);
+		}
+	}
+
+	public void start(double eventsPerSecond) {
+		thread = new Thread(() -> produce(eventsPerSecond), "segment-feed");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() throws InterruptedException {
+		if (thread != null) {
+			thread.interrupt();
+			thread.join();
+		}
+	}
+
+	public long events() {
+		return events.sum();
+	}
+
+	public long errors() {
+		return errors.sum();
+	}
+
+	private void produce(double eventsPerSecond) {
+		SplittableRandom random = new SplittableRandom(42);
+		double perTick = eventsPerSecond * TICK_MS / 1000;
+		double owed = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			owed += perTick;
+			StringBuilder batch = new StringBuilder("[");
+			for (; owed >= 1; owed--) {
+				int userId = 1 + random.nextInt(users);
+				String segment = segments.get(random.nextInt(segments.size()));
+				stub.move(userId, segment);
+				batch.append(batch.length() > 1 ? "," : "").append(event(userId, segment, ++version));
+				events.increment();
+			}
+			if (!post("/api/v1/segment/events", "application/json", batch.append(']').toString())) {
+				errors.increment();
+			}
+			try {
+				TimeUnit.MILLISECONDS.sleep(TICK_MS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private static String event(int userId, String segment, long version) {
+		return "{\"user_id\":" + userId + ",\"segment\":\"" + segment + "\",\"version\":" + version + "}";
+	}
+
+	private boolean post(String path, String contentType, String body) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", contentType);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					while (in.read() >= 0) {
+						// read to the end so the connection is kept alive
+					}
+				}
+			}
+			return status < 400;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+package com.springboot.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the user_segment service built from the mockserver
+ * expectations in {@code mockserver/initializerJson.json}. Users the file
+ * names get exactly the status and body it gives them. With
+ * {@code syntheticUsers > 0} every other user id up to that bound is given one
+ * of the segments the file uses, round robin, so a load test can spread over
+ * many users. Everyone else gets the file's 404 answer.
+ * <p>
+ * Every answer can be delayed by {@code latencyMs} plus up to
+ * {@code jitterMs}, and a fraction {@code errorRate} of calls answers 500.
+ * <p>
+ * {@link #move} puts a user in another segment, as the change a
+ * {@link SegmentFeedProducer} then pushes to the service.
+ */
+public final class SegmentStub {
+
+	private static final String PATH = "/api/v1/user_segment";
+
+	private final Map<String, Answer> answers = new HashMap<>();
+
+	private final List<String> segmentBodies = new ArrayList<>();
+
+	private final List<String> segmentNames = new ArrayList<>();
+
+	private final Answer unknown;
+
+	private final ConcurrentMap<String, Answer> moved = new ConcurrentHashMap<>();
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final int syntheticUsers;
+
+	private final long latencyMs;
+
+	private final long jitterMs;
+
+	private final double errorRate;
+
+	private final LongAdder calls = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	public SegmentStub(File expectations, int syntheticUsers, long latencyMs, long jitterMs, double errorRate)
+			throws IOException {
+		this.syntheticUsers = syntheticUsers;
+		this.latencyMs = latencyMs;
+		this.jitterMs = jitterMs;
+		this.errorRate = errorRate;
+		Answer notFound = new Answer(404, "{\"segment\": \"unknown\"}");
+		Set<String> seen = new LinkedHashSet<>();
+		for (JsonNode expectation : objectMapper.readTree(expectations)) {
+			JsonNode request = expectation.path("httpRequest");
+			if (!PATH.equals(request.path("path").asText())) {
+				continue;
+			}
+			JsonNode response = expectation.path("httpResponse");
+			Answer answer = new Answer(response.path("statusCode").asInt(200), response.path("body").asText());
+			for (JsonNode userId : request.path("queryStringParameters").path("user_id")) {
+				answers.put(userId.asText(), answer);
+			}
+			if (answer.status == 404) {
+				notFound = answer;
+			} else if (seen.add(answer.body)) {
+				segmentNames.add(objectMapper.readTree(answer.body).path("segment").asText());
+			}
+		}
+		this.unknown = notFound;
+		this.segmentBodies.addAll(seen);
+	}
+
+	/** The segments known users belong to, in file order. */
+	public List<String> segmentNames() {
+		return segmentNames;
+	}
+
+	/** The segment the stub answers for the user, {@code unknown} for a 404. */
+	public String segmentOf(int userId) throws IOException {
+		Answer answer = answerFor(String.valueOf(userId));
+		return answer.status == 404 ? "unknown" : objectMapper.readTree(answer.body).path("segment").asText();
+	}
+
+	/** Answers the user's lookups with the segment from now on. */
+	public void move(int userId, String segment) {
+		moved.put(String.valueOf(userId), new Answer(200, "{\"segment\": \"" + segment + "\"}"));
+	}
+
+	public void start(int port) throws IOException {
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "segment-stub-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		server = HttpServer.create(new InetSocketAddress(port), 1024);
+		server.createContext(PATH, this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public long calls() {
+		return calls.sum();
+	}
+
+	public long errors() {
+		return errors.sum();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		calls.increment();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long delayMs = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+		if (delayMs > 0) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(delayMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		Answer answer;
+		if (errorRate > 0 && random.nextDouble() < errorRate) {
+			errors.increment();
+			answer = new Answer(500, "{\"error\": \"injected\"}");
+		} else {
+			answer = answerFor(userId(exchange.getRequestURI().getRawQuery()));
+		}
+		byte[] body = answer.body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(answer.status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private Answer answerFor(String userId) {
+		Answer answer = moved.get(userId);
+		if (answer == null) {
+			answer = answers.get(userId);
+		}
+		if (answer != null) {
+			return answer;
+		}
+		if (syntheticUsers > 0 && !segmentBodies.isEmpty()) {
+			try {
+				int id = Integer.parseInt(userId);
+				if (id > 0 && id <= syntheticUsers) {
+					return new Answer(200, segmentBodies.get(id % segmentBodies.size()));
+				}
+			} catch (NumberFormatException e) {
+				// not a user id, falls through to unknown
+			}
+		}
+		return unknown;
+	}
+
+	private static String userId(String query) throws IOException {
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith("user_id=")) {
+					return URLDecoder.decode(parameter.substring("user_id=".length()), "UTF-8");
+				}
+			}
+		}
+		return "";
+	}
+
+	private static final class Answer {
+
+		final int status;
+
+		final String body;
+
+		Answer(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.springboot.benchmark;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.controller.OfferTier;
+import com.springboot.rule.DiscountRule;
+import com.springboot.rule.DiscountRuleCompiler;
+
+/**
+ * Discount arithmetic for a single matched offer, per compiled rule kind.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class DiscountBenchmark {
+
+	private static final int CARTS = 1024;
+
+	@Param({ "FLATX", "FLATP", "FLATP_CAPPED", "MIN_CART", "TIERED" })
+	private String rule;
+
+	private DiscountRule discountRule;
+
+	private int[] cartValues;
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		SplittableRandom random = new SplittableRandom(42);
+		discountRule = new DiscountRuleCompiler().compile(offer(rule));
+		cartValues = new int[CARTS];
+		for (int i = 0; i < CARTS; i++) {
+			cartValues[i] = random.nextInt(5000);
+		}
+	}
+
+	private static OfferRequest offer(String rule) {
+		switch (rule) {
+		case "FLATP_CAPPED":
+			OfferRequest capped = new OfferRequest(1, "FLATP", 10, null);
+			capped.setMax_discount(100);
+			return capped;
+		case "MIN_CART":
+			OfferRequest minCart = new OfferRequest(1, "FLATX", 10, null);
+			minCart.setMin_cart_value(2500);
+			return minCart;
+		case "TIERED":
+			OfferRequest tiered = new OfferRequest(1, "TIERED", 0, null);
+			tiered.setTiers(Arrays.asList(new OfferTier(1000, "FLATX", 50, null), new OfferTier(2500, "FLATP", 10, null),
+					new OfferTier(4000, "FLATP", 15, 500)));
+			return tiered;
+		default:
+			return new OfferRequest(1, rule, 10, null);
+		}
+	}
+
+	@Benchmark
+	public int apply() {
+		return discountRule.apply(cartValues[next++ & (CARTS - 1)]);
+	}
+
+}
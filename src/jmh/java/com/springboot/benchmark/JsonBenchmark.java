@@ -0,0 +1,90 @@
+package com.springboot.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.springboot.controller.ApplyOfferRequest;
+import com.springboot.controller.SegmentResponse;
+
+/**
+ * Jackson binding of the request body and the segment service response,
+ * through pre-built readers and writers as the application uses them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+	private ObjectReader applyOfferReader;
+
+	private ObjectWriter applyOfferWriter;
+
+	private ObjectReader segmentReader;
+
+	private ObjectWriter segmentWriter;
+
+	private byte[] applyOfferJson;
+
+	private byte[] segmentJson;
+
+	private ApplyOfferRequest applyOfferRequest;
+
+	private SegmentResponse segmentResponse;
+
+	@Setup
+	public void setUp() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		applyOfferReader = objectMapper.readerFor(ApplyOfferRequest.class);
+		applyOfferWriter = objectMapper.writerFor(ApplyOfferRequest.class);
+		segmentReader = objectMapper.readerFor(SegmentResponse.class);
+		segmentWriter = objectMapper.writerFor(SegmentResponse.class);
+
+		applyOfferRequest = new ApplyOfferRequest();
+		applyOfferRequest.setCart_value(200);
+		applyOfferRequest.setRestaurant_id(1);
+		applyOfferRequest.setUser_id(1);
+		applyOfferJson = applyOfferWriter.writeValueAsBytes(applyOfferRequest);
+
+		segmentResponse = new SegmentResponse();
+		segmentResponse.setSegment("p1");
+		segmentJson = segmentWriter.writeValueAsBytes(segmentResponse);
+	}
+
+	@Benchmark
+	public ApplyOfferRequest readApplyOfferRequest() throws IOException {
+		return applyOfferReader.readValue(applyOfferJson);
+	}
+
+	@Benchmark
+	public byte[] writeApplyOfferRequest() throws IOException {
+		return applyOfferWriter.writeValueAsBytes(applyOfferRequest);
+	}
+
+	@Benchmark
+	public SegmentResponse readSegmentResponse() throws IOException {
+		return segmentReader.readValue(segmentJson);
+	}
+
+	@Benchmark
+	public byte[] writeSegmentResponse() throws IOException {
+		return segmentWriter.writeValueAsBytes(segmentResponse);
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.springboot.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.repository.CompactOfferRepository;
+import com.springboot.repository.InMemoryOfferRepository;
+import com.springboot.repository.OfferCatalogueBuilder;
+import com.springboot.repository.OfferRepository;
+
+/**
+ * Heap retained per offer by each catalogue representation, reported as the
+ * {@code bytesPerOffer} secondary result next to the load time. Catalogues
+ * above a few million offers need {@code -jvmArgs -Xmx...} for the heap mode,
+ * e.g. {@code -p offers=10000000 -p mode=compact}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class OfferFootprintBenchmark {
+
+	@Param({ "heap", "compact" })
+	private String mode;
+
+	@Param({ "1000000" })
+	private int offers;
+
+	private OfferRepository retained;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint {
+
+		public long bytesPerOffer;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytesPerOffer = 0;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void release() {
+		retained = null;
+	}
+
+	@Benchmark
+	public OfferRepository load(Footprint footprint) {
+		long before = usedHeapAfterGc();
+		SplittableRandom random = new SplittableRandom(42);
+		int restaurants = Math.max(1, offers / 100);
+		OfferRepository repository = mode.equals("compact") ? new CompactOfferRepository() : new InMemoryOfferRepository();
+		OfferCatalogueBuilder catalogue = repository.newCatalogue();
+		for (int i = 0; i < offers; i++) {
+			catalogue.add(OfferLookupBenchmark.randomOffer(random, restaurants));
+		}
+		catalogue.commit();
+		retained = repository;
+		footprint.bytesPerOffer = (usedHeapAfterGc() - before) / offers;
+		return repository;
+	}
+
+	private static long usedHeapAfterGc() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+}
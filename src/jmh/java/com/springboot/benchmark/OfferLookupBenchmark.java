@@ -0,0 +1,119 @@
+package com.springboot.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.repository.InMemoryOfferRepository;
+import com.springboot.repository.OfferCatalogueBuilder;
+
+/**
+ * Offer lookup against catalogues of increasing size. The catalogue is
+ * generated from a fixed seed so runs on different commits see the same
+ * offers and the same query sequence.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class OfferLookupBenchmark {
+
+	static final String[] SEGMENTS = { "p1", "p2", "p3" };
+
+	private static final int QUERIES = 4096;
+
+	@Param({ "1000", "100000", "1000000" })
+	private int offers;
+
+	@Param({ "100" })
+	private int offersPerRestaurant;
+
+	private InMemoryOfferRepository repository;
+
+	private int[] restaurantIds;
+
+	private String[] segments;
+
+	private int[] cartValues;
+
+	private long twoSegments;
+
+	private int next;
+
+	@Setup
+	public void setUp() {
+		SplittableRandom random = new SplittableRandom(42);
+		int restaurants = Math.max(1, offers / offersPerRestaurant);
+		repository = new InMemoryOfferRepository();
+		OfferCatalogueBuilder catalogue = repository.newCatalogue();
+		for (int i = 0; i < offers; i++) {
+			catalogue.add(randomOffer(random, restaurants));
+		}
+		catalogue.commit();
+
+		restaurantIds = new int[QUERIES];
+		segments = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			restaurantIds[i] = 1 + random.nextInt(restaurants);
+			segments[i] = SEGMENTS[random.nextInt(SEGMENTS.length)];
+		}
+		twoSegments = repository.segments().maskOf(Arrays.asList(SEGMENTS[0], SEGMENTS[1]));
+		cartValues = new int[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			cartValues[i] = random.nextInt(5000);
+		}
+	}
+
+	static OfferRequest randomOffer(SplittableRandom random, int restaurants) {
+		List<String> offerSegments = new ArrayList<>(Arrays.asList(SEGMENTS));
+		while (offerSegments.size() > 1 && random.nextBoolean()) {
+			offerSegments.remove(random.nextInt(offerSegments.size()));
+		}
+		String offerType = random.nextBoolean() ? "FLATX" : "FLATP";
+		int offerValue = offerType.equals("FLATX") ? 1 + random.nextInt(200) : 1 + random.nextInt(50);
+		return new OfferRequest(1 + random.nextInt(restaurants), offerType, offerValue, offerSegments);
+	}
+
+	@Benchmark
+	public Offer findFirstMatch() {
+		int i = next++ & (QUERIES - 1);
+		return repository.findFirstMatch(restaurantIds[i], segments[i]);
+	}
+
+	@Benchmark
+	public Offer findFirstMatchTwoSegments() {
+		int i = next++ & (QUERIES - 1);
+		return repository.findFirstMatch(restaurantIds[i], twoSegments);
+	}
+
+	@Benchmark
+	public Offer findBestMatch() {
+		int i = next++ & (QUERIES - 1);
+		return repository.findBestMatch(restaurantIds[i], segments[i], cartValues[i]);
+	}
+
+	@Benchmark
+	public Offer findFirstMatchMissingRestaurant() {
+		int i = next++ & (QUERIES - 1);
+		return repository.findFirstMatch(-restaurantIds[i], segments[i]);
+	}
+
+}
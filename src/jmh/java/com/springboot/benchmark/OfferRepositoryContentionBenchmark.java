@@ -0,0 +1,93 @@
+package com.springboot.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.repository.InMemoryOfferRepository;
+
+/**
+ * First-match lookups while a writer keeps replacing offers in the same
+ * restaurants. Readers never take a lock, so their throughput should grow
+ * with the number of readers however busy the writer is; compare runs with
+ * {@code -tg 1,1}, {@code -tg 4,1} and {@code -tg 16,1} (readers, writers).
+ * The writer replaces one offer per restaurant by id, so the catalogue stays
+ * the same size for the whole run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Group)
+public class OfferRepositoryContentionBenchmark {
+
+	private static final int RESTAURANTS = 64;
+
+	private static final List<String> READ_SEGMENTS = Arrays.asList("p1", "p2", "p3");
+
+	private static final List<String> WRITE_SEGMENTS = Arrays.asList("p4");
+
+	private InMemoryOfferRepository repository;
+
+	private long p1;
+
+	@Setup
+	public void setUp() {
+		repository = new InMemoryOfferRepository();
+		for (int restaurant = 0; restaurant < RESTAURANTS; restaurant++) {
+			repository.save(new OfferRequest(restaurant, "FLATX", 10, READ_SEGMENTS));
+		}
+		p1 = repository.segments().maskOf("p1");
+	}
+
+	@TearDown
+	public void tearDown() {
+		repository.close();
+	}
+
+	/** The restaurant each thread looks at or writes to next. */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int next;
+
+		int next() {
+			return next++ & (RESTAURANTS - 1);
+		}
+	}
+
+	@Benchmark
+	@Group("readWhileWriting")
+	@GroupThreads(4)
+	public Offer read(Cursor cursor) {
+		return repository.findFirstMatch(cursor.next(), p1);
+	}
+
+	@Benchmark
+	@Group("readWhileWriting")
+	@GroupThreads(1)
+	public long write(Cursor cursor) {
+		int restaurant = cursor.next();
+		OfferRequest offer = new OfferRequest(restaurant, "FLATP", 5, WRITE_SEGMENTS);
+		offer.setOffer_id("write-" + restaurant);
+		return repository.put(offer);
+	}
+
+}
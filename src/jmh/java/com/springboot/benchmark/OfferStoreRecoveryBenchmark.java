@@ -0,0 +1,82 @@
+package com.springboot.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.repository.DurableOfferRepository;
+import com.springboot.repository.InMemoryOfferRepository;
+import com.springboot.repository.OfferCatalogueBuilder;
+
+/**
+ * Time to recover a durable offer store on startup: a snapshot holding all but
+ * the last 10% of the offers, which are replayed from the log.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class OfferStoreRecoveryBenchmark {
+
+	@Param({ "100000", "1000000" })
+	private int offers;
+
+	private Path directory;
+
+	@Setup
+	public void setUp() throws IOException {
+		SplittableRandom random = new SplittableRandom(42);
+		int restaurants = Math.max(1, offers / 100);
+		int logged = offers / 10;
+		directory = Files.createTempDirectory("offer-store-recovery");
+		DurableOfferRepository store = new DurableOfferRepository(new InMemoryOfferRepository(), directory,
+				Long.MAX_VALUE);
+		OfferCatalogueBuilder catalogue = store.newCatalogue();
+		for (int i = 0; i < offers - logged; i++) {
+			catalogue.add(OfferLookupBenchmark.randomOffer(random, restaurants));
+		}
+		catalogue.commit();
+		for (int i = 0; i < logged; i++) {
+			store.save(OfferLookupBenchmark.randomOffer(random, restaurants));
+		}
+		store.close();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public int recover() throws IOException {
+		DurableOfferRepository store = new DurableOfferRepository(new InMemoryOfferRepository(), directory,
+				Long.MAX_VALUE);
+		int size = store.size();
+		store.close();
+		return size;
+	}
+
+}
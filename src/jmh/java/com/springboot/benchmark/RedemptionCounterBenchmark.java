@@ -0,0 +1,81 @@
+package com.springboot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.springboot.budget.LocalBudgetLedger;
+import com.springboot.budget.StripedAllowance;
+
+/**
+ * 64 threads redeeming the same offer, as carts at one popular restaurant do.
+ * {@code sharedCounter} is a single CAS counter checked against the limit,
+ * which every redemption contends on; {@code stripedAllowance} spends leases
+ * from the ledger through striped cells; {@code longAdder} counts without
+ * enforcing any limit and is the floor to compare with. Limits are set high
+ * enough never to run out during a run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(64)
+@State(Scope.Benchmark)
+public class RedemptionCounterBenchmark {
+
+	private static final long LIMIT = Long.MAX_VALUE / 4;
+
+	@Param({ "16" })
+	private int stripes;
+
+	@Param({ "64" })
+	private long leaseRedemptions;
+
+	private final AtomicLong shared = new AtomicLong();
+
+	private final LongAdder adder = new LongAdder();
+
+	private StripedAllowance allowance;
+
+	@Setup
+	public void setUp() {
+		LocalBudgetLedger ledger = new LocalBudgetLedger();
+		ledger.limit("offer", LIMIT);
+		allowance = new StripedAllowance(stripes, leaseRedemptions, units -> ledger.lease("offer", units));
+	}
+
+	@Benchmark
+	public boolean sharedCounter() {
+		for (long used = shared.get(); used < LIMIT; used = shared.get()) {
+			if (shared.compareAndSet(used, used + 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean stripedAllowance() {
+		return allowance.acquire(1) == 1;
+	}
+
+	@Benchmark
+	public void longAdder() {
+		adder.increment();
+	}
+
+}
@@ -1,12 +1,26 @@
 package com.springboot;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import com.springboot.service.WarmupService;
 
 @SpringBootApplication
 public class CartOfferApplication {
 
+	@Autowired
+	private WarmupService warmupService;
+
 	public static void main(String[] args) {
 		SpringApplication.run(CartOfferApplication.class, args);
 	}
+
+	/** Warms up once the server is accepting requests; health stays down until then. */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		warmupService.startAsync();
+	}
 }
@@ -0,0 +1,92 @@
+package com.springboot;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.endpoint.EndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.endpoint.web.WebEndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.health.HealthEndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.health.HealthIndicatorAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.info.InfoEndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsEndpointAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.prometheus.PrometheusMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementContextAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.web.servlet.ServletManagementContextAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.HttpEncodingAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.error.ErrorMvcAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+
+import com.springboot.service.WarmupService;
+
+/**
+ * Startup-optimised entry point for the same application. Instead of every
+ * auto-configuration on the classpath it imports only the ones the service
+ * uses, it creates beans lazily on first use, and it runs with the
+ * {@value #PROFILE} profile, which leaves out the demo beans. Outside that
+ * profile the class is ignored, so the regular application's component scan
+ * does not pick it up.
+ */
+@Configuration
+@Profile(FastStartupApplication.PROFILE)
+@ComponentScan(excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = CartOfferApplication.class))
+@ImportAutoConfiguration({
+		PropertyPlaceholderAutoConfiguration.class,
+		ConfigurationPropertiesAutoConfiguration.class,
+		JacksonAutoConfiguration.class,
+		HttpMessageConvertersAutoConfiguration.class,
+		ServletWebServerFactoryAutoConfiguration.class,
+		DispatcherServletAutoConfiguration.class,
+		WebMvcAutoConfiguration.class,
+		HttpEncodingAutoConfiguration.class,
+		ErrorMvcAutoConfiguration.class,
+		EndpointAutoConfiguration.class,
+		WebEndpointAutoConfiguration.class,
+		HealthIndicatorAutoConfiguration.class,
+		HealthEndpointAutoConfiguration.class,
+		InfoEndpointAutoConfiguration.class,
+		MetricsAutoConfiguration.class,
+		MetricsEndpointAutoConfiguration.class,
+		SimpleMetricsExportAutoConfiguration.class,
+		PrometheusMetricsExportAutoConfiguration.class,
+		CompositeMeterRegistryAutoConfiguration.class,
+		ManagementContextAutoConfiguration.class,
+		ServletManagementContextAutoConfiguration.class })
+public class FastStartupApplication {
+
+	public static final String PROFILE = "fast-startup";
+
+	@Autowired
+	private WarmupService warmupService;
+
+	public static void main(String[] args) {
+		SpringApplication application = new SpringApplication(FastStartupApplication.class);
+		application.setAdditionalProfiles(PROFILE);
+		application.run(args);
+	}
+
+	@Bean
+	public static LazyInitializationBeanFactoryPostProcessor lazyInitializationBeanFactoryPostProcessor() {
+		return new LazyInitializationBeanFactoryPostProcessor();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		warmupService.startAsync();
+	}
+}
@@ -0,0 +1,32 @@
+package com.springboot;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Marks bean definitions lazy, so a bean is only created once something asks
+ * for it. Servlet filters, health indicators and meter binders are looked up
+ * by type while the context starts and are created then; the rest waits for
+ * its first request, or for warm-up. {@link SmartInitializingSingleton}s stay
+ * eager because they only get their callback when created at startup; the
+ * processor behind {@code @EventListener} is one of them.
+ */
+public class LazyInitializationBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
+
+	@Override
+	public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+		for (String beanName : beanFactory.getBeanDefinitionNames()) {
+			BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+			if (beanDefinition.isAbstract()) {
+				continue;
+			}
+			Class<?> type = beanFactory.getType(beanName);
+			if (type == null || !SmartInitializingSingleton.class.isAssignableFrom(type)) {
+				beanDefinition.setLazyInit(true);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.springboot;
+
+import java.util.concurrent.ExecutorService;
+
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * With {@code cart.threads=virtual} Tomcat hands every request to a new
+ * virtual thread instead of its worker pool, so a request blocked on the
+ * segment service no longer holds one of a fixed number of threads. The
+ * segment connection pool ({@code segment.client.max-connections}) then
+ * bounds how many lookups are in flight.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cart.threads", havingValue = "virtual")
+public class VirtualThreadConfiguration {
+
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadConnector() {
+		return factory -> factory.addConnectorCustomizers(connector -> {
+			ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+			((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor);
+		});
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.springboot;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads through reflection, so the application still
+ * compiles for and runs on Java 8 as long as virtual threads are not asked
+ * for.
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * A factory for virtual threads named {@code prefix} followed by a
+	 * counter.
+	 *
+	 * @throws IllegalStateException if the running JDK has no virtual threads
+	 */
+	public static ThreadFactory factory(String prefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw unsupported(e);
+		}
+	}
+
+	/**
+	 * An executor starting a new virtual thread for every task.
+	 *
+	 * @throws IllegalStateException if the running JDK has no virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		ThreadFactory factory = factory(prefix);
+		try {
+			Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) method.invoke(null, factory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw unsupported(e);
+		}
+	}
+
+	private static IllegalStateException unsupported(Exception e) {
+		Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+		return new IllegalStateException("cart.threads=virtual needs JDK 21 or later, running on "
+				+ System.getProperty("java.version"), cause);
+	}
+
+}
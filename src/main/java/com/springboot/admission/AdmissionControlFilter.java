@@ -0,0 +1,143 @@
+package com.springboot.admission;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.springboot.cluster.ClusterAuthFilter;
+import com.springboot.property.AdmissionProperties;
+
+/**
+ * Sheds load before it reaches the controllers. Each {@link Lane} has an
+ * {@link AimdLimiter}; a request over its lane's limit is answered straight
+ * away with 429, or with 503 once the limit has shrunk to its minimum, both
+ * with {@code Retry-After}. An async request holds its place until the async
+ * processing completes, not just until the request thread is released.
+ * Requests {@link ClusterAuthFilter authenticated} as coming from another
+ * cluster member are never limited: the member that
+ * sent them has already admitted the request they serve, and turning away a
+ * budget lease or a replicated write would only move the failure there.
+ * Disabled with {@code admission.enabled=false}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+	private static final String RETRY_AFTER_SECONDS = "1";
+
+	private final boolean enabled;
+
+	private final Map<Lane, AimdLimiter> limiters = new EnumMap<>(Lane.class);
+
+	@Autowired
+	public AdmissionControlFilter(AdmissionProperties admissionProperties) {
+		this.enabled = admissionProperties.isEnabled();
+		limiters.put(Lane.APPLY, new AimdLimiter(admissionProperties.getApply()));
+		limiters.put(Lane.FEED, new AimdLimiter(admissionProperties.getFeed()));
+		limiters.put(Lane.ADMIN, new AimdLimiter(admissionProperties.getAdmin()));
+		limiters.put(Lane.CONFIG, new AimdLimiter(admissionProperties.getConfig()));
+	}
+
+	public AimdLimiter limiter(Lane lane) {
+		return limiters.get(lane);
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !enabled || Lane.of(request.getRequestURI()) == null
+				|| ClusterAuthFilter.isMember(request);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		AimdLimiter limiter = limiters.get(Lane.of(request.getRequestURI()));
+		AimdLimiter.Admission admission = limiter.tryAcquire();
+		if (admission != AimdLimiter.Admission.ADMITTED) {
+			reject(response, admission == AimdLimiter.Admission.OVERLOADED ? HttpStatus.SERVICE_UNAVAILABLE
+					: HttpStatus.TOO_MANY_REQUESTS);
+			return;
+		}
+		long admittedAt = System.nanoTime();
+		boolean failed = true;
+		boolean async = false;
+		try {
+			chain.doFilter(request, response);
+			failed = false;
+			if (request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new Release(limiter, admittedAt, response));
+				async = true;
+			}
+		} finally {
+			if (!async) {
+				limiter.release(admittedAt, System.nanoTime(), failed || isServerError(response));
+			}
+		}
+	}
+
+	private static void reject(HttpServletResponse response, HttpStatus status) throws IOException {
+		response.setStatus(status.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.getWriter().write("{\"response_msg\":\"" + status.getReasonPhrase() + "\"}");
+	}
+
+	private static boolean isServerError(HttpServletResponse response) {
+		return response.getStatus() >= 500;
+	}
+
+	/** Gives an async request's place back once it completes, however it ends. */
+	private static final class Release implements AsyncListener {
+
+		private final AimdLimiter limiter;
+
+		private final long admittedAt;
+
+		private final HttpServletResponse response;
+
+		private volatile boolean failed;
+
+		Release(AimdLimiter limiter, long admittedAt, HttpServletResponse response) {
+			this.limiter = limiter;
+			this.admittedAt = admittedAt;
+			this.response = response;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			limiter.release(admittedAt, System.nanoTime(), failed || isServerError(response));
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			failed = true;
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			failed = true;
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// still the same request, it keeps its place
+		}
+	}
+
+}
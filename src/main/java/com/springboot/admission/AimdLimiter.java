@@ -0,0 +1,108 @@
+package com.springboot.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.springboot.property.AdmissionProperties;
+
+/**
+ * Concurrency limit adjusted by additive increase, multiplicative decrease.
+ * Every request answered within the latency threshold while the limit is at
+ * least half used raises it by {@code 1 / limit}, about one per limit's worth
+ * of requests; a slow or failed one multiplies it by the backoff ratio. Only
+ * requests admitted after the last decrease can decrease it again, so a burst
+ * of slow requests admitted under the old limit counts once.
+ */
+public class AimdLimiter {
+
+	public enum Admission {
+
+		ADMITTED,
+
+		/** In flight requests are at the limit. */
+		AT_LIMIT,
+
+		/** In flight requests are at the limit and the limit has shrunk as far as it goes. */
+		OVERLOADED
+	}
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long latencyThresholdNanos;
+
+	private final double backoffRatio;
+
+	private double limit;
+
+	private int inFlight;
+
+	private boolean decreased;
+
+	private long lastDecreaseNanos;
+
+	private final LongAdder rejectedAtLimit = new LongAdder();
+
+	private final LongAdder rejectedOverloaded = new LongAdder();
+
+	public AimdLimiter(AdmissionProperties.Lane lane) {
+		this.minLimit = Math.max(1, lane.getMinLimit());
+		this.maxLimit = Math.max(minLimit, lane.getMaxLimit());
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(lane.getLatencyThresholdMs());
+		this.backoffRatio = lane.getBackoffRatio();
+		this.limit = Math.min(maxLimit, Math.max(minLimit, lane.getInitialLimit()));
+	}
+
+	/** Admits a request if fewer than the limit are in flight; an admitted one must be released. */
+	public synchronized Admission tryAcquire() {
+		if (inFlight < (int) limit) {
+			inFlight++;
+			return Admission.ADMITTED;
+		}
+		if (limit <= minLimit) {
+			rejectedOverloaded.increment();
+			return Admission.OVERLOADED;
+		}
+		rejectedAtLimit.increment();
+		return Admission.AT_LIMIT;
+	}
+
+	/**
+	 * Ends an admitted request and adjusts the limit by how it went.
+	 *
+	 * @param failed whether it failed on the server's side, which shrinks the
+	 * limit however fast it was
+	 */
+	public synchronized void release(long admittedAtNanos, long releasedAtNanos, boolean failed) {
+		if (failed || releasedAtNanos - admittedAtNanos > latencyThresholdNanos) {
+			if (!decreased || admittedAtNanos - lastDecreaseNanos >= 0) {
+				limit = Math.max(minLimit, limit * backoffRatio);
+				decreased = true;
+				lastDecreaseNanos = releasedAtNanos;
+			}
+		} else if (inFlight * 2 >= limit) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+		inFlight--;
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/** Requests turned away while the limit could still shrink. */
+	public long getRejectedAtLimit() {
+		return rejectedAtLimit.sum();
+	}
+
+	/** Requests turned away with the limit as small as it goes. */
+	public long getRejectedOverloaded() {
+		return rejectedOverloaded.sum();
+	}
+
+}
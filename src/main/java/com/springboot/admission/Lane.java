@@ -0,0 +1,42 @@
+package com.springboot.admission;
+
+/**
+ * Groups of endpoints that get a concurrency limit of their own, so that
+ * one of them backing up cannot take the request threads of the others.
+ * Everything else, health checks and metrics included, is never limited.
+ * A path belongs to the first lane with a matching prefix.
+ */
+public enum Lane {
+
+	APPLY("/api/v1/cart/"),
+
+	FEED("/api/v1/segment/events", "/api/v1/segment/resync"),
+
+	ADMIN("/api/v1/offer", "/api/v1/segment/", "/api/v1/cluster/"),
+
+	CONFIG("/confProperty");
+
+	private final String[] prefixes;
+
+	Lane(String... prefixes) {
+		this.prefixes = prefixes;
+	}
+
+	/** The lane of a request path, {@code null} for one no lane limits. */
+	public static Lane of(String path) {
+		for (Lane lane : values()) {
+			for (String prefix : lane.prefixes) {
+				if (path.startsWith(prefix)) {
+					return lane;
+				}
+			}
+		}
+		return null;
+	}
+
+	/** The lane's name as used in properties and metric tags. */
+	public String tag() {
+		return name().toLowerCase();
+	}
+
+}
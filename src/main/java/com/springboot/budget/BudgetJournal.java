@@ -0,0 +1,21 @@
+package com.springboot.budget;
+
+import java.util.Map;
+
+/**
+ * Where a {@link LocalBudgetLedger} records what it has leased, so that a
+ * restarted node does not hand out again what was leased before. Totals only
+ * ever grow, so the largest one recorded for a counter is its state.
+ */
+public interface BudgetJournal {
+
+	/**
+	 * Records that the counter has leased {@code leased} units in all. It is
+	 * durable once this returns.
+	 */
+	void recordLeased(String key, long leased);
+
+	/** The largest total recorded for every counter. */
+	Map<String, Long> recordedLeases();
+
+}
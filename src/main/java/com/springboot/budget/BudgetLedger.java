@@ -0,0 +1,33 @@
+package com.springboot.budget;
+
+/**
+ * The shared side of redemption limits: one counter per key, from which
+ * every node leases allowances and spends them locally. A deployment whose
+ * nodes share a budget backs this with a store all of them reach; a single
+ * node keeps it in memory.
+ */
+public interface BudgetLedger {
+
+	/**
+	 * Sets the counter's limit, creating it if needed. Raising the limit makes
+	 * the difference available to leases again; lowering it takes back only
+	 * what has not been leased yet.
+	 */
+	void limit(String key, long limit);
+
+	/**
+	 * Leases up to {@code units} from the counter.
+	 *
+	 * @return the units granted, {@code 0} once the limit has been leased out
+	 */
+	long lease(String key, long units);
+
+	/** Units leased out of the counter so far, {@code 0} for an unknown key. */
+	long leased(String key);
+
+	/** Whether {@link #limit} and {@link #lease} may wait on another node. */
+	default boolean isRemote() {
+		return false;
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.springboot.budget;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the counters in memory, for a single node. With a
+ * {@link BudgetJournal}, such as the durable offer store, every lease is
+ * recorded before it is granted and counters resume from what was leased
+ * before a restart; without one they start again from zero.
+ */
+@Component
+public class LocalBudgetLedger implements BudgetLedger {
+
+	private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+	private final BudgetJournal journal;
+
+	/** Totals recorded before startup, for counters not set up again yet. */
+	private final Map<String, Long> recovered;
+
+	public LocalBudgetLedger() {
+		this((BudgetJournal) null);
+	}
+
+	@Autowired
+	public LocalBudgetLedger(ObjectProvider<BudgetJournal> journal) {
+		this(journal.getIfAvailable());
+	}
+
+	public LocalBudgetLedger(BudgetJournal journal) {
+		this.journal = journal;
+		this.recovered = journal == null ? new ConcurrentHashMap<>() : new ConcurrentHashMap<>(journal.recordedLeases());
+	}
+
+	@Override
+	public void limit(String key, long limit) {
+		Account account = accounts.computeIfAbsent(key, this::open);
+		synchronized (account) {
+			account.limit = limit;
+		}
+	}
+
+	/** Sets the counter's limit unless it already has one. */
+	public void limitIfAbsent(String key, long limit) {
+		accounts.computeIfAbsent(key, k -> {
+			Account account = open(k);
+			account.limit = limit;
+			return account;
+		});
+	}
+
+	private Account open(String key) {
+		Account account = new Account();
+		Long leased = recovered.remove(key);
+		account.leased = leased == null ? 0 : leased;
+		return account;
+	}
+
+	@Override
+	public long lease(String key, long units) {
+		Account account = accounts.get(key);
+		if (account == null) {
+			return 0;
+		}
+		long granted;
+		long leased;
+		synchronized (account) {
+			granted = Math.max(0, Math.min(units, account.limit - account.leased));
+			account.leased += granted;
+			leased = account.leased;
+		}
+		if (granted > 0 && journal != null) {
+			// recorded outside the lock; a total overtaken by a later lease's is simply not the largest
+			journal.recordLeased(key, leased);
+		}
+		return granted;
+	}
+
+	@Override
+	public long leased(String key) {
+		Account account = accounts.get(key);
+		if (account == null) {
+			return 0;
+		}
+		synchronized (account) {
+			return account.leased;
+		}
+	}
+
+	private static final class Account {
+
+		long limit;
+
+		long leased;
+	}
+
+}
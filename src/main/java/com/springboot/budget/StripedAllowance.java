@@ -0,0 +1,161 @@
+package com.springboot.budget;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A local share of a limited counter, spent without contention. The share is
+ * split into stripes, like the cells of a {@link LongAdder}, and a thread
+ * takes from the stripe its id hashes to with a single CAS. A stripe that runs
+ * dry leases more from the shared counter, enough for
+ * {@code leaseRedemptions} acquisitions of the size asked for, so the shared
+ * counter is only touched once every that many acquisitions per stripe.
+ * Leases run without holding any lock, so a lease that has to wait on
+ * another node holds up only the thread that asked for it.
+ * <p>
+ * When the shared counter has nothing left either, the leasing thread gathers
+ * what the other stripes still hold, waiting for leases still in flight,
+ * before it gives up, so the limit is spent to the last unit and never
+ * exceeded; from then on the allowance is {@link #isExhausted() exhausted}
+ * until {@link #reopen() reopened}.
+ */
+public final class StripedAllowance {
+
+	/** Longs per stripe, so that neighbouring stripes never share a cache line. */
+	private static final int PAD = 16;
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	private final LongUnaryOperator lease;
+
+	private final long leaseRedemptions;
+
+	private final LongAdder leases = new LongAdder();
+
+	private volatile boolean exhausted;
+
+	/** Leases in flight; guarded by this. */
+	private int leasing;
+
+	/**
+	 * @param stripes a power of two
+	 * @param lease takes up to the requested units from the shared counter and
+	 * returns how many it got, {@code 0} once nothing is left
+	 */
+	public StripedAllowance(int stripes, long leaseRedemptions, LongUnaryOperator lease) {
+		if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException("stripes must be a power of two but was " + stripes);
+		}
+		if (leaseRedemptions <= 0) {
+			throw new IllegalArgumentException("leaseRedemptions must be positive but was " + leaseRedemptions);
+		}
+		this.cells = new AtomicLongArray(stripes * PAD);
+		this.mask = stripes - 1;
+		this.lease = lease;
+		this.leaseRedemptions = leaseRedemptions;
+	}
+
+	/**
+	 * Takes {@code units} from the allowance.
+	 *
+	 * @return {@code units}, or what was left if that was less, in which case
+	 * the allowance is now exhausted
+	 */
+	public long acquire(long units) {
+		int cell = cell();
+		for (long held = cells.get(cell); held >= units; held = cells.get(cell)) {
+			if (cells.compareAndSet(cell, held, held - units)) {
+				return units;
+			}
+		}
+		return refill(cell, units);
+	}
+
+	/** Puts back units acquired but not used. */
+	public void release(long units) {
+		cells.addAndGet(cell(), units);
+	}
+
+	private long refill(int cell, long units) {
+		if (!exhausted) {
+			synchronized (this) {
+				leasing++;
+			}
+			long leased = 0;
+			try {
+				leased = lease.applyAsLong(Math.max(units, units * leaseRedemptions));
+			} finally {
+				synchronized (this) {
+					// what this acquisition does not take is in a stripe before anyone gathers again
+					cells.addAndGet(cell, leased >= units ? leased - units : leased);
+					leasing--;
+					notifyAll();
+				}
+			}
+			if (leased > 0) {
+				leases.increment();
+			}
+			if (leased >= units) {
+				return units;
+			}
+		}
+		return gather(cell, units);
+	}
+
+	private synchronized long gather(int cell, long units) {
+		long gathered = 0;
+		while (true) {
+			for (int i = 0; i < cells.length() && gathered < units; i += PAD) {
+				gathered += cells.getAndSet(i, 0);
+			}
+			if (gathered >= units) {
+				cells.addAndGet(cell, gathered - units);
+				return units;
+			}
+			if (leasing == 0) {
+				break;
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		exhausted = true;
+		return gathered;
+	}
+
+	/** Whether the shared counter and every stripe ran out. */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/** Lets the allowance lease again, after the shared counter's limit was raised. */
+	public synchronized void reopen() {
+		exhausted = false;
+	}
+
+	/** Units leased but not acquired yet, across all stripes. */
+	public long local() {
+		long local = 0;
+		for (int i = 0; i < cells.length(); i += PAD) {
+			local += cells.get(i);
+		}
+		return local;
+	}
+
+	/** Times the shared counter was touched and granted something. */
+	public long leases() {
+		return leases.sum();
+	}
+
+	private int cell() {
+		long id = Thread.currentThread().getId();
+		return ((int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask) * PAD;
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.springboot.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Size bounded LRU map split into independently locked stripes, so lookups for
+ * different keys rarely contend on the same monitor. Recency and the size
+ * bound are tracked per stripe, which makes eviction approximately LRU across
+ * the whole cache.
+ */
+public class StripedLruCache<K, V> {
+
+	private final Stripe<K, V>[] stripes;
+
+	private final int mask;
+
+	private final LongAdder evictions = new LongAdder();
+
+	@SuppressWarnings("unchecked")
+	public StripedLruCache(int maximumSize, int concurrencyLevel) {
+		int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, maximumSize)) * 2 - 1);
+		int perStripe = Math.max(1, (maximumSize + stripeCount - 1) / stripeCount);
+		this.stripes = new Stripe[stripeCount];
+		this.mask = stripeCount - 1;
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe<>(perStripe, evictions);
+		}
+	}
+
+	public V get(K key) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.get(key);
+		}
+	}
+
+	public void put(K key, V value) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			stripe.put(key, value);
+		}
+	}
+
+	/**
+	 * Replaces the key's value, or its absence as {@code null}, with what the
+	 * function returns for it, atomically for that key. Returning {@code null}
+	 * removes the key.
+	 */
+	public V compute(K key, UnaryOperator<V> remapping) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.compute(key, (k, value) -> remapping.apply(value));
+		}
+	}
+
+	public V remove(K key) {
+		Stripe<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.remove(key);
+		}
+	}
+
+	public void clear() {
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/** Removes every value matching the filter, one stripe at a time. */
+	public void removeIf(Predicate<? super V> filter) {
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.values().removeIf(filter);
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	private Stripe<K, V> stripeFor(K key) {
+		int h = key.hashCode();
+		return stripes[(h ^ (h >>> 16)) & mask];
+	}
+
+	private static final class Stripe<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		private final transient LongAdder evictions;
+
+		Stripe(int capacity, LongAdder evictions) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+}
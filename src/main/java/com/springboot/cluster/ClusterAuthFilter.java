@@ -0,0 +1,126 @@
+package com.springboot.cluster;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.springboot.property.ClusterProperties;
+
+/**
+ * Tells requests from other members apart from clients' before anything
+ * else sees them. A request is a member's only if clustering is enabled and
+ * it carries the {@code cluster.secret}; it is then marked with
+ * {@link #MEMBER_ATTRIBUTE}. Anyone else's {@link ClusterClient#HOP_HEADER}
+ * is hidden, so the request is routed, admitted and handled as a client's,
+ * and the endpoints only members call answer it with 403.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ClusterAuthFilter extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(ClusterAuthFilter.class);
+
+	/** Request attribute set to {@link Boolean#TRUE} on a request sent by a member. */
+	public static final String MEMBER_ATTRIBUTE = ClusterAuthFilter.class.getName() + ".member";
+
+	/** Rebalance pushes, replicated offers and budget leases. */
+	private static final List<String> MEMBER_ONLY = Arrays.asList("/api/v1/cluster/rebalance",
+			"/api/v1/cluster/offers", "/api/v1/cluster/ledger/");
+
+	private final byte[] secret;
+
+	@Autowired
+	public ClusterAuthFilter(ClusterProperties clusterProperties) {
+		String configured = clusterProperties.getSecret();
+		if (clusterProperties.isEnabled() && (configured == null || configured.isEmpty())) {
+			throw new IllegalStateException("cluster.secret must be set when cluster.enabled=true");
+		}
+		this.secret = clusterProperties.isEnabled() ? configured.getBytes(StandardCharsets.UTF_8) : null;
+	}
+
+	/** Whether the request was sent by a member, as established by this filter. */
+	public static boolean isMember(HttpServletRequest request) {
+		return Boolean.TRUE.equals(request.getAttribute(MEMBER_ATTRIBUTE));
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		if (authenticated(request)) {
+			request.setAttribute(MEMBER_ATTRIBUTE, Boolean.TRUE);
+			chain.doFilter(request, response);
+			return;
+		}
+		if (isMemberOnly(request.getRequestURI())) {
+			log.debug("event=cluster_request_refused path={}", request.getRequestURI());
+			response.setStatus(HttpStatus.FORBIDDEN.value());
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			response.getWriter().write("{\"response_msg\":\"" + HttpStatus.FORBIDDEN.getReasonPhrase() + "\"}");
+			return;
+		}
+		chain.doFilter(request.getHeader(ClusterClient.HOP_HEADER) == null ? request : new WithoutHop(request),
+				response);
+	}
+
+	private boolean authenticated(HttpServletRequest request) {
+		String presented = request.getHeader(ClusterClient.SECRET_HEADER);
+		return secret != null && presented != null
+				&& MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static boolean isMemberOnly(String path) {
+		for (String prefix : MEMBER_ONLY) {
+			if (path.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** A client's request as it would be without the hop header it claimed. */
+	private static final class WithoutHop extends HttpServletRequestWrapper {
+
+		WithoutHop(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return ClusterClient.HOP_HEADER.equalsIgnoreCase(name) ? null : super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			return ClusterClient.HOP_HEADER.equalsIgnoreCase(name) ? Collections.emptyEnumeration()
+					: super.getHeaders(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			List<String> names = Collections.list(super.getHeaderNames());
+			names.removeIf(ClusterClient.HOP_HEADER::equalsIgnoreCase);
+			return Collections.enumeration(names);
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package com.springboot.cluster;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.springboot.budget.BudgetLedger;
+import com.springboot.budget.LocalBudgetLedger;
+import com.springboot.controller.BudgetLease;
+
+/**
+ * Keeps each counter on one member, picked by hashing its key onto the
+ * cluster's ring, so an offer's limits hold across every owner serving its
+ * restaurant. Other members lease from that member over HTTP; since they
+ * lease many redemptions at a time, that is one call per lease rather than
+ * per redemption.
+ * <p>
+ * Each lease carries the limit its sender knows of, so a member that comes
+ * to own a counter after a join starts it from there, with nothing leased.
+ * While the owner cannot be reached, members lease from their own copy of
+ * the counter instead; an offer may then be redeemed past its limit by up to
+ * that limit per member.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(prefix = "cluster", name = "enabled", havingValue = "true")
+public class ClusterBudgetLedger implements BudgetLedger {
+
+	private static final Logger log = LoggerFactory.getLogger(ClusterBudgetLedger.class);
+
+	private final ClusterMembership membership;
+
+	private final ClusterClient clusterClient;
+
+	private final LocalBudgetLedger local;
+
+	private final ConcurrentMap<String, Long> limits = new ConcurrentHashMap<>();
+
+	@Autowired
+	public ClusterBudgetLedger(ClusterMembership membership, ClusterClient clusterClient, LocalBudgetLedger local) {
+		this.membership = membership;
+		this.clusterClient = clusterClient;
+		this.local = local;
+	}
+
+	@Override
+	public void limit(String key, long limit) {
+		limits.put(key, limit);
+		local.limit(key, limit);
+		String owner = membership.ownerOf(key);
+		if (!owner.equals(membership.self())) {
+			call(owner, "/api/v1/cluster/ledger/limit", new BudgetLease(key, 0, limit, 0));
+		}
+	}
+
+	@Override
+	public long lease(String key, long units) {
+		String owner = membership.ownerOf(key);
+		if (owner.equals(membership.self())) {
+			return local.lease(key, units);
+		}
+		BudgetLease granted = call(owner, "/api/v1/cluster/ledger/lease",
+				new BudgetLease(key, units, limits.getOrDefault(key, 0L), 0));
+		return granted == null ? local.lease(key, units) : granted.getUnits();
+	}
+
+	@Override
+	public long leased(String key) {
+		String owner = membership.ownerOf(key);
+		if (owner.equals(membership.self())) {
+			return local.leased(key);
+		}
+		BudgetLease granted = call(owner, "/api/v1/cluster/ledger/lease",
+				new BudgetLease(key, 0, limits.getOrDefault(key, 0L), 0));
+		return granted == null ? local.leased(key) : granted.getLeased();
+	}
+
+	@Override
+	public boolean isRemote() {
+		return true;
+	}
+
+	/** The owner's answer, {@code null} if it could not be reached. */
+	private BudgetLease call(String owner, String path, BudgetLease request) {
+		try {
+			ClusterClient.Response response = clusterClient.exchange(owner, "POST", path, request,
+					ClusterClient.REPLICA);
+			if (response.isSuccess()) {
+				return response.read(BudgetLease.class);
+			}
+			log.warn("event=budget_ledger_unreachable member={} key={} reason={}", owner, request.getKey(),
+					response.message());
+		} catch (IOException e) {
+			log.warn("event=budget_ledger_unreachable member={} key={} reason={}", owner, request.getKey(),
+					e.toString());
+		}
+		return null;
+	}
+
+}
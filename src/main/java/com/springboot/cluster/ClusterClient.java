@@ -0,0 +1,259 @@
+package com.springboot.cluster;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.property.ClusterProperties;
+
+/**
+ * Calls other members of the cluster over pooled keep-alive connections, with
+ * JSON bodies. Requests between members carry a {@link #HOP_HEADER} so the
+ * member receiving them knows not to route them any further, and the
+ * cluster secret in {@link #SECRET_HEADER} so it knows to trust them. Non-blocking
+ * calls go through a separate NIO client, started on the first of them.
+ */
+@Component
+public class ClusterClient {
+
+	/** Marks a request sent by another member. */
+	public static final String HOP_HEADER = "X-Cluster-Hop";
+
+	/** Proves a request with a {@link #HOP_HEADER} comes from a member. */
+	public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+	/** Sent to a restaurant's primary or an owner; applied there and replicated by the primary. */
+	public static final String FORWARD = "forward";
+
+	/** Applied by the receiving member only. */
+	public static final String REPLICA = "replica";
+
+	private final ObjectMapper objectMapper;
+
+	private final ClusterProperties.Client clientProperties;
+
+	private final String secret;
+
+	private final RequestConfig requestConfig;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private volatile CloseableHttpAsyncClient asyncHttpClient;
+
+	@Autowired
+	public ClusterClient(ClusterProperties clusterProperties, ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+		this.clientProperties = clusterProperties.getClient();
+		this.secret = clusterProperties.getSecret();
+		this.requestConfig = RequestConfig.custom()
+				.setConnectTimeout(clientProperties.getConnectTimeoutMs())
+				.setSocketTimeout(clientProperties.getReadTimeoutMs())
+				.setConnectionRequestTimeout(clientProperties.getConnectionRequestTimeoutMs())
+				.build();
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setDefaultMaxPerRoute(clientProperties.getMaxConnectionsPerMember());
+		connectionManager.setMaxTotal(clientProperties.getMaxConnectionsPerMember() * 16);
+		connectionManager.setValidateAfterInactivity(2000);
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictIdleConnections(30, TimeUnit.SECONDS)
+				.disableCookieManagement()
+				.build();
+	}
+
+	/**
+	 * Sends a request to the member and reads the whole response.
+	 *
+	 * @param body serialised as JSON, or {@code null} for none
+	 * @param hop the {@link #HOP_HEADER} value, {@code null} for a request as a client would send it
+	 * @throws IOException if the member could not be reached or did not answer in time
+	 */
+	public Response exchange(String member, String method, String path, Object body, String hop) throws IOException {
+		try (CloseableHttpResponse response = httpClient.execute(request(member, method, path, body, hop))) {
+			return read(response);
+		}
+	}
+
+	/** {@link #exchange} waiting up to {@code readTimeoutMs} for the answer instead of the configured read timeout. */
+	public Response exchange(String member, String method, String path, Object body, String hop, int readTimeoutMs)
+			throws IOException {
+		RequestBuilder builder = builder(member, method, path, body, hop)
+				.setConfig(RequestConfig.copy(requestConfig).setSocketTimeout(readTimeoutMs).build());
+		try (CloseableHttpResponse response = httpClient.execute(builder.build())) {
+			return read(response);
+		}
+	}
+
+	/** Non-blocking variant of {@link #exchange}; failures complete the future exceptionally. */
+	public CompletableFuture<Response> exchangeAsync(String member, String method, String path, Object body,
+			String hop) {
+		CompletableFuture<Response> future = new CompletableFuture<>();
+		HttpUriRequest request;
+		CloseableHttpAsyncClient client;
+		try {
+			request = request(member, method, path, body, hop);
+			client = asyncHttpClient();
+		} catch (IOException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		client.execute(request, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse response) {
+				try {
+					future.complete(read(response));
+				} catch (IOException e) {
+					future.completeExceptionally(e);
+				}
+			}
+
+			@Override
+			public void failed(Exception e) {
+				future.completeExceptionally(e);
+			}
+
+			@Override
+			public void cancelled() {
+				future.completeExceptionally(new IOException("call to " + member + " cancelled"));
+			}
+		});
+		return future;
+	}
+
+	private HttpUriRequest request(String member, String method, String path, Object body, String hop)
+			throws IOException {
+		return builder(member, method, path, body, hop).build();
+	}
+
+	private RequestBuilder builder(String member, String method, String path, Object body, String hop)
+			throws IOException {
+		RequestBuilder builder = RequestBuilder.create(method).setUri(member + path)
+				.setHeader(HttpHeaders.ACCEPT, "application/json");
+		if (hop != null) {
+			builder.setHeader(HOP_HEADER, hop);
+		}
+		if (secret != null) {
+			builder.setHeader(SECRET_HEADER, secret);
+		}
+		if (body != null) {
+			builder.setEntity(new ByteArrayEntity(objectMapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON));
+		}
+		return builder;
+	}
+
+	private Response read(HttpResponse response) throws IOException {
+		HttpEntity entity = response.getEntity();
+		byte[] body = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+		return new Response(response.getStatusLine().getStatusCode(), body);
+	}
+
+	private CloseableHttpAsyncClient asyncHttpClient() throws IOReactorException {
+		CloseableHttpAsyncClient client = asyncHttpClient;
+		if (client == null) {
+			synchronized (this) {
+				client = asyncHttpClient;
+				if (client == null) {
+					PoolingNHttpClientConnectionManager asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+							new DefaultConnectingIOReactor(IOReactorConfig.custom()
+									.setConnectTimeout(clientProperties.getConnectTimeoutMs())
+									.setSoTimeout(clientProperties.getReadTimeoutMs())
+									.build()));
+					asyncConnectionManager.setDefaultMaxPerRoute(clientProperties.getMaxConnectionsPerMember());
+					asyncConnectionManager.setMaxTotal(clientProperties.getMaxConnectionsPerMember() * 16);
+					client = HttpAsyncClients.custom()
+							.setConnectionManager(asyncConnectionManager)
+							.setDefaultRequestConfig(requestConfig)
+							.disableCookieManagement()
+							.build();
+					client.start();
+					asyncHttpClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		httpClient.close();
+		CloseableHttpAsyncClient client = asyncHttpClient;
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	/** A member's answer, read in full. */
+	public final class Response {
+
+		private final int status;
+
+		private final byte[] body;
+
+		Response(int status, byte[] body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		public int status() {
+			return status;
+		}
+
+		public boolean isSuccess() {
+			return status >= 200 && status < 300;
+		}
+
+		public <T> T read(Class<T> type) throws IOException {
+			return objectMapper.readValue(body, type);
+		}
+
+		public <T> T read(TypeReference<T> type) throws IOException {
+			return objectMapper.readValue(body, type);
+		}
+
+		/** The {@code message} of an error response, or the status if it has none. */
+		public String message() {
+			try {
+				JsonNode message = objectMapper.readTree(body).get("message");
+				if (message != null && message.isTextual()) {
+					return message.asText();
+				}
+			} catch (IOException e) {
+				// not a JSON error body
+			}
+			return "status " + status;
+		}
+	}
+
+}
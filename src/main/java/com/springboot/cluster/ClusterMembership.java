@@ -0,0 +1,364 @@
+package com.springboot.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntPredicate;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.springboot.controller.ClusterMembers;
+import com.springboot.controller.OfferRequest;
+import com.springboot.property.ClusterProperties;
+import com.springboot.repository.OfferRepository;
+import com.springboot.service.OfferMatchCache;
+
+/**
+ * Which nodes make up the cluster and which of them own each restaurant.
+ * Each restaurant's offers are held by {@code cluster.replicas} nodes taken
+ * from a {@link ConsistentHashRing}; the first of them, its primary, takes its
+ * writes and copies them to the others.
+ * <p>
+ * A node joins by asking any member, its seed, which answers straight away
+ * and admits it in the background: each member that was primary for a
+ * restaurant the new node will own pushes that restaurant's offers to it, and
+ * only then do the members switch to the new ring and drop the restaurants
+ * they no longer own.
+ * <p>
+ * With {@code cluster.enabled=false} the node owns every restaurant.
+ */
+@Component
+public class ClusterMembership {
+
+	private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+	/** Offers per request when pushing a restaurant's offers to a new owner. */
+	private static final int PUSH_BATCH = 1000;
+
+	/** Rounds of pushes tried before a joining node is left out. */
+	private static final int ADMIT_ATTEMPTS = 10;
+
+	private static final long INITIAL_BACKOFF_MS = 1000;
+
+	private static final long MAX_BACKOFF_MS = 30000;
+
+	private final ClusterProperties clusterProperties;
+
+	private final ClusterClient clusterClient;
+
+	private final OfferRepository offerRepository;
+
+	private final OfferMatchCache offerMatchCache;
+
+	private final String self;
+
+	private final int replicas;
+
+	private volatile ConsistentHashRing ring;
+
+	/** The ring a join is moving to, while its offers are pushed; {@code null} otherwise. */
+	private volatile ConsistentHashRing pending;
+
+	/** Nodes being admitted through this one, one at a time on the rebalancer. */
+	private final Set<String> admitting = new HashSet<>();
+
+	private final ExecutorService rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "cluster-rebalance");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public ClusterMembership(ClusterProperties clusterProperties, ClusterClient clusterClient,
+			OfferRepository offerRepository, OfferMatchCache offerMatchCache) {
+		this.clusterProperties = clusterProperties;
+		this.clusterClient = clusterClient;
+		this.offerRepository = offerRepository;
+		this.offerMatchCache = offerMatchCache;
+		this.self = clusterProperties.getSelf();
+		this.replicas = Math.max(1, clusterProperties.getReplicas());
+		if (clusterProperties.isEnabled()) {
+			if (self == null) {
+				throw new IllegalStateException("cluster.self must be set when cluster.enabled is true");
+			}
+			Set<String> members = new LinkedHashSet<>(clusterProperties.getMembers());
+			String seed = clusterProperties.getSeed();
+			if (seed == null || seed.equals(self)) {
+				members.add(self);
+			} else {
+				// not an owner until the seed has admitted it
+				members.remove(self);
+				members.add(seed);
+			}
+			this.ring = new ConsistentHashRing(members, clusterProperties.getVirtualNodes());
+		}
+	}
+
+	public boolean isEnabled() {
+		return ring != null;
+	}
+
+	/** This node's base URL, {@code null} when not clustered. */
+	public String self() {
+		return self;
+	}
+
+	/** Every member, this one included, in a stable order. */
+	public List<String> members() {
+		ConsistentHashRing current = ring;
+		return current == null ? Collections.emptyList() : current.nodes();
+	}
+
+	/** The nodes holding the restaurant's offers, primary first; empty when not clustered. */
+	public List<String> owners(int restaurantId) {
+		ConsistentHashRing current = ring;
+		return current == null ? Collections.emptyList() : current.owners(restaurantId, replicas);
+	}
+
+	/** The node owning anything identified by the key, such as a budget counter. */
+	public String ownerOf(String key) {
+		ConsistentHashRing current = ring;
+		return current == null ? self : current.owners(key, 1).get(0);
+	}
+
+	/**
+	 * The nodes a write for the restaurant is copied to: its owners and,
+	 * while a node joins, its owners once it has joined.
+	 */
+	public List<String> replicaTargets(int restaurantId) {
+		ConsistentHashRing current = ring;
+		if (current == null) {
+			return Collections.emptyList();
+		}
+		List<String> targets = new ArrayList<>(current.owners(restaurantId, replicas));
+		ConsistentHashRing next = pending;
+		if (next != null) {
+			for (String owner : next.owners(restaurantId, replicas)) {
+				if (!targets.contains(owner)) {
+					targets.add(owner);
+				}
+			}
+		}
+		return targets;
+	}
+
+	public boolean isOwner(int restaurantId) {
+		ConsistentHashRing current = ring;
+		return current == null || current.owners(restaurantId, replicas).contains(self);
+	}
+
+	public boolean isPrimary(int restaurantId) {
+		ConsistentHashRing current = ring;
+		return current == null || self.equals(current.primary(restaurantId));
+	}
+
+	/** Every member but this one. */
+	public List<String> others() {
+		List<String> others = new ArrayList<>(members());
+		others.remove(self);
+		return others;
+	}
+
+	/**
+	 * Adds a node to the cluster on behalf of the node itself. Answers at once
+	 * with the members serving now; the node is admitted in the background,
+	 * see {@link #admit}.
+	 */
+	public List<String> join(String member) {
+		synchronized (admitting) {
+			if (!ring.contains(member) && admitting.add(member)) {
+				rebalancer.execute(() -> admit(member));
+			}
+		}
+		return ring.nodes();
+	}
+
+	/**
+	 * Admits a node in two steps. First every member, this one included, takes
+	 * the ring with the node as pending: it copies writes to the pending owners
+	 * as well and pushes the offers of the restaurants it is primary for that
+	 * the node will own. Only once every push has succeeded does every member,
+	 * the node included, switch to the new ring and drop the restaurants it no
+	 * longer owns, so no member routes a restaurant to the node before it has
+	 * its offers. Failed pushes are retried with backoff; after
+	 * {@link #ADMIT_ATTEMPTS} the node is left out and the pending ring dropped.
+	 */
+	private void admit(String member) {
+		try {
+			ConsistentHashRing next = ring.with(member);
+			List<String> nodes = next.nodes();
+			long backoffMs = INITIAL_BACKOFF_MS;
+			boolean prepared = false;
+			for (int attempt = 1; attempt <= ADMIT_ATTEMPTS && !prepared; attempt++) {
+				prepared = prepare(nodes);
+				for (String other : others()) {
+					prepared &= call(other, "POST", "/api/v1/cluster/rebalance", new ClusterMembers(nodes),
+							clusterProperties.getClient().getRebalanceTimeoutMs());
+				}
+				if (!prepared && attempt < ADMIT_ATTEMPTS) {
+					log.warn("event=cluster_rebalance_incomplete member={} attempt={} retry_ms={}", member, attempt,
+							backoffMs);
+					Thread.sleep(backoffMs);
+					backoffMs = Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+				}
+			}
+			if (!prepared) {
+				log.error("event=cluster_join_abandoned member={} attempts={}", member, ADMIT_ATTEMPTS);
+				pending = null;
+				for (String other : others()) {
+					call(other, "DELETE", "/api/v1/cluster/rebalance", null,
+							clusterProperties.getClient().getReadTimeoutMs());
+				}
+				return;
+			}
+			for (String other : nodes) {
+				if (!other.equals(self) && !call(other, "POST", "/api/v1/cluster/members", new ClusterMembers(nodes),
+						clusterProperties.getClient().getRebalanceTimeoutMs())) {
+					log.warn("event=cluster_membership_not_propagated member={}", other);
+				}
+			}
+			adopt(nodes);
+			log.info("event=cluster_member_joined member={} members={}", member, nodes.size());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			synchronized (admitting) {
+				admitting.remove(member);
+			}
+		}
+	}
+
+	/**
+	 * Takes the members as the pending ring and pushes the offers of
+	 * restaurants this node is primary for to the owners they gain in it.
+	 *
+	 * @return whether every push succeeded
+	 */
+	public synchronized boolean prepare(Collection<String> members) {
+		ConsistentHashRing previous = ring;
+		ConsistentHashRing next = new ConsistentHashRing(members, clusterProperties.getVirtualNodes());
+		pending = next;
+		IntPredicate moving = restaurantId -> self.equals(previous.primary(restaurantId))
+				&& !previous.owners(restaurantId, replicas).containsAll(next.owners(restaurantId, replicas));
+		Map<String, List<OfferRequest>> pushes = new HashMap<>();
+		offerRepository.export(moving, offer -> {
+			List<String> owners = previous.owners(offer.getRestaurant_id(), replicas);
+			for (String owner : next.owners(offer.getRestaurant_id(), replicas)) {
+				if (!owners.contains(owner)) {
+					pushes.computeIfAbsent(owner, key -> new ArrayList<>()).add(offer);
+				}
+			}
+		});
+		int offers = 0;
+		for (Map.Entry<String, List<OfferRequest>> push : pushes.entrySet()) {
+			List<OfferRequest> batch = push.getValue();
+			for (int from = 0; from < batch.size(); from += PUSH_BATCH) {
+				if (!call(push.getKey(), "POST", "/api/v1/cluster/offers",
+						batch.subList(from, Math.min(batch.size(), from + PUSH_BATCH)),
+						clusterProperties.getClient().getReadTimeoutMs())) {
+					return false;
+				}
+			}
+			offers += batch.size();
+		}
+		log.info("event=cluster_rebalance_pushed pushed_offers={} members={}", offers, next.nodes().size());
+		return true;
+	}
+
+	/** Drops the pending ring of a join that was abandoned. */
+	public void abandon() {
+		pending = null;
+	}
+
+	/**
+	 * Switches to the members, whose offers have been pushed where they
+	 * belong, and drops the restaurants this node no longer owns.
+	 */
+	public synchronized void adopt(Collection<String> members) {
+		ConsistentHashRing previous = ring;
+		ConsistentHashRing next = new ConsistentHashRing(members, clusterProperties.getVirtualNodes());
+		pending = null;
+		if (next.nodes().equals(previous.nodes())) {
+			return;
+		}
+		ring = next;
+		log.info("event=cluster_members_updated members={}", next.nodes().size());
+		offerRepository.removeRestaurants(restaurantId -> previous.owners(restaurantId, replicas).contains(self)
+				&& !next.owners(restaurantId, replicas).contains(self));
+		offerMatchCache.invalidateAll();
+	}
+
+	/** Whether a node is being admitted through this one. */
+	public boolean isAdmitting() {
+		synchronized (admitting) {
+			return !admitting.isEmpty();
+		}
+	}
+
+	private boolean call(String member, String method, String path, Object body, int readTimeoutMs) {
+		try {
+			ClusterClient.Response response = clusterClient.exchange(member, method, path, body,
+					ClusterClient.REPLICA, readTimeoutMs);
+			if (response.isSuccess()) {
+				return true;
+			}
+			log.warn("event=cluster_call_failed member={} path={} reason={}", member, path, response.message());
+		} catch (IOException e) {
+			log.warn("event=cluster_call_failed member={} path={} reason={}", member, path, e.toString());
+		}
+		return false;
+	}
+
+	@PreDestroy
+	public void close() {
+		rebalancer.shutdownNow();
+	}
+
+	/**
+	 * Joins through {@code cluster.seed}, if set, once the node can take the
+	 * offers pushed to it. Until the seed has admitted it, the node serves as
+	 * no owner and forwards everything to the members the seed answers with.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void joinSeed() {
+		String seed = clusterProperties.getSeed();
+		if (!isEnabled() || seed == null || seed.equals(self)) {
+			return;
+		}
+		try {
+			ClusterClient.Response response = clusterClient.exchange(seed, "POST", "/api/v1/cluster/members",
+					new ClusterMembers(Collections.singletonList(self)), null);
+			if (!response.isSuccess()) {
+				log.warn("event=cluster_join_failed seed={} reason={}", seed, response.message());
+				return;
+			}
+			List<String> serving = response.read(ClusterMembers.class).getMembers();
+			synchronized (this) {
+				// admitted already if the new ring arrived before the answer
+				if (!ring.contains(self)) {
+					ring = new ConsistentHashRing(serving, clusterProperties.getVirtualNodes());
+				}
+			}
+			log.info("event=cluster_join_requested seed={} members={}", seed, serving.size());
+		} catch (IOException e) {
+			log.warn("event=cluster_join_failed seed={} reason={}", seed, e.toString());
+		}
+	}
+
+}
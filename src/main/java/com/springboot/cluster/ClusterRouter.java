@@ -0,0 +1,457 @@
+package com.springboot.cluster;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.springboot.controller.ApiResponse;
+import com.springboot.controller.ApplyOfferRequest;
+import com.springboot.controller.ApplyOfferResponse;
+import com.springboot.controller.OfferRequest;
+
+/**
+ * Routes offer and apply_offer requests to the members owning the
+ * restaurant. Writes go to the restaurant's primary, which copies what it
+ * stored to the other owners; apply_offer goes to any owner, picked by user
+ * so that one user's carts keep hitting the same warm segment cache, and
+ * fails over to the next owner when that one cannot be reached.
+ * <p>
+ * A cart is only tried on the next owner if the previous one cannot have
+ * priced it: no connection could be made, or it shed the request with 503
+ * before pricing. Pricing redeems capped offers, so an owner that failed or
+ * timed out later may already have spent from a budget for the cart, and
+ * trying again would spend twice; that cart fails with 502 instead.
+ * <p>
+ * Requests that already carry a {@link ClusterClient#HOP_HEADER} are served
+ * where they arrive, so a request is forwarded at most once even while
+ * members disagree about who owns what.
+ */
+@Service
+public class ClusterRouter {
+
+	private static final Logger log = LoggerFactory.getLogger(ClusterRouter.class);
+
+	private static final String APPLY_OFFER = "/api/v1/cart/apply_offer";
+
+	private static final String APPLY_OFFERS = "/api/v1/cart/apply_offer/batch";
+
+	private final ClusterMembership membership;
+
+	private final ClusterClient clusterClient;
+
+	@Autowired
+	public ClusterRouter(ClusterMembership membership, ClusterClient clusterClient) {
+		this.membership = membership;
+		this.clusterClient = clusterClient;
+	}
+
+	/** Whether a write for the restaurant has to go to another member. */
+	public boolean forwardsWrite(int restaurantId, String hop) {
+		return hop == null && !membership.isPrimary(restaurantId);
+	}
+
+	/** Whether an apply_offer for the restaurant has to go to another member. */
+	public boolean forwardsApply(int restaurantId, String hop) {
+		return hop == null && !membership.isOwner(restaurantId);
+	}
+
+	/** Whether a write applied here is copied to the restaurant's other owners. */
+	public boolean replicates(String hop) {
+		return membership.isEnabled() && !ClusterClient.REPLICA.equals(hop);
+	}
+
+	/** Whether a batch may hold carts for restaurants owned by other members. */
+	public boolean routesBatch(String hop) {
+		return hop == null && membership.isEnabled();
+	}
+
+	/** Whether a lookup by offer id that found nothing here should ask the other members. */
+	public boolean searches(String hop) {
+		return hop == null && membership.isEnabled();
+	}
+
+	/**
+	 * Sends a write to the restaurant's primary and returns its answer.
+	 *
+	 * @throws ResponseStatusException with the primary's status if it refused
+	 * the write, or 503 if it could not be reached
+	 */
+	public <T> T forwardWrite(int restaurantId, String method, String path, Object body, Class<T> responseType) {
+		String primary = membership.owners(restaurantId).get(0);
+		return forward(primary, method, path, body, responseType);
+	}
+
+	private <T> T forward(String member, String method, String path, Object body, Class<T> responseType) {
+		ClusterClient.Response response;
+		try {
+			response = clusterClient.exchange(member, method, path, body, ClusterClient.FORWARD);
+			if (response.isSuccess()) {
+				return response.read(responseType);
+			}
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "cluster member " + member
+					+ " unreachable", e);
+		}
+		throw new ResponseStatusException(HttpStatus.valueOf(response.status()), response.message());
+	}
+
+	/**
+	 * Copies an offer as stored here to the restaurant's other owners, and to
+	 * its owners to be while a node joins. A
+	 * failed copy is logged, not retried; the owner catches up on the next
+	 * write of the offer.
+	 */
+	public void replicate(OfferRequest stored) {
+		for (String owner : membership.replicaTargets(stored.getRestaurant_id())) {
+			if (owner.equals(membership.self())) {
+				continue;
+			}
+			try {
+				ClusterClient.Response response = clusterClient.exchange(owner, "POST", "/api/v1/cluster/offers",
+						Collections.singletonList(stored), ClusterClient.REPLICA);
+				if (!response.isSuccess()) {
+					log.warn("event=cluster_replication_failed member={} restaurant_id={} reason={}", owner,
+							stored.getRestaurant_id(), response.message());
+				}
+			} catch (IOException e) {
+				log.warn("event=cluster_replication_failed member={} restaurant_id={} reason={}", owner,
+						stored.getRestaurant_id(), e.toString());
+			}
+		}
+	}
+
+	/** Removes a deleted offer from the restaurant's other owners. */
+	public void replicateDelete(String offerId, int restaurantId) {
+		for (String owner : membership.replicaTargets(restaurantId)) {
+			if (owner.equals(membership.self())) {
+				continue;
+			}
+			try {
+				ClusterClient.Response response = clusterClient.exchange(owner, "DELETE", "/api/v1/offer/" + offerId,
+						null, ClusterClient.REPLICA);
+				if (!response.isSuccess() && response.status() != HttpStatus.NOT_FOUND.value()) {
+					log.warn("event=cluster_replication_failed member={} offer_id={} reason={}", owner, offerId,
+							response.message());
+				}
+			} catch (IOException e) {
+				log.warn("event=cluster_replication_failed member={} offer_id={} reason={}", owner, offerId,
+						e.toString());
+			}
+		}
+	}
+
+	/** Asks the other members for the offer saved under the id; {@code null} if none has it. */
+	public OfferRequest find(String offerId) {
+		for (String member : membership.others()) {
+			try {
+				ClusterClient.Response response = clusterClient.exchange(member, "GET", "/api/v1/offer/" + offerId,
+						null, ClusterClient.REPLICA);
+				if (response.isSuccess()) {
+					return response.read(OfferRequest.class);
+				}
+			} catch (IOException e) {
+				log.warn("event=cluster_lookup_failed member={} offer_id={} reason={}", member, offerId, e.toString());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Deletes an offer held by other members through its restaurant's primary.
+	 *
+	 * @return the removed offer, {@code null} if no member has it
+	 */
+	public OfferRequest forwardDelete(String offerId, Long expectedVersion) {
+		OfferRequest offer = find(offerId);
+		if (offer == null) {
+			return null;
+		}
+		String path = "/api/v1/offer/" + offerId + (expectedVersion == null ? "" : "?version=" + expectedVersion);
+		forwardWrite(offer.getRestaurant_id(), "DELETE", path, null, ApiResponse.class);
+		return offer;
+	}
+
+	/**
+	 * Prices the cart on an owner of its restaurant.
+	 *
+	 * @throws ResponseStatusException with 503 if no owner could be reached
+	 */
+	public int applyOffer(ApplyOfferRequest applyOfferRequest) {
+		List<String> owners = membership.owners(applyOfferRequest.getRestaurant_id());
+		int first = Math.floorMod(applyOfferRequest.getUser_id(), owners.size());
+		for (int attempt = 0; attempt < owners.size(); attempt++) {
+			String owner = owners.get((first + attempt) % owners.size());
+			try {
+				ClusterClient.Response response = clusterClient.exchange(owner, "POST", APPLY_OFFER, applyOfferRequest,
+						ClusterClient.FORWARD);
+				if (response.isSuccess()) {
+					return response.read(ApplyOfferResponse.class).getCart_value();
+				}
+				if (response.status() != HttpStatus.SERVICE_UNAVAILABLE.value()) {
+					throw refused(owner, response);
+				}
+				log.warn("event=cluster_failover member={} reason={}", owner, response.message());
+			} catch (IOException e) {
+				if (!neverSent(e)) {
+					throw failedPricing(owner, e.toString());
+				}
+				log.warn("event=cluster_failover member={} reason={}", owner, e.toString());
+			}
+		}
+		throw unavailable(applyOfferRequest.getRestaurant_id());
+	}
+
+	/** Non-blocking variant of {@link #applyOffer(ApplyOfferRequest)}. */
+	public CompletableFuture<Integer> applyOfferAsync(ApplyOfferRequest applyOfferRequest) {
+		List<String> owners = membership.owners(applyOfferRequest.getRestaurant_id());
+		return applyOfferAsync(applyOfferRequest, owners, Math.floorMod(applyOfferRequest.getUser_id(), owners.size()),
+				0);
+	}
+
+	private CompletableFuture<Integer> applyOfferAsync(ApplyOfferRequest applyOfferRequest, List<String> owners,
+			int first, int attempt) {
+		if (attempt == owners.size()) {
+			CompletableFuture<Integer> failed = new CompletableFuture<>();
+			failed.completeExceptionally(unavailable(applyOfferRequest.getRestaurant_id()));
+			return failed;
+		}
+		String owner = owners.get((first + attempt) % owners.size());
+		return clusterClient.exchangeAsync(owner, "POST", APPLY_OFFER, applyOfferRequest, ClusterClient.FORWARD)
+				.handle((response, failure) -> {
+					CompletableFuture<Integer> priced = new CompletableFuture<>();
+					if (failure == null && response.isSuccess()) {
+						try {
+							priced.complete(response.read(ApplyOfferResponse.class).getCart_value());
+						} catch (IOException e) {
+							priced.completeExceptionally(failedPricing(owner, e.toString()));
+						}
+						return priced;
+					}
+					if (failure == null ? response.status() != HttpStatus.SERVICE_UNAVAILABLE.value()
+							: !neverSent(failure)) {
+						priced.completeExceptionally(
+								failure == null ? refused(owner, response) : failedPricing(owner, failure.toString()));
+						return priced;
+					}
+					log.warn("event=cluster_failover member={} reason={}", owner,
+							failure == null ? response.message() : failure.toString());
+					return applyOfferAsync(applyOfferRequest, owners, first, attempt + 1);
+				})
+				.thenCompose(Function.identity());
+	}
+
+	/**
+	 * Prices a batch whose carts may belong to restaurants owned elsewhere:
+	 * carts this node owns are priced by {@code local}, the others are sent on
+	 * in one batch per member. Results are in request order.
+	 */
+	public ApplyOfferResponse[] applyOffers(List<ApplyOfferRequest> applyOfferRequests,
+			Function<List<ApplyOfferRequest>, ApplyOfferResponse[]> local) {
+		ApplyOfferResponse[] responses = new ApplyOfferResponse[applyOfferRequests.size()];
+		List<Integer> remote = split(applyOfferRequests, local, responses);
+		for (int attempt = 0; !remote.isEmpty(); attempt++) {
+			List<Integer> failed = new ArrayList<>();
+			for (Map.Entry<String, List<Integer>> batch : byOwner(applyOfferRequests, remote, attempt).entrySet()) {
+				if (batch.getKey() == null) {
+					throw unavailable(applyOfferRequests.get(batch.getValue().get(0)).getRestaurant_id());
+				}
+				ClusterClient.Response response;
+				try {
+					response = clusterClient.exchange(batch.getKey(), "POST", APPLY_OFFERS,
+							select(applyOfferRequests, batch.getValue()), ClusterClient.FORWARD);
+				} catch (IOException e) {
+					if (!neverSent(e)) {
+						throw failedPricing(batch.getKey(), e.toString());
+					}
+					log.warn("event=cluster_failover member={} reason={}", batch.getKey(), e.toString());
+					failed.addAll(batch.getValue());
+					continue;
+				}
+				if (!fill(responses, batch.getValue(), batch.getKey(), response)) {
+					log.warn("event=cluster_failover member={} reason={}", batch.getKey(), response.message());
+					failed.addAll(batch.getValue());
+				}
+			}
+			remote = failed;
+		}
+		return responses;
+	}
+
+	/** Non-blocking variant of {@link #applyOffers(List, Function)}. */
+	public CompletableFuture<ApplyOfferResponse[]> applyOffersAsync(List<ApplyOfferRequest> applyOfferRequests,
+			Function<List<ApplyOfferRequest>, CompletableFuture<ApplyOfferResponse[]>> local) {
+		ApplyOfferResponse[] responses = new ApplyOfferResponse[applyOfferRequests.size()];
+		List<Integer> owned = new ArrayList<>();
+		List<Integer> remote = new ArrayList<>();
+		for (int i = 0; i < applyOfferRequests.size(); i++) {
+			(membership.isOwner(applyOfferRequests.get(i).getRestaurant_id()) ? owned : remote).add(i);
+		}
+		CompletableFuture<Void> priced = owned.isEmpty() ? CompletableFuture.completedFuture(null)
+				: local.apply(select(applyOfferRequests, owned)).thenAccept(prices -> {
+					for (int i = 0; i < prices.length; i++) {
+						responses[owned.get(i)] = prices[i];
+					}
+				});
+		return CompletableFuture.allOf(priced, forwardAsync(applyOfferRequests, remote, 0, responses))
+				.thenApply(done -> responses);
+	}
+
+	private CompletableFuture<Void> forwardAsync(List<ApplyOfferRequest> applyOfferRequests, List<Integer> remote,
+			int attempt, ApplyOfferResponse[] responses) {
+		if (remote.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		List<CompletableFuture<Void>> batches = new ArrayList<>();
+		for (Map.Entry<String, List<Integer>> batch : byOwner(applyOfferRequests, remote, attempt).entrySet()) {
+			List<Integer> indexes = batch.getValue();
+			if (batch.getKey() == null) {
+				CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(unavailable(applyOfferRequests.get(indexes.get(0)).getRestaurant_id()));
+				batches.add(failed);
+				continue;
+			}
+			batches.add(clusterClient.exchangeAsync(batch.getKey(), "POST", APPLY_OFFERS,
+					select(applyOfferRequests, indexes), ClusterClient.FORWARD)
+					.handle((response, failure) -> {
+						CompletableFuture<Void> priced = new CompletableFuture<>();
+						if (failure == null) {
+							try {
+								if (fill(responses, indexes, batch.getKey(), response)) {
+									priced.complete(null);
+									return priced;
+								}
+							} catch (ResponseStatusException e) {
+								priced.completeExceptionally(e);
+								return priced;
+							}
+						} else if (!neverSent(failure)) {
+							priced.completeExceptionally(failedPricing(batch.getKey(), failure.toString()));
+							return priced;
+						}
+						log.warn("event=cluster_failover member={} reason={}", batch.getKey(),
+								failure == null ? response.message() : failure.toString());
+						return forwardAsync(applyOfferRequests, indexes, attempt + 1, responses);
+					})
+					.thenCompose(Function.identity()));
+		}
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]));
+	}
+
+	/** Prices the carts this node owns and returns the indexes of the others. */
+	private List<Integer> split(List<ApplyOfferRequest> applyOfferRequests,
+			Function<List<ApplyOfferRequest>, ApplyOfferResponse[]> local, ApplyOfferResponse[] responses) {
+		List<Integer> owned = new ArrayList<>();
+		List<Integer> remote = new ArrayList<>();
+		for (int i = 0; i < applyOfferRequests.size(); i++) {
+			(membership.isOwner(applyOfferRequests.get(i).getRestaurant_id()) ? owned : remote).add(i);
+		}
+		if (!owned.isEmpty()) {
+			ApplyOfferResponse[] prices = local.apply(select(applyOfferRequests, owned));
+			for (int i = 0; i < prices.length; i++) {
+				responses[owned.get(i)] = prices[i];
+			}
+		}
+		return remote;
+	}
+
+	/**
+	 * Groups carts by the owner to try on the given attempt, the user's owner
+	 * first and then the next ones; carts whose owners are all tried are
+	 * grouped under {@code null}.
+	 */
+	private Map<String, List<Integer>> byOwner(List<ApplyOfferRequest> applyOfferRequests, List<Integer> indexes,
+			int attempt) {
+		Map<String, List<Integer>> byOwner = new LinkedHashMap<>();
+		for (int index : indexes) {
+			ApplyOfferRequest applyOfferRequest = applyOfferRequests.get(index);
+			List<String> owners = membership.owners(applyOfferRequest.getRestaurant_id());
+			String owner = attempt >= owners.size() ? null
+					: owners.get((Math.floorMod(applyOfferRequest.getUser_id(), owners.size()) + attempt) % owners.size());
+			byOwner.computeIfAbsent(owner, key -> new ArrayList<>()).add(index);
+		}
+		return byOwner;
+	}
+
+	private static List<ApplyOfferRequest> select(List<ApplyOfferRequest> applyOfferRequests, List<Integer> indexes) {
+		List<ApplyOfferRequest> selected = new ArrayList<>(indexes.size());
+		for (int index : indexes) {
+			selected.add(applyOfferRequests.get(index));
+		}
+		return selected;
+	}
+
+	/**
+	 * Copies an owner's prices into the responses.
+	 *
+	 * @return {@code false} if the owner shed the batch without pricing it
+	 * @throws ResponseStatusException if it refused or failed to price it
+	 */
+	private static boolean fill(ApplyOfferResponse[] responses, List<Integer> indexes, String owner,
+			ClusterClient.Response response) {
+		if (!response.isSuccess()) {
+			if (response.status() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+				return false;
+			}
+			throw refused(owner, response);
+		}
+		ApplyOfferResponse[] prices;
+		try {
+			prices = response.read(ApplyOfferResponse[].class);
+		} catch (IOException e) {
+			throw failedPricing(owner, e.toString());
+		}
+		for (int i = 0; i < prices.length; i++) {
+			responses[indexes.get(i)] = prices[i];
+		}
+		return true;
+	}
+
+	/**
+	 * Whether a call failed before the request left this node, so the member
+	 * cannot have acted on it.
+	 */
+	private static boolean neverSent(Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+				: failure;
+		return cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+				|| cause instanceof NoRouteToHostException || cause instanceof UnknownHostException
+				|| cause instanceof TimeoutException; // the async client's connection pool
+	}
+
+	/** A refusal passed on as is; another 5xx as the 502 of an owner that may have priced the cart. */
+	private static ResponseStatusException refused(String owner, ClusterClient.Response response) {
+		if (response.status() < 500) {
+			return new ResponseStatusException(HttpStatus.valueOf(response.status()), response.message());
+		}
+		return failedPricing(owner, response.message());
+	}
+
+	private static ResponseStatusException failedPricing(String owner, String reason) {
+		return new ResponseStatusException(HttpStatus.BAD_GATEWAY,
+				"cluster member " + owner + " failed pricing the cart, not retried: " + reason);
+	}
+
+	private static ResponseStatusException unavailable(int restaurantId) {
+		return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+				"no owner of restaurant " + restaurantId + " reachable");
+	}
+
+}
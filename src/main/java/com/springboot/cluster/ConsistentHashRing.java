@@ -0,0 +1,141 @@
+package com.springboot.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Assigns restaurants to nodes. Every node is hashed onto a ring of 64 bit
+ * positions at {@code virtualNodes} points; a restaurant belongs to the nodes
+ * of the first points clockwise from its own hash, skipping points of nodes
+ * already taken. Adding a node only moves the restaurants that land on its
+ * new points, about one in {@code nodes} of them, and each of those moves away
+ * from the one node that held that arc before.
+ * <p>
+ * Instances are immutable; membership changes build a new ring.
+ */
+public final class ConsistentHashRing {
+
+	private final List<String> nodes;
+
+	private final int virtualNodes;
+
+	/** Point hashes in ascending order. */
+	private final long[] points;
+
+	/** The node of each point, as an index into {@link #nodes}. */
+	private final int[] owners;
+
+	public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+		if (virtualNodes <= 0) {
+			throw new IllegalArgumentException("virtualNodes must be positive but was " + virtualNodes);
+		}
+		this.nodes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes)));
+		this.virtualNodes = virtualNodes;
+		long[][] placed = new long[this.nodes.size() * virtualNodes][];
+		for (int node = 0; node < this.nodes.size(); node++) {
+			for (int point = 0; point < virtualNodes; point++) {
+				placed[node * virtualNodes + point] = new long[] { hash(this.nodes.get(node) + "#" + point), node };
+			}
+		}
+		// ties, vanishingly rare, go to the node that sorts first so every member builds the same ring
+		Arrays.sort(placed, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+		this.points = new long[placed.length];
+		this.owners = new int[placed.length];
+		for (int i = 0; i < placed.length; i++) {
+			points[i] = placed[i][0];
+			owners[i] = (int) placed[i][1];
+		}
+	}
+
+	/** The same ring with one more node. */
+	public ConsistentHashRing with(String node) {
+		List<String> grown = new ArrayList<>(nodes);
+		grown.add(node);
+		return new ConsistentHashRing(grown, virtualNodes);
+	}
+
+	/** Members in a stable order. */
+	public List<String> nodes() {
+		return nodes;
+	}
+
+	public boolean contains(String node) {
+		return nodes.contains(node);
+	}
+
+	/** The node taking the restaurant's writes, {@code null} on an empty ring. */
+	public String primary(int restaurantId) {
+		return points.length == 0 ? null : nodes.get(owners[start(position(restaurantId))]);
+	}
+
+	/**
+	 * The distinct nodes holding the restaurant's offers, primary first; fewer
+	 * than {@code replicas} if the ring has fewer nodes.
+	 */
+	public List<String> owners(int restaurantId, int replicas) {
+		return walk(position(restaurantId), replicas);
+	}
+
+	/** Like {@link #owners(int, int)}, for anything identified by a string. */
+	public List<String> owners(String key, int replicas) {
+		return walk(hash(key), replicas);
+	}
+
+	private List<String> walk(long position, int replicas) {
+		int wanted = Math.min(replicas, nodes.size());
+		List<String> found = new ArrayList<>(wanted);
+		if (wanted == 0) {
+			return found;
+		}
+		boolean[] taken = new boolean[nodes.size()];
+		int point = start(position);
+		for (int seen = 0; found.size() < wanted && seen < points.length; seen++) {
+			int owner = owners[point];
+			if (!taken[owner]) {
+				taken[owner] = true;
+				found.add(nodes.get(owner));
+			}
+			point = point + 1 == points.length ? 0 : point + 1;
+		}
+		return found;
+	}
+
+	/** Index of the first point at or after the position, wrapping around. */
+	private int start(long position) {
+		int index = Arrays.binarySearch(points, position);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return index == points.length ? 0 : index;
+	}
+
+	static long position(int restaurantId) {
+		return mix(restaurantId * 0x9E3779B97F4A7C15L);
+	}
+
+	/** FNV-1a over the UTF-8 bytes, mixed so that similar names land far apart. */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	/** The finaliser of MurmurHash3's 64 bit variant. */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93fe53e8653L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
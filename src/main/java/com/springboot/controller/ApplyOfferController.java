@@ -0,0 +1,65 @@
+package com.springboot.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.springboot.cluster.ClusterClient;
+import com.springboot.cluster.ClusterRouter;
+import com.springboot.logging.LogSampler;
+import com.springboot.property.LogSamplingProperties;
+import com.springboot.service.CartOfferService;
+
+/**
+ * Thread-per-request apply endpoints; the servlet thread waits for the
+ * segment lookup. Active unless {@code cart.apply.mode=async}.
+ */
+@RestController
+@ConditionalOnProperty(name = "cart.apply.mode", havingValue = "blocking", matchIfMissing = true)
+public class ApplyOfferController {
+
+	private static final Logger log = LoggerFactory.getLogger(ApplyOfferController.class);
+
+	@Autowired
+	private CartOfferService cartOfferService;
+
+	@Autowired
+	private ClusterRouter clusterRouter;
+
+	@Autowired
+	private LogSamplingProperties logSampling;
+
+	@PostMapping(path = "/api/v1/cart/apply_offer")
+	public Map<String, Object> applyOffer(@RequestBody ApplyOfferRequest applyOfferRequest,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) throws Exception {
+		if (log.isDebugEnabled() && LogSampler.oneIn(logSampling.getApplyOffer())) {
+			log.debug("event=apply_offer restaurant_id={} user_id={} cart_value={}", applyOfferRequest.getRestaurant_id(),
+					applyOfferRequest.getUser_id(), applyOfferRequest.getCart_value());
+		}
+		int cartVal = clusterRouter.forwardsApply(applyOfferRequest.getRestaurant_id(), hop)
+				? clusterRouter.applyOffer(applyOfferRequest)
+				: cartOfferService.applyOffer(applyOfferRequest);
+		Map<String, Object> response = new HashMap<>();
+		response.put("cart_value", cartVal);
+		return response;
+	}
+
+	@PostMapping(path = "/api/v1/cart/apply_offer/batch")
+	public ApplyOfferResponse[] applyOffers(@RequestBody List<ApplyOfferRequest> applyOfferRequests,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		if (clusterRouter.routesBatch(hop)) {
+			return clusterRouter.applyOffers(applyOfferRequests, cartOfferService::applyOffers);
+		}
+		return cartOfferService.applyOffers(applyOfferRequests);
+	}
+
+}
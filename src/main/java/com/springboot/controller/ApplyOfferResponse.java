@@ -2,9 +2,11 @@ package com.springboot.controller;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @AllArgsConstructor
+@NoArgsConstructor
 public class ApplyOfferResponse {
     private int cart_value;
 }
@@ -0,0 +1,70 @@
+package com.springboot.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.springboot.cluster.ClusterClient;
+import com.springboot.cluster.ClusterRouter;
+import com.springboot.logging.LogSampler;
+import com.springboot.property.LogSamplingProperties;
+import com.springboot.service.CartOfferService;
+
+/**
+ * Same endpoints as {@link ApplyOfferController}, served with servlet async
+ * processing: the request thread is released while the segment lookup is in
+ * flight on the non-blocking HTTP client. Active when
+ * {@code cart.apply.mode=async}.
+ */
+@RestController
+@ConditionalOnProperty(name = "cart.apply.mode", havingValue = "async")
+public class AsyncApplyOfferController {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncApplyOfferController.class);
+
+	@Autowired
+	private CartOfferService cartOfferService;
+
+	@Autowired
+	private ClusterRouter clusterRouter;
+
+	@Autowired
+	private LogSamplingProperties logSampling;
+
+	@PostMapping(path = "/api/v1/cart/apply_offer")
+	public CompletableFuture<Map<String, Object>> applyOffer(@RequestBody ApplyOfferRequest applyOfferRequest,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		if (log.isDebugEnabled() && LogSampler.oneIn(logSampling.getApplyOffer())) {
+			log.debug("event=apply_offer restaurant_id={} user_id={} cart_value={}", applyOfferRequest.getRestaurant_id(),
+					applyOfferRequest.getUser_id(), applyOfferRequest.getCart_value());
+		}
+		CompletableFuture<Integer> priced = clusterRouter.forwardsApply(applyOfferRequest.getRestaurant_id(), hop)
+				? clusterRouter.applyOfferAsync(applyOfferRequest)
+				: cartOfferService.applyOfferAsync(applyOfferRequest);
+		return priced.thenApply(cartVal -> {
+			Map<String, Object> response = new HashMap<>();
+			response.put("cart_value", cartVal);
+			return response;
+		});
+	}
+
+	@PostMapping(path = "/api/v1/cart/apply_offer/batch")
+	public CompletableFuture<ApplyOfferResponse[]> applyOffers(@RequestBody List<ApplyOfferRequest> applyOfferRequests,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		if (clusterRouter.routesBatch(hop)) {
+			return clusterRouter.applyOffersAsync(applyOfferRequests, cartOfferService::applyOffersAsync);
+		}
+		return cartOfferService.applyOffersAsync(applyOfferRequests);
+	}
+
+}
@@ -1,79 +1,226 @@
 package com.springboot.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.cluster.ClusterClient;
+import com.springboot.cluster.ClusterRouter;
+import com.springboot.logging.LogSampler;
+import com.springboot.property.LogSamplingProperties;
+import com.springboot.repository.OfferRepository;
+import com.springboot.repository.OfferVersionConflictException;
+import com.springboot.rule.InvalidOfferException;
 import com.springboot.service.Dog;
+import com.springboot.service.OfferBudgets;
+import com.springboot.service.OfferMatchCache;
+import com.springboot.service.OfferImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import com.springboot.service.Animal;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 
 @RestController
 public class AutowiredController {
 
+	private static final Logger log = LoggerFactory.getLogger(AutowiredController.class);
 
-	List<OfferRequest> allOffers = new ArrayList<>();
+	@Autowired
+	private OfferRepository offerRepository;
+
+	@Autowired
+	private OfferImportService offerImportService;
+
+	@Autowired
+	private OfferMatchCache offerMatchCache;
+
+	@Autowired
+	private OfferBudgets offerBudgets;
+
+	@Autowired
+	private ClusterRouter clusterRouter;
+
+	@Autowired
+	private LogSamplingProperties logSampling;
 
 	@PostMapping(path = "/api/v1/offer")
-	public ApiResponse postOperation(@RequestBody OfferRequest offerRequest) {
-		System.out.println(offerRequest);
-		allOffers.add(offerRequest);
+	public ApiResponse postOperation(@RequestBody OfferRequest offerRequest,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		if (log.isDebugEnabled() && LogSampler.oneIn(logSampling.getOffer())) {
+			log.debug("event=offer_created restaurant_id={} offer_type={} offer_value={} segments={}",
+					offerRequest.getRestaurant_id(), offerRequest.getOffer_type(), offerRequest.getOffer_value(),
+					offerRequest.getCustomer_segment());
+		}
+		if (offerRequest.getOffer_id() != null) {
+			rejectMove(offerRequest.getOffer_id(), offerRequest.getRestaurant_id(), hop);
+		}
+		if (clusterRouter.forwardsWrite(offerRequest.getRestaurant_id(), hop)) {
+			return clusterRouter.forwardWrite(offerRequest.getRestaurant_id(), "POST", "/api/v1/offer", offerRequest,
+					ApiResponse.class);
+		}
+		OfferRequest previous = offerRequest.getOffer_id() == null ? null : offerRepository.find(offerRequest.getOffer_id());
+		try {
+			offerRepository.save(offerRequest);
+		} catch (InvalidOfferException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid offer: " + e.getMessage(), e);
+		} catch (OfferVersionConflictException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+		} finally {
+			invalidate(offerRequest, previous);
+		}
+		replicate(offerRequest, hop);
 		return new ApiResponse("success");
 	}
 
-	@PostMapping(path = "/api/v1/cart/apply_offer")
-	public Map<String, Object> applyOffer(@RequestBody ApplyOfferRequest applyOfferRequest) throws Exception {
-		System.out.println(applyOfferRequest);
-		int cartVal = Math.max(0, applyOfferRequest.getCart_value()); // Ensure non-negative cart value
-		SegmentResponse segmentResponse = getSegmentResponse(applyOfferRequest.getUser_id());
-		Optional<OfferRequest> matchRequest = allOffers.stream()
-				.filter(x -> x.getRestaurant_id() == applyOfferRequest.getRestaurant_id())
-				.filter(x -> x.getCustomer_segment().contains(segmentResponse.getSegment()))
-				.findFirst();
-
-		if (matchRequest.isPresent()) {
-			System.out.println("got a match");
-			OfferRequest gotOffer = matchRequest.get();
-
-			if (gotOffer.getOffer_type().equals("FLATX")) {
-				cartVal = Math.max(0, cartVal - gotOffer.getOffer_value());
-			} else {
-				cartVal = (int) Math.max(0, cartVal - cartVal * gotOffer.getOffer_value() * (0.01));
+	/**
+	 * Saves the offer under the id, replacing the offer saved under it. With
+	 * {@code version} in the body the write only succeeds if that is the
+	 * version stored, {@code 0} meaning none. In a cluster the offer cannot
+	 * move to another restaurant this way, see {@link #rejectMove}.
+	 */
+	@PutMapping(path = "/api/v1/offer/{offer_id}")
+	public OfferVersionResponse putOffer(@PathVariable("offer_id") String offerId,
+			@RequestBody OfferRequest offerRequest,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		offerRequest.setOffer_id(offerId);
+		rejectMove(offerId, offerRequest.getRestaurant_id(), hop);
+		if (clusterRouter.forwardsWrite(offerRequest.getRestaurant_id(), hop)) {
+			return clusterRouter.forwardWrite(offerRequest.getRestaurant_id(), "PUT", "/api/v1/offer/" + offerId,
+					offerRequest, OfferVersionResponse.class);
+		}
+		OfferRequest previous = offerRepository.find(offerId);
+		long version;
+		try {
+			version = offerRepository.put(offerRequest);
+		} catch (InvalidOfferException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid offer: " + e.getMessage(), e);
+		} catch (OfferVersionConflictException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+		} finally {
+			invalidate(offerRequest, previous);
+		}
+		replicate(offerRequest, hop);
+		return new OfferVersionResponse("success", offerId, version);
+	}
+
+	/**
+	 * Refuses with 409 a write that would move a clustered offer to another
+	 * restaurant. The write would reach the new restaurant's primary only and
+	 * leave the offer matching at the old restaurant's owners; moving takes a
+	 * DELETE and then a write instead.
+	 */
+	private void rejectMove(String offerId, int restaurantId, String hop) {
+		if (!clusterRouter.searches(hop)) {
+			return;
+		}
+		OfferRequest held = offerRepository.find(offerId);
+		if (held == null) {
+			held = clusterRouter.find(offerId);
+		}
+		if (held != null && held.getRestaurant_id() != restaurantId) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "offer " + offerId + " belongs to restaurant "
+					+ held.getRestaurant_id() + "; delete it before saving it for restaurant " + restaurantId);
+		}
+	}
+
+	/** Copies the offer as stored here to the restaurant's other owners, unless this is such a copy. */
+	private void replicate(OfferRequest offerRequest, String hop) {
+		if (!clusterRouter.replicates(hop)) {
+			return;
+		}
+		OfferRequest stored = offerRequest.getOffer_id() == null ? offerRequest
+				: offerRepository.find(offerRequest.getOffer_id());
+		if (stored != null) {
+			clusterRouter.replicate(stored);
+		}
+	}
+
+	/** Drops cached matches of the offer's restaurant and of the one it replaced, if that was another. */
+	private void invalidate(OfferRequest offerRequest, OfferRequest previous) {
+		offerMatchCache.invalidate(offerRequest.getRestaurant_id());
+		if (previous != null && previous.getRestaurant_id() != offerRequest.getRestaurant_id()) {
+			offerMatchCache.invalidate(previous.getRestaurant_id());
+		}
+	}
+
+	@GetMapping(path = "/api/v1/offer/{offer_id}")
+	public OfferRequest getOffer(@PathVariable("offer_id") String offerId,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		OfferRequest offer = offerRepository.find(offerId);
+		if (offer == null && clusterRouter.searches(hop)) {
+			offer = clusterRouter.find(offerId);
+		}
+		if (offer == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no offer " + offerId);
+		}
+		return offer;
+	}
+
+	@GetMapping(path = "/api/v1/offer/{offer_id}/budget")
+	public OfferBudgetResponse getOfferBudget(@PathVariable("offer_id") String offerId) {
+		OfferBudgetResponse status = offerBudgets.status(offerId);
+		if (status == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no offer " + offerId);
+		}
+		return status;
+	}
+
+	/** Removes the offer saved under the id; with {@code version}, only if that is the version stored. */
+	@DeleteMapping(path = "/api/v1/offer/{offer_id}")
+	public ApiResponse deleteOffer(@PathVariable("offer_id") String offerId,
+			@RequestParam(required = false) Long version,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		OfferRequest held = offerRepository.find(offerId);
+		if (held == null ? clusterRouter.searches(hop) : clusterRouter.forwardsWrite(held.getRestaurant_id(), hop)) {
+			if (held != null) {
+				return clusterRouter.forwardWrite(held.getRestaurant_id(), "DELETE",
+						"/api/v1/offer/" + offerId + (version == null ? "" : "?version=" + version), null,
+						ApiResponse.class);
+			}
+			if (clusterRouter.forwardDelete(offerId, version) == null) {
+				throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no offer " + offerId);
 			}
+			return new ApiResponse("success");
+		}
+		OfferRequest removed;
+		try {
+			removed = offerRepository.delete(offerId, version);
+		} catch (OfferVersionConflictException e) {
+			throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+		}
+		if (removed == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no offer " + offerId);
 		}
-		Map<String, Object> response = new HashMap<>();
-		response.put("cart_value", cartVal);
-		return response;
+		offerMatchCache.invalidate(removed.getRestaurant_id());
+		if (clusterRouter.replicates(hop)) {
+			clusterRouter.replicateDelete(offerId, removed.getRestaurant_id());
+		}
+		return new ApiResponse("success");
 	}
 
-	private SegmentResponse getSegmentResponse(int userid) {
-		SegmentResponse segmentResponse = new SegmentResponse();
+	@GetMapping(path = "/api/v1/offer/cache_stats")
+	public OfferCacheStats cacheStats() {
+		return offerMatchCache.stats();
+	}
+
+	/**
+	 * Loads offers from a JSON array or NDJSON body. By default the body
+	 * replaces the whole catalogue; with {@code replace=false} it is appended.
+	 */
+	@PostMapping(path = "/api/v1/offer/import", consumes = { MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson" })
+	public OfferImportResponse importOffers(HttpServletRequest request,
+			@RequestParam(defaultValue = "true") boolean replace) {
 		try {
-			String urlString = "http://localhost:1080/api/v1/user_segment?" + "user_id=" + userid;
-			URL url = new URL(urlString);
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-			connection.setRequestMethod("GET");
-			connection.setRequestProperty("accept", "application/json");
-
-			InputStream responseStream = connection.getInputStream();
-			ObjectMapper mapper = new ObjectMapper();
-			segmentResponse = mapper.readValue(responseStream, SegmentResponse.class);
-			System.out.println("got segment response" + segmentResponse);
-
-		} catch (Exception e) {
-			System.out.println(e);
-			segmentResponse.setSegment("unknown");
-		}
-		return segmentResponse;
+			return replace ? offerImportService.replaceCatalogue(request.getInputStream())
+					: offerImportService.appendOffers(request.getInputStream());
+		} catch (IOException | InvalidOfferException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid offer import body: " + e.getMessage(), e);
+		}
 	}
 
 
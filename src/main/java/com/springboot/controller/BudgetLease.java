@@ -0,0 +1,18 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BudgetLease {
+    private String key;
+    // asked for on requests, granted on responses
+    private long units;
+    // the limit the asking node knows of, set on the counter if it has none yet
+    private long limit;
+    // on responses, units leased out of the counter so far
+    private long leased;
+}
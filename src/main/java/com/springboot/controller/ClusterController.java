@@ -0,0 +1,120 @@
+package com.springboot.controller;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.springboot.budget.LocalBudgetLedger;
+import com.springboot.cluster.ClusterClient;
+import com.springboot.cluster.ClusterMembership;
+import com.springboot.repository.OfferRepository;
+import com.springboot.rule.InvalidOfferException;
+import com.springboot.service.OfferMatchCache;
+
+/**
+ * Endpoints the members of a cluster call on each other. Active when
+ * {@code cluster.enabled=true}.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "cluster", name = "enabled", havingValue = "true")
+public class ClusterController {
+
+	@Autowired
+	private ClusterMembership membership;
+
+	@Autowired
+	private OfferRepository offerRepository;
+
+	@Autowired
+	private OfferMatchCache offerMatchCache;
+
+	@Autowired
+	private LocalBudgetLedger budgetLedger;
+
+	@GetMapping(path = "/api/v1/cluster/members")
+	public ClusterMembers members() {
+		return new ClusterMembers(membership.members());
+	}
+
+	/**
+	 * From a node joining the cluster, with its own URL: starts admitting it
+	 * and answers with the members serving until then. From another member,
+	 * with every member once the offers are pushed: switches to them.
+	 */
+	@PostMapping(path = "/api/v1/cluster/members")
+	public ClusterMembers join(@RequestBody ClusterMembers members,
+			@RequestHeader(value = ClusterClient.HOP_HEADER, required = false) String hop) {
+		if (hop != null) {
+			membership.adopt(members.getMembers());
+			return new ClusterMembers(membership.members());
+		}
+		if (members.getMembers() == null || members.getMembers().size() != 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "a joining node sends its own URL only");
+		}
+		return new ClusterMembers(membership.join(members.getMembers().get(0)));
+	}
+
+	/**
+	 * From the member admitting a node, with every member the node included:
+	 * pushes the offers the node will own. Answers 503 if a push failed.
+	 */
+	@PostMapping(path = "/api/v1/cluster/rebalance")
+	public ApiResponse rebalance(@RequestBody ClusterMembers members) {
+		if (!membership.prepare(members.getMembers())) {
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "offers not pushed to every new owner");
+		}
+		return new ApiResponse("success");
+	}
+
+	@DeleteMapping(path = "/api/v1/cluster/rebalance")
+	public ApiResponse abandonRebalance() {
+		membership.abandon();
+		return new ApiResponse("success");
+	}
+
+	/**
+	 * Offers as stored by another member, saved as for a catalogue load: with
+	 * their version, skipping those stored here in that version or a newer one.
+	 */
+	@PostMapping(path = "/api/v1/cluster/offers")
+	public ApiResponse saveOffers(@RequestBody List<OfferRequest> offerRequests) {
+		try {
+			offerRepository.saveAll(offerRequests);
+		} catch (InvalidOfferException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid offer: " + e.getMessage(), e);
+		}
+		Set<Integer> restaurants = new LinkedHashSet<>();
+		for (OfferRequest offerRequest : offerRequests) {
+			restaurants.add(offerRequest.getRestaurant_id());
+		}
+		restaurants.forEach(offerMatchCache::invalidate);
+		return new ApiResponse("success");
+	}
+
+	@PostMapping(path = "/api/v1/cluster/ledger/limit")
+	public BudgetLease limit(@RequestBody BudgetLease request) {
+		budgetLedger.limit(request.getKey(), request.getLimit());
+		return new BudgetLease(request.getKey(), 0, request.getLimit(), budgetLedger.leased(request.getKey()));
+	}
+
+	@PostMapping(path = "/api/v1/cluster/ledger/lease")
+	public BudgetLease lease(@RequestBody BudgetLease request) {
+		if (request.getLimit() > 0) {
+			budgetLedger.limitIfAbsent(request.getKey(), request.getLimit());
+		}
+		long granted = request.getUnits() > 0 ? budgetLedger.lease(request.getKey(), request.getUnits()) : 0;
+		return new BudgetLease(request.getKey(), granted, request.getLimit(), budgetLedger.leased(request.getKey()));
+	}
+
+}
@@ -0,0 +1,15 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClusterMembers {
+    // base URLs, e.g. http://10.0.0.5:8081
+    private List<String> members;
+}
@@ -3,14 +3,17 @@ package com.springboot.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.springboot.FastStartupApplication;
 import com.springboot.property.Property;
 import com.springboot.property.ComplexProperty;
 
 @RestController
+@Profile("!" + FastStartupApplication.PROFILE)
 @RequestMapping("/confProperty")
 public class ConfigurationPropertyController {
 
@@ -0,0 +1,19 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OfferBudgetResponse {
+    private String offer_id;
+    private Long max_redemptions;
+    private Long budget;
+    // counted on this node since startup
+    private long redemptions;
+    private long spent;
+    // a limit is spent and the offer no longer matches until a new version raises it
+    private boolean exhausted;
+}
@@ -0,0 +1,17 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OfferCacheStats {
+    private long hits;
+    private long misses;
+    private double hit_ratio;
+    private long invalidations;
+    private long evictions;
+    private int size;
+}
@@ -0,0 +1,15 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OfferImportResponse {
+    private String response_msg;
+    private int imported;
+    private long elapsed_ms;
+    private long offers_per_second;
+}
@@ -14,4 +14,37 @@ public class OfferRequest {
     private int offer_value;
 
     private List<String> customer_segment;
+
+    // optional, see DiscountRuleCompiler
+    private Integer max_discount;
+    private Integer min_cart_value;
+    private List<OfferTier> tiers;
+
+    // optional; an offer saved with an id replaces the offer saved under that id before
+    private String offer_id;
+    // optional, epoch milliseconds; the offer only applies from valid_from and until before valid_until
+    private Long valid_from;
+    private Long valid_until;
+    // on writes the version the writer expects to replace, 0 for none; on reads the stored version
+    private Long version;
+
+    // optional, need an offer_id; the offer stops matching once it has been redeemed max_redemptions times
+    // or has taken budget off carts in total
+    private Long max_redemptions;
+    private Long budget;
+
+    public OfferRequest(int restaurant_id, String offer_type, int offer_value, List<String> customer_segment) {
+        this.restaurant_id = restaurant_id;
+        this.offer_type = offer_type;
+        this.offer_value = offer_value;
+        this.customer_segment = customer_segment;
+    }
+
+    public OfferRequest(int restaurant_id, String offer_type, int offer_value, List<String> customer_segment,
+            Integer max_discount, Integer min_cart_value, List<OfferTier> tiers) {
+        this(restaurant_id, offer_type, offer_value, customer_segment);
+        this.max_discount = max_discount;
+        this.min_cart_value = min_cart_value;
+        this.tiers = tiers;
+    }
 }
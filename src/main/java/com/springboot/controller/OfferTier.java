@@ -0,0 +1,16 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OfferTier {
+    private int min_cart_value;
+    private String offer_type;
+    private int offer_value;
+
+    private Integer max_discount;
+}
@@ -0,0 +1,14 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OfferVersionResponse {
+    private String response_msg;
+    private String offer_id;
+    private long version;
+}
@@ -0,0 +1,22 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SegmentCacheStats {
+    private long hits;
+    private long negative_hits;
+    private long misses;
+    private long coalesced;
+    private long load_failures;
+    private long evictions;
+    private int size;
+    private long feed_events;
+    private long feed_events_ignored;
+    private long resyncs;
+    private boolean feed_live;
+}
@@ -0,0 +1,62 @@
+package com.springboot.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.springboot.service.CachingSegmentClient;
+import com.springboot.service.SegmentFeedService;
+
+@RestController
+public class SegmentController {
+
+	@Autowired
+	private CachingSegmentClient segmentClient;
+
+	@Autowired
+	private SegmentFeedService segmentFeedService;
+
+	@GetMapping(path = "/api/v1/segment/cache_stats")
+	public SegmentCacheStats cacheStats() {
+		return segmentClient.stats();
+	}
+
+	/**
+	 * Segment changes from the segment service, as a JSON array or NDJSON body
+	 * of events. An empty body or array is a heartbeat.
+	 */
+	@PostMapping(path = "/api/v1/segment/events", consumes = { MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson" })
+	public SegmentFeedResponse events(HttpServletRequest request) {
+		requireFeed();
+		try {
+			return segmentFeedService.accept(request.getInputStream());
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid segment events: " + e.getMessage(), e);
+		}
+	}
+
+	/** Every user's segment, replacing all cached segments. */
+	@PostMapping(path = "/api/v1/segment/resync", consumes = { MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson" })
+	public SegmentFeedResponse resync(HttpServletRequest request) {
+		requireFeed();
+		try {
+			return segmentFeedService.resync(request.getInputStream());
+		} catch (IOException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid segment snapshot: " + e.getMessage(), e);
+		}
+	}
+
+	private void requireFeed() {
+		if (!segmentFeedService.isEnabled()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "the segment feed is disabled");
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SegmentEvent {
+    private Integer user_id;
+    private String segment;
+
+    // optional further segments of the same user, as in SegmentResponse
+    private List<String> segments;
+
+    // increasing per user; an event older than the one held is ignored, 0 always applies
+    private long version;
+}
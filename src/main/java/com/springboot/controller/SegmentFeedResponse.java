@@ -0,0 +1,14 @@
+package com.springboot.controller;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SegmentFeedResponse {
+    private String status;
+    private int applied;
+    private int ignored;
+}
@@ -2,7 +2,12 @@ package com.springboot.controller;
 
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class SegmentResponse {
     private String segment;
+
+    // optional further segments of the same user, matched alongside segment
+    private List<String> segments;
 }
@@ -0,0 +1,33 @@
+package com.springboot.health;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+import com.springboot.service.WarmupService;
+
+/**
+ * Keeps {@code /actuator/health} out of service, which answers 503, until
+ * warm-up is done, so a load balancer only routes to warm instances.
+ */
+@Component
+public class WarmupHealthIndicator extends AbstractHealthIndicator {
+
+	@Autowired
+	private WarmupService warmupService;
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) {
+		WarmupService.State state = warmupService.getState();
+		if (state == WarmupService.State.READY) {
+			builder.up()
+					.withDetail("elapsed_ms", warmupService.getElapsedMs())
+					.withDetail("prefetched_users", warmupService.getPrefetchedUsers());
+		} else {
+			builder.outOfService();
+		}
+		builder.withDetail("state", state);
+	}
+
+}
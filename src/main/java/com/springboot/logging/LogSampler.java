@@ -0,0 +1,42 @@
+package com.springboot.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a hot-path log statement should be written. Call it only
+ * after the logger's level guard, so disabled statements cost neither the
+ * sampling decision nor argument boxing.
+ */
+public final class LogSampler {
+
+	private final long intervalNanos;
+
+	private final AtomicLong nextNanos;
+
+	private LogSampler(long intervalNanos) {
+		this.intervalNanos = intervalNanos;
+		this.nextNanos = new AtomicLong(System.nanoTime());
+	}
+
+	/** Lets at most one event through per interval, e.g. for error storms. */
+	public static LogSampler atMostEvery(long interval, TimeUnit unit) {
+		return new LogSampler(unit.toNanos(interval));
+	}
+
+	public boolean sample() {
+		long next = nextNanos.get();
+		long now = System.nanoTime();
+		return now - next >= 0 && nextNanos.compareAndSet(next, now + intervalNanos);
+	}
+
+	/**
+	 * Returns true for roughly one call in {@code rate}. A rate of 1 logs every
+	 * event, 0 or less logs none.
+	 */
+	public static boolean oneIn(int rate) {
+		return rate == 1 || (rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0);
+	}
+
+}
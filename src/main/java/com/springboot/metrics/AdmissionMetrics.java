@@ -0,0 +1,45 @@
+package com.springboot.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springboot.admission.AdmissionControlFilter;
+import com.springboot.admission.AimdLimiter;
+import com.springboot.admission.Lane;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Concurrency limit, requests in flight and rejections per admission lane.
+ */
+@Component
+public class AdmissionMetrics implements MeterBinder {
+
+	@Autowired
+	private AdmissionControlFilter admissionControlFilter;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (Lane lane : Lane.values()) {
+			AimdLimiter limiter = admissionControlFilter.limiter(lane);
+			Gauge.builder("admission.limit", limiter, AimdLimiter::getLimit)
+					.tag("lane", lane.tag())
+					.register(registry);
+			Gauge.builder("admission.in.flight", limiter, AimdLimiter::getInFlight)
+					.tag("lane", lane.tag())
+					.register(registry);
+			FunctionCounter.builder("admission.rejected", limiter, AimdLimiter::getRejectedAtLimit)
+					.tag("lane", lane.tag())
+					.tag("status", "429")
+					.register(registry);
+			FunctionCounter.builder("admission.rejected", limiter, AimdLimiter::getRejectedOverloaded)
+					.tag("lane", lane.tag())
+					.tag("status", "503")
+					.register(registry);
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.springboot.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springboot.property.OfferMetricsProperties;
+import com.springboot.repository.OfferRepository;
+import com.springboot.service.OfferBudgets;
+import com.springboot.service.OfferMatchCache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Catalogue gauges, evaluated on scrape: total offers, restaurants with offers,
+ * the largest restaurant, and per-restaurant counts for the restaurants listed
+ * in {@code offer-metrics.restaurants}. Also the match cache's hit and miss
+ * counts and its hit ratio since startup, and how redemption limits are being
+ * spent.
+ */
+@Component
+public class OfferCatalogueMetrics implements MeterBinder {
+
+	@Autowired
+	private OfferRepository offerRepository;
+
+	@Autowired
+	private OfferMetricsProperties offerMetricsProperties;
+
+	@Autowired
+	private OfferMatchCache offerMatchCache;
+
+	@Autowired
+	private OfferBudgets offerBudgets;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("offers.catalogue.size", offerRepository, OfferRepository::size)
+				.description("offers in the catalogue")
+				.register(registry);
+		Gauge.builder("offers.catalogue.restaurants", offerRepository, OfferRepository::restaurantCount)
+				.description("restaurants with at least one offer")
+				.register(registry);
+		Gauge.builder("offers.per.restaurant.max", offerRepository, OfferRepository::maxOffersPerRestaurant)
+				.description("offers held by the restaurant with the most offers")
+				.register(registry);
+		FunctionCounter.builder("offer.match.cache.requests", offerMatchCache, cache -> cache.stats().getHits())
+				.tag("result", "hit")
+				.register(registry);
+		FunctionCounter.builder("offer.match.cache.requests", offerMatchCache, cache -> cache.stats().getMisses())
+				.tag("result", "miss")
+				.register(registry);
+		FunctionCounter.builder("offer.match.cache.evictions", offerMatchCache, cache -> cache.stats().getEvictions())
+				.register(registry);
+		Gauge.builder("offer.match.cache.hit.ratio", offerMatchCache, cache -> cache.stats().getHit_ratio())
+				.register(registry);
+		Gauge.builder("offer.match.cache.size", offerMatchCache, cache -> cache.stats().getSize())
+				.register(registry);
+		FunctionCounter.builder("offer.budget.redemptions", offerBudgets, OfferBudgets::redemptions)
+				.description("redemptions of offers with a redemption limit or budget")
+				.register(registry);
+		FunctionCounter.builder("offer.budget.rejections", offerBudgets, OfferBudgets::rejections)
+				.description("redemptions refused because the offer's limit was spent")
+				.register(registry);
+		FunctionCounter.builder("offer.budget.withdrawals", offerBudgets, OfferBudgets::withdrawals)
+				.description("offers withdrawn from matching with a limit spent")
+				.register(registry);
+		FunctionCounter.builder("offer.budget.leases", offerBudgets, OfferBudgets::leases)
+				.description("allowances leased from the shared budget counters")
+				.register(registry);
+		for (Integer restaurantId : offerMetricsProperties.getRestaurants()) {
+			Gauge.builder("offers.per.restaurant", offerRepository, repository -> repository.countForRestaurant(restaurantId))
+					.tag("restaurant_id", String.valueOf(restaurantId))
+					.register(registry);
+		}
+	}
+
+}
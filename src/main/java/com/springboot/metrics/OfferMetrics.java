@@ -0,0 +1,120 @@
+package com.springboot.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Apply-path meters: end-to-end apply latency (segment lookup included) and
+ * match / no-match counts by offer type. Apply calls from startup until one
+ * minute after warm-up finished are also recorded on their own timer, whose
+ * p99 is logged once that minute is over.
+ */
+@Component
+public class OfferMetrics {
+
+	private static final Logger log = LoggerFactory.getLogger(OfferMetrics.class);
+
+	private static final long FIRST_MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final MeterRegistry meterRegistry;
+
+	private final Timer applyTimer;
+
+	private final Timer applyBatchTimer;
+
+	private final Counter noMatch;
+
+	private final Timer firstMinuteTimer;
+
+	private volatile long readyAtNanos;
+
+	private volatile boolean ready;
+
+	private final AtomicBoolean firstMinuteOver = new AtomicBoolean();
+
+	private final ConcurrentMap<String, Counter> matchesByOfferType = new ConcurrentHashMap<>();
+
+	@Autowired
+	public OfferMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		this.applyTimer = Timer.builder("cart.apply.offer")
+				.description("apply_offer latency including the segment lookup")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.applyBatchTimer = Timer.builder("cart.apply.offer.batch")
+				.description("batch apply_offer latency")
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+		this.firstMinuteTimer = Timer.builder("cart.apply.offer.first.minute")
+				.description("apply_offer latency until one minute after warm-up")
+				.publishPercentiles(0.5, 0.99)
+				.register(meterRegistry);
+		this.noMatch = Counter.builder("cart.offer.match")
+				.tag("result", "no_match")
+				.tag("offer_type", "none")
+				.register(meterRegistry);
+	}
+
+	public void recordApply(long startNanos) {
+		long now = System.nanoTime();
+		applyTimer.record(now - startNanos, TimeUnit.NANOSECONDS);
+		if (!firstMinuteOver.get()) {
+			if (ready && now - readyAtNanos > FIRST_MINUTE_NANOS) {
+				endFirstMinute();
+			} else {
+				firstMinuteTimer.record(now - startNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	/** Starts the first minute of traffic; called when warm-up is done. */
+	public void markReady() {
+		readyAtNanos = System.nanoTime();
+		ready = true;
+	}
+
+	private void endFirstMinute() {
+		if (firstMinuteOver.compareAndSet(false, true)) {
+			double p99Ms = 0;
+			for (ValueAtPercentile percentile : firstMinuteTimer.takeSnapshot().percentileValues()) {
+				if (percentile.percentile() == 0.99) {
+					p99Ms = percentile.value(TimeUnit.MILLISECONDS);
+				}
+			}
+			log.info("event=first_minute_done apply_count={} p99_ms={}", firstMinuteTimer.count(), p99Ms);
+		}
+	}
+
+	public void recordApplyBatch(long startNanos) {
+		applyBatchTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void recordMatch(String offerType) {
+		Counter counter = matchesByOfferType.get(offerType);
+		if (counter == null) {
+			counter = matchesByOfferType.computeIfAbsent(offerType, type -> Counter.builder("cart.offer.match")
+					.tag("result", "match")
+					.tag("offer_type", type)
+					.register(meterRegistry));
+		}
+		counter.increment();
+	}
+
+	public void recordNoMatch() {
+		noMatch.increment();
+	}
+
+}
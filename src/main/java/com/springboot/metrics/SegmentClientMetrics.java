@@ -0,0 +1,61 @@
+package com.springboot.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springboot.service.CachingSegmentClient;
+import com.springboot.service.HttpSegmentClient;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Segment cache counters and connection pool / circuit breaker state. Lookup
+ * latency and fallbacks are recorded where they happen.
+ */
+@Component
+public class SegmentClientMetrics implements MeterBinder {
+
+	@Autowired
+	private CachingSegmentClient cachingSegmentClient;
+
+	@Autowired
+	private HttpSegmentClient httpSegmentClient;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("segment.cache.requests", cachingSegmentClient, client -> client.stats().getHits())
+				.tag("result", "hit")
+				.register(registry);
+		FunctionCounter.builder("segment.cache.requests", cachingSegmentClient, client -> client.stats().getNegative_hits())
+				.tag("result", "negative_hit")
+				.register(registry);
+		FunctionCounter.builder("segment.cache.requests", cachingSegmentClient, client -> client.stats().getMisses())
+				.tag("result", "miss")
+				.register(registry);
+		FunctionCounter.builder("segment.cache.coalesced", cachingSegmentClient, client -> client.stats().getCoalesced())
+				.register(registry);
+		FunctionCounter.builder("segment.cache.evictions", cachingSegmentClient, client -> client.stats().getEvictions())
+				.register(registry);
+		Gauge.builder("segment.cache.size", cachingSegmentClient, client -> client.stats().getSize())
+				.register(registry);
+		FunctionCounter.builder("segment.feed.events", cachingSegmentClient, client -> client.stats().getFeed_events())
+				.tag("result", "applied")
+				.register(registry);
+		FunctionCounter.builder("segment.feed.events", cachingSegmentClient,
+				client -> client.stats().getFeed_events_ignored())
+				.tag("result", "ignored")
+				.register(registry);
+		FunctionCounter.builder("segment.feed.resyncs", cachingSegmentClient, client -> client.stats().getResyncs())
+				.register(registry);
+		Gauge.builder("segment.feed.live", cachingSegmentClient, client -> client.stats().isFeed_live() ? 1 : 0)
+				.register(registry);
+		Gauge.builder("segment.client.circuit.open", httpSegmentClient, client -> client.isCircuitOpen() ? 1 : 0)
+				.register(registry);
+		Gauge.builder("segment.client.connections.leased", httpSegmentClient, HttpSegmentClient::leasedConnections)
+				.register(registry);
+	}
+
+}
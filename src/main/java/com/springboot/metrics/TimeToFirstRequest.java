@@ -0,0 +1,102 @@
+package com.springboot.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.springboot.property.StartupProperties;
+import com.springboot.service.WarmupService;
+
+/**
+ * Logs the time from JVM start until the first request has been answered.
+ * With {@code startup.probe} the application sends that request to itself as
+ * soon as it is started, which is how the {@code fast-startup} build profile
+ * measures it.
+ */
+@Component
+public class TimeToFirstRequest extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(TimeToFirstRequest.class);
+
+	private static final String PROBE_PATH = "/api/v1/offer/cache_stats";
+
+	private static final long EXIT_WAIT_MS = TimeUnit.MINUTES.toMillis(1);
+
+	@Autowired
+	private StartupProperties startupProperties;
+
+	@Autowired
+	private WarmupService warmupService;
+
+	private final AtomicBoolean answered = new AtomicBoolean();
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		chain.doFilter(request, response);
+		if (!answered.get() && answered.compareAndSet(false, true)) {
+			long elapsedMs = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+			log.info("event=first_request path={} status={} time_to_first_request_ms={}", request.getRequestURI(),
+					response.getStatus(), elapsedMs);
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void probe(ApplicationReadyEvent event) {
+		if (!startupProperties.isProbe()) {
+			return;
+		}
+		ConfigurableApplicationContext context = event.getApplicationContext();
+		String port = context.getEnvironment().getProperty("local.server.port");
+		Thread thread = new Thread(() -> {
+			try {
+				HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + PROBE_PATH)
+						.openConnection();
+				try (InputStream body = connection.getInputStream()) {
+					while (body.read() >= 0) {
+						// drain
+					}
+				}
+			} catch (IOException e) {
+				log.warn("event=startup_probe_failed error={}", e.toString());
+			}
+			if (startupProperties.isExitAfterProbe()) {
+				long deadline = System.currentTimeMillis() + EXIT_WAIT_MS;
+				while (warmupService.getState() != WarmupService.State.READY && System.currentTimeMillis() < deadline) {
+					sleep(50);
+				}
+				System.exit(SpringApplication.exit(context));
+			}
+		}, "startup-probe");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.springboot.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.springboot.rule.DiscountRule;
+
+/**
+ * A saved offer together with the discount rule it was compiled into.
+ * Instances are immutable.
+ */
+public final class Offer {
+
+	private final int restaurantId;
+
+	private final String offerType;
+
+	private final int offerValue;
+
+	private final List<String> customerSegments;
+
+	private final long segmentMask;
+
+	private final DiscountRule rule;
+
+	private final int discountCap;
+
+	private final int percentCap;
+
+	private final RedemptionCap cap;
+
+	public Offer(int restaurantId, String offerType, int offerValue, List<String> customerSegments, long segmentMask,
+			DiscountRule rule) {
+		this(restaurantId, offerType, offerValue, customerSegments, segmentMask, rule, null);
+	}
+
+	public Offer(int restaurantId, String offerType, int offerValue, List<String> customerSegments, long segmentMask,
+			DiscountRule rule, RedemptionCap cap) {
+		this.restaurantId = restaurantId;
+		this.offerType = offerType;
+		this.offerValue = offerValue;
+		this.customerSegments = Collections.unmodifiableList(new ArrayList<>(customerSegments));
+		this.segmentMask = segmentMask;
+		this.rule = rule;
+		this.discountCap = rule.discountCap();
+		this.percentCap = rule.percentCap();
+		this.cap = cap;
+	}
+
+	public int getRestaurantId() {
+		return restaurantId;
+	}
+
+	public String getOfferType() {
+		return offerType;
+	}
+
+	public int getOfferValue() {
+		return offerValue;
+	}
+
+	public List<String> getCustomerSegments() {
+		return customerSegments;
+	}
+
+	/** The offer's segments as ids of the {@code SegmentRegistry} of the repository holding it. */
+	public long getSegmentMask() {
+		return segmentMask;
+	}
+
+	public DiscountRule getRule() {
+		return rule;
+	}
+
+	/** The offer's redemption limits, {@code null} if it has none. */
+	public RedemptionCap getCap() {
+		return cap;
+	}
+
+	/** Returns the cart value after this offer's discount. */
+	public int apply(int cartValue) {
+		return rule.apply(cartValue);
+	}
+
+	/** @see DiscountRule#discountCap() */
+	public int getDiscountCap() {
+		return discountCap;
+	}
+
+	/** @see DiscountRule#percentCap() */
+	public int getPercentCap() {
+		return percentCap;
+	}
+
+	/**
+	 * Upper bound on what this offer takes off the given cart, computed from
+	 * the rule's caps without applying it.
+	 */
+	public int maxDiscount(int cartValue) {
+		long byPercent = ((long) cartValue * percentCap + 99) / 100;
+		return (int) Math.min(Math.min(cartValue, discountCap), byPercent);
+	}
+
+	@Override
+	public String toString() {
+		return "Offer[restaurant=" + restaurantId + ", segments=" + customerSegments + ", " + rule + "]";
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.springboot.model;
+
+/**
+ * The limits on how often and for how much an offer may be redeemed, with
+ * the id and version of the offer they were saved with. A limit of
+ * {@code 0} means none. Instances are immutable.
+ */
+public final class RedemptionCap {
+
+	private final String offerId;
+
+	private final long version;
+
+	private final long maxRedemptions;
+
+	private final long budget;
+
+	public RedemptionCap(String offerId, long version, long maxRedemptions, long budget) {
+		this.offerId = offerId;
+		this.version = version;
+		this.maxRedemptions = maxRedemptions;
+		this.budget = budget;
+	}
+
+	public String getOfferId() {
+		return offerId;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/** Redemptions allowed in total, {@code 0} for no limit. */
+	public long getMaxRedemptions() {
+		return maxRedemptions;
+	}
+
+	/** Discount allowed in total across all carts, {@code 0} for no limit. */
+	public long getBudget() {
+		return budget;
+	}
+
+	@Override
+	public String toString() {
+		return "RedemptionCap[offer=" + offerId + ", version=" + version + ", maxRedemptions=" + maxRedemptions
+				+ ", budget=" + budget + "]";
+	}
+
+}
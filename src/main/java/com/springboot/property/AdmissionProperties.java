@@ -0,0 +1,133 @@
+package com.springboot.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Concurrency limits per lane of endpoints. The default maximums add up to
+ * less than Tomcat's 200 worker threads, so a lane at its limit leaves
+ * threads for the others.
+ */
+@Component
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionProperties {
+
+	private boolean enabled = true;
+
+	/** {@code /api/v1/cart/**}. */
+	private Lane apply = new Lane(100, 8, 150, 250);
+
+	/** {@code /api/v1/segment/events} and {@code /api/v1/segment/resync}. */
+	private Lane feed = new Lane(4, 1, 8, 5000);
+
+	/** The rest of {@code /api/v1/offer/**}, {@code /api/v1/segment/**} and {@code /api/v1/cluster/**}. */
+	private Lane admin = new Lane(20, 2, 30, 2000);
+
+	/** {@code /confProperty/**}. */
+	private Lane config = new Lane(4, 1, 10, 1000);
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public Lane getApply() {
+		return apply;
+	}
+
+	public void setApply(Lane apply) {
+		this.apply = apply;
+	}
+
+	public Lane getFeed() {
+		return feed;
+	}
+
+	public void setFeed(Lane feed) {
+		this.feed = feed;
+	}
+
+	public Lane getAdmin() {
+		return admin;
+	}
+
+	public void setAdmin(Lane admin) {
+		this.admin = admin;
+	}
+
+	public Lane getConfig() {
+		return config;
+	}
+
+	public void setConfig(Lane config) {
+		this.config = config;
+	}
+
+	public static class Lane {
+
+		private int initialLimit;
+
+		private int minLimit;
+
+		private int maxLimit;
+
+		/** Requests slower than this, or answered with a 5xx, shrink the limit. */
+		private long latencyThresholdMs;
+
+		/** What the limit is multiplied by when it shrinks. */
+		private double backoffRatio = 0.9;
+
+		public Lane() {
+		}
+
+		public Lane(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMs) {
+			this.initialLimit = initialLimit;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.latencyThresholdMs = latencyThresholdMs;
+		}
+
+		public int getInitialLimit() {
+			return initialLimit;
+		}
+
+		public void setInitialLimit(int initialLimit) {
+			this.initialLimit = initialLimit;
+		}
+
+		public int getMinLimit() {
+			return minLimit;
+		}
+
+		public void setMinLimit(int minLimit) {
+			this.minLimit = minLimit;
+		}
+
+		public int getMaxLimit() {
+			return maxLimit;
+		}
+
+		public void setMaxLimit(int maxLimit) {
+			this.maxLimit = maxLimit;
+		}
+
+		public long getLatencyThresholdMs() {
+			return latencyThresholdMs;
+		}
+
+		public void setLatencyThresholdMs(long latencyThresholdMs) {
+			this.latencyThresholdMs = latencyThresholdMs;
+		}
+
+		public double getBackoffRatio() {
+			return backoffRatio;
+		}
+
+		public void setBackoffRatio(double backoffRatio) {
+			this.backoffRatio = backoffRatio;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.springboot.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "cart")
+public class CartProperties {
+
+	/**
+	 * What requests and segment lookups run on. Virtual threads need JDK 21 or
+	 * later.
+	 */
+	private Threads threads = Threads.PLATFORM;
+
+	public Threads getThreads() {
+		return threads;
+	}
+
+	public void setThreads(Threads threads) {
+		this.threads = threads;
+	}
+
+	public enum Threads {
+
+		/** Tomcat's bounded worker pool. */
+		PLATFORM,
+
+		/** A new virtual thread per request. */
+		VIRTUAL
+	}
+}
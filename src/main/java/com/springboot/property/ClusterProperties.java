@@ -0,0 +1,154 @@
+package com.springboot.property;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+
+	/** Shards the catalogue across {@link #members}; every node holds all offers when off. */
+	private boolean enabled = false;
+
+	/** This node's base URL as the other members reach it, e.g. {@code http://10.0.0.5:8081}. */
+	private String self;
+
+	/** Base URLs of the nodes the catalogue starts out sharded across, this one included. */
+	private List<String> members = new ArrayList<>();
+
+	/** A running member to join through once started, for nodes added later. */
+	private String seed;
+
+	/**
+	 * Shared by every member and sent with each request between members; a
+	 * request without it is served as a client's. Required when enabled.
+	 */
+	private String secret;
+
+	/** Points per node on the hash ring; more points spread restaurants more evenly. */
+	private int virtualNodes = 64;
+
+	/** Nodes holding each restaurant's offers, the first of them taking its writes. */
+	private int replicas = 2;
+
+	private final Client client = new Client();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getSelf() {
+		return self;
+	}
+
+	public void setSelf(String self) {
+		this.self = self;
+	}
+
+	public List<String> getMembers() {
+		return members;
+	}
+
+	public void setMembers(List<String> members) {
+		this.members = members;
+	}
+
+	public String getSeed() {
+		return seed;
+	}
+
+	public void setSeed(String seed) {
+		this.seed = seed;
+	}
+
+	public String getSecret() {
+		return secret;
+	}
+
+	public void setSecret(String secret) {
+		this.secret = secret;
+	}
+
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	public void setVirtualNodes(int virtualNodes) {
+		this.virtualNodes = virtualNodes;
+	}
+
+	public int getReplicas() {
+		return replicas;
+	}
+
+	public void setReplicas(int replicas) {
+		this.replicas = replicas;
+	}
+
+	public Client getClient() {
+		return client;
+	}
+
+	public static class Client {
+
+		private int connectTimeoutMs = 200;
+
+		/** Also bounds how long a rebalance push of one batch of offers may take. */
+		private int readTimeoutMs = 5000;
+
+		/** How long a member may take to push all the offers it hands over when a node joins. */
+		private int rebalanceTimeoutMs = 600000;
+
+		private int connectionRequestTimeoutMs = 100;
+
+		private int maxConnectionsPerMember = 50;
+
+		public int getConnectTimeoutMs() {
+			return connectTimeoutMs;
+		}
+
+		public void setConnectTimeoutMs(int connectTimeoutMs) {
+			this.connectTimeoutMs = connectTimeoutMs;
+		}
+
+		public int getReadTimeoutMs() {
+			return readTimeoutMs;
+		}
+
+		public void setReadTimeoutMs(int readTimeoutMs) {
+			this.readTimeoutMs = readTimeoutMs;
+		}
+
+		public int getRebalanceTimeoutMs() {
+			return rebalanceTimeoutMs;
+		}
+
+		public void setRebalanceTimeoutMs(int rebalanceTimeoutMs) {
+			this.rebalanceTimeoutMs = rebalanceTimeoutMs;
+		}
+
+		public int getConnectionRequestTimeoutMs() {
+			return connectionRequestTimeoutMs;
+		}
+
+		public void setConnectionRequestTimeoutMs(int connectionRequestTimeoutMs) {
+			this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+		}
+
+		public int getMaxConnectionsPerMember() {
+			return maxConnectionsPerMember;
+		}
+
+		public void setMaxConnectionsPerMember(int maxConnectionsPerMember) {
+			this.maxConnectionsPerMember = maxConnectionsPerMember;
+		}
+	}
+
+}
@@ -3,9 +3,13 @@ package com.springboot.property;
 import java.io.Serializable;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import com.springboot.FastStartupApplication;
+
 @Component
+@Profile("!" + FastStartupApplication.PROFILE)
 @ConfigurationProperties(prefix = "complex")
 public class ComplexProperty extends BaseProperty implements Serializable {
 	private static final long serialVersionUID = 1L;
@@ -0,0 +1,43 @@
+package com.springboot.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-endpoint request log sampling: each value logs one request in N once the
+ * logger is at DEBUG.
+ */
+@Component
+@ConfigurationProperties(prefix = "log-sampling")
+public class LogSamplingProperties {
+
+	private int offer = 1;
+
+	private int applyOffer = 100;
+
+	private int segment = 100;
+
+	public int getOffer() {
+		return offer;
+	}
+
+	public void setOffer(int offer) {
+		this.offer = offer;
+	}
+
+	public int getApplyOffer() {
+		return applyOffer;
+	}
+
+	public void setApplyOffer(int applyOffer) {
+		this.applyOffer = applyOffer;
+	}
+
+	public int getSegment() {
+		return segment;
+	}
+
+	public void setSegment(int segment) {
+		this.segment = segment;
+	}
+}
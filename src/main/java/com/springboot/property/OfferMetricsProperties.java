@@ -0,0 +1,26 @@
+package com.springboot.property;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "offer-metrics")
+public class OfferMetricsProperties {
+
+	/**
+	 * Restaurants that get their own offers-per-restaurant gauge. Gauging every
+	 * restaurant would create one time series per restaurant id.
+	 */
+	private List<Integer> restaurants = new ArrayList<>();
+
+	public List<Integer> getRestaurants() {
+		return restaurants;
+	}
+
+	public void setRestaurants(List<Integer> restaurants) {
+		this.restaurants = restaurants;
+	}
+}
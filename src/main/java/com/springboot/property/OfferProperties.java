@@ -0,0 +1,174 @@
+package com.springboot.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "offer")
+public class OfferProperties {
+
+	/**
+	 * Which of several offers matching a cart is applied.
+	 */
+	private Selection selection = Selection.FIRST;
+
+	private final Store store = new Store();
+
+	private final Cache cache = new Cache();
+
+	private final Lifecycle lifecycle = new Lifecycle();
+
+	private final Budget budget = new Budget();
+
+	public Selection getSelection() {
+		return selection;
+	}
+
+	public void setSelection(Selection selection) {
+		this.selection = selection;
+	}
+
+	public Store getStore() {
+		return store;
+	}
+
+	public Cache getCache() {
+		return cache;
+	}
+
+	public Lifecycle getLifecycle() {
+		return lifecycle;
+	}
+
+	public Budget getBudget() {
+		return budget;
+	}
+
+	public enum Selection {
+
+		/** The earliest saved offer for the restaurant and segment. */
+		FIRST,
+
+		/** The offer that takes the most off the cart. */
+		BEST
+	}
+
+	public static class Store {
+
+		/**
+		 * Directory holding the offer log and snapshot. Offers are only kept in
+		 * memory when unset.
+		 */
+		private String path;
+
+		/**
+		 * How the catalogue is held in memory: {@code heap} keeps an object per
+		 * offer, {@code compact} packs offers into primitive arrays.
+		 */
+		private String mode = "heap";
+
+		/** Log size after which the log is folded into a new snapshot. */
+		private long compactAfterBytes = 64 * 1024 * 1024;
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public String getMode() {
+			return mode;
+		}
+
+		public void setMode(String mode) {
+			this.mode = mode;
+		}
+
+		public long getCompactAfterBytes() {
+			return compactAfterBytes;
+		}
+
+		public void setCompactAfterBytes(long compactAfterBytes) {
+			this.compactAfterBytes = compactAfterBytes;
+		}
+	}
+
+	public static class Cache {
+
+		/** Memoise first-match lookups per restaurant and segments. */
+		private boolean enabled = true;
+
+		private int maxSize = 100000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+	}
+
+	public static class Lifecycle {
+
+		/** Granularity of validity windows; offers open and close up to one tick late. */
+		private long tickMs = 1000;
+
+		/** Buckets of the timing wheel, a power of two; one turn covers tick-ms times this. */
+		private int wheelSize = 512;
+
+		public long getTickMs() {
+			return tickMs;
+		}
+
+		public void setTickMs(long tickMs) {
+			this.tickMs = tickMs;
+		}
+
+		public int getWheelSize() {
+			return wheelSize;
+		}
+
+		public void setWheelSize(int wheelSize) {
+			this.wheelSize = wheelSize;
+		}
+	}
+
+	public static class Budget {
+
+		/**
+		 * Stripes each offer's local allowance is split into, a power of two;
+		 * {@code 0} for twice the processors, rounded up.
+		 */
+		private int stripes;
+
+		/** Redemptions' worth a stripe leases from the shared counter at a time. */
+		private long leaseRedemptions = 64;
+
+		public int getStripes() {
+			return stripes;
+		}
+
+		public void setStripes(int stripes) {
+			this.stripes = stripes;
+		}
+
+		public long getLeaseRedemptions() {
+			return leaseRedemptions;
+		}
+
+		public void setLeaseRedemptions(long leaseRedemptions) {
+			this.leaseRedemptions = leaseRedemptions;
+		}
+	}
+}
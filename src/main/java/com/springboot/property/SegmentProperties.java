@@ -0,0 +1,229 @@
+package com.springboot.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "segment")
+public class SegmentProperties {
+
+	private String baseUrl = "http://localhost:1080";
+
+	private Client client = new Client();
+
+	private Cache cache = new Cache();
+
+	private Feed feed = new Feed();
+
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	public void setBaseUrl(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	public Client getClient() {
+		return client;
+	}
+
+	public void setClient(Client client) {
+		this.client = client;
+	}
+
+	public Cache getCache() {
+		return cache;
+	}
+
+	public void setCache(Cache cache) {
+		this.cache = cache;
+	}
+
+	public Feed getFeed() {
+		return feed;
+	}
+
+	public void setFeed(Feed feed) {
+		this.feed = feed;
+	}
+
+	public static class Client {
+
+		private int connectTimeoutMs = 200;
+
+		private int readTimeoutMs = 500;
+
+		/** How long a request waits for a pooled connection before failing. */
+		private int connectionRequestTimeoutMs = 100;
+
+		private int maxConnections = 200;
+
+		private int maxConnectionsPerRoute = 200;
+
+		/** Keep-alive used when the segment service does not send a Keep-Alive header. */
+		private long keepAliveMs = 30000;
+
+		private int circuitBreakerFailureThreshold = 20;
+
+		private long circuitBreakerOpenMs = 5000;
+
+		/** Upstream lookups a single batch request may have in flight at once. */
+		private int batchParallelism = 16;
+
+		public int getConnectTimeoutMs() {
+			return connectTimeoutMs;
+		}
+
+		public void setConnectTimeoutMs(int connectTimeoutMs) {
+			this.connectTimeoutMs = connectTimeoutMs;
+		}
+
+		public int getReadTimeoutMs() {
+			return readTimeoutMs;
+		}
+
+		public void setReadTimeoutMs(int readTimeoutMs) {
+			this.readTimeoutMs = readTimeoutMs;
+		}
+
+		public int getConnectionRequestTimeoutMs() {
+			return connectionRequestTimeoutMs;
+		}
+
+		public void setConnectionRequestTimeoutMs(int connectionRequestTimeoutMs) {
+			this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+		}
+
+		public int getMaxConnections() {
+			return maxConnections;
+		}
+
+		public void setMaxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+		}
+
+		public int getMaxConnectionsPerRoute() {
+			return maxConnectionsPerRoute;
+		}
+
+		public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+			this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		}
+
+		public long getKeepAliveMs() {
+			return keepAliveMs;
+		}
+
+		public void setKeepAliveMs(long keepAliveMs) {
+			this.keepAliveMs = keepAliveMs;
+		}
+
+		public int getCircuitBreakerFailureThreshold() {
+			return circuitBreakerFailureThreshold;
+		}
+
+		public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+			this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+		}
+
+		public long getCircuitBreakerOpenMs() {
+			return circuitBreakerOpenMs;
+		}
+
+		public void setCircuitBreakerOpenMs(long circuitBreakerOpenMs) {
+			this.circuitBreakerOpenMs = circuitBreakerOpenMs;
+		}
+
+		public int getBatchParallelism() {
+			return batchParallelism;
+		}
+
+		public void setBatchParallelism(int batchParallelism) {
+			this.batchParallelism = batchParallelism;
+		}
+	}
+
+	public static class Cache {
+
+		private boolean enabled = true;
+
+		private int maxSize = 100000;
+
+		private long ttlMs = 300000;
+
+		/** How long a user the segment service does not know stays cached as "unknown". */
+		private long negativeTtlMs = 60000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		public long getTtlMs() {
+			return ttlMs;
+		}
+
+		public void setTtlMs(long ttlMs) {
+			this.ttlMs = ttlMs;
+		}
+
+		public long getNegativeTtlMs() {
+			return negativeTtlMs;
+		}
+
+		public void setNegativeTtlMs(long negativeTtlMs) {
+			this.negativeTtlMs = negativeTtlMs;
+		}
+	}
+
+	/**
+	 * Segment changes pushed to {@code /api/v1/segment/events}. While events or
+	 * heartbeats keep arriving, cached segments are trusted for
+	 * {@code max-staleness-ms} instead of the cache TTLs.
+	 */
+	public static class Feed {
+
+		private boolean enabled = true;
+
+		/** How long a cached segment is trusted while the feed is live. */
+		private long maxStalenessMs = 3600000;
+
+		/** How long after its last event or heartbeat the feed counts as down. */
+		private long heartbeatTimeoutMs = 30000;
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public long getMaxStalenessMs() {
+			return maxStalenessMs;
+		}
+
+		public void setMaxStalenessMs(long maxStalenessMs) {
+			this.maxStalenessMs = maxStalenessMs;
+		}
+
+		public long getHeartbeatTimeoutMs() {
+			return heartbeatTimeoutMs;
+		}
+
+		public void setHeartbeatTimeoutMs(long heartbeatTimeoutMs) {
+			this.heartbeatTimeoutMs = heartbeatTimeoutMs;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package com.springboot.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "startup")
+public class StartupProperties {
+
+	/** Sends one request to the application itself once it is started. */
+	private boolean probe;
+
+	/** Exits after the probe and warm-up are done; used to record a class-data-sharing archive. */
+	private boolean exitAfterProbe;
+
+	public boolean isProbe() {
+		return probe;
+	}
+
+	public void setProbe(boolean probe) {
+		this.probe = probe;
+	}
+
+	public boolean isExitAfterProbe() {
+		return exitAfterProbe;
+	}
+
+	public void setExitAfterProbe(boolean exitAfterProbe) {
+		this.exitAfterProbe = exitAfterProbe;
+	}
+}
@@ -0,0 +1,80 @@
+package com.springboot.property;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "warmup")
+public class WarmupProperties {
+
+	private boolean enabled = true;
+
+	/**
+	 * Offers (JSON array or NDJSON) loaded at startup when the catalogue is
+	 * still empty, e.g. because no offer store is configured.
+	 */
+	private String catalogueFile;
+
+	/** Users whose segments are fetched into the segment cache at startup. */
+	private List<Integer> hotUsers = new ArrayList<>();
+
+	/** File with further hot user ids, one per line. */
+	private String hotUsersFile;
+
+	/** Restaurants the synthetic apply calls are spread over. */
+	private List<Integer> restaurants = new ArrayList<>();
+
+	/** Synthetic lookups run against the catalogue to get them compiled. */
+	private int syntheticCalls = 20000;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getCatalogueFile() {
+		return catalogueFile;
+	}
+
+	public void setCatalogueFile(String catalogueFile) {
+		this.catalogueFile = catalogueFile;
+	}
+
+	public List<Integer> getHotUsers() {
+		return hotUsers;
+	}
+
+	public void setHotUsers(List<Integer> hotUsers) {
+		this.hotUsers = hotUsers;
+	}
+
+	public String getHotUsersFile() {
+		return hotUsersFile;
+	}
+
+	public void setHotUsersFile(String hotUsersFile) {
+		this.hotUsersFile = hotUsersFile;
+	}
+
+	public List<Integer> getRestaurants() {
+		return restaurants;
+	}
+
+	public void setRestaurants(List<Integer> restaurants) {
+		this.restaurants = restaurants;
+	}
+
+	public int getSyntheticCalls() {
+		return syntheticCalls;
+	}
+
+	public void setSyntheticCalls(int syntheticCalls) {
+		this.syntheticCalls = syntheticCalls;
+	}
+}
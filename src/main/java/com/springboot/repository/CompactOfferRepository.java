@@ -0,0 +1,861 @@
+package com.springboot.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.model.RedemptionCap;
+import com.springboot.property.OfferProperties;
+import com.springboot.rule.DiscountRule;
+import com.springboot.rule.DiscountRuleCompiler;
+import com.springboot.timer.HashedTimingWheel;
+
+/**
+ * Offer catalogue for very large catalogues ({@code offer.store.mode=compact}).
+ * Instead of one object graph per offer, offers live in chunked {@code int}
+ * arrays, four ints each: the id of its discount rule, the index of the
+ * restaurant's next offer, and a 64 bit mask of its segment ids from a
+ * {@link SegmentRegistry}. Identical rules are compiled once and shared
+ * through a rule table. That is 16 bytes per offer plus one small chain
+ * object per restaurant, and the arrays hold no references for the garbage
+ * collector to trace.
+ * <p>
+ * Each restaurant's offers form a chain in insertion order; a replaced offer
+ * takes a new slot linked in where the old one was. A restaurant's
+ * {@link Chain} is immutable and remembers the first offer of every segment,
+ * so a first-match lookup reads one entry per requested segment; best-offer
+ * lookups walk the chain, matching segments with a single AND. Offers returned by lookups are materialised on the fly and list
+ * their segments in segment id order.
+ * <p>
+ * Writers append under a single lock; readers take no locks and bound their
+ * walk by the chain they read, so they never see a half-written offer.
+ * <p>
+ * Offers with an id or a validity window are tracked by an
+ * {@link OfferLifecycle} and addressed by their index. Removing one unlinks
+ * it from its restaurant's chain and publishes a new chain; the entry itself
+ * is left as it was for readers still holding the old chain. Once unlinked
+ * entries outnumber live ones, the live offers are copied into fresh arrays,
+ * restaurant by restaurant in chain order, so the store does not grow as
+ * promotions come and go. The few offers with redemption limits keep them in
+ * a map by index next to the arrays.
+ */
+@Repository
+@Qualifier(OfferRepository.CATALOGUE)
+@ConditionalOnProperty(prefix = "offer.store", name = "mode", havingValue = "compact")
+public class CompactOfferRepository implements OfferRepository {
+
+	private static final int CHUNK_SHIFT = 14;
+
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	private static final int STRIDE = 4;
+
+	private static final int RULE = 0;
+
+	private static final int NEXT = 1;
+
+	private static final int MASK_LOW = 2;
+
+	private static final int MASK_HIGH = 3;
+
+	/** Rule id of a slot holding a suspended offer's place. */
+	private static final int HELD = -1;
+
+	private final DiscountRuleCompiler ruleCompiler;
+
+
+	private final HashedTimingWheel wheel;
+
+	private final List<IntConsumer> scheduledChangeListeners = new CopyOnWriteArrayList<>();
+
+	/** Held by every write to the live store. */
+	private final Object writeLock = new Object();
+
+	private final OfferLifecycle.Target<Integer> liveTarget = new LiveTarget();
+
+	private volatile Store store = new Store(new SegmentRegistry());
+
+	private volatile OfferLifecycle<Integer> lifecycle;
+
+	/** A repository whose validity windows only move when the caller advances the wheel. */
+	public CompactOfferRepository() {
+		this(new DiscountRuleCompiler(), new HashedTimingWheel("offer-lifecycle", 1000, 512));
+	}
+
+	@Autowired
+	public CompactOfferRepository(DiscountRuleCompiler ruleCompiler, OfferProperties offerProperties) {
+		this(ruleCompiler, new HashedTimingWheel("offer-lifecycle", offerProperties.getLifecycle().getTickMs(),
+				offerProperties.getLifecycle().getWheelSize()));
+		wheel.start();
+	}
+
+	public CompactOfferRepository(DiscountRuleCompiler ruleCompiler, HashedTimingWheel wheel) {
+		this.ruleCompiler = ruleCompiler;
+		this.wheel = wheel;
+		this.lifecycle = new OfferLifecycle<>(liveTarget, wheel, this::scheduledChange);
+	}
+
+	@Override
+	public long put(OfferRequest offerRequest) {
+		if (OfferLifecycle.isTracked(offerRequest)) {
+			long version;
+			do {
+				version = lifecycle.put(offerRequest, false);
+			} while (version == OfferLifecycle.RETIRED);
+			return version;
+		}
+		synchronized (writeLock) {
+			store.add(offerRequest);
+		}
+		return 0;
+	}
+
+	@Override
+	public void saveAll(Collection<OfferRequest> offerRequests) {
+		boolean tracked = false;
+		synchronized (writeLock) {
+			Store live = store;
+			for (OfferRequest offerRequest : offerRequests) {
+				// fail before anything is added
+				if (OfferLifecycle.isTracked(offerRequest)) {
+					OfferLifecycle.validate(offerRequest);
+					tracked = true;
+				}
+				live.compile(offerRequest);
+			}
+			if (!tracked) {
+				for (OfferRequest offerRequest : offerRequests) {
+					live.add(offerRequest);
+				}
+				return;
+			}
+		}
+		// the lifecycle takes the write lock itself, and has to be locked first
+		for (OfferRequest offerRequest : offerRequests) {
+			if (!OfferLifecycle.isTracked(offerRequest)) {
+				put(offerRequest);
+				continue;
+			}
+			while (lifecycle.restoreChecked(offerRequest) == OfferLifecycle.RETIRED) {
+				// a catalogue reload retired the lifecycle; save into the new one
+			}
+		}
+	}
+
+	@Override
+	public void check(Collection<OfferRequest> offerRequests) {
+		synchronized (writeLock) {
+			Store live = store;
+			for (OfferRequest offerRequest : offerRequests) {
+				if (OfferLifecycle.isTracked(offerRequest)) {
+					OfferLifecycle.validate(offerRequest);
+				}
+				live.compile(offerRequest);
+			}
+		}
+	}
+
+	@Override
+	public OfferRequest delete(String offerId, Long expectedVersion) {
+		OfferRequest removed;
+		do {
+			removed = lifecycle.delete(offerId, expectedVersion);
+		} while (removed == OfferLifecycle.RETIRED_OFFER);
+		return removed;
+	}
+
+	@Override
+	public OfferRequest suspend(String offerId, long version) {
+		OfferRequest suspended;
+		do {
+			suspended = lifecycle.suspend(offerId, version);
+		} while (suspended == OfferLifecycle.RETIRED_OFFER);
+		return suspended;
+	}
+
+	@Override
+	public OfferRequest find(String offerId) {
+		return lifecycle.find(offerId);
+	}
+
+	@Override
+	public void export(IntPredicate restaurants, Consumer<OfferRequest> action) {
+		while (true) {
+			OfferLifecycle<Integer> current = lifecycle;
+			// a catalogue swap takes the live lifecycle's lock first, so the store stays put
+			synchronized (current) {
+				if (current != lifecycle) {
+					continue;
+				}
+				Map<Integer, OfferRequest> tracked = new HashMap<>();
+				List<OfferRequest> unpublished = new ArrayList<>();
+				current.collect(restaurants, tracked, unpublished);
+				synchronized (writeLock) {
+					Store live = store;
+					live.chains.forEach((restaurantId, chain) -> {
+						if (restaurants.test(restaurantId)) {
+							for (int entry = chain.head;; entry = live.next(entry)) {
+								OfferRequest source = tracked.get(entry);
+								action.accept(source != null ? source : live.terms(restaurantId, entry));
+								if (entry == chain.tail) {
+									break;
+								}
+							}
+						}
+					});
+				}
+				unpublished.forEach(action);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void removeRestaurants(IntPredicate restaurants) {
+		while (!lifecycle.removeRestaurants(restaurants, () -> {
+			synchronized (writeLock) {
+				Store live = store;
+				live.chains.entrySet().removeIf(chain -> {
+					if (restaurants.test(chain.getKey())) {
+						live.size -= chain.getValue().offers;
+						return true;
+					}
+					return false;
+				});
+			}
+		})) {
+			// a catalogue reload retired the lifecycle; remove from the new one
+		}
+	}
+
+	@Override
+	public void onScheduledChange(IntConsumer listener) {
+		scheduledChangeListeners.add(listener);
+	}
+
+	private void scheduledChange(int restaurantId) {
+		for (IntConsumer listener : scheduledChangeListeners) {
+			listener.accept(restaurantId);
+		}
+	}
+
+	/** The wheel that opens and closes validity windows. */
+	public HashedTimingWheel wheel() {
+		return wheel;
+	}
+
+	/** Slots taken in the offer arrays, live or unlinked. */
+	int entries() {
+		return store.entries;
+	}
+
+	@PreDestroy
+	public void close() {
+		wheel.close();
+	}
+
+	@Override
+	public OfferCatalogueBuilder newCatalogue() {
+		return new Builder();
+	}
+
+	@Override
+	public SegmentRegistry segments() {
+		return store.segments;
+	}
+
+	@Override
+	public Offer findFirstMatch(int restaurantId, long segmentMask) {
+		Store live = store;
+		Chain chain = live.chains.get(restaurantId);
+		int offer = chain == null ? -1 : chain.first(segmentMask);
+		return offer < 0 ? null : live.materialise(restaurantId, offer);
+	}
+
+	@Override
+	public List<Offer> offersOf(int restaurantId) {
+		Store live = store;
+		Chain chain = live.chains.get(restaurantId);
+		if (chain == null) {
+			return Collections.emptyList();
+		}
+		List<Offer> offers = new ArrayList<>(chain.count);
+		for (int offer = chain.head, left = chain.count; offer >= 0 && left > 0; offer = live.next(offer), left--) {
+			if (!live.held(offer)) {
+				offers.add(live.materialise(restaurantId, offer));
+			}
+			if (offer == chain.tail) {
+				break;
+			}
+		}
+		return offers;
+	}
+
+	@Override
+	public Offer findBestMatch(int restaurantId, long segmentMask, int cartValue) {
+		Store live = store;
+		Chain chain = live.chains.get(restaurantId);
+		int first = chain == null ? -1 : chain.first(segmentMask);
+		if (first < 0) {
+			return null;
+		}
+		int[][] chunks = live.chunks;
+		RuleEntry[] rules = live.rules;
+		int best = -1;
+		int bestDiscount = -1;
+		// the chain's tail and length bound the walk; later writers may already have linked past it,
+		// and unlinking or replacing the tail links its predecessor to -1 or to a newer offer
+		for (int offer = first, left = chain.count; offer >= 0 && left > 0; left--) {
+			int[] chunk = chunks[offer >>> CHUNK_SHIFT];
+			int base = (offer & CHUNK_MASK) * STRIDE;
+			if ((mask(chunk, base) & segmentMask) != 0) {
+				RuleEntry rule = rules[chunk[base + RULE]];
+				if (rule.maxDiscount(cartValue) > bestDiscount) {
+					int discount = cartValue - rule.rule.apply(cartValue);
+					if (discount > bestDiscount) {
+						best = offer;
+						bestDiscount = discount;
+					}
+				}
+			}
+			if (offer == chain.tail || bestDiscount == cartValue) {
+				break;
+			}
+			offer = chunk[base + NEXT];
+		}
+		return best < 0 ? null : live.materialise(restaurantId, best);
+	}
+
+	@Override
+	public int size() {
+		return store.size;
+	}
+
+	@Override
+	public int restaurantCount() {
+		return store.chains.size();
+	}
+
+	@Override
+	public int countForRestaurant(int restaurantId) {
+		Chain chain = store.chains.get(restaurantId);
+		return chain == null ? 0 : chain.offers;
+	}
+
+	@Override
+	public int maxOffersPerRestaurant() {
+		int max = 0;
+		for (Chain chain : store.chains.values()) {
+			max = Math.max(max, chain.offers);
+		}
+		return max;
+	}
+
+	private static long mask(int[] chunk, int base) {
+		return ((long) chunk[base + MASK_HIGH] << 32) | (chunk[base + MASK_LOW] & 0xffffffffL);
+	}
+
+	/**
+	 * One catalogue generation: offer arrays, restaurant chains, rule table and
+	 * the registry of the segments its offers use.
+	 * Not thread-safe; the live store is only written holding the write lock.
+	 */
+	private final class Store {
+
+		final ConcurrentMap<Integer, Chain> chains = new ConcurrentHashMap<>();
+
+		/** Redemption limits of the offers that have them, by offer index; left in place when unlinked, like the entry. */
+		final ConcurrentMap<Integer, RedemptionCap> caps = new ConcurrentHashMap<>();
+
+		/** Segments of the offers with any past the registry's mask bits, by offer index; kept like the caps. */
+		final ConcurrentMap<Integer, List<String>> overflowSegments = new ConcurrentHashMap<>();
+
+		final Map<OfferRequest, Integer> ruleIds;
+
+		final SegmentRegistry segments;
+
+		volatile RuleEntry[] rules;
+
+		volatile int[][] chunks = new int[0][];
+
+		/** Live offers. */
+		volatile int size;
+
+		/** Slots taken, including unlinked ones. */
+		int entries;
+
+		Store(SegmentRegistry segments) {
+			this(new HashMap<>(), new RuleEntry[0], segments);
+		}
+
+		private Store(Map<OfferRequest, Integer> ruleIds, RuleEntry[] rules, SegmentRegistry segments) {
+			this.ruleIds = ruleIds;
+			this.rules = rules;
+			this.segments = segments;
+		}
+
+		/** Returns the id of the offer's rule, compiling and adding it if it is new. */
+		int compile(OfferRequest offerRequest) {
+			SegmentRegistry.check(offerRequest.getCustomer_segment());
+			OfferRequest key = new OfferRequest(0, offerRequest.getOffer_type(), offerRequest.getOffer_value(), null,
+					offerRequest.getMax_discount(), offerRequest.getMin_cart_value(), offerRequest.getTiers());
+			Integer id = ruleIds.get(key);
+			if (id == null) {
+				DiscountRule rule = ruleCompiler.compile(key);
+				RuleEntry[] grown = Arrays.copyOf(rules, rules.length + 1);
+				grown[rules.length] = new RuleEntry(key, rule);
+				rules = grown;
+				id = rules.length - 1;
+				ruleIds.put(key, id);
+			}
+			return id;
+		}
+
+		int add(OfferRequest offerRequest) {
+			long mask = segments.registerAll(offerRequest.getCustomer_segment());
+			return append(offerRequest.getRestaurant_id(), compile(offerRequest), mask, OfferLifecycle.capOf(offerRequest),
+					(mask & SegmentRegistry.OVERFLOW) == 0 ? null
+							: Collections.unmodifiableList(new ArrayList<>(offerRequest.getCustomer_segment())));
+		}
+
+		private int append(int restaurantId, int ruleId, long mask, RedemptionCap cap, List<String> overflow) {
+			int offer = slot(ruleId, mask, cap, overflow);
+			Chain current = chains.get(restaurantId);
+			if (current != null) {
+				setNext(current.tail, offer);
+			}
+			if (ruleId != HELD) {
+				size++;
+			}
+			// publishing the chain makes the offer and the link to it visible to readers
+			chains.put(restaurantId, Chain.append(current, offer, mask, ruleId == HELD));
+			return offer;
+		}
+
+		/** Writes an offer into the next free slot, linked to nothing yet. */
+		private int slot(int ruleId, long mask, RedemptionCap cap, List<String> overflow) {
+			int offer = entries;
+			if (offer >>> CHUNK_SHIFT == chunks.length) {
+				int[][] grown = Arrays.copyOf(chunks, chunks.length + 1);
+				grown[chunks.length] = new int[(CHUNK_MASK + 1) * STRIDE];
+				chunks = grown;
+			}
+			int[] chunk = chunks[offer >>> CHUNK_SHIFT];
+			int base = (offer & CHUNK_MASK) * STRIDE;
+			chunk[base + RULE] = ruleId;
+			chunk[base + NEXT] = -1;
+			chunk[base + MASK_LOW] = (int) mask;
+			chunk[base + MASK_HIGH] = (int) (mask >>> 32);
+			if (cap != null) {
+				caps.put(offer, cap);
+			}
+			if (overflow != null) {
+				overflowSegments.put(offer, overflow);
+			}
+			entries = offer + 1;
+			return offer;
+		}
+
+		int replace(int restaurantId, int previous, OfferRequest offerRequest) {
+			long mask = segments.registerAll(offerRequest.getCustomer_segment());
+			return replace(restaurantId, previous, compile(offerRequest), mask, OfferLifecycle.capOf(offerRequest),
+					(mask & SegmentRegistry.OVERFLOW) == 0 ? null
+							: Collections.unmodifiableList(new ArrayList<>(offerRequest.getCustomer_segment())));
+		}
+
+		/** Puts a placeholder with no segments in the offer's place, which no lookup matches. */
+		int hold(int restaurantId, int offer) {
+			return replace(restaurantId, offer, HELD, 0, null, null);
+		}
+
+		/** Whether the slot holds a suspended offer's place. */
+		boolean held(int offer) {
+			return chunks[offer >>> CHUNK_SHIFT][(offer & CHUNK_MASK) * STRIDE + RULE] == HELD;
+		}
+
+		/**
+		 * Writes an offer into a new slot, links it where {@code previous} was
+		 * and publishes the chain with it. Readers still walking the old chain
+		 * follow either the old link or the new one, so they see one offer or
+		 * the other; the old slot is left as it was, as after a remove.
+		 */
+		private int replace(int restaurantId, int previous, int ruleId, long mask, RedemptionCap cap,
+				List<String> overflow) {
+			size += (ruleId == HELD ? 0 : 1) - (held(previous) ? 0 : 1);
+			int offer = slot(ruleId, mask, cap, overflow);
+			Chain current = chains.get(restaurantId);
+			List<Integer> linked = new ArrayList<>(current.count);
+			int before = -1;
+			for (int entry = current.head;; entry = next(entry)) {
+				int kept = entry;
+				if (entry == previous) {
+					setNext(offer, entry == current.tail ? -1 : next(entry));
+					if (before >= 0) {
+						setNext(before, offer);
+					}
+					kept = offer;
+				}
+				linked.add(kept);
+				before = kept;
+				if (entry == current.tail) {
+					break;
+				}
+			}
+			Chain chain = null;
+			for (int entry : linked) {
+				chain = Chain.append(chain, entry, mask(chunks[entry >>> CHUNK_SHIFT], (entry & CHUNK_MASK) * STRIDE),
+						held(entry));
+			}
+			chains.put(restaurantId, chain);
+			return offer;
+		}
+
+		/** Unlinks an offer from its restaurant's chain and publishes the chain without it. */
+		void remove(int restaurantId, int offer) {
+			Chain current = chains.get(restaurantId);
+			List<Integer> kept = new ArrayList<>(current.count);
+			int previous = -1;
+			for (int entry = current.head;; entry = next(entry)) {
+				if (entry == offer) {
+					if (previous >= 0) {
+						setNext(previous, entry == current.tail ? -1 : next(entry));
+					}
+				} else {
+					kept.add(entry);
+					previous = entry;
+				}
+				if (entry == current.tail) {
+					break;
+				}
+			}
+			if (!held(offer)) {
+				size--;
+			}
+			if (kept.isEmpty()) {
+				chains.remove(restaurantId);
+				return;
+			}
+			Chain chain = null;
+			for (int entry : kept) {
+				chain = Chain.append(chain, entry, mask(chunks[entry >>> CHUNK_SHIFT], (entry & CHUNK_MASK) * STRIDE),
+						held(entry));
+			}
+			chains.put(restaurantId, chain);
+		}
+
+		/** Whether unlinked slots have come to outnumber live offers. */
+		boolean wasteful() {
+			int unlinked = entries - size;
+			return unlinked > CHUNK_MASK && unlinked > size;
+		}
+
+		/**
+		 * Copies the live offers into a new store, restaurant by restaurant in
+		 * chain order. {@code moved} receives every live offer's new index.
+		 */
+		Store compacted(int[] moved) {
+			Store compacted = new Store(ruleIds, rules, segments);
+			chains.forEach((restaurantId, chain) -> {
+				for (int entry = chain.head;; entry = next(entry)) {
+					int[] chunk = chunks[entry >>> CHUNK_SHIFT];
+					int base = (entry & CHUNK_MASK) * STRIDE;
+					moved[entry] = compacted.append(restaurantId, chunk[base + RULE], mask(chunk, base), caps.get(entry),
+							overflowSegments.get(entry));
+					if (entry == chain.tail) {
+						break;
+					}
+				}
+			});
+			return compacted;
+		}
+
+		private int next(int offer) {
+			return chunks[offer >>> CHUNK_SHIFT][(offer & CHUNK_MASK) * STRIDE + NEXT];
+		}
+
+		private void setNext(int offer, int next) {
+			chunks[offer >>> CHUNK_SHIFT][(offer & CHUNK_MASK) * STRIDE + NEXT] = next;
+		}
+
+		/** An untracked offer as it was saved. */
+		OfferRequest terms(int restaurantId, int offer) {
+			int[] chunk = chunks[offer >>> CHUNK_SHIFT];
+			int base = (offer & CHUNK_MASK) * STRIDE;
+			OfferRequest terms = rules[chunk[base + RULE]].terms;
+			return new OfferRequest(restaurantId, terms.getOffer_type(), terms.getOffer_value(),
+					segmentNames(offer, mask(chunk, base)), terms.getMax_discount(), terms.getMin_cart_value(),
+					terms.getTiers());
+		}
+
+		Offer materialise(int restaurantId, int offer) {
+			int[] chunk = chunks[offer >>> CHUNK_SHIFT];
+			int base = (offer & CHUNK_MASK) * STRIDE;
+			RuleEntry rule = rules[chunk[base + RULE]];
+			long mask = mask(chunk, base);
+			return new Offer(restaurantId, rule.offerType, rule.offerValue, segmentNames(offer, mask), mask, rule.rule,
+					caps.get(offer));
+		}
+
+		private List<String> segmentNames(int offer, long mask) {
+			return (mask & SegmentRegistry.OVERFLOW) == 0 ? segments.names(mask) : overflowSegments.get(offer);
+		}
+	}
+
+	/** Immutable view of one restaurant's offer chain. */
+	private static final class Chain {
+
+		final int head;
+
+		final int tail;
+
+		/** Slots in the chain, placeholders included. */
+		final int count;
+
+		/** Offers in the chain, not counting placeholders of suspended ones. */
+		final int offers;
+
+		/** Index of the first offer per segment id, {@code -1} if none. */
+		final int[] firstBySegment;
+
+		/**
+		 * Position in the chain of each of {@link #firstBySegment}; a replaced
+		 * offer's slot is newer than the offers after it, so indexes alone do
+		 * not tell which comes first.
+		 */
+		final int[] firstPositions;
+
+		private Chain(int head, int tail, int count, int offers, int[] firstBySegment, int[] firstPositions) {
+			this.head = head;
+			this.tail = tail;
+			this.count = count;
+			this.offers = offers;
+			this.firstBySegment = firstBySegment;
+			this.firstPositions = firstPositions;
+		}
+
+		static Chain append(Chain current, int offer, long mask, boolean held) {
+			int highest = 63 - Long.numberOfLeadingZeros(mask);
+			int[] first = current == null ? new int[0] : current.firstBySegment;
+			int[] positions = current == null ? new int[0] : current.firstPositions;
+			if (first.length <= highest) {
+				int length = first.length;
+				first = Arrays.copyOf(first, highest + 1);
+				positions = Arrays.copyOf(positions, highest + 1);
+				Arrays.fill(first, length, first.length, -1);
+			} else {
+				first = first.clone();
+				positions = positions.clone();
+			}
+			int position = current == null ? 0 : current.count;
+			for (long bits = mask; bits != 0; bits &= bits - 1) {
+				int segment = Long.numberOfTrailingZeros(bits);
+				if (first[segment] < 0) {
+					first[segment] = offer;
+					positions[segment] = position;
+				}
+			}
+			int offers = (current == null ? 0 : current.offers) + (held ? 0 : 1);
+			return new Chain(current == null ? offer : current.head, offer, position + 1, offers, first, positions);
+		}
+
+		/** The earliest offer in any of the segments, {@code -1} if none. */
+		int first(long segmentMask) {
+			int first = -1;
+			int position = Integer.MAX_VALUE;
+			for (long bits = segmentMask; bits != 0; bits &= bits - 1) {
+				int segment = Long.numberOfTrailingZeros(bits);
+				if (segment < firstBySegment.length && firstBySegment[segment] >= 0
+						&& firstPositions[segment] < position) {
+					first = firstBySegment[segment];
+					position = firstPositions[segment];
+				}
+			}
+			return first;
+		}
+	}
+
+	/** Publishes into the live store under the write lock. */
+	private final class LiveTarget implements OfferLifecycle.Target<Integer> {
+
+		@Override
+		public void check(OfferRequest offer) {
+			synchronized (writeLock) {
+				store.compile(offer);
+			}
+		}
+
+		@Override
+		public Integer publish(OfferRequest offer) {
+			synchronized (writeLock) {
+				return store.add(offer);
+			}
+		}
+
+		@Override
+		public Integer replace(Integer previous, OfferRequest previousOffer, OfferRequest offer) {
+			if (previousOffer.getRestaurant_id() != offer.getRestaurant_id()) {
+				// appended before the old one goes, so lookups see the old offer or the new one
+				Integer replacement = publish(offer);
+				unpublish(previous, previousOffer);
+				return replacement;
+			}
+			synchronized (writeLock) {
+				return store.replace(offer.getRestaurant_id(), previous, offer);
+			}
+		}
+
+		@Override
+		public Integer hold(Integer handle, OfferRequest offer) {
+			synchronized (writeLock) {
+				return store.hold(offer.getRestaurant_id(), handle);
+			}
+		}
+
+		@Override
+		public void unpublish(Integer offer, OfferRequest offerRequest) {
+			synchronized (writeLock) {
+				store.remove(offerRequest.getRestaurant_id(), offer);
+			}
+		}
+
+		@Override
+		public void settle() {
+			synchronized (writeLock) {
+				if (store.wasteful()) {
+					int[] moved = new int[store.entries];
+					store = store.compacted(moved);
+					// called by the live lifecycle, whose lock is held
+					lifecycle.remap(entry -> moved[entry]);
+				}
+			}
+		}
+	}
+
+	private final class Builder implements OfferCatalogueBuilder, OfferLifecycle.Target<Integer> {
+
+		private final Store built = new Store(store.segments.successor());
+
+		private final OfferLifecycle<Integer> builtLifecycle = OfferLifecycle.building(this, wheel,
+				CompactOfferRepository.this::scheduledChange);
+
+		@Override
+		public void add(OfferRequest offerRequest) {
+			if (OfferLifecycle.isTracked(offerRequest)) {
+				builtLifecycle.put(offerRequest, true);
+			} else {
+				built.add(offerRequest);
+			}
+		}
+
+		@Override
+		public void delete(String offerId) {
+			builtLifecycle.delete(offerId, null);
+		}
+
+		@Override
+		public void check(OfferRequest offer) {
+			built.compile(offer);
+		}
+
+		@Override
+		public Integer publish(OfferRequest offer) {
+			return built.add(offer);
+		}
+
+		@Override
+		public Integer replace(Integer previous, OfferRequest previousOffer, OfferRequest offer) {
+			if (previousOffer.getRestaurant_id() != offer.getRestaurant_id()) {
+				Integer replacement = publish(offer);
+				unpublish(previous, previousOffer);
+				return replacement;
+			}
+			return built.replace(offer.getRestaurant_id(), previous, offer);
+		}
+
+		@Override
+		public Integer hold(Integer handle, OfferRequest offer) {
+			return built.hold(offer.getRestaurant_id(), handle);
+		}
+
+		@Override
+		public void unpublish(Integer offer, OfferRequest offerRequest) {
+			built.remove(offerRequest.getRestaurant_id(), offer);
+		}
+
+		@Override
+		public int size() {
+			return built.size;
+		}
+
+		@Override
+		public void commit() {
+			Store committed = built;
+			if (committed.wasteful()) {
+				int[] moved = new int[committed.entries];
+				committed = committed.compacted(moved);
+				builtLifecycle.remap(entry -> moved[entry]);
+			}
+			OfferLifecycle<Integer> previous = lifecycle;
+			synchronized (previous) {
+				synchronized (builtLifecycle) {
+					synchronized (writeLock) {
+						store = committed;
+					}
+					lifecycle = builtLifecycle;
+					builtLifecycle.start(liveTarget);
+					previous.retire();
+				}
+			}
+		}
+	}
+
+	private static final class RuleEntry {
+
+		final String offerType;
+
+		final int offerValue;
+
+		final DiscountRule rule;
+
+		/** The offer terms the rule was compiled from, without restaurant or segments. */
+		final OfferRequest terms;
+
+		final int discountCap;
+
+		final int percentCap;
+
+		RuleEntry(OfferRequest terms, DiscountRule rule) {
+			this.offerType = terms.getOffer_type();
+			this.offerValue = terms.getOffer_value();
+			this.rule = rule;
+			this.terms = terms;
+			this.discountCap = rule.discountCap();
+			this.percentCap = rule.percentCap();
+		}
+
+		int maxDiscount(int cartValue) {
+			long byPercent = ((long) cartValue * percentCap + 99) / 100;
+			return (int) Math.min(Math.min(cartValue, discountCap), byPercent);
+		}
+	}
+
+}
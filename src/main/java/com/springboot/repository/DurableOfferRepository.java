@@ -0,0 +1,943 @@
+package com.springboot.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import com.springboot.budget.BudgetJournal;
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.property.OfferProperties;
+
+/**
+ * Keeps the in-memory catalogue durable across restarts. Every write is
+ * checked, appended to a write-ahead log and synced before it is applied in
+ * memory; concurrent writers share fsyncs, so a burst of writes costs a
+ * handful of disk flushes rather than one each, and apply their writes in
+ * the order they were logged. Once the log outgrows
+ * {@code offer.store.compact-after-bytes} it is rotated and folded into the
+ * snapshot in the background. Replacing the whole catalogue writes a new
+ * snapshot directly and starts a new log.
+ * <p>
+ * Offers saved under an id are logged with the version they are stored
+ * under, deletes as the ids they removed and suspensions as the id and
+ * version they withdrew. Compaction keeps only the latest version of every id
+ * that is still there, with its suspension, and drops offers whose validity
+ * window has closed, so the snapshot tracks the live catalogue rather than
+ * its history.
+ * <p>
+ * As the {@link BudgetJournal} it also logs what the budget ledger leases,
+ * so a restart does not make spent limits available again. Those totals are
+ * few and small, kept in memory and written whole into every snapshot.
+ * <p>
+ * Log files are named after their generation; the snapshot header names the
+ * first generation that is not contained in it, so a crash between writing a
+ * snapshot and deleting the logs it absorbed never replays a record twice.
+ * Once a write to the log or a sync of it fails, the log refuses further
+ * writes until the node restarts, since what follows a torn frame would not
+ * be replayed; nothing that may be missing from the log is ever applied.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(prefix = "offer.store", name = "path")
+public class DurableOfferRepository implements OfferRepository, BudgetJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(DurableOfferRepository.class);
+
+	static final String SNAPSHOT = "offers.snapshot";
+
+	private static final String LOG_PREFIX = "offers-";
+
+	private static final String LOG_SUFFIX = ".log";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/** Staged for an id whose pending write removes the offer saved under it. */
+	private static final OfferRequest ABSENT = new OfferRequest();
+
+	private final OfferRepository delegate;
+
+	private final Path directory;
+
+	private final long compactAfterBytes;
+
+	/** Orders writes in the log, which is the order they are applied in. */
+	private final Object writeLock = new Object();
+
+	/** Held while applying logged writes, in log order. */
+	private final Object applyLock = new Object();
+
+	/** Writes that are logged but not applied yet, in log order; added to under the write lock. */
+	private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The offer each id stands for once the pending writes are applied,
+	 * {@link #ABSENT} where that is none; ids without pending writes are not here.
+	 */
+	private final Map<String, OfferRequest> staged = new ConcurrentHashMap<>();
+
+	/** The largest total logged for every budget ledger counter. */
+	private final Map<String, Long> leases = new ConcurrentHashMap<>();
+
+	/** Serialises everything that replaces the snapshot. */
+	private final ReentrantLock snapshotLock = new ReentrantLock();
+
+	private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "offer-store-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private LogSegment currentLog;
+
+	@Autowired
+	public DurableOfferRepository(@Qualifier(CATALOGUE) OfferRepository delegate, OfferProperties offerProperties)
+			throws IOException {
+		this(delegate, Paths.get(offerProperties.getStore().getPath()), offerProperties.getStore().getCompactAfterBytes());
+	}
+
+	public DurableOfferRepository(OfferRepository delegate, Path directory, long compactAfterBytes) throws IOException {
+		this.delegate = delegate;
+		this.directory = directory;
+		this.compactAfterBytes = compactAfterBytes;
+		Files.createDirectories(directory);
+		recover();
+	}
+
+	@Override
+	public long put(OfferRequest offerRequest) {
+		delegate.check(Collections.singletonList(offerRequest));
+		String offerId = offerRequest.getOffer_id();
+		Pending write;
+		long version;
+		synchronized (writeLock) {
+			if (offerId == null) {
+				write = log(offersFrame(Collections.singletonList(offerRequest)), Collections.emptyMap(),
+						() -> delegate.put(offerRequest));
+				version = 0;
+			} else {
+				OfferRequest current = current(offerId);
+				long currentVersion = current == null ? 0 : current.getVersion();
+				if (offerRequest.getVersion() != null && offerRequest.getVersion() != currentVersion) {
+					throw new OfferVersionConflictException(offerId, offerRequest.getVersion(), currentVersion);
+				}
+				version = currentVersion + 1;
+				OfferRequest stored = OfferLifecycle.stored(offerRequest, version);
+				// stored as is, like a replay, so memory ends up with what the log says
+				write = log(offersFrame(Collections.singletonList(stored)),
+						Collections.singletonMap(offerId, staged(stored)), () -> {
+							delegate.saveAll(Collections.singletonList(stored));
+							return null;
+						});
+			}
+		}
+		await(write);
+		return version;
+	}
+
+	@Override
+	public void saveAll(Collection<OfferRequest> offerRequests) {
+		if (offerRequests.isEmpty()) {
+			return;
+		}
+		delegate.check(offerRequests);
+		List<OfferRequest> offers = new ArrayList<>(offerRequests);
+		ByteBuffer frame = offersFrame(offers);
+		Pending write;
+		synchronized (writeLock) {
+			Map<String, OfferRequest> stages = new HashMap<>();
+			for (OfferRequest offer : offers) {
+				String offerId = offer.getOffer_id();
+				if (offerId == null) {
+					continue;
+				}
+				OfferRequest current = stages.containsKey(offerId) ? present(stages.get(offerId)) : current(offerId);
+				long currentVersion = current == null ? 0 : current.getVersion();
+				if (current != null && offer.getVersion() != null && offer.getVersion() <= currentVersion) {
+					continue;
+				}
+				long version = offer.getVersion() != null ? offer.getVersion() : currentVersion + 1;
+				stages.put(offerId, staged(OfferLifecycle.stored(offer, version)));
+			}
+			write = log(frame, stages, () -> {
+				delegate.saveAll(offers);
+				return null;
+			});
+		}
+		await(write);
+	}
+
+	@Override
+	public void check(Collection<OfferRequest> offerRequests) {
+		delegate.check(offerRequests);
+	}
+
+	@Override
+	public OfferRequest delete(String offerId, Long expectedVersion) {
+		Pending write;
+		OfferRequest current;
+		synchronized (writeLock) {
+			current = current(offerId);
+			long currentVersion = current == null ? 0 : current.getVersion();
+			if (expectedVersion != null && expectedVersion != currentVersion) {
+				throw new OfferVersionConflictException(offerId, expectedVersion, currentVersion);
+			}
+			if (current == null) {
+				return null;
+			}
+			write = log(OfferStoreFile.frame(OfferStoreFile.DELETES,
+					OfferRecordCodec.encodeIds(Collections.singletonList(offerId))),
+					Collections.singletonMap(offerId, ABSENT), () -> delegate.delete(offerId, null));
+		}
+		await(write);
+		return current;
+	}
+
+	/**
+	 * Logged like any other write, so a spent offer stays withdrawn after a
+	 * restart; the suspension lasts until a new version is saved.
+	 */
+	@Override
+	public OfferRequest suspend(String offerId, long version) {
+		Pending write;
+		synchronized (writeLock) {
+			OfferRequest current = current(offerId);
+			if (current == null || current.getVersion() != version) {
+				return null;
+			}
+			write = log(OfferStoreFile.frame(OfferStoreFile.SUSPENDS,
+					OfferRecordCodec.encodeCounts(Collections.singletonMap(offerId, version))),
+					Collections.emptyMap(), () -> delegate.suspend(offerId, version));
+		}
+		return (OfferRequest) await(write);
+	}
+
+	@Override
+	public void recordLeased(String key, long leased) {
+		Pending write;
+		synchronized (writeLock) {
+			write = log(leasesFrame(Collections.singletonMap(key, leased)), Collections.emptyMap(), () -> {
+				leases.merge(key, leased, Math::max);
+				return null;
+			});
+		}
+		await(write);
+	}
+
+	@Override
+	public Map<String, Long> recordedLeases() {
+		return new HashMap<>(leases);
+	}
+
+	@Override
+	public OfferRequest find(String offerId) {
+		return delegate.find(offerId);
+	}
+
+	@Override
+	public void export(IntPredicate restaurants, Consumer<OfferRequest> action) {
+		delegate.export(restaurants, action);
+	}
+
+	/**
+	 * Rebuilds the catalogue without the restaurants, so that the next
+	 * snapshot no longer has them either. Writes wait until it is done.
+	 */
+	@Override
+	public void removeRestaurants(IntPredicate restaurants) {
+		snapshotLock.lock();
+		try {
+			synchronized (writeLock) {
+				try {
+					applyLogged();
+				} catch (IOException e) {
+					throw new UncheckedIOException("could not sync the offer log", e);
+				}
+				OfferCatalogueBuilder builder = newCatalogue();
+				try {
+					delegate.export(restaurants.negate(), builder::add);
+				} catch (RuntimeException e) {
+					builder.abort();
+					throw e;
+				}
+				builder.commit();
+			}
+		} finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	@Override
+	public void onScheduledChange(IntConsumer listener) {
+		delegate.onScheduledChange(listener);
+	}
+
+	private static ByteBuffer offersFrame(List<OfferRequest> offers) {
+		return OfferStoreFile.frame(OfferStoreFile.OFFERS_V2, OfferRecordCodec.encode(offers));
+	}
+
+	private static ByteBuffer leasesFrame(Map<String, Long> totals) {
+		return OfferStoreFile.frame(OfferStoreFile.LEASES, OfferRecordCodec.encodeCounts(totals));
+	}
+
+	/** Writes the ledger totals into a snapshot, a bounded number per frame. */
+	private void writeLeases(FileChannel out) throws IOException {
+		Map<String, Long> batch = new HashMap<>();
+		for (Map.Entry<String, Long> total : leases.entrySet()) {
+			batch.put(total.getKey(), total.getValue());
+			if (batch.size() == 1024) {
+				OfferStoreFile.writeFully(out, leasesFrame(batch));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			OfferStoreFile.writeFully(out, leasesFrame(batch));
+		}
+	}
+
+	/**
+	 * The offer stored under the id once every logged write is applied, as
+	 * writers holding the write lock have to see it.
+	 */
+	private OfferRequest current(String offerId) {
+		OfferRequest offer = staged.get(offerId);
+		return offer == null ? delegate.find(offerId) : present(offer);
+	}
+
+	private static OfferRequest present(OfferRequest offer) {
+		return offer == ABSENT ? null : offer;
+	}
+
+	/** What a stored offer leaves under its id: nothing once its window has closed. */
+	private OfferRequest staged(OfferRequest stored) {
+		return OfferLifecycle.closedBy(stored, System.currentTimeMillis()) ? ABSENT : stored;
+	}
+
+	/**
+	 * Appends the frame to the log, to be applied once durable; call holding
+	 * the write lock. A failed write leaves nothing staged or pending.
+	 */
+	private Pending log(ByteBuffer frame, Map<String, OfferRequest> stages, Supplier<Object> apply) {
+		LogSegment segment = currentLog;
+		long end;
+		try {
+			end = segment.write(frame);
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not write the offer log", e);
+		}
+		Pending write = new Pending(segment, end, stages, apply);
+		staged.putAll(stages);
+		pending.add(write);
+		return write;
+	}
+
+	/**
+	 * Waits until the write is durable and applies it, along with the writes
+	 * logged before it, which are durable by then as well.
+	 *
+	 * @return what applying the write returned
+	 */
+	private Object await(Pending write) {
+		try {
+			write.segment.awaitDurable(write.end);
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not sync the offer log", e);
+		}
+		synchronized (applyLock) {
+			while (!write.applied) {
+				applyNext();
+			}
+		}
+		if (write.end >= compactAfterBytes && compactionQueued.compareAndSet(false, true)) {
+			compactor.execute(this::compactQuietly);
+		}
+		if (write.failure != null) {
+			throw write.failure;
+		}
+		return write.result;
+	}
+
+	private void applyNext() {
+		Pending next = pending.poll();
+		try {
+			next.result = next.apply.get();
+		} catch (RuntimeException e) {
+			// checked before it was logged, so this is a bug; the log replays it on restart
+			log.error("event=offer_log_apply_failed error={}", e.toString(), e);
+			next.failure = e;
+		}
+		next.stages.forEach(staged::remove);
+		next.applied = true;
+	}
+
+	/** Syncs the log and applies every pending write; call holding the write lock. */
+	private void applyLogged() throws IOException {
+		if (pending.isEmpty()) {
+			return;
+		}
+		currentLog.awaitDurable(currentLog.written);
+		synchronized (applyLock) {
+			while (!pending.isEmpty()) {
+				applyNext();
+			}
+		}
+	}
+
+	@Override
+	public OfferCatalogueBuilder newCatalogue() {
+		try {
+			return new Builder(delegate.newCatalogue());
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not start a new offer snapshot", e);
+		}
+	}
+
+	@Override
+	public SegmentRegistry segments() {
+		return delegate.segments();
+	}
+
+	@Override
+	public List<Offer> offersOf(int restaurantId) {
+		return delegate.offersOf(restaurantId);
+	}
+
+	@Override
+	public Offer findFirstMatch(int restaurantId, long segmentMask) {
+		return delegate.findFirstMatch(restaurantId, segmentMask);
+	}
+
+	@Override
+	public Offer findBestMatch(int restaurantId, long segmentMask, int cartValue) {
+		return delegate.findBestMatch(restaurantId, segmentMask, cartValue);
+	}
+
+	@Override
+	public int size() {
+		return delegate.size();
+	}
+
+	@Override
+	public int restaurantCount() {
+		return delegate.restaurantCount();
+	}
+
+	@Override
+	public int countForRestaurant(int restaurantId) {
+		return delegate.countForRestaurant(restaurantId);
+	}
+
+	@Override
+	public int maxOffersPerRestaurant() {
+		return delegate.maxOffersPerRestaurant();
+	}
+
+	/**
+	 * Rotates the log and folds every closed log into a new snapshot. Writers
+	 * are only held up for the rotation.
+	 * <p>
+	 * The fold reads its input twice. The first pass numbers every offer and
+	 * remembers, per id, the number and version of its latest save, forgetting
+	 * ids once deleted, and the version of each id last suspended; the second
+	 * writes the offers that are the latest save of their id, or have none, and
+	 * whose window is still open, followed by the suspensions of those latest
+	 * versions and the ledger totals. Only the ids are held in memory, never
+	 * the offers.
+	 */
+	public void compact() throws IOException {
+		snapshotLock.lock();
+		try {
+			compactionQueued.set(false);
+			long generation = rotate();
+			Path tmp = directory.resolve(SNAPSHOT + TMP_SUFFIX);
+			long start = System.nanoTime();
+			Map<Path, Integer> sources = new LinkedHashMap<>();
+			Path snapshot = directory.resolve(SNAPSHOT);
+			if (Files.exists(snapshot)) {
+				sources.put(snapshot, OfferStoreFile.SNAPSHOT_MAGIC);
+			}
+			for (Path logFile : logFiles().headMap(generation).values()) {
+				sources.put(logFile, OfferStoreFile.LOG_MAGIC);
+			}
+			long now = System.currentTimeMillis();
+			OfferRecordCodec codec = new OfferRecordCodec();
+			Map<String, long[]> latest = new HashMap<>();
+			Map<String, Long> suspended = new HashMap<>();
+			long[] count = new long[1];
+			scanAll(sources, (type, payload) -> {
+				if (type == OfferStoreFile.DELETES) {
+					for (String offerId : codec.decodeIds(payload)) {
+						latest.remove(offerId);
+						suspended.remove(offerId);
+					}
+					return;
+				}
+				if (type == OfferStoreFile.SUSPENDS) {
+					suspended.putAll(codec.decodeCounts(payload));
+					return;
+				}
+				if (!OfferStoreFile.isOffers(type)) {
+					return; // ledger totals are written from memory
+				}
+				for (OfferRequest offer : codec.decode(type, payload)) {
+					long ordinal = count[0]++;
+					if (offer.getOffer_id() != null) {
+						long[] previous = latest.get(offer.getOffer_id());
+						long version = offer.getVersion() != null ? offer.getVersion()
+								: (previous == null ? 0 : previous[1]) + 1;
+						latest.put(offer.getOffer_id(), new long[] { ordinal, version });
+					}
+				}
+			});
+			long[] kept = new long[1];
+			try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				OfferStoreFile.writeFully(out, OfferStoreFile.header(OfferStoreFile.SNAPSHOT_MAGIC, generation));
+				List<OfferRequest> batch = new ArrayList<>(1024);
+				count[0] = 0;
+				scanAll(sources, (type, payload) -> {
+					if (!OfferStoreFile.isOffers(type)) {
+						return;
+					}
+					for (OfferRequest offer : codec.decode(type, payload)) {
+						long ordinal = count[0]++;
+						if (offer.getOffer_id() != null) {
+							long[] last = latest.get(offer.getOffer_id());
+							if (last == null || last[0] != ordinal) {
+								continue;
+							}
+							offer.setVersion(last[1]);
+						}
+						if (OfferLifecycle.closedBy(offer, now)) {
+							continue;
+						}
+						batch.add(offer);
+						if (batch.size() == 1024) {
+							OfferStoreFile.writeFully(out, offersFrame(batch));
+							kept[0] += batch.size();
+							batch.clear();
+						}
+					}
+				});
+				if (!batch.isEmpty()) {
+					OfferStoreFile.writeFully(out, offersFrame(batch));
+					kept[0] += batch.size();
+				}
+				suspended.entrySet().removeIf(suspension -> {
+					long[] last = latest.get(suspension.getKey());
+					return last == null || last[1] != suspension.getValue();
+				});
+				if (!suspended.isEmpty()) {
+					OfferStoreFile.writeFully(out, OfferStoreFile.frame(OfferStoreFile.SUSPENDS,
+							OfferRecordCodec.encodeCounts(suspended)));
+				}
+				// a superset of the totals in the logs folded here
+				writeLeases(out);
+				OfferStoreFile.writeFully(out, OfferStoreFile.frame(OfferStoreFile.END, new byte[0]));
+				out.force(true);
+			}
+			publishSnapshot(tmp, generation);
+			log.info("event=offer_store_compacted generation={} offers_read={} offers_kept={} snapshot_bytes={} elapsed_ms={}",
+					generation, count[0], kept[0], Files.size(directory.resolve(SNAPSHOT)),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} finally {
+			snapshotLock.unlock();
+		}
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (IOException | RuntimeException e) {
+			log.warn("event=offer_store_compaction_failed directory={}", directory, e);
+		}
+	}
+
+	/** Visits the intact frames of each file in turn. */
+	private static void scanAll(Map<Path, Integer> files, OfferStoreFile.FrameVisitor visitor) throws IOException {
+		for (Map.Entry<Path, Integer> file : files.entrySet()) {
+			try (FileChannel in = FileChannel.open(file.getKey(), StandardOpenOption.READ)) {
+				OfferStoreFile.readGeneration(in, file.getValue(), file.getKey());
+				OfferStoreFile.scan(in, visitor);
+			}
+		}
+	}
+
+	/**
+	 * Starts a new log generation and returns it; the previous log is synced
+	 * and closed, and the writes pending in it applied, so a snapshot taken
+	 * from here on covers them.
+	 */
+	private long rotate() throws IOException {
+		synchronized (writeLock) {
+			currentLog.checkHealthy();
+			long generation = currentLog.generation + 1;
+			LogSegment next = LogSegment.create(logFile(generation), generation);
+			currentLog.close();
+			currentLog = next;
+			OfferStoreFile.fsyncDirectory(directory);
+			applyLogged();
+			return generation;
+		}
+	}
+
+	/** Renames a complete snapshot into place and drops the logs it absorbed. */
+	private void publishSnapshot(Path tmp, long generation) throws IOException {
+		Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		OfferStoreFile.fsyncDirectory(directory);
+		for (Path absorbed : logFiles().headMap(generation).values()) {
+			Files.deleteIfExists(absorbed);
+		}
+	}
+
+	private void recover() throws IOException {
+		long start = System.nanoTime();
+		try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + TMP_SUFFIX)) {
+			for (Path leftover : leftovers) {
+				Files.delete(leftover);
+			}
+		}
+		OfferCatalogueBuilder catalogue = delegate.newCatalogue();
+		OfferRecordCodec codec = new OfferRecordCodec();
+		// a suspension that no longer matches the stored version is ignored, so only deletes forget them
+		Map<String, Long> suspended = new LinkedHashMap<>();
+		OfferStoreFile.FrameVisitor replay = (type, payload) -> {
+			if (type == OfferStoreFile.DELETES) {
+				for (String offerId : codec.decodeIds(payload)) {
+					catalogue.delete(offerId);
+					suspended.remove(offerId);
+				}
+				return;
+			}
+			if (type == OfferStoreFile.SUSPENDS) {
+				suspended.putAll(codec.decodeCounts(payload));
+				return;
+			}
+			if (type == OfferStoreFile.LEASES) {
+				codec.decodeCounts(payload).forEach((key, leased) -> leases.merge(key, leased, Math::max));
+				return;
+			}
+			for (OfferRequest offer : codec.decode(type, payload)) {
+				catalogue.add(offer);
+			}
+		};
+
+		long firstGeneration = 1;
+		Path snapshot = directory.resolve(SNAPSHOT);
+		if (Files.exists(snapshot)) {
+			try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+				firstGeneration = OfferStoreFile.readGeneration(in, OfferStoreFile.SNAPSHOT_MAGIC, snapshot);
+				if (!OfferStoreFile.scan(in, replay).ended) {
+					throw new IOException(snapshot + " is incomplete or corrupt");
+				}
+			}
+		}
+
+		TreeMap<Long, Path> logs = logFiles();
+		for (Path absorbed : logs.headMap(firstGeneration).values()) {
+			Files.delete(absorbed);
+		}
+		Map.Entry<Long, Path> last = logs.lastEntry();
+		for (Map.Entry<Long, Path> logFile : logs.tailMap(firstGeneration).entrySet()) {
+			try (FileChannel in = FileChannel.open(logFile.getValue(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				OfferStoreFile.readGeneration(in, OfferStoreFile.LOG_MAGIC, logFile.getValue());
+				long validEnd = OfferStoreFile.scan(in, replay).validEnd;
+				if (validEnd < in.size()) {
+					if (!logFile.getKey().equals(last.getKey())) {
+						throw new IOException(logFile.getValue() + " is corrupt at offset " + validEnd);
+					}
+					log.warn("event=offer_log_truncated file={} offset={} dropped_bytes={}", logFile.getValue(), validEnd,
+							in.size() - validEnd);
+					in.truncate(validEnd);
+					in.force(true);
+				}
+			}
+		}
+		catalogue.commit();
+		suspended.forEach(delegate::suspend);
+
+		long generation = last == null || last.getKey() < firstGeneration ? firstGeneration : last.getKey();
+		currentLog = Files.exists(logFile(generation)) ? LogSegment.open(logFile(generation), generation)
+				: LogSegment.create(logFile(generation), generation);
+		OfferStoreFile.fsyncDirectory(directory);
+		log.info("event=offer_store_recovered directory={} offers={} logs={} elapsed_ms={}", directory,
+				catalogue.size(), logs.tailMap(firstGeneration).size(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	private TreeMap<Long, Path> logFiles() throws IOException {
+		TreeMap<Long, Path> logs = new TreeMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				logs.put(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())), file);
+			}
+		}
+		return logs;
+	}
+
+	private Path logFile(long generation) {
+		return directory.resolve(String.format("%s%020d%s", LOG_PREFIX, generation, LOG_SUFFIX));
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		compactor.shutdownNow();
+		synchronized (writeLock) {
+			currentLog.close();
+		}
+	}
+
+	/**
+	 * One log file. Writes happen under the repository's write lock; syncing
+	 * is done by whichever writer gets here first and covers everything
+	 * written up to that point (group commit).
+	 */
+	private static final class LogSegment {
+
+		final long generation;
+
+		private final FileChannel channel;
+
+		private volatile long written;
+
+		private long synced;
+
+		private boolean closed;
+
+		/** Set once a write or sync failed; the segment refuses everything after. */
+		private volatile IOException failure;
+
+		private LogSegment(FileChannel channel, long generation) throws IOException {
+			this.channel = channel;
+			this.generation = generation;
+			this.written = channel.size();
+			this.synced = written;
+		}
+
+		static LogSegment create(Path file, long generation) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			OfferStoreFile.writeFully(channel, OfferStoreFile.header(OfferStoreFile.LOG_MAGIC, generation));
+			channel.force(true);
+			return new LogSegment(channel, generation);
+		}
+
+		static LogSegment open(Path file, long generation) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+			channel.position(channel.size());
+			return new LogSegment(channel, generation);
+		}
+
+		long write(ByteBuffer frame) throws IOException {
+			checkHealthy();
+			try {
+				OfferStoreFile.writeFully(channel, frame);
+				written = channel.position();
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+			return written;
+		}
+
+		synchronized void awaitDurable(long end) throws IOException {
+			checkHealthy();
+			if (synced >= end || closed) {
+				return; // a rotation syncs before closing
+			}
+			long target = written;
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+			synced = target;
+		}
+
+		void checkHealthy() throws IOException {
+			if (failure != null) {
+				throw new IOException("offer log generation " + generation + " failed earlier", failure);
+			}
+		}
+
+		synchronized void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				try {
+					if (failure == null) {
+						channel.force(false);
+						synced = written;
+					}
+				} catch (IOException e) {
+					failure = e;
+					throw e;
+				} finally {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	/** A logged write waiting to be applied. */
+	private static final class Pending {
+
+		final LogSegment segment;
+
+		final long end;
+
+		/** What the write staged, removed again once it is applied. */
+		final Map<String, OfferRequest> stages;
+
+		final Supplier<Object> apply;
+
+		boolean applied;
+
+		Object result;
+
+		RuntimeException failure;
+
+		Pending(LogSegment segment, long end, Map<String, OfferRequest> stages, Supplier<Object> apply) {
+			this.segment = segment;
+			this.end = end;
+			this.stages = stages;
+			this.apply = apply;
+		}
+	}
+
+	private final class Builder implements OfferCatalogueBuilder {
+
+		private final OfferCatalogueBuilder catalogue;
+
+		private final Path tmp;
+
+		private final FileChannel out;
+
+		private final List<OfferRequest> pending = new ArrayList<>();
+
+		private Builder(OfferCatalogueBuilder catalogue) throws IOException {
+			this.catalogue = catalogue;
+			this.tmp = Files.createTempFile(directory, SNAPSHOT + "-", TMP_SUFFIX);
+			this.out = FileChannel.open(tmp, StandardOpenOption.WRITE);
+			OfferStoreFile.writeFully(out, OfferStoreFile.header(OfferStoreFile.SNAPSHOT_MAGIC, 0));
+		}
+
+		@Override
+		public void add(OfferRequest offerRequest) {
+			catalogue.add(offerRequest);
+			pending.add(offerRequest);
+			if (pending.size() == 1024) {
+				flush();
+			}
+		}
+
+		@Override
+		public void delete(String offerId) {
+			catalogue.delete(offerId);
+			flush();
+			try {
+				OfferStoreFile.writeFully(out, OfferStoreFile.frame(OfferStoreFile.DELETES,
+						OfferRecordCodec.encodeIds(Collections.singletonList(offerId))));
+			} catch (IOException e) {
+				throw new UncheckedIOException("could not write the offer snapshot", e);
+			}
+		}
+
+		private void flush() {
+			if (pending.isEmpty()) {
+				return;
+			}
+			try {
+				OfferStoreFile.writeFully(out, offersFrame(pending));
+			} catch (IOException e) {
+				throw new UncheckedIOException("could not write the offer snapshot", e);
+			}
+			pending.clear();
+		}
+
+		@Override
+		public int size() {
+			return catalogue.size();
+		}
+
+		@Override
+		public void commit() {
+			try {
+				flush();
+				snapshotLock.lock();
+				try {
+					synchronized (writeLock) {
+						// the ledger outlives the catalogue, and its totals are only in the logs about to go
+						writeLeases(out);
+						OfferStoreFile.writeFully(out, OfferStoreFile.frame(OfferStoreFile.END, new byte[0]));
+						out.force(true);
+						long generation = rotate();
+						OfferStoreFile.writeFully(out.position(0),
+								OfferStoreFile.header(OfferStoreFile.SNAPSHOT_MAGIC, generation));
+						out.force(true);
+						out.close();
+						publishSnapshot(tmp, generation);
+						catalogue.commit();
+					}
+				} finally {
+					snapshotLock.unlock();
+				}
+			} catch (IOException e) {
+				abort();
+				throw new UncheckedIOException("could not write the offer snapshot", e);
+			}
+		}
+
+		@Override
+		public void abort() {
+			try {
+				out.close();
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				log.warn("event=offer_snapshot_abort_failed file={}", tmp, e);
+			}
+		}
+	}
+
+}
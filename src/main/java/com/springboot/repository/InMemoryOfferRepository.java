@@ -0,0 +1,654 @@
+package com.springboot.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.property.OfferProperties;
+import com.springboot.rule.DiscountRule;
+import com.springboot.rule.DiscountRuleCompiler;
+import com.springboot.timer.HashedTimingWheel;
+
+/**
+ * Offers indexed by restaurant. Segment names are interned by a
+ * {@link SegmentRegistry} and every offer carries the bitmask of its segments,
+ * so matching a request's segments against an offer is a single AND; a
+ * request with a segment past the registry's mask bits is matched by name.
+ * Each restaurant remembers the index of its first offer per segment, which
+ * is the offer a linear scan over all offers would have found first.
+ * <p>
+ * Every restaurant's offers live in an immutable {@link RestaurantOffers}
+ * snapshot. Writers replace the snapshot of one restaurant under that map
+ * entry's lock, readers only ever do a lock-free {@code get} and never see a
+ * partially applied write. A full catalogue reload is built in a separate map
+ * and published with a single volatile write, together with the
+ * {@link SegmentRegistry#successor() registry} of the segments it uses;
+ * offers saved while a reload is being committed may be dropped by it.
+ * <p>
+ * Next to the insertion-ordered offers every restaurant keeps them ranked
+ * by {@link Offer#getDiscountCap() discount cap} and then
+ * {@link Offer#getPercentCap() percent cap}, both descending. A best-offer
+ * lookup walks that ranking and stops as soon as no remaining offer's cap can
+ * beat the best discount found so far. Of offers giving the same discount the
+ * one ranked first wins, and among equal caps the earlier saved.
+ * <p>
+ * Offers are compiled into their discount rules before anything is published,
+ * so an offer that does not compile leaves the catalogue untouched.
+ * <p>
+ * Offers with an id or a validity window are tracked by an
+ * {@link OfferLifecycle}; replacing or removing one rebuilds its restaurant's
+ * snapshot without it, so the catalogue only ever holds live offers.
+ */
+@Repository
+@Qualifier(OfferRepository.CATALOGUE)
+@ConditionalOnProperty(prefix = "offer.store", name = "mode", havingValue = "heap", matchIfMissing = true)
+public class InMemoryOfferRepository implements OfferRepository {
+
+	private final DiscountRuleCompiler ruleCompiler;
+
+	private volatile SegmentRegistry segments = new SegmentRegistry();
+
+	private final HashedTimingWheel wheel;
+
+	private final List<IntConsumer> scheduledChangeListeners = new CopyOnWriteArrayList<>();
+
+	private final OfferLifecycle.Target<Offer> liveTarget = new LiveTarget();
+
+	/** Compiled rules by offer terms, shared by offers that only differ in restaurant and segments. */
+	private final ConcurrentMap<OfferRequest, DiscountRule> rules = new ConcurrentHashMap<>();
+
+	/** The terms each shared rule was compiled from, by rule instance. */
+	private final ConcurrentMap<DiscountRule, OfferRequest> ruleTerms = new ConcurrentHashMap<>();
+
+	private volatile ConcurrentMap<Integer, RestaurantOffers> offersByRestaurant = new ConcurrentHashMap<>();
+
+	private volatile OfferLifecycle<Offer> lifecycle;
+
+	/** A repository whose validity windows only move when the caller advances the wheel. */
+	public InMemoryOfferRepository() {
+		this(new DiscountRuleCompiler(), new HashedTimingWheel("offer-lifecycle", 1000, 512));
+	}
+
+	@Autowired
+	public InMemoryOfferRepository(DiscountRuleCompiler ruleCompiler, OfferProperties offerProperties) {
+		this(ruleCompiler, new HashedTimingWheel("offer-lifecycle", offerProperties.getLifecycle().getTickMs(),
+				offerProperties.getLifecycle().getWheelSize()));
+		wheel.start();
+	}
+
+	public InMemoryOfferRepository(DiscountRuleCompiler ruleCompiler, HashedTimingWheel wheel) {
+		this.ruleCompiler = ruleCompiler;
+		this.wheel = wheel;
+		this.lifecycle = new OfferLifecycle<>(liveTarget, wheel, this::scheduledChange);
+	}
+
+	@Override
+	public long put(OfferRequest offerRequest) {
+		if (OfferLifecycle.isTracked(offerRequest)) {
+			long version;
+			do {
+				version = lifecycle.put(offerRequest, false);
+			} while (version == OfferLifecycle.RETIRED);
+			return version;
+		}
+		Offer offer = compile(offerRequest);
+		offersByRestaurant.compute(offer.getRestaurantId(),
+				(id, current) -> (current == null ? RestaurantOffers.EMPTY : current).with(offer));
+		return 0;
+	}
+
+	@Override
+	public void saveAll(Collection<OfferRequest> offerRequests) {
+		Map<Integer, List<Offer>> offersById = new LinkedHashMap<>();
+		Map<OfferRequest, Offer> compiled = new IdentityHashMap<>();
+		boolean tracked = false;
+		// everything that can reject an offer happens here, before any of them is saved
+		for (OfferRequest offerRequest : offerRequests) {
+			if (OfferLifecycle.isTracked(offerRequest)) {
+				OfferLifecycle.validate(offerRequest);
+				liveTarget.check(offerRequest);
+				tracked = true;
+			} else {
+				Offer offer = compile(offerRequest);
+				offersById.computeIfAbsent(offer.getRestaurantId(), id -> new ArrayList<>()).add(offer);
+				compiled.put(offerRequest, offer);
+			}
+		}
+		if (tracked) {
+			for (OfferRequest offerRequest : offerRequests) {
+				saveChecked(offerRequest, compiled.get(offerRequest));
+			}
+			return;
+		}
+		ConcurrentMap<Integer, RestaurantOffers> live = offersByRestaurant;
+		offersById.forEach((restaurantId, offers) -> live.compute(restaurantId,
+				(id, current) -> (current == null ? RestaurantOffers.EMPTY : current).withAll(offers)));
+	}
+
+	@Override
+	public void check(Collection<OfferRequest> offerRequests) {
+		for (OfferRequest offerRequest : offerRequests) {
+			if (OfferLifecycle.isTracked(offerRequest)) {
+				OfferLifecycle.validate(offerRequest);
+			}
+			compile(offerRequest);
+		}
+	}
+
+	/** Saves an offer of a batch in order, as compiled for an untracked one. */
+	private void saveChecked(OfferRequest offerRequest, Offer offer) {
+		if (offer != null) {
+			offersByRestaurant.compute(offer.getRestaurantId(),
+					(id, current) -> (current == null ? RestaurantOffers.EMPTY : current).with(offer));
+			return;
+		}
+		while (lifecycle.restoreChecked(offerRequest) == OfferLifecycle.RETIRED) {
+			// a catalogue reload retired the lifecycle; save into the new one
+		}
+	}
+
+	@Override
+	public OfferRequest delete(String offerId, Long expectedVersion) {
+		OfferRequest removed;
+		do {
+			removed = lifecycle.delete(offerId, expectedVersion);
+		} while (removed == OfferLifecycle.RETIRED_OFFER);
+		return removed;
+	}
+
+	@Override
+	public OfferRequest suspend(String offerId, long version) {
+		OfferRequest suspended;
+		do {
+			suspended = lifecycle.suspend(offerId, version);
+		} while (suspended == OfferLifecycle.RETIRED_OFFER);
+		return suspended;
+	}
+
+	@Override
+	public OfferRequest find(String offerId) {
+		return lifecycle.find(offerId);
+	}
+
+	@Override
+	public void export(IntPredicate restaurants, Consumer<OfferRequest> action) {
+		while (true) {
+			OfferLifecycle<Offer> current = lifecycle;
+			// a catalogue swap takes the live lifecycle's lock first, so the catalogue stays put
+			synchronized (current) {
+				if (current != lifecycle) {
+					continue;
+				}
+				Map<Offer, OfferRequest> tracked = new IdentityHashMap<>();
+				List<OfferRequest> unpublished = new ArrayList<>();
+				current.collect(restaurants, tracked, unpublished);
+				offersByRestaurant.forEach((restaurantId, offers) -> {
+					if (restaurants.test(restaurantId)) {
+						for (Offer offer : offers.offers) {
+							OfferRequest source = tracked.get(offer);
+							action.accept(source != null ? source : terms(offer));
+						}
+					}
+				});
+				unpublished.forEach(action);
+				return;
+			}
+		}
+	}
+
+	/** An untracked offer as it was saved. */
+	private OfferRequest terms(Offer offer) {
+		OfferRequest terms = ruleTerms.get(offer.getRule());
+		return new OfferRequest(offer.getRestaurantId(), terms.getOffer_type(), terms.getOffer_value(),
+				new ArrayList<>(offer.getCustomerSegments()), terms.getMax_discount(), terms.getMin_cart_value(),
+				terms.getTiers());
+	}
+
+	@Override
+	public void removeRestaurants(IntPredicate restaurants) {
+		while (!lifecycle.removeRestaurants(restaurants,
+				() -> offersByRestaurant.keySet().removeIf(restaurants::test))) {
+			// a catalogue reload retired the lifecycle; remove from the new one
+		}
+	}
+
+	@Override
+	public void onScheduledChange(IntConsumer listener) {
+		scheduledChangeListeners.add(listener);
+	}
+
+	private void scheduledChange(int restaurantId) {
+		for (IntConsumer listener : scheduledChangeListeners) {
+			listener.accept(restaurantId);
+		}
+	}
+
+	/** The wheel that opens and closes validity windows. */
+	public HashedTimingWheel wheel() {
+		return wheel;
+	}
+
+	@PreDestroy
+	public void close() {
+		wheel.close();
+	}
+
+	@Override
+	public OfferCatalogueBuilder newCatalogue() {
+		return new Builder();
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (RestaurantOffers offers : offersByRestaurant.values()) {
+			size += offers.size;
+		}
+		return size;
+	}
+
+	@Override
+	public int restaurantCount() {
+		return offersByRestaurant.size();
+	}
+
+	@Override
+	public int countForRestaurant(int restaurantId) {
+		RestaurantOffers offers = offersByRestaurant.get(restaurantId);
+		return offers == null ? 0 : offers.size;
+	}
+
+	@Override
+	public int maxOffersPerRestaurant() {
+		int max = 0;
+		for (RestaurantOffers offers : offersByRestaurant.values()) {
+			max = Math.max(max, offers.size);
+		}
+		return max;
+	}
+
+	@Override
+	public SegmentRegistry segments() {
+		return segments;
+	}
+
+	@Override
+	public Offer findBestMatch(int restaurantId, long segmentMask, int cartValue) {
+		RestaurantOffers offers = offersByRestaurant.get(restaurantId);
+		return offers == null ? null : offers.best(segmentMask, cartValue);
+	}
+
+	private Offer compile(OfferRequest offerRequest) {
+		return compile(offerRequest, segments);
+	}
+
+	private Offer compile(OfferRequest offerRequest, SegmentRegistry segments) {
+		OfferRequest terms = new OfferRequest(0, offerRequest.getOffer_type(), offerRequest.getOffer_value(), null,
+				offerRequest.getMax_discount(), offerRequest.getMin_cart_value(), offerRequest.getTiers());
+		DiscountRule rule = rules.computeIfAbsent(terms, key -> {
+			DiscountRule compiled = ruleCompiler.compile(key);
+			ruleTerms.put(compiled, key);
+			return compiled;
+		});
+		return new Offer(offerRequest.getRestaurant_id(), offerRequest.getOffer_type(), offerRequest.getOffer_value(),
+				offerRequest.getCustomer_segment(), segments.registerAll(offerRequest.getCustomer_segment()), rule,
+				OfferLifecycle.capOf(offerRequest));
+	}
+
+	@Override
+	public Offer findFirstMatch(int restaurantId, long segmentMask) {
+		RestaurantOffers offers = offersByRestaurant.get(restaurantId);
+		return offers == null ? null : offers.first(segmentMask);
+	}
+
+	@Override
+	public List<Offer> offersOf(int restaurantId) {
+		RestaurantOffers offers = offersByRestaurant.get(restaurantId);
+		if (offers == null) {
+			return Collections.emptyList();
+		}
+		List<Offer> published = new ArrayList<>(offers.size);
+		for (Offer offer : offers.offers) {
+			if (offer.getRule() != HELD) {
+				published.add(offer);
+			}
+		}
+		return published;
+	}
+
+	/**
+	 * Copy-on-write view of one restaurant's offers. Instances are never
+	 * mutated after construction.
+	 */
+	static final class RestaurantOffers {
+
+		static final RestaurantOffers EMPTY = new RestaurantOffers(new Offer[0], new int[0], new Offer[0], new long[0]);
+
+		/** Highest discount cap first, then highest percent cap. */
+		private static final Comparator<Offer> RANKING = Comparator.comparingInt(Offer::getDiscountCap)
+				.thenComparingInt(Offer::getPercentCap).reversed();
+
+		/** In insertion order. */
+		private final Offer[] offers;
+
+		/** Index into {@link #offers} of the first offer per segment id, {@code -1} if none. */
+		private final int[] firstBySegment;
+
+		private final Offer[] ranked;
+
+		/** Segment masks of {@link #ranked}, kept inline so the walk does not touch unrelated offers. */
+		private final long[] rankedMasks;
+
+		private final int size;
+
+		private RestaurantOffers(Offer[] offers, int[] firstBySegment, Offer[] ranked, long[] rankedMasks) {
+			this.offers = offers;
+			this.firstBySegment = firstBySegment;
+			this.ranked = ranked;
+			this.rankedMasks = rankedMasks;
+			// placeholders of suspended offers hold a place but are not offers
+			this.size = ranked.length;
+		}
+
+		Offer first(long segmentMask) {
+			int first = Integer.MAX_VALUE;
+			for (long bits = segmentMask; bits != 0; bits &= bits - 1) {
+				int segment = Long.numberOfTrailingZeros(bits);
+				if (segment < firstBySegment.length && firstBySegment[segment] >= 0) {
+					first = Math.min(first, firstBySegment[segment]);
+				}
+			}
+			return first == Integer.MAX_VALUE ? null : offers[first];
+		}
+
+		Offer best(long segmentMask, int cartValue) {
+			Offer best = null;
+			int bestDiscount = -1;
+			for (int i = 0; i < ranked.length; i++) {
+				if ((rankedMasks[i] & segmentMask) == 0) {
+					continue;
+				}
+				Offer offer = ranked[i];
+				if (offer.getDiscountCap() <= bestDiscount || bestDiscount == cartValue) {
+					break; // ranked by discount cap, nothing further can do better
+				}
+				if (offer.maxDiscount(cartValue) <= bestDiscount) {
+					continue;
+				}
+				int discount = cartValue - offer.apply(cartValue);
+				if (discount > bestDiscount) {
+					best = offer;
+					bestDiscount = discount;
+				}
+			}
+			return best;
+		}
+
+		RestaurantOffers with(Offer offer) {
+			return withAll(Collections.singletonList(offer));
+		}
+
+		/**
+		 * This restaurant's offers with {@code offer} where the given instance
+		 * was, or last if it is not here.
+		 */
+		RestaurantOffers replacing(Offer previous, Offer offer) {
+			List<Offer> replaced = new ArrayList<>(offers.length + 1);
+			boolean found = false;
+			for (Offer kept : offers) {
+				found |= kept == previous;
+				replaced.add(kept == previous ? offer : kept);
+			}
+			if (!found) {
+				replaced.add(offer);
+			}
+			return EMPTY.withAll(replaced);
+		}
+
+		/** This restaurant's offers without the given instance, {@code null} if none are left. */
+		RestaurantOffers without(Offer offer) {
+			List<Offer> remaining = new ArrayList<>(offers.length);
+			for (Offer kept : offers) {
+				if (kept != offer) {
+					remaining.add(kept);
+				}
+			}
+			return remaining.isEmpty() ? null : EMPTY.withAll(remaining);
+		}
+
+		RestaurantOffers withAll(List<Offer> newOffers) {
+			Offer[] grown = Arrays.copyOf(offers, offers.length + newOffers.size());
+			int[] first = firstBySegment;
+			for (int i = offers.length; i < grown.length; i++) {
+				Offer offer = newOffers.get(i - offers.length);
+				grown[i] = offer;
+				long mask = offer.getSegmentMask();
+				int highest = 63 - Long.numberOfLeadingZeros(mask);
+				if (first.length <= highest) {
+					int length = first.length;
+					first = Arrays.copyOf(first, highest + 1);
+					Arrays.fill(first, length, first.length, -1);
+				} else if (first == firstBySegment) {
+					first = first.clone();
+				}
+				for (long bits = mask; bits != 0; bits &= bits - 1) {
+					int segment = Long.numberOfTrailingZeros(bits);
+					if (first[segment] < 0) {
+						first[segment] = i;
+					}
+				}
+			}
+			Offer[] merged = merge(ranked, newOffers);
+			long[] masks = new long[merged.length];
+			for (int i = 0; i < merged.length; i++) {
+				masks[i] = merged[i].getSegmentMask();
+			}
+			return new RestaurantOffers(grown, first, merged, masks);
+		}
+
+		/**
+		 * Merges new offers into an already ranked array. Both the sort and the
+		 * merge are stable, so offers with equal caps stay in insertion order.
+		 */
+		private static Offer[] merge(Offer[] ranked, List<Offer> offers) {
+			Offer[] added = offers.stream().filter(offer -> offer.getRule() != HELD).toArray(Offer[]::new);
+			Arrays.sort(added, RANKING);
+			Offer[] merged = new Offer[ranked.length + added.length];
+			int i = 0;
+			int j = 0;
+			for (int k = 0; k < merged.length; k++) {
+				merged[k] = j == added.length || i < ranked.length && RANKING.compare(ranked[i], added[j]) <= 0 ? ranked[i++]
+						: added[j++];
+			}
+			return merged;
+		}
+	}
+
+	/** Publishes into the live catalogue, one restaurant snapshot at a time. */
+	private final class LiveTarget implements OfferLifecycle.Target<Offer> {
+
+		@Override
+		public void check(OfferRequest offer) {
+			compile(offer);
+		}
+
+		@Override
+		public Offer publish(OfferRequest offerRequest) {
+			Offer offer = compile(offerRequest);
+			offersByRestaurant.compute(offer.getRestaurantId(),
+					(id, current) -> (current == null ? RestaurantOffers.EMPTY : current).with(offer));
+			return offer;
+		}
+
+		@Override
+		public Offer replace(Offer previous, OfferRequest previousOffer, OfferRequest offerRequest) {
+			if (previous.getRestaurantId() != offerRequest.getRestaurant_id()) {
+				Offer offer = publish(offerRequest);
+				unpublish(previous, previousOffer);
+				return offer;
+			}
+			return swap(previous, compile(offerRequest));
+		}
+
+		@Override
+		public Offer hold(Offer handle, OfferRequest offerRequest) {
+			return swap(handle, placeholder(handle));
+		}
+
+		private Offer swap(Offer previous, Offer offer) {
+			offersByRestaurant.compute(offer.getRestaurantId(),
+					(id, current) -> (current == null ? RestaurantOffers.EMPTY : current).replacing(previous, offer));
+			return offer;
+		}
+
+		@Override
+		public void unpublish(Offer offer, OfferRequest offerRequest) {
+			offersByRestaurant.computeIfPresent(offer.getRestaurantId(), (id, current) -> current.without(offer));
+		}
+	}
+
+	/** The rule of placeholders, which never take anything off. */
+	private static final DiscountRule HELD = cartValue -> cartValue;
+
+	/** Holds a suspended offer's place: it has no segments, so no lookup matches it. */
+	private static Offer placeholder(Offer held) {
+		return new Offer(held.getRestaurantId(), held.getOfferType(), held.getOfferValue(), Collections.emptyList(), 0,
+				HELD);
+	}
+
+	private final class Builder implements OfferCatalogueBuilder, OfferLifecycle.Target<Offer> {
+
+		private final Map<Integer, List<Offer>> offersById = new HashMap<>();
+
+		private final SegmentRegistry builtSegments = segments.successor();
+
+		/** Offers added and then deleted, left out on commit. */
+		private final Set<Offer> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		/** Offers added and then replaced, by what took their place on commit. */
+		private final Map<Offer, Offer> replaced = new IdentityHashMap<>();
+
+		private final OfferLifecycle<Offer> built = OfferLifecycle.building(this, wheel,
+				InMemoryOfferRepository.this::scheduledChange);
+
+		private int size;
+
+		@Override
+		public void add(OfferRequest offerRequest) {
+			if (OfferLifecycle.isTracked(offerRequest)) {
+				built.put(offerRequest, true);
+			} else {
+				publish(offerRequest);
+			}
+		}
+
+		@Override
+		public void delete(String offerId) {
+			built.delete(offerId, null);
+		}
+
+		@Override
+		public void check(OfferRequest offer) {
+			compile(offer, builtSegments);
+		}
+
+		@Override
+		public Offer publish(OfferRequest offerRequest) {
+			Offer offer = compile(offerRequest, builtSegments);
+			offersById.computeIfAbsent(offer.getRestaurantId(), id -> new ArrayList<>()).add(offer);
+			size++;
+			return offer;
+		}
+
+		@Override
+		public Offer replace(Offer previous, OfferRequest previousOffer, OfferRequest offerRequest) {
+			if (previous.getRestaurantId() != offerRequest.getRestaurant_id()) {
+				unpublish(previous, previousOffer);
+				return publish(offerRequest);
+			}
+			Offer offer = compile(offerRequest, builtSegments);
+			replaced.put(previous, offer);
+			if (previous.getRule() == HELD) {
+				size++;
+			}
+			return offer;
+		}
+
+		@Override
+		public Offer hold(Offer handle, OfferRequest offerRequest) {
+			Offer placeholder = placeholder(handle);
+			replaced.put(handle, placeholder);
+			size--;
+			return placeholder;
+		}
+
+		@Override
+		public void unpublish(Offer offer, OfferRequest offerRequest) {
+			dropped.add(offer);
+			if (offer.getRule() != HELD) {
+				size--;
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void commit() {
+			ConcurrentMap<Integer, RestaurantOffers> catalogue = new ConcurrentHashMap<>(
+					Math.max(16, (int) (offersById.size() / 0.75f) + 1));
+			offersById.forEach((restaurantId, offers) -> {
+				if (!replaced.isEmpty()) {
+					offers.replaceAll(offer -> {
+						while (replaced.containsKey(offer)) {
+							offer = replaced.get(offer);
+						}
+						return offer;
+					});
+				}
+				if (!dropped.isEmpty()) {
+					offers.removeIf(dropped::contains);
+				}
+				if (!offers.isEmpty()) {
+					catalogue.put(restaurantId, RestaurantOffers.EMPTY.withAll(offers));
+				}
+			});
+			OfferLifecycle<Offer> previous = lifecycle;
+			synchronized (previous) {
+				synchronized (built) {
+					segments = builtSegments;
+					offersByRestaurant = catalogue;
+					lifecycle = built;
+					built.start(liveTarget);
+					previous.retire();
+				}
+			}
+		}
+	}
+
+}
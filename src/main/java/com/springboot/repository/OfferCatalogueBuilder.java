@@ -0,0 +1,33 @@
+package com.springboot.repository;
+
+import com.springboot.controller.OfferRequest;
+
+/**
+ * Accumulates a complete offer catalogue next to the live one. Not thread-safe;
+ * a builder is meant to be filled by a single importer.
+ */
+public interface OfferCatalogueBuilder {
+
+	/**
+	 * Adds an offer. One with an {@code offer_id} replaces the offer added
+	 * under that id before; its {@code version}, if set, is the version to
+	 * store.
+	 */
+	void add(OfferRequest offerRequest);
+
+	/** Removes the offer added under the id, if any. */
+	void delete(String offerId);
+
+	int size();
+
+	/** Atomically swaps the built catalogue in place of the live one. */
+	void commit();
+
+	/**
+	 * Discards the built catalogue, releasing anything the builder holds. The
+	 * live catalogue is left as it is.
+	 */
+	default void abort() {
+	}
+
+}
@@ -0,0 +1,478 @@
+package com.springboot.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.UnaryOperator;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.RedemptionCap;
+import com.springboot.rule.InvalidOfferException;
+import com.springboot.timer.HashedTimingWheel;
+
+/**
+ * The offers of one catalogue generation that have an {@code offer_id} or a
+ * validity window: which offer each id stands for and in which version, and
+ * when windowed offers open and close. Offers without either never pass
+ * through here, so bulk loads of plain offers cost nothing extra.
+ * <p>
+ * An offer is published to lookups through a {@link Target} while its window
+ * is open. Opening and closing windows are timers on a
+ * {@link HashedTimingWheel}, so nothing ever scans the catalogue for offers
+ * that have become active or expired; expired offers are removed outright and
+ * do not linger in the restaurant they were saved for. Replacing an offer
+ * publishes the new version in place of the old one, so lookups see one or the
+ * other and never neither.
+ * <p>
+ * A generation that is still being built records its timers and only starts
+ * them once {@link #start(Target) started} on the live catalogue. A
+ * {@link #retire() retired} generation cancels its timers and refuses writes,
+ * which callers then retry on the generation that replaced it.
+ * <p>
+ * An offer whose redemptions or budget are spent is {@link #suspend
+ * suspended}: withdrawn from lookups but kept under its id, and its place
+ * held, so that saving a new version with a raised limit publishes it again
+ * where it was.
+ *
+ * @param <H> how the target finds a published offer again
+ */
+final class OfferLifecycle<H> {
+
+	/** Returned by {@link #put} on a retired generation. */
+	static final long RETIRED = -1;
+
+	/** Returned by {@link #delete} on a retired generation; never handed out by a repository. */
+	static final OfferRequest RETIRED_OFFER = new OfferRequest();
+
+	/** Where published offers go. Called with the lifecycle's lock held. */
+	interface Target<H> {
+
+		/**
+		 * Compiles the offer without publishing it.
+		 *
+		 * @throws InvalidOfferException if it does not compile
+		 */
+		void check(OfferRequest offer);
+
+		H publish(OfferRequest offer);
+
+		/**
+		 * Publishes the offer in place of a published one, keeping its
+		 * position in first-match order.
+		 */
+		H replace(H previous, OfferRequest previousOffer, OfferRequest offer);
+
+		/**
+		 * Withdraws a published offer from lookups but keeps its position, so
+		 * that a later {@link #replace} of the returned handle publishes there.
+		 */
+		H hold(H handle, OfferRequest offer);
+
+		void unpublish(H handle, OfferRequest offer);
+
+		/**
+		 * Called at the end of every write, once all handles are recorded; a
+		 * target may move its offers here and {@link OfferLifecycle#remap} them.
+		 */
+		default void settle() {
+		}
+	}
+
+	private final HashedTimingWheel wheel;
+
+	private final IntConsumer onScheduledChange;
+
+	private final Map<String, Registration<H>> byId = new HashMap<>();
+
+	/** Registrations with a timer, scheduled or deferred. */
+	private final Set<Registration<H>> timed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	private Target<H> target;
+
+	private boolean started;
+
+	private boolean retired;
+
+	/** A generation that publishes to the target and schedules timers right away. */
+	OfferLifecycle(Target<H> target, HashedTimingWheel wheel, IntConsumer onScheduledChange) {
+		this(target, wheel, onScheduledChange, true);
+	}
+
+	/** A generation that is being built into the target and starts its timers later. */
+	static <H> OfferLifecycle<H> building(Target<H> target, HashedTimingWheel wheel, IntConsumer onScheduledChange) {
+		return new OfferLifecycle<>(target, wheel, onScheduledChange, false);
+	}
+
+	private OfferLifecycle(Target<H> target, HashedTimingWheel wheel, IntConsumer onScheduledChange, boolean started) {
+		this.target = target;
+		this.wheel = wheel;
+		this.onScheduledChange = onScheduledChange;
+		this.started = started;
+	}
+
+	/** Whether the offer has to be saved through a lifecycle rather than straight into the catalogue. */
+	static boolean isTracked(OfferRequest offer) {
+		return offer.getOffer_id() != null || offer.getValid_from() != null || offer.getValid_until() != null
+				|| offer.getMax_redemptions() != null || offer.getBudget() != null;
+	}
+
+	/** The redemption limits of a stored offer, {@code null} if it has none. */
+	static RedemptionCap capOf(OfferRequest offer) {
+		if (offer.getMax_redemptions() == null && offer.getBudget() == null) {
+			return null;
+		}
+		return new RedemptionCap(offer.getOffer_id(), offer.getVersion() == null ? 0 : offer.getVersion(),
+				offer.getMax_redemptions() == null ? 0 : offer.getMax_redemptions(),
+				offer.getBudget() == null ? 0 : offer.getBudget());
+	}
+
+	long now() {
+		return wheel.now();
+	}
+
+	/**
+	 * Saves the offer, replacing the one saved under its id. With
+	 * {@code restore} the offer's version is taken as the version to store, as
+	 * when replaying a log, and an offer no newer than the one stored is
+	 * ignored; otherwise it is the version the writer expects to replace, if
+	 * set. An offer whose window has already closed is not kept, and removes
+	 * the one saved under its id.
+	 *
+	 * @return the version now stored, or {@link #RETIRED}
+	 * @throws OfferVersionConflictException if the expected version is not the stored one
+	 */
+	synchronized long put(OfferRequest offer, boolean restore) {
+		if (retired) {
+			return RETIRED;
+		}
+		validate(offer);
+		target.check(offer);
+		return store(offer, restore);
+	}
+
+	/**
+	 * Restores an offer that has already passed {@link #validate} and
+	 * compiled, as {@link #put} with {@code restore} does, so it cannot fail.
+	 *
+	 * @return the version now stored, or {@link #RETIRED}
+	 */
+	synchronized long restoreChecked(OfferRequest offer) {
+		if (retired) {
+			return RETIRED;
+		}
+		return store(offer, true);
+	}
+
+	private long store(OfferRequest offer, boolean restore) {
+		String offerId = offer.getOffer_id();
+		Registration<H> previous = offerId == null ? null : byId.get(offerId);
+		long current = previous == null ? 0 : previous.offer.getVersion();
+		long version;
+		if (restore) {
+			if (previous != null && offer.getVersion() != null && offer.getVersion() <= current) {
+				return current;
+			}
+			version = offer.getVersion() != null ? offer.getVersion() : current + 1;
+		} else {
+			checkVersion(offerId, offer.getVersion(), current);
+			version = current + 1;
+		}
+		Registration<H> next = new Registration<>(stored(offer, version));
+		long now = now();
+		if (previous != null) {
+			cancel(previous);
+		}
+		if (closedBy(next.offer, now)) {
+			if (previous != null) {
+				byId.remove(offerId);
+				unpublish(previous);
+				target.settle();
+			}
+			return version;
+		}
+		if (offerId != null) {
+			byId.put(offerId, next);
+		}
+		if (next.offer.getValid_from() != null && next.offer.getValid_from() > now) {
+			if (previous != null) {
+				unpublish(previous);
+			}
+			schedule(next, next.offer.getValid_from());
+		} else {
+			next.handle = previous != null && previous.handle != null
+					? target.replace(previous.handle, previous.offer, next.offer)
+					: target.publish(next.offer);
+			if (next.offer.getValid_until() != null) {
+				schedule(next, next.offer.getValid_until());
+			}
+		}
+		target.settle();
+		return version;
+	}
+
+	/**
+	 * Removes the offer saved under the id.
+	 *
+	 * @return the removed offer, {@code null} if there was none, or
+	 * {@link #RETIRED_OFFER}
+	 */
+	synchronized OfferRequest delete(String offerId, Long expectedVersion) {
+		if (retired) {
+			return RETIRED_OFFER;
+		}
+		Registration<H> registration = byId.get(offerId);
+		if (registration == null) {
+			if (expectedVersion != null && expectedVersion != 0) {
+				throw new OfferVersionConflictException(offerId, expectedVersion, 0);
+			}
+			return null;
+		}
+		checkVersion(offerId, expectedVersion, registration.offer.getVersion());
+		byId.remove(offerId);
+		cancel(registration);
+		unpublish(registration);
+		target.settle();
+		return registration.offer;
+	}
+
+	/**
+	 * Withdraws the offer saved under the id from lookups if it is published in
+	 * that version. It stays saved, and is published again only when replaced.
+	 *
+	 * @return the withdrawn offer, {@code null} if there was none to withdraw,
+	 * or {@link #RETIRED_OFFER}
+	 */
+	synchronized OfferRequest suspend(String offerId, long version) {
+		if (retired) {
+			return RETIRED_OFFER;
+		}
+		Registration<H> registration = byId.get(offerId);
+		if (registration == null || registration.offer.getVersion() != version || registration.handle == null
+				|| registration.suspended) {
+			return null;
+		}
+		registration.handle = target.hold(registration.handle, registration.offer);
+		registration.suspended = true;
+		target.settle();
+		return registration.offer;
+	}
+
+	synchronized OfferRequest find(String offerId) {
+		Registration<H> registration = byId.get(offerId);
+		return registration == null ? null : registration.offer;
+	}
+
+	/**
+	 * Collects the offers of the matching restaurants: published and suspended
+	 * ones by handle, the others, waiting for their window, into
+	 * {@code unpublished}.
+	 */
+	synchronized void collect(IntPredicate restaurants, Map<H, OfferRequest> published, List<OfferRequest> unpublished) {
+		for (Registration<H> registration : registrations()) {
+			if (restaurants.test(registration.offer.getRestaurant_id())) {
+				if (registration.handle != null) {
+					published.put(registration.handle, registration.offer);
+				} else {
+					unpublished.add(registration.offer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the offers of the matching restaurants, then runs
+	 * {@code removeUntracked} for the offers that never passed through here,
+	 * still holding the lifecycle's lock.
+	 *
+	 * @return {@code false} on a retired generation
+	 */
+	synchronized boolean removeRestaurants(IntPredicate restaurants, Runnable removeUntracked) {
+		if (retired) {
+			return false;
+		}
+		for (Registration<H> registration : registrations()) {
+			if (restaurants.test(registration.offer.getRestaurant_id())) {
+				if (registration.offer.getOffer_id() != null) {
+					byId.remove(registration.offer.getOffer_id());
+				}
+				cancel(registration);
+				unpublish(registration);
+			}
+		}
+		removeUntracked.run();
+		target.settle();
+		return true;
+	}
+
+	/** Switches a generation that was being built over to the live target and starts its timers. */
+	synchronized void start(Target<H> live) {
+		target = live;
+		started = true;
+		for (Registration<H> registration : timed) {
+			registration.timeout = wheel.schedule(registration.deadline, () -> fire(registration));
+		}
+	}
+
+	/** Cancels every timer; later writes return {@link #RETIRED}. */
+	synchronized void retire() {
+		retired = true;
+		for (Registration<H> registration : timed) {
+			if (registration.timeout != null) {
+				registration.timeout.cancel();
+			}
+		}
+		timed.clear();
+	}
+
+	/** Rewrites the handles of published offers, for targets that move their offers. */
+	synchronized void remap(UnaryOperator<H> moved) {
+		for (Registration<H> registration : allPublished()) {
+			registration.handle = moved.apply(registration.handle);
+		}
+	}
+
+	private List<Registration<H>> allPublished() {
+		List<Registration<H>> published = new ArrayList<>();
+		for (Registration<H> registration : registrations()) {
+			if (registration.handle != null) {
+				published.add(registration);
+			}
+		}
+		return published;
+	}
+
+	/** Every live registration: those with an id, and windowed ones without. */
+	private List<Registration<H>> registrations() {
+		List<Registration<H>> registrations = new ArrayList<>(byId.values());
+		for (Registration<H> registration : timed) {
+			if (registration.offer.getOffer_id() == null) {
+				registrations.add(registration);
+			}
+		}
+		return registrations;
+	}
+
+	private void schedule(Registration<H> registration, long deadline) {
+		registration.deadline = deadline;
+		timed.add(registration);
+		if (started) {
+			registration.timeout = wheel.schedule(deadline, () -> fire(registration));
+		}
+	}
+
+	private void cancel(Registration<H> registration) {
+		registration.cancelled = true;
+		if (timed.remove(registration) && registration.timeout != null) {
+			registration.timeout.cancel();
+		}
+	}
+
+	private void unpublish(Registration<H> registration) {
+		if (registration.handle != null) {
+			target.unpublish(registration.handle, registration.offer);
+			registration.handle = null;
+		}
+	}
+
+	/** Opens or closes the registration's window, whichever is due. */
+	private void fire(Registration<H> registration) {
+		synchronized (this) {
+			if (retired || registration.cancelled || !timed.remove(registration)) {
+				return;
+			}
+			registration.timeout = null;
+			if (registration.handle == null && !registration.suspended) {
+				registration.handle = target.publish(registration.offer);
+				if (registration.offer.getValid_until() != null) {
+					schedule(registration, registration.offer.getValid_until());
+				}
+			} else {
+				registration.cancelled = true;
+				if (registration.offer.getOffer_id() != null) {
+					byId.remove(registration.offer.getOffer_id());
+				}
+				unpublish(registration);
+			}
+			target.settle();
+		}
+		onScheduledChange.accept(registration.offer.getRestaurant_id());
+	}
+
+	/**
+	 * Checks what the lifecycle needs of an offer: a usable id, limits only
+	 * with an id, and a validity window that is not empty.
+	 *
+	 * @throws InvalidOfferException if any of these does not hold
+	 */
+	static void validate(OfferRequest offer) {
+		if (offer.getOffer_id() != null && offer.getOffer_id().isEmpty()) {
+			throw new InvalidOfferException("offer_id must not be empty");
+		}
+		if ((offer.getMax_redemptions() != null || offer.getBudget() != null) && offer.getOffer_id() == null) {
+			throw new InvalidOfferException("max_redemptions and budget need an offer_id");
+		}
+		if (offer.getMax_redemptions() != null && offer.getMax_redemptions() <= 0) {
+			throw new InvalidOfferException("max_redemptions must be positive");
+		}
+		if (offer.getBudget() != null && offer.getBudget() <= 0) {
+			throw new InvalidOfferException("budget must be positive");
+		}
+		if (offer.getValid_from() != null && offer.getValid_until() != null
+				&& offer.getValid_until() <= offer.getValid_from()) {
+			throw new InvalidOfferException("valid_until must be after valid_from");
+		}
+	}
+
+	private static void checkVersion(String offerId, Long expectedVersion, long currentVersion) {
+		if (expectedVersion != null && expectedVersion != currentVersion) {
+			throw new OfferVersionConflictException(offerId, expectedVersion, currentVersion);
+		}
+	}
+
+	/** Whether the offer's window has closed by {@code now}. */
+	static boolean closedBy(OfferRequest offer, long now) {
+		return offer.getValid_until() != null && offer.getValid_until() <= now;
+	}
+
+	/** A copy of the offer carrying the version it is stored under. */
+	static OfferRequest stored(OfferRequest offer, long version) {
+		OfferRequest stored = new OfferRequest(offer.getRestaurant_id(), offer.getOffer_type(), offer.getOffer_value(),
+				offer.getCustomer_segment(), offer.getMax_discount(), offer.getMin_cart_value(), offer.getTiers());
+		stored.setOffer_id(offer.getOffer_id());
+		stored.setValid_from(offer.getValid_from());
+		stored.setValid_until(offer.getValid_until());
+		stored.setVersion(version);
+		stored.setMax_redemptions(offer.getMax_redemptions());
+		stored.setBudget(offer.getBudget());
+		return stored;
+	}
+
+	private static final class Registration<H> {
+
+		final OfferRequest offer;
+
+		/** Set while the offer is published. */
+		H handle;
+
+		long deadline;
+
+		HashedTimingWheel.Timeout timeout;
+
+		/** Replaced, deleted or expired; its timer must not fire any more. */
+		boolean cancelled;
+
+		/** Withdrawn from lookups until replaced; its window only closes. */
+		boolean suspended;
+
+		Registration(OfferRequest offer) {
+			this.offer = offer;
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+package com.springboot.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.controller.OfferTier;
+
+/**
+ * Binary encoding of offers in the offer log and snapshot. Strings are
+ * length-prefixed UTF-8 with {@code -1} for {@code null}; optional fields are
+ * announced by a flags byte, followed by a second one in
+ * {@link OfferStoreFile#OFFERS_V2} frames. Decoding interns strings, so the handful of
+ * segment names and offer types a catalogue uses are shared by all recovered
+ * offers.
+ */
+final class OfferRecordCodec {
+
+	private static final int HAS_MAX_DISCOUNT = 1;
+
+	private static final int HAS_MIN_CART_VALUE = 2;
+
+	private static final int HAS_TIERS = 4;
+
+	private static final int HAS_SEGMENTS = 8;
+
+	private static final int HAS_OFFER_ID = 16;
+
+	private static final int HAS_VALID_FROM = 32;
+
+	private static final int HAS_VALID_UNTIL = 64;
+
+	private static final int HAS_VERSION = 128;
+
+	private static final int HAS_MAX_REDEMPTIONS = 1;
+
+	private static final int HAS_BUDGET = 2;
+
+	private final Map<String, String> strings = new HashMap<>();
+
+	private byte[] scratch = new byte[64];
+
+	/** Encodes the offers for an {@link OfferStoreFile#OFFERS_V2} frame. */
+	static byte[] encode(List<OfferRequest> offers) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * offers.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(offers.size());
+			for (OfferRequest offer : offers) {
+				write(offer, out);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // cannot happen writing to memory
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Encodes the ids of deleted offers. */
+	static byte[] encodeIds(List<String> offerIds) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * offerIds.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(offerIds.size());
+			for (String offerId : offerIds) {
+				writeString(offerId, out);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // cannot happen writing to memory
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Encodes keys each with a number: offer ids with the version suspended, or ledger counters with their total. */
+	static byte[] encodeCounts(Map<String, Long> counts) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(24 * counts.size());
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(counts.size());
+			for (Map.Entry<String, Long> count : counts.entrySet()) {
+				writeString(count.getKey(), out);
+				out.writeLong(count.getValue());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // cannot happen writing to memory
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void write(OfferRequest offer, DataOutputStream out) throws IOException {
+		int flags = (offer.getMax_discount() != null ? HAS_MAX_DISCOUNT : 0)
+				| (offer.getMin_cart_value() != null ? HAS_MIN_CART_VALUE : 0)
+				| (offer.getTiers() != null ? HAS_TIERS : 0)
+				| (offer.getCustomer_segment() != null ? HAS_SEGMENTS : 0)
+				| (offer.getOffer_id() != null ? HAS_OFFER_ID : 0)
+				| (offer.getValid_from() != null ? HAS_VALID_FROM : 0)
+				| (offer.getValid_until() != null ? HAS_VALID_UNTIL : 0)
+				| (offer.getVersion() != null ? HAS_VERSION : 0);
+		int moreFlags = (offer.getMax_redemptions() != null ? HAS_MAX_REDEMPTIONS : 0)
+				| (offer.getBudget() != null ? HAS_BUDGET : 0);
+		out.writeByte(flags);
+		out.writeByte(moreFlags);
+		out.writeInt(offer.getRestaurant_id());
+		writeString(offer.getOffer_type(), out);
+		out.writeInt(offer.getOffer_value());
+		if (offer.getCustomer_segment() != null) {
+			out.writeInt(offer.getCustomer_segment().size());
+			for (String segment : offer.getCustomer_segment()) {
+				writeString(segment, out);
+			}
+		}
+		if (offer.getMax_discount() != null) {
+			out.writeInt(offer.getMax_discount());
+		}
+		if (offer.getMin_cart_value() != null) {
+			out.writeInt(offer.getMin_cart_value());
+		}
+		if (offer.getTiers() != null) {
+			out.writeInt(offer.getTiers().size());
+			for (OfferTier tier : offer.getTiers()) {
+				out.writeInt(tier.getMin_cart_value());
+				writeString(tier.getOffer_type(), out);
+				out.writeInt(tier.getOffer_value());
+				out.writeBoolean(tier.getMax_discount() != null);
+				if (tier.getMax_discount() != null) {
+					out.writeInt(tier.getMax_discount());
+				}
+			}
+		}
+		if (offer.getOffer_id() != null) {
+			writeString(offer.getOffer_id(), out);
+		}
+		if (offer.getValid_from() != null) {
+			out.writeLong(offer.getValid_from());
+		}
+		if (offer.getValid_until() != null) {
+			out.writeLong(offer.getValid_until());
+		}
+		if (offer.getVersion() != null) {
+			out.writeLong(offer.getVersion());
+		}
+		if (offer.getMax_redemptions() != null) {
+			out.writeLong(offer.getMax_redemptions());
+		}
+		if (offer.getBudget() != null) {
+			out.writeLong(offer.getBudget());
+		}
+	}
+
+	private static void writeString(String value, DataOutputStream out) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	/** Decodes every offer in the payload of a frame of the type, which is consumed entirely. */
+	List<OfferRequest> decode(byte type, ByteBuffer payload) {
+		boolean moreFlags = type == OfferStoreFile.OFFERS_V2;
+		int count = payload.getInt();
+		List<OfferRequest> offers = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			offers.add(read(payload, moreFlags));
+		}
+		return offers;
+	}
+
+	/** Decodes the ids of deleted offers; the payload is consumed entirely. */
+	List<String> decodeIds(ByteBuffer payload) {
+		int count = payload.getInt();
+		List<String> offerIds = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			offerIds.add(readString(payload));
+		}
+		return offerIds;
+	}
+
+	/** Decodes what {@link #encodeCounts} encoded; the payload is consumed entirely. */
+	Map<String, Long> decodeCounts(ByteBuffer payload) {
+		int size = payload.getInt();
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (int i = 0; i < size; i++) {
+			counts.put(readString(payload), payload.getLong());
+		}
+		return counts;
+	}
+
+	private OfferRequest read(ByteBuffer in, boolean hasMoreFlags) {
+		int flags = in.get() & 0xff;
+		int moreFlags = hasMoreFlags ? in.get() & 0xff : 0;
+		OfferRequest offer = new OfferRequest(in.getInt(), readString(in), in.getInt(), null);
+		if ((flags & HAS_SEGMENTS) != 0) {
+			int segments = in.getInt();
+			List<String> customerSegments = new ArrayList<>(segments);
+			for (int i = 0; i < segments; i++) {
+				customerSegments.add(readString(in));
+			}
+			offer.setCustomer_segment(customerSegments);
+		}
+		if ((flags & HAS_MAX_DISCOUNT) != 0) {
+			offer.setMax_discount(in.getInt());
+		}
+		if ((flags & HAS_MIN_CART_VALUE) != 0) {
+			offer.setMin_cart_value(in.getInt());
+		}
+		if ((flags & HAS_TIERS) != 0) {
+			int tiers = in.getInt();
+			List<OfferTier> offerTiers = new ArrayList<>(tiers);
+			for (int i = 0; i < tiers; i++) {
+				OfferTier tier = new OfferTier(in.getInt(), readString(in), in.getInt(), null);
+				if (in.get() != 0) {
+					tier.setMax_discount(in.getInt());
+				}
+				offerTiers.add(tier);
+			}
+			offer.setTiers(offerTiers);
+		}
+		if ((flags & HAS_OFFER_ID) != 0) {
+			offer.setOffer_id(readString(in));
+		}
+		if ((flags & HAS_VALID_FROM) != 0) {
+			offer.setValid_from(in.getLong());
+		}
+		if ((flags & HAS_VALID_UNTIL) != 0) {
+			offer.setValid_until(in.getLong());
+		}
+		if ((flags & HAS_VERSION) != 0) {
+			offer.setVersion(in.getLong());
+		}
+		if ((moreFlags & HAS_MAX_REDEMPTIONS) != 0) {
+			offer.setMax_redemptions(in.getLong());
+		}
+		if ((moreFlags & HAS_BUDGET) != 0) {
+			offer.setBudget(in.getLong());
+		}
+		return offer;
+	}
+
+	private String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		in.get(scratch, 0, length);
+		String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+		String interned = strings.putIfAbsent(value, value);
+		return interned != null ? interned : value;
+	}
+
+}
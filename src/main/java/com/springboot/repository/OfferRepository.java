@@ -0,0 +1,198 @@
+package com.springboot.repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+
+public interface OfferRepository {
+
+	/**
+	 * Qualifies the repository that holds the catalogue in memory, as opposed
+	 * to decorators such as {@link DurableOfferRepository}. Exactly one is
+	 * active, chosen by {@code offer.store.mode}.
+	 */
+	String CATALOGUE = "offerCatalogue";
+
+	/**
+	 * Compiles and saves an offer.
+	 *
+	 * @throws com.springboot.rule.InvalidOfferException if the offer cannot be
+	 * compiled into a discount rule
+	 * @see #put(OfferRequest)
+	 */
+	default void save(OfferRequest offerRequest) {
+		put(offerRequest);
+	}
+
+	/**
+	 * Compiles and saves an offer. An offer with an {@code offer_id} replaces
+	 * the offer saved under that id and keeps its place in first-match order,
+	 * unless it moves to another restaurant; if it sets {@code version}, that
+	 * has to be the version stored.
+	 * An offer with a validity window is only matched while the window is
+	 * open and is removed once it closes.
+	 *
+	 * @return the version now stored under the offer's id, {@code 0} for offers
+	 * without one
+	 * @throws com.springboot.rule.InvalidOfferException if the offer cannot be
+	 * compiled into a discount rule
+	 * @throws OfferVersionConflictException if the offer expects another version
+	 */
+	long put(OfferRequest offerRequest);
+
+	/**
+	 * Saves several offers, keeping their relative order. Implementations may
+	 * batch the work per restaurant. Nothing is saved if any offer fails to
+	 * compile. Offers with an id replace what is saved under it; a version they
+	 * set is stored as is rather than checked, as for a catalogue load, unless
+	 * that or a newer version is stored already.
+	 */
+	void saveAll(Collection<OfferRequest> offerRequests);
+
+	/**
+	 * Throws what {@link #put} or {@link #saveAll} would for the offers' terms,
+	 * without saving any of them; the catalogue's state, such as stored
+	 * versions, is not consulted.
+	 *
+	 * @throws com.springboot.rule.InvalidOfferException if an offer cannot be
+	 * compiled into a discount rule
+	 */
+	void check(Collection<OfferRequest> offerRequests);
+
+	/**
+	 * Removes the offer saved under the id.
+	 *
+	 * @param expectedVersion the version the caller expects to remove, or
+	 * {@code null} to remove whatever is stored
+	 * @return the removed offer, {@code null} if no offer has the id
+	 * @throws OfferVersionConflictException if another version is stored
+	 */
+	OfferRequest delete(String offerId, Long expectedVersion);
+
+	/**
+	 * Withdraws the offer saved under the id from lookups, if that version of
+	 * it is published, e.g. once its budget is spent. It stays saved and comes
+	 * back when a new version is saved.
+	 *
+	 * @return the withdrawn offer, {@code null} if that version was not published
+	 */
+	OfferRequest suspend(String offerId, long version);
+
+	/**
+	 * Returns the offer saved under the id, with its stored version, or
+	 * {@code null}. The offer may be waiting for its validity window to open.
+	 */
+	OfferRequest find(String offerId);
+
+	/**
+	 * Hands every offer saved for the matching restaurants to the action, as
+	 * it would be saved again: offers with an id, window or limits as stored,
+	 * with their version, including ones whose window has not opened yet.
+	 * A restaurant's published offers come in the order lookups see them.
+	 * Writes of tracked offers wait until the export is done.
+	 */
+	void export(IntPredicate restaurants, Consumer<OfferRequest> action);
+
+	/** Removes every offer of the matching restaurants. */
+	void removeRestaurants(IntPredicate restaurants);
+
+	/**
+	 * Registers a callback run with a restaurant's id whenever a validity
+	 * window opening or closing changed what its lookups return. Writes made
+	 * through this interface do not trigger it.
+	 */
+	void onScheduledChange(IntConsumer listener);
+
+	/**
+	 * Starts building a catalogue that replaces every saved offer once
+	 * {@link OfferCatalogueBuilder#commit() committed}. Until then readers keep
+	 * seeing the current catalogue.
+	 */
+	OfferCatalogueBuilder newCatalogue();
+
+	/**
+	 * The registry whose ids make up the segment masks this repository is
+	 * queried with.
+	 */
+	SegmentRegistry segments();
+
+	/**
+	 * Returns the earliest saved offer for the restaurant that targets any of
+	 * the segments in the mask, or {@code null} when there is none. A mask
+	 * with {@link SegmentRegistry#OVERFLOW} set may also match offers of other
+	 * segments; look those up by name instead.
+	 */
+	Offer findFirstMatch(int restaurantId, long segmentMask);
+
+	default Offer findFirstMatch(int restaurantId, String segment) {
+		long segmentMask = segments().maskOf(segment);
+		return (segmentMask & SegmentRegistry.OVERFLOW) == 0 ? findFirstMatch(restaurantId, segmentMask)
+				: findFirstMatch(restaurantId, Collections.singleton(segment));
+	}
+
+	/**
+	 * {@link #findFirstMatch(int, long)} comparing segment names rather than
+	 * masks, for segments past the registry's mask bits.
+	 */
+	default Offer findFirstMatch(int restaurantId, Collection<String> segments) {
+		for (Offer offer : offersOf(restaurantId)) {
+			if (!Collections.disjoint(offer.getCustomerSegments(), segments)) {
+				return offer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the offer for the restaurant that targets any of the segments in
+	 * the mask and takes the most off the cart, or {@code null} when there is
+	 * none. Ties are broken deterministically, see the implementation. The
+	 * mask should not have {@link SegmentRegistry#OVERFLOW} set, as for
+	 * {@link #findFirstMatch(int, long)}.
+	 */
+	Offer findBestMatch(int restaurantId, long segmentMask, int cartValue);
+
+	default Offer findBestMatch(int restaurantId, String segment, int cartValue) {
+		long segmentMask = segments().maskOf(segment);
+		return (segmentMask & SegmentRegistry.OVERFLOW) == 0 ? findBestMatch(restaurantId, segmentMask, cartValue)
+				: findBestMatch(restaurantId, Collections.singleton(segment), cartValue);
+	}
+
+	/**
+	 * {@link #findBestMatch(int, long, int)} comparing segment names rather
+	 * than masks; of offers giving the same discount the earliest saved wins.
+	 */
+	default Offer findBestMatch(int restaurantId, Collection<String> segments, int cartValue) {
+		Offer best = null;
+		int bestDiscount = -1;
+		for (Offer offer : offersOf(restaurantId)) {
+			if (offer.maxDiscount(cartValue) > bestDiscount
+					&& !Collections.disjoint(offer.getCustomerSegments(), segments)) {
+				int discount = cartValue - offer.apply(cartValue);
+				if (discount > bestDiscount) {
+					best = offer;
+					bestDiscount = discount;
+				}
+			}
+		}
+		return best;
+	}
+
+	/** The restaurant's offers in first-match order. */
+	List<Offer> offersOf(int restaurantId);
+
+	int size();
+
+	int restaurantCount();
+
+	int countForRestaurant(int restaurantId);
+
+	int maxOffersPerRestaurant();
+
+}
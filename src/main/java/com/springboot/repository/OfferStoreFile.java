@@ -0,0 +1,177 @@
+package com.springboot.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout shared by the offer log and the offer snapshot.
+ * <p>
+ * A file starts with a 16 byte header: magic, format version and the log
+ * generation the file belongs to. It is followed by frames of
+ * {@code [int payload length][int CRC32 of type and payload][byte type][payload]}.
+ * A snapshot ends with an empty {@link #END} frame; a log simply stops, and a
+ * frame that is cut short or fails its checksum marks where a crash tore the
+ * last write.
+ * <p>
+ * Files are read through read-only memory mappings of at most
+ * {@value #MAX_WINDOW} bytes at a time, so recovery does no read syscalls and
+ * no copying beyond decoding.
+ */
+final class OfferStoreFile {
+
+	static final int LOG_MAGIC = 0x4f464c47; // "OFLG"
+
+	static final int SNAPSHOT_MAGIC = 0x4f46534e; // "OFSN"
+
+	static final int VERSION = 1;
+
+	static final int HEADER_BYTES = 16;
+
+	static final int FRAME_HEADER_BYTES = 9;
+
+	/** Marks the end of a complete snapshot. */
+	static final byte END = 0;
+
+	/** One or more offers saved together; replayed all or nothing. */
+	static final byte OFFERS = 1;
+
+	/** Ids of offers removed together. */
+	static final byte DELETES = 2;
+
+	/** Like {@link #OFFERS}, with a second flags byte per offer; what is written now. */
+	static final byte OFFERS_V2 = 3;
+
+	/** Ids of offers withdrawn from lookups, each with the version withdrawn. */
+	static final byte SUSPENDS = 4;
+
+	/** Budget ledger counters, each with the total leased from it so far. */
+	static final byte LEASES = 5;
+
+	private static final int MAX_WINDOW = 256 * 1024 * 1024;
+
+	private OfferStoreFile() {
+	}
+
+	static boolean isOffers(byte type) {
+		return type == OFFERS || type == OFFERS_V2;
+	}
+
+	static ByteBuffer header(int magic, long generation) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(magic).putInt(VERSION).putLong(generation);
+		header.flip();
+		return header;
+	}
+
+	static ByteBuffer frame(byte type, byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(payload);
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + payload.length);
+		frame.putInt(payload.length).putInt((int) crc.getValue()).put(type).put(payload);
+		frame.flip();
+		return frame;
+	}
+
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/** Reads the generation out of a file's header, checking its magic. */
+	static long readGeneration(FileChannel channel, int magic, Path file) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+		}
+		header.flip();
+		if (header.remaining() < HEADER_BYTES || header.getInt() != magic) {
+			throw new IOException(file + " is not an offer store file");
+		}
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new IOException(file + " has unsupported format version " + version);
+		}
+		return header.getLong();
+	}
+
+	interface FrameVisitor {
+
+		/** Called with the payload positioned at its first byte and limited to its end. */
+		void frame(byte type, ByteBuffer payload) throws IOException;
+	}
+
+	static final class ScanResult {
+
+		/** Offset just past the last intact frame, not counting an {@link #END} frame. */
+		final long validEnd;
+
+		/** Whether an {@link #END} frame was found. */
+		final boolean ended;
+
+		ScanResult(long validEnd, boolean ended) {
+			this.validEnd = validEnd;
+			this.ended = ended;
+		}
+	}
+
+	/**
+	 * Visits the intact frames after the header, stopping at an {@link #END}
+	 * frame, at the end of the file, or at the first torn or corrupt frame.
+	 */
+	static ScanResult scan(FileChannel channel, FrameVisitor visitor) throws IOException {
+		long size = channel.size();
+		long position = HEADER_BYTES;
+		long windowStart = 0;
+		MappedByteBuffer window = null;
+		CRC32 crc = new CRC32();
+		while (position + FRAME_HEADER_BYTES <= size) {
+			if (window == null || position + FRAME_HEADER_BYTES > windowStart + window.capacity()) {
+				windowStart = position;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAX_WINDOW, size - windowStart));
+			}
+			int offset = (int) (position - windowStart);
+			int length = window.getInt(offset);
+			int checksum = window.getInt(offset + 4);
+			byte type = window.get(offset + 8);
+			long end = position + FRAME_HEADER_BYTES + length;
+			if (length < 0 || end > size) {
+				break;
+			}
+			if (end > windowStart + window.capacity()) {
+				windowStart = position;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+						Math.min(Math.max(MAX_WINDOW, end - windowStart), size - windowStart));
+				offset = 0;
+			}
+			ByteBuffer payload = window.duplicate();
+			payload.limit(offset + FRAME_HEADER_BYTES + length).position(offset + FRAME_HEADER_BYTES);
+			crc.reset();
+			crc.update(type);
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			if (type == END) {
+				return new ScanResult(position, true);
+			}
+			visitor.frame(type, payload);
+			position = end;
+		}
+		return new ScanResult(position, false);
+	}
+
+	static void fsyncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported on every platform; the renames are still atomic
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package com.springboot.repository;
+
+/**
+ * Thrown when a write names the version of an offer it expects to replace and
+ * the catalogue holds a different one.
+ */
+public class OfferVersionConflictException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public OfferVersionConflictException(String offerId, long expectedVersion, long currentVersion) {
+		super("offer " + offerId + " is at version " + currentVersion + ", not " + expectedVersion);
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.springboot.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.springboot.rule.InvalidOfferException;
+
+/**
+ * Interns customer segment names to small integer ids so a set of segments
+ * fits in a {@code long} bitmask. The first {@value #MASK_BITS} ids have a bit
+ * of their own; segments registered beyond them all share the
+ * {@link #OVERFLOW} bit, so a mask with it set may match offers of other
+ * segments and has to be checked against the segment names. A registry never
+ * reuses an id.
+ * <p>
+ * A catalogue replaced as a whole is built with a {@link #successor()}, which
+ * only holds the segments its offers use, so the ids of segments no offer
+ * uses any more are freed. Segments registered again keep their id, and an id
+ * no registry has handed out yet is preferred over a freed one, so a mask
+ * taken just before the catalogue is swapped rarely means other segments
+ * after it.
+ */
+public final class SegmentRegistry {
+
+	/** Ids with a mask bit of their own. */
+	public static final int MASK_BITS = 63;
+
+	/** The bit of every segment whose id is past {@link #MASK_BITS}. */
+	public static final long OVERFLOW = 1L << MASK_BITS;
+
+	private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Long, List<String>> namesByMask = new ConcurrentHashMap<>();
+
+	/** Names by id, {@code null} for an id that is free. */
+	private volatile String[] names = new String[0];
+
+	private volatile int size;
+
+	/** The ids the segments had in the registry this one succeeds. */
+	private final Map<String, Integer> inherited;
+
+	/** Ids handed out so far by this registry and the ones it succeeds; guarded by this. */
+	private int issued;
+
+	public SegmentRegistry() {
+		this(Collections.emptyMap(), 0);
+	}
+
+	private SegmentRegistry(Map<String, Integer> inherited, int issued) {
+		this.inherited = inherited;
+		this.issued = issued;
+	}
+
+	/** An empty registry for a catalogue replacing the one this registry serves. */
+	public synchronized SegmentRegistry successor() {
+		return new SegmentRegistry(new HashMap<>(ids), issued);
+	}
+
+	/** Returns the segment's id, or {@code -1} if it was never registered. */
+	public int idOf(String segment) {
+		Integer id = segment == null ? null : ids.get(segment);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the segment's id, registering it if needed.
+	 *
+	 * @throws InvalidOfferException if the segment is {@code null}
+	 */
+	public int register(String segment) {
+		if (segment == null) {
+			throw new InvalidOfferException("customer_segment must not contain null");
+		}
+		Integer id = ids.get(segment);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(segment);
+			if (id == null) {
+				id = nextId(segment);
+				String[] grown = Arrays.copyOf(names, Math.max(names.length, id + 1));
+				grown[id] = segment;
+				names = grown;
+				size++;
+				ids.put(segment, id);
+			}
+			return id;
+		}
+	}
+
+	private int nextId(String segment) {
+		Integer kept = inherited.get(segment);
+		if (kept != null && kept < MASK_BITS && !taken(kept)) {
+			return kept;
+		}
+		if (issued < MASK_BITS) {
+			return issued++;
+		}
+		// every bit has been handed out once; take a free one, one no inherited segment may come back for first
+		int free = -1;
+		for (int id = 0; id < MASK_BITS; id++) {
+			if (!taken(id)) {
+				if (!inherited.containsValue(id)) {
+					return id;
+				}
+				if (free < 0) {
+					free = id;
+				}
+			}
+		}
+		return free >= 0 ? free : Math.max(names.length, MASK_BITS);
+	}
+
+	private boolean taken(int id) {
+		return id < names.length && names[id] != null;
+	}
+
+	/**
+	 * Returns the mask of the segments, registering the ones not seen before.
+	 *
+	 * @throws InvalidOfferException if the segments are or contain {@code null}
+	 */
+	public long registerAll(Collection<String> segments) {
+		check(segments);
+		long mask = 0;
+		for (String segment : segments) {
+			mask |= bit(register(segment));
+		}
+		return mask;
+	}
+
+	/**
+	 * Checks an offer's segments without registering them.
+	 *
+	 * @throws InvalidOfferException if the segments are or contain {@code null}
+	 */
+	public static void check(Collection<String> segments) {
+		if (segments == null) {
+			throw new InvalidOfferException("customer_segment is required");
+		}
+		for (String segment : segments) {
+			if (segment == null) {
+				throw new InvalidOfferException("customer_segment must not contain null");
+			}
+		}
+	}
+
+	/** Returns the mask of a segment, {@code 0} if it was never registered. */
+	public long maskOf(String segment) {
+		int id = idOf(segment);
+		return id < 0 ? 0 : bit(id);
+	}
+
+	private static long bit(int id) {
+		return id < MASK_BITS ? 1L << id : OVERFLOW;
+	}
+
+	/** Returns the mask of the registered segments among {@code segments}. */
+	public long maskOf(Collection<String> segments) {
+		long mask = 0;
+		for (String segment : segments) {
+			mask |= maskOf(segment);
+		}
+		return mask;
+	}
+
+	/**
+	 * The segment names in a mask, in id order, leaving out the segments behind
+	 * {@link #OVERFLOW}. The lists are shared and unmodifiable.
+	 */
+	public List<String> names(long mask) {
+		List<String> cached = namesByMask.get(mask);
+		if (cached != null) {
+			return cached;
+		}
+		String[] known = names;
+		List<String> segments = new ArrayList<>(Long.bitCount(mask));
+		for (long bits = mask & ~OVERFLOW; bits != 0; bits &= bits - 1) {
+			segments.add(known[Long.numberOfTrailingZeros(bits)]);
+		}
+		List<String> shared = Collections.unmodifiableList(segments);
+		cached = namesByMask.putIfAbsent(mask, shared);
+		return cached != null ? cached : shared;
+	}
+
+	public int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.springboot.rule;
+
+final class CappedPercentDiscountRule implements DiscountRule {
+
+	private final int keptPercent;
+
+	private final int maxDiscount;
+
+	CappedPercentDiscountRule(int percent, int maxDiscount) {
+		this.keptPercent = 100 - Math.min(100, percent);
+		this.maxDiscount = maxDiscount;
+	}
+
+	@Override
+	public int apply(int cartValue) {
+		int discounted = (int) ((long) cartValue * keptPercent / 100);
+		return Math.max(discounted, cartValue - maxDiscount);
+	}
+
+	@Override
+	public int discountCap() {
+		return maxDiscount;
+	}
+
+	@Override
+	public int percentCap() {
+		return 100 - keptPercent;
+	}
+
+	@Override
+	public String toString() {
+		return "percent(" + (100 - keptPercent) + ", max " + maxDiscount + ")";
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.springboot.rule;
+
+/**
+ * A discount compiled from an offer when the offer is saved. Implementations
+ * are immutable and evaluate in integer arithmetic without allocating, so a
+ * rule can be shared by every request that matches the offer.
+ */
+public interface DiscountRule {
+
+	/**
+	 * Returns the cart value after the discount, between {@code 0} and
+	 * {@code cartValue}. {@code cartValue} is never negative.
+	 */
+	int apply(int cartValue);
+
+	/**
+	 * Upper bound on the amount this rule takes off any cart. Used to rank
+	 * offers without applying them; {@link Integer#MAX_VALUE} when unbounded.
+	 */
+	default int discountCap() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Upper bound on the share of any cart this rule takes off, in percent.
+	 */
+	default int percentCap() {
+		return 100;
+	}
+
+	/** Takes a fixed amount off the cart. */
+	static DiscountRule flat(int amount) {
+		return new FlatDiscountRule(amount);
+	}
+
+	/** Takes a percentage of the cart off, rounding the discount up. */
+	static DiscountRule percent(int percent) {
+		return new PercentDiscountRule(percent);
+	}
+
+	/** Same as {@link #percent(int)} but never takes off more than {@code maxDiscount}. */
+	static DiscountRule percent(int percent, int maxDiscount) {
+		return new CappedPercentDiscountRule(percent, maxDiscount);
+	}
+
+	/** Applies {@code rule} only to carts worth at least {@code minCartValue}. */
+	static DiscountRule minCartValue(int minCartValue, DiscountRule rule) {
+		return new MinCartValueDiscountRule(minCartValue, rule);
+	}
+
+	/**
+	 * Applies the rule of the highest tier the cart reaches. {@code thresholds}
+	 * must be ascending and parallel to {@code rules}; carts below the first
+	 * threshold get no discount.
+	 */
+	static DiscountRule tiered(int[] thresholds, DiscountRule[] rules) {
+		return new TieredDiscountRule(thresholds, rules);
+	}
+
+}
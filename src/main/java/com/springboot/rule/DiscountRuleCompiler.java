@@ -0,0 +1,138 @@
+package com.springboot.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.controller.OfferTier;
+
+/**
+ * Turns offers into {@link DiscountRule}s when they are saved, so applying an
+ * offer never looks at its type again. Offer types are looked up in a registry;
+ * types nobody registered are compiled as percentages, which is how they were
+ * priced before rules existed.
+ * <p>
+ * Built-in types:
+ * <ul>
+ * <li>{@code FLATX}: {@code offer_value} off the cart</li>
+ * <li>{@code FLATP}: {@code offer_value} percent off the cart</li>
+ * <li>{@code TIERED}: the rule of the highest entry in {@code tiers} whose
+ * {@code min_cart_value} the cart reaches</li>
+ * </ul>
+ * Any offer can additionally carry {@code max_discount} and
+ * {@code min_cart_value}.
+ */
+@Component
+public class DiscountRuleCompiler {
+
+	public static final String FLAT = "FLATX";
+
+	public static final String PERCENT = "FLATP";
+
+	public static final String TIERED = "TIERED";
+
+	private final Map<String, DiscountRuleFactory> factories = new ConcurrentHashMap<>();
+
+	public DiscountRuleCompiler() {
+		register(FLAT, offer -> DiscountRule.flat(offer.getOffer_value()));
+		register(PERCENT, DiscountRuleCompiler::percent);
+		register(TIERED, this::tiered);
+	}
+
+	/** Registers or replaces the factory for an offer type. */
+	public void register(String offerType, DiscountRuleFactory factory) {
+		factories.put(offerType, factory);
+	}
+
+	public DiscountRule compile(OfferRequest offer) {
+		if (offer.getOffer_type() == null) {
+			throw new InvalidOfferException("offer_type is required");
+		}
+		if (offer.getOffer_value() < 0) {
+			throw new InvalidOfferException("offer_value must not be negative");
+		}
+		DiscountRule rule = factories.getOrDefault(offer.getOffer_type(), DiscountRuleCompiler::percent).create(offer);
+		Integer maxDiscount = offer.getMax_discount();
+		if (maxDiscount != null && !(rule instanceof CappedPercentDiscountRule)) {
+			rule = new CappedDiscountRule(rule, nonNegative(maxDiscount, "max_discount"));
+		}
+		Integer minCartValue = offer.getMin_cart_value();
+		if (minCartValue != null && minCartValue > 0) {
+			rule = DiscountRule.minCartValue(minCartValue, rule);
+		}
+		return rule;
+	}
+
+	private static DiscountRule percent(OfferRequest offer) {
+		Integer maxDiscount = offer.getMax_discount();
+		return maxDiscount == null ? DiscountRule.percent(offer.getOffer_value())
+				: DiscountRule.percent(offer.getOffer_value(), nonNegative(maxDiscount, "max_discount"));
+	}
+
+	private DiscountRule tiered(OfferRequest offer) {
+		List<OfferTier> tiers = offer.getTiers() == null ? new ArrayList<>() : new ArrayList<>(offer.getTiers());
+		if (tiers.isEmpty()) {
+			throw new InvalidOfferException("a TIERED offer needs at least one tier");
+		}
+		tiers.sort((a, b) -> Integer.compare(a.getMin_cart_value(), b.getMin_cart_value()));
+		int[] thresholds = new int[tiers.size()];
+		DiscountRule[] rules = new DiscountRule[tiers.size()];
+		for (int i = 0; i < tiers.size(); i++) {
+			OfferTier tier = tiers.get(i);
+			if (TIERED.equals(tier.getOffer_type())) {
+				throw new InvalidOfferException("tiers cannot be TIERED themselves");
+			}
+			OfferRequest tierOffer = new OfferRequest(offer.getRestaurant_id(), tier.getOffer_type(), tier.getOffer_value(),
+					null);
+			tierOffer.setMax_discount(tier.getMax_discount());
+			thresholds[i] = nonNegative(tier.getMin_cart_value(), "tier min_cart_value");
+			rules[i] = compile(tierOffer);
+		}
+		return DiscountRule.tiered(thresholds, rules);
+	}
+
+	private static int nonNegative(int value, String field) {
+		if (value < 0) {
+			throw new InvalidOfferException(field + " must not be negative");
+		}
+		return value;
+	}
+
+	/** Caps the discount of rules that have no cap of their own. */
+	private static final class CappedDiscountRule implements DiscountRule {
+
+		private final DiscountRule rule;
+
+		private final int maxDiscount;
+
+		CappedDiscountRule(DiscountRule rule, int maxDiscount) {
+			this.rule = rule;
+			this.maxDiscount = maxDiscount;
+		}
+
+		@Override
+		public int apply(int cartValue) {
+			return Math.max(rule.apply(cartValue), cartValue - maxDiscount);
+		}
+
+		@Override
+		public int discountCap() {
+			return Math.min(maxDiscount, rule.discountCap());
+		}
+
+		@Override
+		public int percentCap() {
+			return rule.percentCap();
+		}
+
+		@Override
+		public String toString() {
+			return rule + " max " + maxDiscount;
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.springboot.rule;
+
+import com.springboot.controller.OfferRequest;
+
+/**
+ * Compiles offers of one offer type. Register additional types with
+ * {@link DiscountRuleCompiler#register(String, DiscountRuleFactory)}.
+ */
+@FunctionalInterface
+public interface DiscountRuleFactory {
+
+	/**
+	 * Builds the rule for the offer, throwing {@link InvalidOfferException}
+	 * when the offer cannot be compiled. {@code max_discount} and
+	 * {@code min_cart_value} are applied by the compiler afterwards.
+	 */
+	DiscountRule create(OfferRequest offer);
+
+}
@@ -0,0 +1,26 @@
+package com.springboot.rule;
+
+final class FlatDiscountRule implements DiscountRule {
+
+	private final int amount;
+
+	FlatDiscountRule(int amount) {
+		this.amount = amount;
+	}
+
+	@Override
+	public int apply(int cartValue) {
+		return Math.max(0, cartValue - amount);
+	}
+
+	@Override
+	public int discountCap() {
+		return amount;
+	}
+
+	@Override
+	public String toString() {
+		return "flat(" + amount + ")";
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.springboot.rule;
+
+/**
+ * Thrown when an offer cannot be compiled into a {@link DiscountRule}.
+ */
+public class InvalidOfferException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidOfferException(String message) {
+		super(message);
+	}
+
+}
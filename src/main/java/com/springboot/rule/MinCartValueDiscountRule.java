@@ -0,0 +1,34 @@
+package com.springboot.rule;
+
+final class MinCartValueDiscountRule implements DiscountRule {
+
+	private final int minCartValue;
+
+	private final DiscountRule rule;
+
+	MinCartValueDiscountRule(int minCartValue, DiscountRule rule) {
+		this.minCartValue = minCartValue;
+		this.rule = rule;
+	}
+
+	@Override
+	public int apply(int cartValue) {
+		return cartValue < minCartValue ? cartValue : rule.apply(cartValue);
+	}
+
+	@Override
+	public int discountCap() {
+		return rule.discountCap();
+	}
+
+	@Override
+	public int percentCap() {
+		return rule.percentCap();
+	}
+
+	@Override
+	public String toString() {
+		return rule + " from " + minCartValue;
+	}
+
+}
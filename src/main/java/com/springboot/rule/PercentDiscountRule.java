@@ -0,0 +1,31 @@
+package com.springboot.rule;
+
+/**
+ * {@code floor(cart * (100 - percent) / 100)}, i.e. the discount is rounded up
+ * to the next whole unit. Computed in {@code long} so large carts cannot
+ * overflow.
+ */
+final class PercentDiscountRule implements DiscountRule {
+
+	private final int keptPercent;
+
+	PercentDiscountRule(int percent) {
+		this.keptPercent = 100 - Math.min(100, percent);
+	}
+
+	@Override
+	public int apply(int cartValue) {
+		return (int) ((long) cartValue * keptPercent / 100);
+	}
+
+	@Override
+	public int percentCap() {
+		return 100 - keptPercent;
+	}
+
+	@Override
+	public String toString() {
+		return "percent(" + (100 - keptPercent) + ")";
+	}
+
+}
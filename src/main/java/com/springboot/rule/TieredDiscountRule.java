@@ -0,0 +1,59 @@
+package com.springboot.rule;
+
+final class TieredDiscountRule implements DiscountRule {
+
+	private final int[] thresholds;
+
+	private final DiscountRule[] rules;
+
+	TieredDiscountRule(int[] thresholds, DiscountRule[] rules) {
+		if (thresholds.length != rules.length) {
+			throw new IllegalArgumentException("every tier needs a threshold and a rule");
+		}
+		for (int i = 1; i < thresholds.length; i++) {
+			if (thresholds[i] < thresholds[i - 1]) {
+				throw new IllegalArgumentException("tier thresholds must be ascending");
+			}
+		}
+		this.thresholds = thresholds.clone();
+		this.rules = rules.clone();
+	}
+
+	@Override
+	public int apply(int cartValue) {
+		for (int i = thresholds.length - 1; i >= 0; i--) {
+			if (cartValue >= thresholds[i]) {
+				return rules[i].apply(cartValue);
+			}
+		}
+		return cartValue;
+	}
+
+	@Override
+	public int discountCap() {
+		int cap = 0;
+		for (DiscountRule rule : rules) {
+			cap = Math.max(cap, rule.discountCap());
+		}
+		return cap;
+	}
+
+	@Override
+	public int percentCap() {
+		int cap = 0;
+		for (DiscountRule rule : rules) {
+			cap = Math.max(cap, rule.percentCap());
+		}
+		return cap;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder tiers = new StringBuilder("tiered(");
+		for (int i = 0; i < thresholds.length; i++) {
+			tiers.append(i == 0 ? "" : ", ").append(thresholds[i]).append(": ").append(rules[i]);
+		}
+		return tiers.append(')').toString();
+	}
+
+}
@@ -0,0 +1,408 @@
+package com.springboot.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import com.springboot.VirtualThreads;
+import com.springboot.cache.StripedLruCache;
+import com.springboot.controller.SegmentCacheStats;
+import com.springboot.controller.SegmentEvent;
+import com.springboot.controller.SegmentResponse;
+import com.springboot.property.CartProperties;
+import com.springboot.property.SegmentProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Caches user segments in front of the segment service. Known segments live
+ * for {@code segment.cache.ttl-ms}, users the service answers 404 for are
+ * cached as {@code unknown} for {@code segment.cache.negative-ttl-ms}. Failed
+ * lookups are not cached. Concurrent misses for the same user share a single
+ * upstream call, and batch lookups fan their misses out over a bounded pool,
+ * of virtual threads with {@code cart.threads=virtual}.
+ * <p>
+ * The segment service can also push changes through {@link #push}. Once
+ * events or heartbeats arrive at least every
+ * {@code segment.feed.heartbeat-timeout-ms}, segments cached since the feed
+ * came up are trusted for {@code segment.feed.max-staleness-ms}, so users
+ * are only looked up the first time they are seen. When the feed goes quiet
+ * the cache TTLs apply again, and a {@linkplain #beginResync() resync}
+ * replaces every cached segment with a full snapshot.
+ */
+@Primary
+@Service
+public class CachingSegmentClient implements SegmentClient {
+
+	private static final int CONCURRENCY_LEVEL = 64;
+
+	private final SegmentClient delegate;
+
+	private final boolean enabled;
+
+	private final long ttlNanos;
+
+	private final long negativeTtlNanos;
+
+	private final boolean feedEnabled;
+
+	private final long maxStalenessNanos;
+
+	private final long heartbeatTimeoutNanos;
+
+	private final LongSupplier nanoClock;
+
+	private final SegmentFallback fallback;
+
+	private final StripedLruCache<Integer, CachedSegment> cache;
+
+	private final ConcurrentMap<Integer, CompletableFuture<SegmentResponse>> inFlight = new ConcurrentHashMap<>();
+
+	private final ExecutorService batchExecutor;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder negativeHits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	private final LongAdder loadFailures = new LongAdder();
+
+	private final LongAdder feedEvents = new LongAdder();
+
+	private final LongAdder feedEventsIgnored = new LongAdder();
+
+	private final LongAdder resyncs = new LongAdder();
+
+	/** Whether any event or heartbeat has arrived; until then the feed is down. */
+	private volatile boolean feedSeen;
+
+	private volatile long lastFeedNanos;
+
+	/** Since when the feed has been live without a gap; segments cached earlier may have missed a change. */
+	private volatile long liveSinceNanos;
+
+	@Autowired
+	public CachingSegmentClient(HttpSegmentClient delegate, SegmentProperties segmentProperties,
+			CartProperties cartProperties, MeterRegistry meterRegistry) {
+		this(delegate, segmentProperties.getCache(), segmentProperties.getFeed(),
+				segmentProperties.getClient().getBatchParallelism(),
+				cartProperties.getThreads() == CartProperties.Threads.VIRTUAL ? VirtualThreads.factory("segment-batch-")
+						: null,
+				System::nanoTime, meterRegistry);
+	}
+
+	CachingSegmentClient(SegmentClient delegate, SegmentProperties.Cache cacheProperties, int batchParallelism,
+			LongSupplier nanoClock) {
+		this(delegate, cacheProperties, new SegmentProperties.Feed(), batchParallelism, nanoClock);
+	}
+
+	CachingSegmentClient(SegmentClient delegate, SegmentProperties.Cache cacheProperties,
+			SegmentProperties.Feed feedProperties, int batchParallelism, LongSupplier nanoClock) {
+		this(delegate, cacheProperties, feedProperties, batchParallelism, null, nanoClock, new SimpleMeterRegistry());
+	}
+
+	private CachingSegmentClient(SegmentClient delegate, SegmentProperties.Cache cacheProperties,
+			SegmentProperties.Feed feedProperties, int batchParallelism, ThreadFactory threadFactory,
+			LongSupplier nanoClock, MeterRegistry meterRegistry) {
+		this.delegate = delegate;
+		this.enabled = cacheProperties.isEnabled();
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(cacheProperties.getTtlMs());
+		this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheProperties.getNegativeTtlMs());
+		this.feedEnabled = enabled && feedProperties.isEnabled();
+		this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(feedProperties.getMaxStalenessMs());
+		this.heartbeatTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(feedProperties.getHeartbeatTimeoutMs());
+		this.nanoClock = nanoClock;
+		this.fallback = new SegmentFallback(meterRegistry);
+		this.cache = new StripedLruCache<>(cacheProperties.getMaxSize(), CONCURRENCY_LEVEL);
+		if (threadFactory == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			threadFactory = runnable -> {
+				Thread thread = new Thread(runnable, "segment-batch-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+		this.batchExecutor = Executors.newFixedThreadPool(batchParallelism, threadFactory);
+	}
+
+	@Override
+	public SegmentResponse fetchSegment(int userId) throws IOException {
+		if (!enabled) {
+			return delegate.fetchSegment(userId);
+		}
+		SegmentResponse cached = cached(userId);
+		return cached != null ? cached : load(userId);
+	}
+
+	@Override
+	public CompletableFuture<SegmentResponse> fetchSegmentAsync(int userId) {
+		if (!enabled) {
+			return delegate.fetchSegmentAsync(userId);
+		}
+		SegmentResponse cached = cached(userId);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		CompletableFuture<SegmentResponse> ours = new CompletableFuture<>();
+		CompletableFuture<SegmentResponse> running = inFlight.putIfAbsent(userId, ours);
+		if (running != null) {
+			coalesced.increment();
+			return running;
+		}
+		long startedAt = nanoClock.getAsLong();
+		delegate.fetchSegmentAsync(userId).whenComplete((segmentResponse, error) -> {
+			if (error == null) {
+				store(userId, segmentResponse, startedAt);
+			} else {
+				loadFailures.increment();
+			}
+			inFlight.remove(userId, ours);
+			if (error == null) {
+				ours.complete(segmentResponse);
+			} else {
+				ours.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+			}
+		});
+		return ours;
+	}
+
+	@Override
+	public Map<Integer, SegmentResponse> getSegmentResponses(Collection<Integer> userIds) {
+		Map<Integer, SegmentResponse> segments = new HashMap<>();
+		List<Integer> missing = new ArrayList<>();
+		for (Integer userId : userIds) {
+			SegmentResponse cached = enabled ? cached(userId) : null;
+			if (cached != null) {
+				segments.put(userId, cached);
+			} else {
+				missing.add(userId);
+			}
+		}
+		if (missing.size() == 1) {
+			segments.put(missing.get(0), getSegmentResponse(missing.get(0)));
+		} else if (!missing.isEmpty()) {
+			List<CompletableFuture<SegmentResponse>> lookups = new ArrayList<>(missing.size());
+			for (Integer userId : missing) {
+				lookups.add(CompletableFuture.supplyAsync(() -> getUncachedSegmentResponse(userId), batchExecutor));
+			}
+			for (int i = 0; i < missing.size(); i++) {
+				segments.put(missing.get(i), lookups.get(i).join());
+			}
+		}
+		return segments;
+	}
+
+	@Override
+	public SegmentResponse fallback(int userId, Throwable cause) {
+		return fallback.unknown(userId, cause);
+	}
+
+	private SegmentResponse getUncachedSegmentResponse(int userId) {
+		try {
+			return enabled ? load(userId) : delegate.fetchSegment(userId);
+		} catch (IOException e) {
+			return fallback(userId, e);
+		}
+	}
+
+	private SegmentResponse cached(int userId) {
+		CachedSegment cached = cache.get(userId);
+		if (cached != null && isFresh(cached, nanoClock.getAsLong())) {
+			if (cached.negative) {
+				negativeHits.increment();
+			} else {
+				hits.increment();
+			}
+			return cached.segmentResponse;
+		}
+		misses.increment();
+		return null;
+	}
+
+	private SegmentResponse load(int userId) throws IOException {
+		CompletableFuture<SegmentResponse> ours = new CompletableFuture<>();
+		CompletableFuture<SegmentResponse> running = inFlight.putIfAbsent(userId, ours);
+		if (running != null) {
+			coalesced.increment();
+			return await(running);
+		}
+		try {
+			long startedAt = nanoClock.getAsLong();
+			SegmentResponse segmentResponse = delegate.fetchSegment(userId);
+			store(userId, segmentResponse, startedAt);
+			ours.complete(segmentResponse);
+			return segmentResponse;
+		} catch (IOException | RuntimeException e) {
+			loadFailures.increment();
+			ours.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(userId, ours);
+		}
+	}
+
+	private boolean isFresh(CachedSegment cached, long now) {
+		long age = now - cached.storedAtNanos;
+		if (isFeedLive(now) && cached.storedAtNanos - liveSinceNanos >= 0) {
+			return age < maxStalenessNanos;
+		}
+		return age < (cached.negative ? negativeTtlNanos : ttlNanos);
+	}
+
+	/**
+	 * Caches a looked up segment as of when the lookup started, unless a
+	 * segment pushed since then is cached already.
+	 */
+	private void store(int userId, SegmentResponse segmentResponse, long startedAt) {
+		CachedSegment loaded = new CachedSegment(segmentResponse, startedAt, 0);
+		cache.compute(userId, held -> held != null && held.storedAtNanos - startedAt >= 0 ? held : loaded);
+	}
+
+	public boolean isFeedEnabled() {
+		return feedEnabled;
+	}
+
+	/**
+	 * Caches a segment pushed by the segment service, unless the segment held
+	 * for the user has a newer version. Also counts as a heartbeat.
+	 *
+	 * @return whether the event was applied
+	 */
+	public boolean push(SegmentEvent event) {
+		long now = nanoClock.getAsLong();
+		heartbeat(now);
+		boolean applied = apply(event, now);
+		(applied ? feedEvents : feedEventsIgnored).increment();
+		return applied;
+	}
+
+	/** Keeps the feed live without any change to push. */
+	public void heartbeat() {
+		heartbeat(nanoClock.getAsLong());
+	}
+
+	private synchronized void heartbeat(long now) {
+		if (!isFeedLive(now)) {
+			liveSinceNanos = now;
+		}
+		lastFeedNanos = now;
+		feedSeen = true;
+	}
+
+	private boolean isFeedLive(long now) {
+		return feedSeen && now - lastFeedNanos < heartbeatTimeoutNanos;
+	}
+
+	/**
+	 * Starts replacing every cached segment with a full snapshot: pass each
+	 * user's segment to {@link #restore}, then the returned token to
+	 * {@link #finishResync}. Lookups and pushes carry on meanwhile.
+	 */
+	public long beginResync() {
+		return nanoClock.getAsLong();
+	}
+
+	/** Caches a user's segment from a snapshot, as {@link #push} without counting as a heartbeat. */
+	public boolean restore(SegmentEvent event) {
+		return apply(event, nanoClock.getAsLong());
+	}
+
+	/**
+	 * Drops the segments cached before the resync began, which the snapshot
+	 * did not cover, and takes the feed as live from then on.
+	 */
+	public void finishResync(long startedAt) {
+		cache.removeIf(cached -> cached.storedAtNanos - startedAt < 0);
+		synchronized (this) {
+			liveSinceNanos = startedAt;
+			lastFeedNanos = nanoClock.getAsLong();
+			feedSeen = true;
+		}
+		resyncs.increment();
+	}
+
+	private boolean apply(SegmentEvent event, long now) {
+		SegmentResponse segmentResponse = new SegmentResponse();
+		segmentResponse.setSegment(event.getSegment());
+		segmentResponse.setSegments(event.getSegments());
+		long version = event.getVersion();
+		CachedSegment pushed = new CachedSegment(segmentResponse, now, version);
+		return cache.compute(event.getUser_id(),
+				held -> held != null && version > 0 && held.version >= version ? held : pushed) == pushed;
+	}
+
+	private static SegmentResponse await(CompletableFuture<SegmentResponse> running) throws IOException {
+		try {
+			return running.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new UncheckedIOException(new IOException(cause));
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		batchExecutor.shutdownNow();
+	}
+
+	public void invalidate(int userId) {
+		cache.remove(userId);
+	}
+
+	public SegmentCacheStats stats() {
+		return new SegmentCacheStats(hits.sum(), negativeHits.sum(), misses.sum(), coalesced.sum(),
+				loadFailures.sum(), cache.evictionCount(), cache.size(), feedEvents.sum(), feedEventsIgnored.sum(),
+				resyncs.sum(), isFeedLive(nanoClock.getAsLong()));
+	}
+
+	private static final class CachedSegment {
+
+		final SegmentResponse segmentResponse;
+
+		final boolean negative;
+
+		final long storedAtNanos;
+
+		/** The pushed version, 0 for a looked up segment. */
+		final long version;
+
+		CachedSegment(SegmentResponse segmentResponse, long storedAtNanos, long version) {
+			this.segmentResponse = segmentResponse;
+			this.negative = UNKNOWN_SEGMENT.equals(segmentResponse.getSegment());
+			this.storedAtNanos = storedAtNanos;
+			this.version = version;
+		}
+	}
+
+}
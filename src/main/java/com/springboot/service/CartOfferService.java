@@ -0,0 +1,235 @@
+package com.springboot.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.springboot.VirtualThreads;
+import com.springboot.controller.ApplyOfferRequest;
+import com.springboot.controller.ApplyOfferResponse;
+import com.springboot.controller.SegmentResponse;
+import com.springboot.logging.LogSampler;
+import com.springboot.metrics.OfferMetrics;
+import com.springboot.model.Offer;
+import com.springboot.property.CartProperties;
+import com.springboot.property.LogSamplingProperties;
+import com.springboot.property.OfferProperties;
+import com.springboot.repository.OfferRepository;
+import com.springboot.repository.SegmentRegistry;
+
+@Service
+public class CartOfferService {
+
+	private static final Logger log = LoggerFactory.getLogger(CartOfferService.class);
+
+	/** Batches smaller than this are priced on the calling thread. */
+	private static final int PARALLEL_BATCH_THRESHOLD = 256;
+
+	/** Offers whose limits turn out to be spent that a cart falls through before going without. */
+	private static final int MAX_REDEEM_ATTEMPTS = 4;
+
+	@Autowired
+	private OfferRepository offerRepository;
+
+	@Autowired
+	private SegmentClient segmentClient;
+
+	@Autowired
+	private LogSamplingProperties logSampling;
+
+	@Autowired
+	private OfferMetrics offerMetrics;
+
+	@Autowired
+	private OfferProperties offerProperties;
+
+	@Autowired
+	private OfferMatchCache offerMatchCache;
+
+	@Autowired
+	private OfferBudgets offerBudgets;
+
+	@Autowired
+	private CartProperties cartProperties;
+
+	/**
+	 * Where carts whose segments arrived asynchronously are priced: the
+	 * completing thread, unless redeeming may wait on another node for a
+	 * lease, which must not hold up the HTTP client's I/O threads.
+	 */
+	private Executor pricingExecutor = Runnable::run;
+
+	private ExecutorService pricingPool;
+
+	@PostConstruct
+	public void init() {
+		if (!offerBudgets.mayBlock()) {
+			return;
+		}
+		if (cartProperties.getThreads() == CartProperties.Threads.VIRTUAL) {
+			pricingPool = VirtualThreads.newThreadPerTaskExecutor("offer-pricing-");
+		} else {
+			// unbounded, but never busier than the apply lane's admission limit
+			AtomicInteger threadCount = new AtomicInteger();
+			pricingPool = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "offer-pricing-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		pricingExecutor = pricingPool;
+	}
+
+	@PreDestroy
+	public void close() {
+		if (pricingPool != null) {
+			pricingPool.shutdownNow();
+		}
+	}
+
+	public int applyOffer(ApplyOfferRequest applyOfferRequest) {
+		long start = System.nanoTime();
+		SegmentResponse segmentResponse = segmentClient.getSegmentResponse(applyOfferRequest.getUser_id());
+		int cartVal = applyOffer(applyOfferRequest, segmentResponse);
+		offerMetrics.recordApply(start);
+		return cartVal;
+	}
+
+	private long segmentMask(SegmentResponse segmentResponse) {
+		SegmentRegistry segments = offerRepository.segments();
+		long segmentMask = segments.maskOf(segmentResponse.getSegment());
+		if (segmentResponse.getSegments() != null) {
+			segmentMask |= segments.maskOf(segmentResponse.getSegments());
+		}
+		return segmentMask;
+	}
+
+	/**
+	 * Prices the cart without blocking the calling thread on the segment
+	 * lookup.
+	 */
+	public CompletableFuture<Integer> applyOfferAsync(ApplyOfferRequest applyOfferRequest) {
+		long start = System.nanoTime();
+		return segmentClient.getSegmentResponseAsync(applyOfferRequest.getUser_id()).thenApplyAsync(segmentResponse -> {
+			int cartVal = applyOffer(applyOfferRequest, segmentResponse);
+			offerMetrics.recordApply(start);
+			return cartVal;
+		}, pricingExecutor);
+	}
+
+	/**
+	 * Prices a batch of carts. Every distinct user's segment is resolved once
+	 * for the whole batch, then the carts are priced, in parallel for large
+	 * batches. Results are in request order.
+	 */
+	public ApplyOfferResponse[] applyOffers(List<ApplyOfferRequest> applyOfferRequests) {
+		long start = System.nanoTime();
+		Set<Integer> userIds = new LinkedHashSet<>();
+		for (ApplyOfferRequest applyOfferRequest : applyOfferRequests) {
+			userIds.add(applyOfferRequest.getUser_id());
+		}
+		Map<Integer, SegmentResponse> segments = segmentClient.getSegmentResponses(userIds);
+		ApplyOfferResponse[] responses = price(applyOfferRequests, segments);
+		offerMetrics.recordApplyBatch(start);
+		return responses;
+	}
+
+	/**
+	 * Non-blocking variant of {@link #applyOffers(List)}: every distinct
+	 * user's segment lookup is started at once and the batch is priced when
+	 * the last one completes.
+	 */
+	public CompletableFuture<ApplyOfferResponse[]> applyOffersAsync(List<ApplyOfferRequest> applyOfferRequests) {
+		long start = System.nanoTime();
+		Map<Integer, CompletableFuture<SegmentResponse>> lookups = new HashMap<>();
+		for (ApplyOfferRequest applyOfferRequest : applyOfferRequests) {
+			lookups.computeIfAbsent(applyOfferRequest.getUser_id(), segmentClient::getSegmentResponseAsync);
+		}
+		return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture[0])).thenApplyAsync(done -> {
+			Map<Integer, SegmentResponse> segments = new HashMap<>();
+			lookups.forEach((userId, lookup) -> segments.put(userId, lookup.join()));
+			ApplyOfferResponse[] responses = price(applyOfferRequests, segments);
+			offerMetrics.recordApplyBatch(start);
+			return responses;
+		}, pricingExecutor);
+	}
+
+	private ApplyOfferResponse[] price(List<ApplyOfferRequest> applyOfferRequests, Map<Integer, SegmentResponse> segments) {
+		ApplyOfferResponse[] responses = new ApplyOfferResponse[applyOfferRequests.size()];
+		IntStream indexes = IntStream.range(0, responses.length);
+		if (responses.length >= PARALLEL_BATCH_THRESHOLD) {
+			indexes = indexes.parallel();
+		}
+		indexes.forEach(i -> {
+			ApplyOfferRequest applyOfferRequest = applyOfferRequests.get(i);
+			SegmentResponse segmentResponse = segments.get(applyOfferRequest.getUser_id());
+			responses[i] = new ApplyOfferResponse(applyOffer(applyOfferRequest, segmentResponse));
+		});
+		return responses;
+	}
+
+	public int applyOffer(ApplyOfferRequest applyOfferRequest, SegmentResponse segmentResponse) {
+		int cartVal = Math.max(0, applyOfferRequest.getCart_value()); // Ensure non-negative cart value
+		long segmentMask = segmentMask(segmentResponse);
+		Offer gotOffer = match(applyOfferRequest.getRestaurant_id(), segmentMask, segmentResponse, cartVal);
+		int discounted = gotOffer == null ? cartVal : gotOffer.apply(cartVal);
+		for (int attempt = 1; gotOffer != null && gotOffer.getCap() != null && discounted < cartVal; attempt++) {
+			int granted = offerBudgets.redeem(gotOffer, cartVal - discounted);
+			if (granted >= 0) {
+				discounted = cartVal - granted;
+				break;
+			}
+			// the offer has been withdrawn, so matching again finds the next one
+			gotOffer = attempt < MAX_REDEEM_ATTEMPTS ? match(applyOfferRequest.getRestaurant_id(), segmentMask, segmentResponse,
+					cartVal) : null;
+			discounted = gotOffer == null ? cartVal : gotOffer.apply(cartVal);
+		}
+
+		if (gotOffer == null) {
+			offerMetrics.recordNoMatch();
+		} else {
+			offerMetrics.recordMatch(gotOffer.getOfferType());
+			if (log.isDebugEnabled() && LogSampler.oneIn(logSampling.getApplyOffer())) {
+				log.debug("event=offer_matched restaurant_id={} segment={} offer_type={} rule={}",
+						applyOfferRequest.getRestaurant_id(), segmentResponse.getSegment(), gotOffer.getOfferType(),
+						gotOffer.getRule());
+			}
+		}
+		return discounted;
+	}
+
+	private Offer match(int restaurantId, long segmentMask, SegmentResponse segmentResponse, int cartVal) {
+		if ((segmentMask & SegmentRegistry.OVERFLOW) != 0) {
+			// one of the user's segments has no mask bit of its own, so the mask alone could match other segments
+			Set<String> names = new HashSet<>();
+			names.add(segmentResponse.getSegment());
+			if (segmentResponse.getSegments() != null) {
+				names.addAll(segmentResponse.getSegments());
+			}
+			return offerProperties.getSelection() == OfferProperties.Selection.BEST
+					? offerRepository.findBestMatch(restaurantId, names, cartVal)
+					: offerRepository.findFirstMatch(restaurantId, names);
+		}
+		return offerProperties.getSelection() == OfferProperties.Selection.BEST
+				? offerRepository.findBestMatch(restaurantId, segmentMask, cartVal)
+				: offerMatchCache.findFirstMatch(offerRepository, restaurantId, segmentMask);
+	}
+
+}
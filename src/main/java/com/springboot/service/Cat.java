@@ -1,10 +1,14 @@
 package com.springboot.service;
 
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import com.springboot.FastStartupApplication;
+
 //@Primary
 @Service
+@Profile("!" + FastStartupApplication.PROFILE)
 public class Cat implements Animal {
 
 	@Override
@@ -0,0 +1,67 @@
+package com.springboot.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures
+ * in a row the circuit opens and calls are refused for {@code openMs}; after
+ * that a single trial call is let through, which either closes the circuit
+ * again or re-opens it.
+ */
+public class CircuitBreaker {
+
+	private static final long CLOSED = Long.MIN_VALUE;
+
+	private final int failureThreshold;
+
+	private final long openNanos;
+
+	private final LongSupplier nanoClock;
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	/** When the open circuit lets the next trial call through, or {@link #CLOSED}. */
+	private final AtomicLong retryAtNanos = new AtomicLong(CLOSED);
+
+	public CircuitBreaker(int failureThreshold, long openMs) {
+		this(failureThreshold, openMs, System::nanoTime);
+	}
+
+	CircuitBreaker(int failureThreshold, long openMs, LongSupplier nanoClock) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Returns whether a call may go ahead. While open, only the first caller
+	 * after the open period is allowed through as a trial.
+	 */
+	public boolean tryAcquire() {
+		long retryAt = retryAtNanos.get();
+		if (retryAt == CLOSED) {
+			return true;
+		}
+		long now = nanoClock.getAsLong();
+		return now - retryAt >= 0 && retryAtNanos.compareAndSet(retryAt, now + openNanos);
+	}
+
+	public void recordSuccess() {
+		consecutiveFailures.set(0);
+		retryAtNanos.set(CLOSED);
+	}
+
+	public void recordFailure() {
+		if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+			retryAtNanos.set(nanoClock.getAsLong() + openNanos);
+		}
+	}
+
+	public boolean isOpen() {
+		return retryAtNanos.get() != CLOSED;
+	}
+
+}
@@ -0,0 +1,283 @@
+package com.springboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.springboot.controller.SegmentResponse;
+import com.springboot.logging.LogSampler;
+import com.springboot.property.LogSamplingProperties;
+import com.springboot.property.SegmentProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Calls the user_segment service over a pooled, keep-alive connection manager
+ * with bounded connect, read and pool-wait timeouts. A circuit breaker refuses
+ * calls while the service keeps failing, so callers fall back to
+ * {@code unknown} immediately instead of waiting for a timeout each time.
+ * <p>
+ * Non-blocking lookups go through a separate NIO client with the same pool
+ * limits and timeouts. It is only started on the first asynchronous call.
+ */
+@Service
+public class HttpSegmentClient implements SegmentClient {
+
+	private static final Logger log = LoggerFactory.getLogger(HttpSegmentClient.class);
+
+	private static final ObjectReader SEGMENT_READER = new ObjectMapper().readerFor(SegmentResponse.class);
+
+	private final String segmentUrl;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final SegmentProperties.Client clientProperties;
+
+	private final ConnectionKeepAliveStrategy keepAliveStrategy;
+
+	private volatile CloseableHttpAsyncClient asyncHttpClient;
+
+	private final Timer knownLookups;
+
+	private final Timer unknownLookups;
+
+	private final Timer failedLookups;
+
+	private final Counter rejectedLookups;
+
+	private final SegmentFallback fallback;
+
+	@Autowired
+	private LogSamplingProperties logSampling;
+
+	@Autowired
+	public HttpSegmentClient(SegmentProperties segmentProperties, MeterRegistry meterRegistry) {
+		SegmentProperties.Client client = segmentProperties.getClient();
+		this.clientProperties = client;
+		this.segmentUrl = segmentProperties.getBaseUrl() + "/api/v1/user_segment?user_id=";
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(client.getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(client.getMaxConnectionsPerRoute());
+		connectionManager.setValidateAfterInactivity(2000);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(client.getConnectTimeoutMs())
+				.setSocketTimeout(client.getReadTimeoutMs())
+				.setConnectionRequestTimeout(client.getConnectionRequestTimeoutMs())
+				.build();
+		long keepAliveMs = client.getKeepAliveMs();
+		this.keepAliveStrategy = (response, context) -> {
+			long advertised = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return advertised > 0 ? advertised : keepAliveMs;
+		};
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy)
+				.evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+				.evictExpiredConnections()
+				.disableCookieManagement()
+				.build();
+		this.circuitBreaker = new CircuitBreaker(client.getCircuitBreakerFailureThreshold(),
+				client.getCircuitBreakerOpenMs());
+		this.knownLookups = lookupTimer(meterRegistry, "known");
+		this.unknownLookups = lookupTimer(meterRegistry, "unknown");
+		this.failedLookups = lookupTimer(meterRegistry, "error");
+		this.rejectedLookups = Counter.builder("segment.lookup.rejected")
+				.description("segment lookups refused while the circuit breaker was open")
+				.register(meterRegistry);
+		this.fallback = new SegmentFallback(meterRegistry);
+	}
+
+	private static Timer lookupTimer(MeterRegistry meterRegistry, String outcome) {
+		return Timer.builder("segment.lookup")
+				.description("user_segment round trip")
+				.tag("outcome", outcome)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+
+	@Override
+	public SegmentResponse fetchSegment(int userId) throws IOException {
+		if (!circuitBreaker.tryAcquire()) {
+			rejectedLookups.increment();
+			throw new SegmentServiceUnavailableException("segment service circuit is open");
+		}
+		long start = System.nanoTime();
+		try (CloseableHttpResponse response = httpClient.execute(segmentRequest(userId))) {
+			return recordLookup(start, readSegment(response));
+		} catch (IOException | RuntimeException e) {
+			circuitBreaker.recordFailure();
+			failedLookups.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<SegmentResponse> fetchSegmentAsync(int userId) {
+		CompletableFuture<SegmentResponse> segmentResponse = new CompletableFuture<>();
+		if (!circuitBreaker.tryAcquire()) {
+			rejectedLookups.increment();
+			segmentResponse.completeExceptionally(new SegmentServiceUnavailableException("segment service circuit is open"));
+			return segmentResponse;
+		}
+		CloseableHttpAsyncClient client;
+		try {
+			client = asyncHttpClient();
+		} catch (IOReactorException e) {
+			segmentResponse.completeExceptionally(e);
+			return segmentResponse;
+		}
+		long start = System.nanoTime();
+		client.execute(segmentRequest(userId), new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse response) {
+				try {
+					segmentResponse.complete(recordLookup(start, readSegment(response)));
+				} catch (IOException | RuntimeException e) {
+					// anything left uncaught here would leave the future pending forever
+					failed(e);
+				}
+			}
+
+			@Override
+			public void failed(Exception e) {
+				circuitBreaker.recordFailure();
+				failedLookups.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				segmentResponse.completeExceptionally(e);
+			}
+
+			@Override
+			public void cancelled() {
+				failed(new IOException("segment lookup cancelled"));
+			}
+		});
+		return segmentResponse;
+	}
+
+	@Override
+	public SegmentResponse fallback(int userId, Throwable cause) {
+		return fallback.unknown(userId, cause);
+	}
+
+	private SegmentResponse recordLookup(long startNanos, SegmentResponse segmentResponse) {
+		Timer timer = UNKNOWN_SEGMENT.equals(segmentResponse.getSegment()) ? unknownLookups : knownLookups;
+		timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+		return segmentResponse;
+	}
+
+	private HttpGet segmentRequest(int userId) {
+		HttpGet get = new HttpGet(segmentUrl + userId);
+		get.setHeader(HttpHeaders.ACCEPT, "application/json");
+		return get;
+	}
+
+	private SegmentResponse readSegment(HttpResponse response) throws IOException {
+		int status = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		if (status == HttpStatus.SC_NOT_FOUND) {
+			EntityUtils.consume(entity);
+			circuitBreaker.recordSuccess();
+			return SegmentClient.unknownSegment();
+		}
+		if (status != HttpStatus.SC_OK || entity == null) {
+			EntityUtils.consume(entity);
+			throw new SegmentServiceUnavailableException("segment service answered " + status);
+		}
+		SegmentResponse segmentResponse;
+		try (InputStream responseStream = entity.getContent()) {
+			segmentResponse = SEGMENT_READER.readValue(responseStream);
+		}
+		circuitBreaker.recordSuccess();
+		if (log.isDebugEnabled() && LogSampler.oneIn(logSampling.getSegment())) {
+			log.debug("event=segment_response segment={}", segmentResponse.getSegment());
+		}
+		return segmentResponse;
+	}
+
+	private CloseableHttpAsyncClient asyncHttpClient() throws IOReactorException {
+		CloseableHttpAsyncClient client = asyncHttpClient;
+		if (client == null) {
+			synchronized (this) {
+				client = asyncHttpClient;
+				if (client == null) {
+					IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+							.setConnectTimeout(clientProperties.getConnectTimeoutMs())
+							.setSoTimeout(clientProperties.getReadTimeoutMs())
+							.build();
+					PoolingNHttpClientConnectionManager asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+							new DefaultConnectingIOReactor(ioReactorConfig));
+					asyncConnectionManager.setMaxTotal(clientProperties.getMaxConnections());
+					asyncConnectionManager.setDefaultMaxPerRoute(clientProperties.getMaxConnectionsPerRoute());
+					client = HttpAsyncClients.custom()
+							.setConnectionManager(asyncConnectionManager)
+							.setDefaultRequestConfig(RequestConfig.custom()
+									.setConnectTimeout(clientProperties.getConnectTimeoutMs())
+									.setSocketTimeout(clientProperties.getReadTimeoutMs())
+									.setConnectionRequestTimeout(clientProperties.getConnectionRequestTimeoutMs())
+									.build())
+							.setKeepAliveStrategy(keepAliveStrategy)
+							.disableCookieManagement()
+							.build();
+					client.start();
+					asyncHttpClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	public boolean isCircuitOpen() {
+		return circuitBreaker.isOpen();
+	}
+
+	public int leasedConnections() {
+		return connectionManager.getTotalStats().getLeased();
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		httpClient.close();
+		CloseableHttpAsyncClient client = asyncHttpClient;
+		if (client != null) {
+			client.close();
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.springboot.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.springboot.budget.BudgetLedger;
+import com.springboot.budget.StripedAllowance;
+import com.springboot.controller.OfferBudgetResponse;
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.model.RedemptionCap;
+import com.springboot.property.OfferProperties;
+import com.springboot.repository.OfferRepository;
+
+/**
+ * Counts redemptions of offers with a {@code max_redemptions} or
+ * {@code budget} and withdraws them from lookups once either is spent. Each
+ * limit is a counter in the {@link BudgetLedger}, spent through a
+ * {@link StripedAllowance}, so carts redeeming the same popular offer do not
+ * queue on one counter and the ledger is only consulted once per lease.
+ * <p>
+ * Counters are kept per offer id across versions: saving a new version with a
+ * higher limit lets the offer be redeemed up to the new limit in total, and
+ * publishes it again if it had been withdrawn.
+ */
+@Service
+public class OfferBudgets {
+
+	private static final Logger log = LoggerFactory.getLogger(OfferBudgets.class);
+
+	private final OfferRepository offerRepository;
+
+	private final OfferMatchCache offerMatchCache;
+
+	private final BudgetLedger budgetLedger;
+
+	private final int stripes;
+
+	private final long leaseRedemptions;
+
+	private final ConcurrentMap<String, OfferBudget> budgets = new ConcurrentHashMap<>();
+
+	private final LongAdder redemptions = new LongAdder();
+
+	private final LongAdder rejections = new LongAdder();
+
+	private final LongAdder withdrawals = new LongAdder();
+
+	@Autowired
+	public OfferBudgets(OfferProperties offerProperties, OfferRepository offerRepository,
+			OfferMatchCache offerMatchCache, BudgetLedger budgetLedger) {
+		this.offerRepository = offerRepository;
+		this.offerMatchCache = offerMatchCache;
+		this.budgetLedger = budgetLedger;
+		int configured = offerProperties.getBudget().getStripes();
+		this.stripes = configured > 0 ? configured
+				: Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+		this.leaseRedemptions = offerProperties.getBudget().getLeaseRedemptions();
+	}
+
+	/**
+	 * Redeems a capped offer for a cart it takes {@code discount} off. If the
+	 * offer's limits are spent by this or an earlier redemption, it is
+	 * withdrawn from lookups before this returns.
+	 *
+	 * @return the discount granted, less than {@code discount} if that was all
+	 * the budget had left, or {@code -1} if the offer cannot be redeemed any
+	 * more
+	 */
+	public int redeem(Offer offer, int discount) {
+		RedemptionCap cap = offer.getCap();
+		OfferBudget budget = budgetFor(cap);
+		int granted = budget.redeem(discount);
+		if (granted < 0) {
+			rejections.increment();
+		} else {
+			redemptions.increment();
+		}
+		if (budget.isExhausted()) {
+			withdraw(cap, offer.getRestaurantId());
+		}
+		return granted;
+	}
+
+	/** Whether {@link #redeem} may wait on another node for a lease. */
+	public boolean mayBlock() {
+		return budgetLedger.isRemote();
+	}
+
+	private OfferBudget budgetFor(RedemptionCap cap) {
+		OfferBudget budget = budgets.get(cap.getOfferId());
+		// an older version still cached somewhere spends from the newer limits
+		return budget != null && budget.version >= cap.getVersion() ? budget : configure(cap);
+	}
+
+	private synchronized OfferBudget configure(RedemptionCap cap) {
+		OfferBudget budget = budgets.computeIfAbsent(cap.getOfferId(), OfferBudget::new);
+		if (budget.version < cap.getVersion()) {
+			budget.limit(cap);
+		}
+		return budget;
+	}
+
+	private void withdraw(RedemptionCap cap, int restaurantId) {
+		if (offerRepository.suspend(cap.getOfferId(), cap.getVersion()) != null) {
+			withdrawals.increment();
+			log.info("event=offer_budget_spent offer_id={} version={} restaurant_id={}", cap.getOfferId(),
+					cap.getVersion(), restaurantId);
+		}
+		offerMatchCache.invalidate(restaurantId);
+	}
+
+	/**
+	 * The limits of the offer saved under the id and what has been redeemed
+	 * against them, or {@code null} if no offer has the id.
+	 */
+	public OfferBudgetResponse status(String offerId) {
+		OfferRequest offer = offerRepository.find(offerId);
+		if (offer == null) {
+			return null;
+		}
+		OfferBudget budget = budgets.get(offerId);
+		return new OfferBudgetResponse(offerId, offer.getMax_redemptions(), offer.getBudget(),
+				budget == null ? 0 : budget.redeemed.sum(), budget == null ? 0 : budget.spent.sum(),
+				budget != null && budget.version >= offer.getVersion() && budget.isExhausted());
+	}
+
+	/** Redemptions granted since startup, across offers. */
+	public long redemptions() {
+		return redemptions.sum();
+	}
+
+	/** Redemptions refused because a limit was spent. */
+	public long rejections() {
+		return rejections.sum();
+	}
+
+	/** Offers withdrawn from lookups with a limit spent. */
+	public long withdrawals() {
+		return withdrawals.sum();
+	}
+
+	/** Leases taken from the ledger, across offers and limits. */
+	public long leases() {
+		long leases = 0;
+		for (OfferBudget budget : budgets.values()) {
+			leases += budget.redemptionAllowance.leases() + budget.amountAllowance.leases();
+		}
+		return leases;
+	}
+
+	/** One offer id's counters; limits change only under the service's lock. */
+	private final class OfferBudget {
+
+		final String redemptionKey;
+
+		final String amountKey;
+
+		final StripedAllowance redemptionAllowance;
+
+		final StripedAllowance amountAllowance;
+
+		final LongAdder redeemed = new LongAdder();
+
+		final LongAdder spent = new LongAdder();
+
+		volatile long version = -1;
+
+		volatile boolean redemptionsLimited;
+
+		volatile boolean amountLimited;
+
+		OfferBudget(String offerId) {
+			this.redemptionKey = offerId + "/redemptions";
+			this.amountKey = offerId + "/budget";
+			this.redemptionAllowance = new StripedAllowance(stripes, leaseRedemptions,
+					units -> budgetLedger.lease(redemptionKey, units));
+			this.amountAllowance = new StripedAllowance(stripes, leaseRedemptions,
+					units -> budgetLedger.lease(amountKey, units));
+		}
+
+		void limit(RedemptionCap cap) {
+			redemptionsLimited = cap.getMaxRedemptions() > 0;
+			if (redemptionsLimited) {
+				budgetLedger.limit(redemptionKey, cap.getMaxRedemptions());
+				redemptionAllowance.reopen();
+			}
+			amountLimited = cap.getBudget() > 0;
+			if (amountLimited) {
+				budgetLedger.limit(amountKey, cap.getBudget());
+				amountAllowance.reopen();
+			}
+			version = cap.getVersion();
+		}
+
+		int redeem(int discount) {
+			boolean countRedemption = redemptionsLimited;
+			if (countRedemption && redemptionAllowance.acquire(1) == 0) {
+				return -1;
+			}
+			int granted = discount;
+			if (amountLimited) {
+				granted = (int) amountAllowance.acquire(discount);
+				if (granted == 0) {
+					if (countRedemption) {
+						redemptionAllowance.release(1);
+					}
+					return -1;
+				}
+			}
+			redeemed.increment();
+			spent.add(granted);
+			return granted;
+		}
+
+		boolean isExhausted() {
+			return redemptionsLimited && redemptionAllowance.isExhausted()
+					|| amountLimited && amountAllowance.isExhausted();
+		}
+	}
+
+}
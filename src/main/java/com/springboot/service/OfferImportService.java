@@ -0,0 +1,132 @@
+package com.springboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.springboot.controller.OfferImportResponse;
+import com.springboot.controller.OfferRequest;
+import com.springboot.repository.OfferCatalogueBuilder;
+import com.springboot.repository.OfferRepository;
+
+/**
+ * Streams offers out of a request body one at a time with Jackson's streaming
+ * parser. The body is either a JSON array of offers or NDJSON, one offer
+ * object per line.
+ */
+@Service
+public class OfferImportService {
+
+	private static final Logger log = LoggerFactory.getLogger(OfferImportService.class);
+
+	/** Offers appended per {@code saveAll}, so a large body is never held in memory whole. */
+	static final int APPEND_BATCH_SIZE = 1024;
+
+	@Autowired
+	private OfferRepository offerRepository;
+
+	@Autowired
+	private OfferMatchCache offerMatchCache;
+
+	private final ObjectMapper objectMapper;
+
+	private final ObjectReader offerReader;
+
+	@Autowired
+	public OfferImportService(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+		this.offerReader = objectMapper.readerFor(OfferRequest.class);
+	}
+
+	/**
+	 * Builds a new catalogue from the body and swaps it in for the live one.
+	 * Nothing changes if the body cannot be parsed.
+	 */
+	public OfferImportResponse replaceCatalogue(InputStream body) throws IOException {
+		long start = System.nanoTime();
+		OfferCatalogueBuilder catalogue = offerRepository.newCatalogue();
+		int imported;
+		try {
+			imported = readOffers(body, catalogue::add);
+		} catch (IOException | RuntimeException e) {
+			catalogue.abort();
+			throw e;
+		}
+		try {
+			catalogue.commit();
+		} finally {
+			offerMatchCache.invalidateAll();
+		}
+		return report(imported, start);
+	}
+
+	/**
+	 * Adds every offer in the body to the live catalogue, saving them in
+	 * batches of {@value #APPEND_BATCH_SIZE} as they are read. If the body
+	 * breaks off or holds an invalid offer, the batches before it stay saved.
+	 */
+	public OfferImportResponse appendOffers(InputStream body) throws IOException {
+		long start = System.nanoTime();
+		List<OfferRequest> batch = new ArrayList<>(APPEND_BATCH_SIZE);
+		int[] saved = new int[1];
+		int imported;
+		try {
+			imported = readOffers(body, offer -> {
+				batch.add(offer);
+				if (batch.size() == APPEND_BATCH_SIZE) {
+					offerRepository.saveAll(batch);
+					saved[0] += batch.size();
+					batch.clear();
+				}
+			});
+			offerRepository.saveAll(batch);
+		} catch (IOException | RuntimeException e) {
+			log.warn("event=offer_import_failed saved={} cause=\"{}\"", saved[0], e.toString());
+			throw e;
+		} finally {
+			offerMatchCache.invalidateAll();
+		}
+		return report(imported, start);
+	}
+
+	private int readOffers(InputStream body, Consumer<OfferRequest> sink) throws IOException {
+		int count = 0;
+		try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) {
+				token = parser.nextToken();
+			}
+			while (token == JsonToken.START_OBJECT) {
+				sink.accept(offerReader.readValue(parser));
+				count++;
+				token = parser.nextToken();
+			}
+			if (array ? token != JsonToken.END_ARRAY : token != null) {
+				throw new IOException("expected an offer object but found " + token + " at " + parser.getCurrentLocation());
+			}
+		}
+		return count;
+	}
+
+	private static OfferImportResponse report(int imported, long startNanos) {
+		long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+		long offersPerSecond = imported * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		log.info("event=offer_import imported={} elapsed_ms={} offers_per_second={}", imported, elapsedMs, offersPerSecond);
+		return new OfferImportResponse("success", imported, elapsedMs, offersPerSecond);
+	}
+
+}
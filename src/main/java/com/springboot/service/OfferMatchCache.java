@@ -0,0 +1,143 @@
+package com.springboot.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.springboot.cache.StripedLruCache;
+import com.springboot.controller.OfferCacheStats;
+import com.springboot.model.Offer;
+import com.springboot.property.OfferProperties;
+import com.springboot.repository.OfferRepository;
+
+/**
+ * Memoises first-match lookups per restaurant and segment mask, no-match
+ * results included. Every entry is stamped with its restaurant's generation
+ * and the catalogue epoch read before the lookup ran; writers bump the
+ * generation of the restaurant they changed, or the epoch for bulk changes,
+ * after the change is visible. An entry whose stamps no longer match is a
+ * miss, so a result computed before a write is never served after it.
+ * <p>
+ * Best-offer lookups depend on the cart value and are not cached. Offers
+ * opening or closing on their validity window invalidate their restaurant
+ * through the repository's scheduled-change callback.
+ */
+@Component
+public class OfferMatchCache {
+
+	private static final int CONCURRENCY_LEVEL = 64;
+
+	private final boolean enabled;
+
+	private final StripedLruCache<Key, Entry> cache;
+
+	private final ConcurrentMap<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+	private final AtomicLong epoch = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder invalidations = new LongAdder();
+
+	@Autowired
+	public OfferMatchCache(OfferProperties offerProperties, OfferRepository offerRepository) {
+		this(offerProperties.getCache());
+		offerRepository.onScheduledChange(this::invalidate);
+	}
+
+	OfferMatchCache(OfferProperties.Cache cacheProperties) {
+		this.enabled = cacheProperties.isEnabled();
+		this.cache = new StripedLruCache<>(cacheProperties.getMaxSize(), CONCURRENCY_LEVEL);
+	}
+
+	public Offer findFirstMatch(OfferRepository offerRepository, int restaurantId, long segmentMask) {
+		if (!enabled) {
+			return offerRepository.findFirstMatch(restaurantId, segmentMask);
+		}
+		long epoch = this.epoch.get();
+		long generation = generation(restaurantId);
+		Key key = new Key(restaurantId, segmentMask);
+		Entry cached = cache.get(key);
+		if (cached != null && cached.epoch == epoch && cached.generation == generation) {
+			hits.increment();
+			return cached.offer;
+		}
+		misses.increment();
+		Offer offer = offerRepository.findFirstMatch(restaurantId, segmentMask);
+		cache.put(key, new Entry(offer, epoch, generation));
+		return offer;
+	}
+
+	/** Drops every result for the restaurant. Call after its offers changed. */
+	public void invalidate(int restaurantId) {
+		generations.computeIfAbsent(restaurantId, id -> new AtomicLong()).incrementAndGet();
+		invalidations.increment();
+	}
+
+	/** Drops every result. Call after a bulk change to the catalogue. */
+	public void invalidateAll() {
+		epoch.incrementAndGet();
+		cache.clear();
+		invalidations.increment();
+	}
+
+	private long generation(int restaurantId) {
+		AtomicLong generation = generations.get(restaurantId);
+		return generation == null ? 0 : generation.get();
+	}
+
+	public OfferCacheStats stats() {
+		long hits = this.hits.sum();
+		long misses = this.misses.sum();
+		double hitRatio = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+		return new OfferCacheStats(hits, misses, hitRatio, invalidations.sum(), cache.evictionCount(), cache.size());
+	}
+
+	private static final class Key {
+
+		final int restaurantId;
+
+		final long segmentMask;
+
+		Key(int restaurantId, long segmentMask) {
+			this.restaurantId = restaurantId;
+			this.segmentMask = segmentMask;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return restaurantId == other.restaurantId && segmentMask == other.segmentMask;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * restaurantId + Long.hashCode(segmentMask);
+		}
+	}
+
+	private static final class Entry {
+
+		final Offer offer;
+
+		final long epoch;
+
+		final long generation;
+
+		Entry(Offer offer, long epoch, long generation) {
+			this.offer = offer;
+			this.epoch = epoch;
+			this.generation = generation;
+		}
+	}
+
+}
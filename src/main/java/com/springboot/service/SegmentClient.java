@@ -0,0 +1,82 @@
+package com.springboot.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.springboot.controller.SegmentResponse;
+
+public interface SegmentClient {
+
+	String UNKNOWN_SEGMENT = "unknown";
+
+	/**
+	 * Resolves the user's segment. A user the segment service does not know
+	 * resolves to {@link #UNKNOWN_SEGMENT}; transport failures are thrown.
+	 */
+	SegmentResponse fetchSegment(int userId) throws IOException;
+
+	/**
+	 * Same as {@link #fetchSegment(int)} but falls back to
+	 * {@link #UNKNOWN_SEGMENT} when the segment service cannot be reached.
+	 */
+	default SegmentResponse getSegmentResponse(int userId) {
+		try {
+			return fetchSegment(userId);
+		} catch (IOException e) {
+			return fallback(userId, e);
+		}
+	}
+
+	/**
+	 * Non-blocking variant of {@link #fetchSegment(int)}; transport failures
+	 * complete the future exceptionally. The default implementation blocks the
+	 * calling thread.
+	 */
+	default CompletableFuture<SegmentResponse> fetchSegmentAsync(int userId) {
+		CompletableFuture<SegmentResponse> segmentResponse = new CompletableFuture<>();
+		try {
+			segmentResponse.complete(fetchSegment(userId));
+		} catch (IOException e) {
+			segmentResponse.completeExceptionally(e);
+		}
+		return segmentResponse;
+	}
+
+	/**
+	 * Same as {@link #fetchSegmentAsync(int)} but falls back to
+	 * {@link #UNKNOWN_SEGMENT} when the segment service cannot be reached.
+	 */
+	default CompletableFuture<SegmentResponse> getSegmentResponseAsync(int userId) {
+		return fetchSegmentAsync(userId).exceptionally(e -> fallback(userId, e));
+	}
+
+	/**
+	 * Resolves the segments of several users, falling back to
+	 * {@link #UNKNOWN_SEGMENT} for every user that cannot be resolved.
+	 */
+	default Map<Integer, SegmentResponse> getSegmentResponses(Collection<Integer> userIds) {
+		Map<Integer, SegmentResponse> segments = new HashMap<>();
+		for (Integer userId : userIds) {
+			segments.put(userId, getSegmentResponse(userId));
+		}
+		return segments;
+	}
+
+	/**
+	 * What a failed lookup falls back to. Implementations with a meter
+	 * registry count and log the fallback.
+	 */
+	default SegmentResponse fallback(int userId, Throwable cause) {
+		return unknownSegment();
+	}
+
+	static SegmentResponse unknownSegment() {
+		SegmentResponse segmentResponse = new SegmentResponse();
+		segmentResponse.setSegment(UNKNOWN_SEGMENT);
+		return segmentResponse;
+	}
+
+}
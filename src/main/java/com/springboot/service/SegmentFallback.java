@@ -0,0 +1,43 @@
+package com.springboot.service;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.springboot.controller.SegmentResponse;
+import com.springboot.logging.LogSampler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Resolves failed segment lookups to {@code unknown}. While the segment
+ * service is down every request fails, so the warning is rate limited.
+ */
+final class SegmentFallback {
+
+	private static final Logger log = LoggerFactory.getLogger(SegmentClient.class);
+
+	private static final LogSampler sampler = LogSampler.atMostEvery(1, TimeUnit.SECONDS);
+
+	private final Counter fallbacks;
+
+	SegmentFallback(MeterRegistry meterRegistry) {
+		this.fallbacks = Counter.builder("segment.fallback")
+				.description("segment lookups that failed and fell back to unknown")
+				.register(meterRegistry);
+	}
+
+	SegmentResponse unknown(int userId, Throwable cause) {
+		fallbacks.increment();
+		if (log.isWarnEnabled() && sampler.sample()) {
+			Throwable reported = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+			log.warn("event=segment_fallback user_id={} segment={} cause=\"{}\"", userId, SegmentClient.UNKNOWN_SEGMENT,
+					reported.toString());
+		}
+		return SegmentClient.unknownSegment();
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.springboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.springboot.controller.SegmentEvent;
+import com.springboot.controller.SegmentFeedResponse;
+
+/**
+ * Applies segment changes pushed by the segment service to the segment
+ * cache. Bodies are read as in {@link OfferImportService}: a JSON array of
+ * events or NDJSON, one event per line, and an empty one is a heartbeat.
+ */
+@Service
+public class SegmentFeedService {
+
+	private static final Logger log = LoggerFactory.getLogger(SegmentFeedService.class);
+
+	@Autowired
+	private CachingSegmentClient segmentClient;
+
+	private final ObjectReader eventReader;
+
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public SegmentFeedService(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+		this.eventReader = objectMapper.readerFor(SegmentEvent.class);
+	}
+
+	public boolean isEnabled() {
+		return segmentClient.isFeedEnabled();
+	}
+
+	/** Applies each event in turn; those before an unreadable one stay applied. */
+	public SegmentFeedResponse accept(InputStream body) throws IOException {
+		int[] counts = new int[2];
+		readEvents(body, segmentClient::push, counts);
+		if (counts[0] + counts[1] == 0) {
+			segmentClient.heartbeat();
+		}
+		return new SegmentFeedResponse("success", counts[0], counts[1]);
+	}
+
+	/**
+	 * Replaces every cached segment with the snapshot in the body. Segments
+	 * cached before are kept if the body cannot be read.
+	 */
+	public SegmentFeedResponse resync(InputStream body) throws IOException {
+		long start = System.nanoTime();
+		long token = segmentClient.beginResync();
+		int[] counts = new int[2];
+		readEvents(body, segmentClient::restore, counts);
+		segmentClient.finishResync(token);
+		log.info("event=segment_resync users={} elapsed_ms={}", counts[0] + counts[1],
+				(System.nanoTime() - start) / 1_000_000);
+		return new SegmentFeedResponse("success", counts[0], counts[1]);
+	}
+
+	/** Counts applied events in {@code counts[0]} and ignored ones in {@code counts[1]}. */
+	private void readEvents(InputStream body, Predicate<SegmentEvent> sink, int[] counts) throws IOException {
+		try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+			JsonToken token = parser.nextToken();
+			boolean array = token == JsonToken.START_ARRAY;
+			if (array) {
+				token = parser.nextToken();
+			}
+			while (token == JsonToken.START_OBJECT) {
+				SegmentEvent event = eventReader.readValue(parser);
+				if (event.getUser_id() == null || event.getSegment() == null) {
+					throw new IOException("segment event without user_id or segment at " + parser.getCurrentLocation());
+				}
+				counts[sink.test(event) ? 0 : 1]++;
+				token = parser.nextToken();
+			}
+			if (array ? token != JsonToken.END_ARRAY : token != null) {
+				throw new IOException("expected a segment event but found " + token + " at " + parser.getCurrentLocation());
+			}
+		}
+	}
+
+}
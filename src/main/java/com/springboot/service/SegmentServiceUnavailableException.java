@@ -0,0 +1,13 @@
+package com.springboot.service;
+
+import java.io.IOException;
+
+public class SegmentServiceUnavailableException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SegmentServiceUnavailableException(String message) {
+		super(message);
+	}
+
+}
@@ -1,8 +1,12 @@
 package com.springboot.service;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import com.springboot.FastStartupApplication;
+
 @Service
+@Profile("!" + FastStartupApplication.PROFILE)
 public class StudentService {
 
 }
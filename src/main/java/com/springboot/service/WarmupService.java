@@ -0,0 +1,174 @@
+package com.springboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.springboot.metrics.OfferMetrics;
+import com.springboot.model.Offer;
+import com.springboot.property.WarmupProperties;
+import com.springboot.repository.OfferRepository;
+
+/**
+ * Pays the cold costs of a fresh instance before it reports ready: loads the
+ * catalogue if nothing else has, fetches the segments of hot users into the
+ * segment cache, which also opens connections to the segment service, and
+ * runs synthetic lookups so the matching and discount code is compiled.
+ * Every step is best effort; a failing step is logged and warm-up moves on.
+ */
+@Service
+public class WarmupService {
+
+	private static final Logger log = LoggerFactory.getLogger(WarmupService.class);
+
+	private static final int PREFETCH_BATCH = 1000;
+
+	private static final int DEFAULT_RESTAURANTS = 1024;
+
+	public enum State {
+		PENDING, RUNNING, READY
+	}
+
+	@Autowired
+	private WarmupProperties warmupProperties;
+
+	@Autowired
+	private OfferRepository offerRepository;
+
+	@Autowired
+	private OfferImportService offerImportService;
+
+	@Autowired
+	private SegmentClient segmentClient;
+
+	@Autowired
+	private OfferMetrics offerMetrics;
+
+	private volatile State state = State.PENDING;
+
+	private volatile long elapsedMs;
+
+	private volatile int prefetchedUsers;
+
+	/** Keeps the synthetic lookups from being optimised away. */
+	private volatile long sink;
+
+	public State getState() {
+		return state;
+	}
+
+	public long getElapsedMs() {
+		return elapsedMs;
+	}
+
+	public int getPrefetchedUsers() {
+		return prefetchedUsers;
+	}
+
+	/** Runs warm-up on a background thread so health can be served meanwhile. */
+	public void startAsync() {
+		Thread thread = new Thread(this::run, "warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void run() {
+		long start = System.nanoTime();
+		state = State.RUNNING;
+		try {
+			if (warmupProperties.isEnabled()) {
+				preloadCatalogue();
+				prefetchSegments();
+				runSyntheticCalls();
+			}
+		} catch (RuntimeException e) {
+			log.warn("event=warmup_failed error={}", e.toString());
+		} finally {
+			// a cold instance still serves; one that never reports ready does not
+			elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			offerMetrics.markReady();
+			state = State.READY;
+			log.info("event=warmup_done elapsed_ms={} offers={} prefetched_users={}", elapsedMs,
+					offerRepository.size(), prefetchedUsers);
+		}
+	}
+
+	private void preloadCatalogue() {
+		String catalogueFile = warmupProperties.getCatalogueFile();
+		if (catalogueFile == null || offerRepository.size() > 0) {
+			return;
+		}
+		try (InputStream body = Files.newInputStream(Paths.get(catalogueFile))) {
+			offerImportService.appendOffers(body);
+		} catch (IOException | RuntimeException e) {
+			log.warn("event=warmup_catalogue_failed file={} error={}", catalogueFile, e.toString());
+		}
+	}
+
+	private void prefetchSegments() {
+		Set<Integer> userIds = new LinkedHashSet<>(warmupProperties.getHotUsers());
+		String hotUsersFile = warmupProperties.getHotUsersFile();
+		if (hotUsersFile != null) {
+			try {
+				for (String line : Files.readAllLines(Paths.get(hotUsersFile), StandardCharsets.UTF_8)) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#")) {
+						userIds.add(Integer.valueOf(line));
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				log.warn("event=warmup_hot_users_failed file={} error={}", hotUsersFile, e.toString());
+			}
+		}
+		List<Integer> batch = new ArrayList<>(PREFETCH_BATCH);
+		for (Integer userId : userIds) {
+			batch.add(userId);
+			if (batch.size() == PREFETCH_BATCH) {
+				prefetch(batch);
+			}
+		}
+		prefetch(batch);
+	}
+
+	private void prefetch(List<Integer> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			segmentClient.getSegmentResponses(batch);
+			prefetchedUsers += batch.size();
+		} catch (RuntimeException e) {
+			log.warn("event=warmup_prefetch_failed users={} error={}", batch.size(), e.toString());
+		}
+		batch.clear();
+	}
+
+	private void runSyntheticCalls() {
+		List<Integer> restaurants = warmupProperties.getRestaurants();
+		int segmentCount = Math.max(1, offerRepository.segments().size());
+		long sum = 0;
+		for (int i = 0; i < warmupProperties.getSyntheticCalls(); i++) {
+			int restaurantId = restaurants.isEmpty() ? 1 + i % DEFAULT_RESTAURANTS : restaurants.get(i % restaurants.size());
+			long segmentMask = 1L << (i % segmentCount);
+			int cartValue = 50 + i % 1000;
+			Offer first = offerRepository.findFirstMatch(restaurantId, segmentMask);
+			Offer best = offerRepository.findBestMatch(restaurantId, segmentMask, cartValue);
+			sum += first == null ? 0 : first.apply(cartValue);
+			sum += best == null ? 0 : best.apply(cartValue);
+		}
+		sink = sum;
+	}
+
+}
@@ -0,0 +1,221 @@
+package com.springboot.timer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks at wall-clock deadlines without keeping them sorted. Time is cut
+ * into ticks and a task goes into the bucket its deadline's tick hashes to,
+ * together with the number of full turns of the wheel still to wait; every
+ * tick only visits its own bucket. Scheduling and cancelling are O(1) and no
+ * tick ever looks at tasks that are due in another bucket, however many are
+ * pending. Tasks fire up to one tick late, never early.
+ * <p>
+ * New tasks are handed over through a queue and only the ticking thread
+ * touches the buckets. {@link #start()} ticks on a daemon thread; without it
+ * the owner calls {@link #advance()} itself, which is how tests drive the
+ * wheel with their own clock. Tasks run on the ticking thread and should be
+ * short.
+ */
+public class HashedTimingWheel implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+	private final String name;
+
+	private final long tickMillis;
+
+	private final int mask;
+
+	private final LongSupplier clock;
+
+	private final long startMillis;
+
+	private final ArrayDeque<Timeout>[] buckets;
+
+	private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/** The next tick to process; only read and written while holding the wheel's lock. */
+	private long tick;
+
+	private Thread worker;
+
+	private volatile boolean closed;
+
+	public HashedTimingWheel(String name, long tickMillis, int wheelSize) {
+		this(name, tickMillis, wheelSize, System::currentTimeMillis);
+	}
+
+	@SuppressWarnings("unchecked")
+	public HashedTimingWheel(String name, long tickMillis, int wheelSize, LongSupplier clock) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("tickMillis must be positive but was " + tickMillis);
+		}
+		if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+			throw new IllegalArgumentException("wheelSize must be a power of two but was " + wheelSize);
+		}
+		this.name = name;
+		this.tickMillis = tickMillis;
+		this.mask = wheelSize - 1;
+		this.clock = clock;
+		this.startMillis = clock.getAsLong();
+		this.buckets = new ArrayDeque[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			buckets[i] = new ArrayDeque<>();
+		}
+	}
+
+	/** The wheel's clock, in epoch milliseconds. */
+	public long now() {
+		return clock.getAsLong();
+	}
+
+	/** Runs the task at the first tick at or after the deadline, immediately if that has passed. */
+	public Timeout schedule(long deadlineMillis, Runnable task) {
+		Timeout timeout = new Timeout(deadlineMillis, task);
+		pending.incrementAndGet();
+		incoming.add(timeout);
+		return timeout;
+	}
+
+	/** Tasks scheduled and neither run nor cancelled yet. */
+	public int pending() {
+		return pending.get();
+	}
+
+	/** Starts a daemon thread that ticks the wheel in real time. */
+	public synchronized void start() {
+		if (worker != null || closed) {
+			return;
+		}
+		worker = new Thread(this::run, name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/** Processes every tick that has elapsed on the clock, running the tasks that are due. */
+	public synchronized void advance() {
+		long elapsed = clock.getAsLong() - startMillis;
+		while (tick * tickMillis <= elapsed) {
+			transferIncoming();
+			expire(buckets[(int) (tick & mask)]);
+			tick++;
+		}
+	}
+
+	private void transferIncoming() {
+		for (Timeout timeout = incoming.poll(); timeout != null; timeout = incoming.poll()) {
+			if (timeout.cancelled) {
+				continue;
+			}
+			long deadlineTick = Math.max(tick, ceilDiv(timeout.deadlineMillis - startMillis, tickMillis));
+			timeout.rounds = (deadlineTick - tick) / buckets.length;
+			buckets[(int) (deadlineTick & mask)].add(timeout);
+		}
+	}
+
+	private void expire(ArrayDeque<Timeout> bucket) {
+		for (Iterator<Timeout> timeouts = bucket.iterator(); timeouts.hasNext();) {
+			Timeout timeout = timeouts.next();
+			if (timeout.cancelled) {
+				timeouts.remove();
+			} else if (timeout.rounds > 0) {
+				timeout.rounds--;
+			} else {
+				timeouts.remove();
+				if (timeout.fire()) {
+					try {
+						timeout.task.run();
+					} catch (RuntimeException e) {
+						log.warn("event=timer_task_failed wheel={}", name, e);
+					}
+				}
+			}
+		}
+	}
+
+	private void run() {
+		while (!closed) {
+			long next;
+			synchronized (this) {
+				next = startMillis + tick * tickMillis;
+			}
+			long wait = next - clock.getAsLong();
+			if (wait > 0) {
+				try {
+					TimeUnit.MILLISECONDS.sleep(wait);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			advance();
+		}
+	}
+
+	private static long ceilDiv(long x, long y) {
+		return x <= 0 ? 0 : (x + y - 1) / y;
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	/** A scheduled task. */
+	public final class Timeout {
+
+		private final long deadlineMillis;
+
+		private final Runnable task;
+
+		/** Full turns of the wheel left before the task is due; only touched by the ticking thread. */
+		private long rounds;
+
+		private volatile boolean cancelled;
+
+		private boolean done;
+
+		private Timeout(long deadlineMillis, Runnable task) {
+			this.deadlineMillis = deadlineMillis;
+			this.task = task;
+		}
+
+		public long getDeadlineMillis() {
+			return deadlineMillis;
+		}
+
+		/** Keeps the task from running if it has not started yet. */
+		public void cancel() {
+			synchronized (this) {
+				if (done || cancelled) {
+					return;
+				}
+				cancelled = true;
+			}
+			pending.decrementAndGet();
+		}
+
+		private synchronized boolean fire() {
+			if (cancelled) {
+				return false;
+			}
+			done = true;
+			pending.decrementAndGet();
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.springboot;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs every {@link CartOfferApplicationTests} scenario against the
+ * non-blocking apply_offer pipeline.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "cart.apply.mode=async")
+public class AsyncCartOfferApplicationTests extends CartOfferApplicationTests {
+}
@@ -1,8 +1,14 @@
 package com.springboot;
 
 import com.springboot.controller.ApplyOfferRequest;
+import com.springboot.controller.ApplyOfferResponse;
 import com.springboot.controller.OfferRequest;
 import com.springboot.controller.ApiResponse;
+import com.springboot.controller.OfferBudgetResponse;
+import com.springboot.controller.OfferVersionResponse;
+import com.springboot.controller.SegmentCacheStats;
+import com.springboot.controller.SegmentEvent;
+import com.springboot.controller.SegmentFeedResponse;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -445,4 +451,161 @@ public class CartOfferApplicationTests {
         ResponseEntity<HashMap> response3 = restTemplate.postForEntity("/api/v1/cart/apply_offer", request3, HashMap.class);
         Assert.assertEquals(225, response3.getBody().get("cart_value")); // 300 - (25% of 300)
     }
+
+    // 12. Batch Apply Tests
+    @Test
+    public void testBatchApplyOffer() {
+        List<ApplyOfferRequest> requests = Arrays.asList(
+                applyOfferRequest(200, 1, 1),  // FLATX 10 for p1
+                applyOfferRequest(200, 2, 1),  // FLATP 20 for p2
+                applyOfferRequest(200, 1, 10), // no offer
+                applyOfferRequest(400, 1, 5),  // FLATP 25 for all segments
+                applyOfferRequest(200, 99, 1)  // unknown user
+        );
+
+        ResponseEntity<ApplyOfferResponse[]> response = restTemplate.postForEntity("/api/v1/cart/apply_offer/batch", requests, ApplyOfferResponse[].class);
+        Assert.assertEquals(200, response.getStatusCodeValue());
+        ApplyOfferResponse[] responseBody = response.getBody();
+        Assert.assertNotNull(responseBody);
+        Assert.assertEquals(5, responseBody.length);
+        Assert.assertEquals(190, responseBody[0].getCart_value());
+        Assert.assertEquals(160, responseBody[1].getCart_value());
+        Assert.assertEquals(200, responseBody[2].getCart_value());
+        Assert.assertEquals(300, responseBody[3].getCart_value());
+        Assert.assertEquals(200, responseBody[4].getCart_value());
+    }
+
+    // 13. Metrics Tests
+    @Test
+    public void testPrometheusEndpointExposesOfferMetrics() {
+        restTemplate.postForEntity("/api/v1/cart/apply_offer", applyOfferRequest(200, 1, 1), HashMap.class);
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+        Assert.assertEquals(200, response.getStatusCodeValue());
+        String body = response.getBody();
+        Assert.assertNotNull(body);
+        Assert.assertTrue(body.contains("cart_apply_offer_seconds_bucket"));
+        Assert.assertTrue(body.contains("cart_offer_match_total{offer_type=\"FLATX\",result=\"match\",}"));
+        Assert.assertTrue(body.contains("segment_lookup_seconds_count"));
+        Assert.assertTrue(body.contains("offers_catalogue_size"));
+        Assert.assertTrue(body.contains("cart_apply_offer_first_minute_seconds{quantile=\"0.99\",}"));
+    }
+
+    @Test
+    public void testHealthIsUpOnceWarmedUp() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/health", String.class);
+        while (response.getStatusCodeValue() != 200 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            response = restTemplate.getForEntity("/actuator/health", String.class);
+        }
+        Assert.assertEquals(200, response.getStatusCodeValue());
+        Assert.assertTrue(response.getBody().contains("\"status\":\"UP\""));
+    }
+
+    // 14. Offer Lifecycle Tests
+    @Test
+    public void testOfferIsUpdatedAndDeletedById() {
+        OfferRequest offer = new OfferRequest(41, "FLATX", 10, Arrays.asList("p1"));
+        ResponseEntity<OfferVersionResponse> created = restTemplate.exchange("/api/v1/offer/lifecycle-test",
+                HttpMethod.PUT, new HttpEntity<>(offer), OfferVersionResponse.class);
+        Assert.assertEquals(200, created.getStatusCodeValue());
+        long version = created.getBody().getVersion();
+        Assert.assertEquals(190, restTemplate.postForEntity("/api/v1/cart/apply_offer", applyOfferRequest(200, 1, 41),
+                HashMap.class).getBody().get("cart_value"));
+
+        offer.setOffer_value(30);
+        offer.setVersion(version);
+        ResponseEntity<OfferVersionResponse> updated = restTemplate.exchange("/api/v1/offer/lifecycle-test",
+                HttpMethod.PUT, new HttpEntity<>(offer), OfferVersionResponse.class);
+        Assert.assertEquals(version + 1, updated.getBody().getVersion());
+        Assert.assertEquals(170, restTemplate.postForEntity("/api/v1/cart/apply_offer", applyOfferRequest(200, 1, 41),
+                HashMap.class).getBody().get("cart_value"));
+        ResponseEntity<String> stale = restTemplate.exchange("/api/v1/offer/lifecycle-test", HttpMethod.PUT,
+                new HttpEntity<>(offer), String.class);
+        Assert.assertEquals(409, stale.getStatusCodeValue());
+        Assert.assertEquals(Long.valueOf(version + 1),
+                restTemplate.getForObject("/api/v1/offer/lifecycle-test", OfferRequest.class).getVersion());
+
+        ResponseEntity<ApiResponse> deleted = restTemplate.exchange("/api/v1/offer/lifecycle-test?version=" + (version + 1),
+                HttpMethod.DELETE, null, ApiResponse.class);
+        Assert.assertEquals(200, deleted.getStatusCodeValue());
+        Assert.assertEquals(200, restTemplate.postForEntity("/api/v1/cart/apply_offer", applyOfferRequest(200, 1, 41),
+                HashMap.class).getBody().get("cart_value"));
+        Assert.assertEquals(404, restTemplate.getForEntity("/api/v1/offer/lifecycle-test", String.class)
+                .getStatusCodeValue());
+        Assert.assertEquals(404, restTemplate.exchange("/api/v1/offer/lifecycle-test", HttpMethod.DELETE, null,
+                String.class).getStatusCodeValue());
+    }
+
+    // 15. Offer Budget Tests
+    @Test
+    public void testSpentOfferFallsThroughToTheNextOne() {
+        OfferRequest capped = new OfferRequest(42, "FLATX", 50, Arrays.asList("p1"));
+        capped.setMax_redemptions(3L);
+        capped.setBudget(120L);
+        ResponseEntity<OfferVersionResponse> created = restTemplate.exchange("/api/v1/offer/budget-test",
+                HttpMethod.PUT, new HttpEntity<>(capped), OfferVersionResponse.class);
+        Assert.assertEquals(200, created.getStatusCodeValue());
+        restTemplate.exchange("/api/v1/offer/budget-test-fallback", HttpMethod.PUT,
+                new HttpEntity<>(new OfferRequest(42, "FLATX", 10, Arrays.asList("p1"))), OfferVersionResponse.class);
+
+        Assert.assertEquals(150, cartValue(applyOfferRequest(200, 1, 42)));
+        Assert.assertEquals(150, cartValue(applyOfferRequest(200, 1, 42)));
+        // only 20 of the budget is left
+        Assert.assertEquals(180, cartValue(applyOfferRequest(200, 1, 42)));
+        Assert.assertEquals(190, cartValue(applyOfferRequest(200, 1, 42)));
+        OfferBudgetResponse spent = restTemplate.getForObject("/api/v1/offer/budget-test/budget",
+                OfferBudgetResponse.class);
+        Assert.assertEquals(3, spent.getRedemptions());
+        Assert.assertEquals(120, spent.getSpent());
+        Assert.assertTrue(spent.isExhausted());
+
+        capped.setMax_redemptions(5L);
+        capped.setBudget(220L);
+        restTemplate.exchange("/api/v1/offer/budget-test", HttpMethod.PUT, new HttpEntity<>(capped),
+                OfferVersionResponse.class);
+        // the new version takes the old one's place, ahead of the fallback
+        Assert.assertEquals(150, cartValue(applyOfferRequest(200, 1, 42)));
+        Assert.assertFalse(restTemplate.getForObject("/api/v1/offer/budget-test/budget", OfferBudgetResponse.class)
+                .isExhausted());
+
+        capped.setOffer_id(null);
+        Assert.assertEquals(400, restTemplate.postForEntity("/api/v1/offer", capped, String.class)
+                .getStatusCodeValue());
+        Assert.assertEquals(400, restTemplate.postForEntity("/api/v1/offer",
+                new OfferRequest(42, "FLATX", 10, null), String.class).getStatusCodeValue());
+        Assert.assertEquals(404, restTemplate.getForEntity("/api/v1/offer/no-such-offer/budget", String.class)
+                .getStatusCodeValue());
+    }
+
+    @Test
+    public void testPushedSegmentIsUsedWithoutALookup() {
+        // user 7 is unknown to the segment service
+        Assert.assertEquals(200, cartValue(applyOfferRequest(200, 7, 4)));
+        SegmentFeedResponse pushed = restTemplate.postForObject("/api/v1/segment/events",
+                Arrays.asList(new SegmentEvent(7, "p3", null, 0)), SegmentFeedResponse.class);
+        Assert.assertEquals(1, pushed.getApplied());
+        long misses = restTemplate.getForObject("/api/v1/segment/cache_stats", SegmentCacheStats.class).getMisses();
+        Assert.assertEquals(100, cartValue(applyOfferRequest(200, 7, 4)));
+        SegmentCacheStats stats = restTemplate.getForObject("/api/v1/segment/cache_stats", SegmentCacheStats.class);
+        Assert.assertEquals(misses, stats.getMisses());
+        Assert.assertTrue(stats.isFeed_live());
+
+        Assert.assertEquals(400, restTemplate.postForEntity("/api/v1/segment/events",
+                Arrays.asList(new SegmentEvent(null, "p3", null, 0)), String.class).getStatusCodeValue());
+    }
+
+    private Object cartValue(ApplyOfferRequest request) {
+        return restTemplate.postForEntity("/api/v1/cart/apply_offer", request, HashMap.class).getBody()
+                .get("cart_value");
+    }
+
+    private ApplyOfferRequest applyOfferRequest(int cartValue, int userId, int restaurantId) {
+        ApplyOfferRequest request = new ApplyOfferRequest();
+        request.setCart_value(cartValue);
+        request.setUser_id(userId);
+        request.setRestaurant_id(restaurantId);
+        return request;
+    }
 }
@@ -0,0 +1,173 @@
+package com.springboot;
+
+import com.springboot.cluster.ClusterMembership;
+import com.springboot.controller.ApplyOfferRequest;
+import com.springboot.controller.ApplyOfferResponse;
+import com.springboot.controller.OfferRequest;
+import com.springboot.controller.OfferVersionResponse;
+import com.springboot.repository.OfferRepository;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Three nodes on localhost: two sharing the catalogue from the start, a
+ * third joining through the first once offers are saved. Each restaurant's
+ * offers live on two of them, and every node answers for every restaurant.
+ */
+public class ClusterCartOfferApplicationTests {
+
+    private static final int RESTAURANTS = 60;
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    private static final List<String> urls = new ArrayList<>();
+
+    private final TestRestTemplate restTemplate = new TestRestTemplate();
+
+    @BeforeClass
+    public static void startCluster() throws IOException, InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            urls.add("http://localhost:" + freePort());
+        }
+        nodes.add(start(urls.get(0), null));
+        nodes.add(start(urls.get(1), null));
+        TestRestTemplate restTemplate = new TestRestTemplate();
+        for (int restaurantId = 1; restaurantId <= RESTAURANTS; restaurantId++) {
+            OfferRequest offerRequest = new OfferRequest(restaurantId, "FLATX", restaurantId, Arrays.asList("p1"));
+            Assert.assertEquals(200, restTemplate.postForEntity(urls.get(0) + "/api/v1/offer", offerRequest,
+                    Object.class).getStatusCodeValue());
+        }
+        nodes.add(start(urls.get(2), urls.get(0)));
+        // the seed admits the third node in the background, switching its own ring last
+        ClusterMembership seed = nodes.get(0).getBean(ClusterMembership.class);
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((seed.isAdmitting() || seed.members().size() < 3) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String url, String seed) {
+        // as command line arguments, which take precedence over application.yml
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=" + url.substring(url.lastIndexOf(':') + 1),
+                "--cluster.enabled=true",
+                "--cluster.self=" + url,
+                // a joining node learns the members from its seed
+                "--cluster.members=" + (seed == null ? urls.get(0) + "," + urls.get(1) : url),
+                "--cluster.replicas=2",
+                "--cluster.secret=cluster-test-secret",
+                "--warmup.enabled=false"));
+        if (seed != null) {
+            args.add("--cluster.seed=" + seed);
+        }
+        return new SpringApplicationBuilder(CartOfferApplication.class).run(args.toArray(new String[0]));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @AfterClass
+    public static void stopCluster() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    public void testJoiningNodeIsKnownToEveryMember() {
+        for (ConfigurableApplicationContext node : nodes) {
+            Assert.assertEquals(3, node.getBean(ClusterMembership.class).members().size());
+        }
+    }
+
+    @Test
+    public void testEveryRestaurantIsHeldByTwoNodes() {
+        int[] held = new int[nodes.size()];
+        for (int restaurantId = 1; restaurantId <= RESTAURANTS; restaurantId++) {
+            int holders = 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                if (nodes.get(i).getBean(OfferRepository.class).countForRestaurant(restaurantId) > 0) {
+                    holders++;
+                    held[i]++;
+                }
+            }
+            Assert.assertEquals("restaurant " + restaurantId, 2, holders);
+        }
+        for (int restaurants : held) {
+            Assert.assertTrue(restaurants + " restaurants", restaurants > 0 && restaurants < RESTAURANTS);
+        }
+    }
+
+    @Test
+    public void testEveryNodeAppliesEveryRestaurantsOffer() {
+        for (String url : urls) {
+            List<ApplyOfferRequest> batch = new ArrayList<>();
+            for (int restaurantId = 1; restaurantId <= RESTAURANTS; restaurantId++) {
+                ApplyOfferRequest applyOfferRequest = cart(restaurantId);
+                ResponseEntity<Map> response = restTemplate.postForEntity(url + "/api/v1/cart/apply_offer",
+                        applyOfferRequest, Map.class);
+                Assert.assertEquals(200 - restaurantId, response.getBody().get("cart_value"));
+                batch.add(applyOfferRequest);
+            }
+            ApplyOfferResponse[] prices = restTemplate.postForObject(url + "/api/v1/cart/apply_offer/batch", batch,
+                    ApplyOfferResponse[].class);
+            for (int i = 0; i < prices.length; i++) {
+                Assert.assertEquals(200 - (i + 1), prices[i].getCart_value());
+            }
+        }
+    }
+
+    @Test
+    public void testOffersWithAnIdAreReachableFromEveryNode() {
+        int restaurantId = RESTAURANTS + 1;
+        OfferRequest offerRequest = new OfferRequest(restaurantId, "FLATX", 30, Arrays.asList("p1"));
+        ResponseEntity<OfferVersionResponse> saved = restTemplate.exchange(
+                urls.get(2) + "/api/v1/offer/cluster-test", HttpMethod.PUT, new HttpEntity<>(offerRequest),
+                OfferVersionResponse.class);
+        Assert.assertEquals(200, saved.getStatusCodeValue());
+        Assert.assertEquals(1, saved.getBody().getVersion());
+        for (String url : urls) {
+            OfferRequest found = restTemplate.getForObject(url + "/api/v1/offer/cluster-test", OfferRequest.class);
+            Assert.assertEquals(restaurantId, found.getRestaurant_id());
+            Assert.assertEquals(Long.valueOf(1), found.getVersion());
+            Assert.assertEquals(170, restTemplate.postForObject(url + "/api/v1/cart/apply_offer",
+                    cart(restaurantId), Map.class).get("cart_value"));
+        }
+        // moving it to another restaurant takes a delete first
+        offerRequest.setRestaurant_id(restaurantId + 1);
+        Assert.assertEquals(409, restTemplate.exchange(urls.get(1) + "/api/v1/offer/cluster-test", HttpMethod.PUT,
+                new HttpEntity<>(offerRequest), String.class).getStatusCodeValue());
+        restTemplate.delete(urls.get(0) + "/api/v1/offer/cluster-test");
+        for (String url : urls) {
+            Assert.assertEquals(404, restTemplate.getForEntity(url + "/api/v1/offer/cluster-test",
+                    Object.class).getStatusCodeValue());
+            Assert.assertEquals(200, restTemplate.postForObject(url + "/api/v1/cart/apply_offer",
+                    cart(restaurantId), Map.class).get("cart_value"));
+        }
+    }
+
+    private static ApplyOfferRequest cart(int restaurantId) {
+        ApplyOfferRequest applyOfferRequest = new ApplyOfferRequest();
+        applyOfferRequest.setCart_value(200);
+        applyOfferRequest.setRestaurant_id(restaurantId);
+        applyOfferRequest.setUser_id(1);
+        return applyOfferRequest;
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.springboot;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs every {@link CartOfferApplicationTests} scenario against the compact
+ * offer store.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "offer.store.mode=compact")
+public class CompactCartOfferApplicationTests extends CartOfferApplicationTests {
+}
@@ -0,0 +1,14 @@
+package com.springboot;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs every {@link CartOfferApplicationTests} scenario against the
+ * startup-optimised configuration: allow-listed auto-configuration and lazy
+ * beans.
+ */
+@SpringBootTest(classes = FastStartupApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles(FastStartupApplication.PROFILE)
+public class FastStartupCartOfferApplicationTests extends CartOfferApplicationTests {
+}
@@ -0,0 +1,35 @@
+package com.springboot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreadsTest {
+
+    private static final boolean SUPPORTED = supported();
+
+    private static boolean supported() {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+    }
+
+    @Test
+    public void testRunsTasksOnVirtualThreadsWhereSupported() throws Exception {
+        ExecutorService executor;
+        try {
+            executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+        } catch (IllegalStateException e) {
+            Assert.assertFalse(SUPPORTED);
+            Assert.assertTrue(e.getMessage().contains("JDK 21"));
+            return;
+        }
+        Assert.assertTrue(SUPPORTED);
+        Object virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))
+                .get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        Assert.assertEquals(Boolean.TRUE, virtual);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.springboot.admission;
+
+import com.springboot.cluster.ClusterAuthFilter;
+import com.springboot.property.AdmissionProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AdmissionControlFilterTest {
+
+    private final List<MockAsyncContext> pending = new ArrayList<>();
+
+    private final AdmissionControlFilter filter;
+
+    public AdmissionControlFilterTest() {
+        AdmissionProperties admissionProperties = new AdmissionProperties();
+        admissionProperties.setApply(new AdmissionProperties.Lane(2, 1, 2, 1000));
+        filter = new AdmissionControlFilter(admissionProperties);
+    }
+
+    @Test
+    public void testAsyncRequestsHoldTheirPlaceUntilTheyComplete() throws Exception {
+        Assert.assertEquals(200, startAsync("/api/v1/cart/apply_offer"));
+        Assert.assertEquals(200, startAsync("/api/v1/cart/apply_offer/batch"));
+        Assert.assertEquals(2, filter.limiter(Lane.APPLY).getInFlight());
+
+        MockHttpServletResponse rejected = send("/api/v1/cart/apply_offer");
+        Assert.assertEquals(429, rejected.getStatus());
+        Assert.assertEquals("1", rejected.getHeader("Retry-After"));
+        // other lanes and unlimited paths are still served
+        Assert.assertEquals(200, send("/api/v1/offer").getStatus());
+        Assert.assertEquals(200, send("/actuator/health").getStatus());
+
+        pending.get(0).complete();
+        Assert.assertEquals(1, filter.limiter(Lane.APPLY).getInFlight());
+        Assert.assertEquals(200, send("/api/v1/cart/apply_offer").getStatus());
+        Assert.assertEquals(1, filter.limiter(Lane.APPLY).getRejectedAtLimit());
+    }
+
+    @Test
+    public void testFeedAndMemberTrafficAreNotHeldUpByAFullAdminLane() throws Exception {
+        AdmissionProperties admissionProperties = new AdmissionProperties();
+        admissionProperties.setAdmin(new AdmissionProperties.Lane(1, 1, 1, 1000));
+        AdmissionControlFilter filter = new AdmissionControlFilter(admissionProperties);
+        MockHttpServletRequest slow = request("/api/v1/offer");
+        filter.doFilter(slow, new MockHttpServletResponse(), new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        }));
+        Assert.assertEquals(1, filter.limiter(Lane.ADMIN).getInFlight());
+
+        Assert.assertEquals(503, send(filter, request("/api/v1/cluster/members")).getStatus());
+        Assert.assertEquals(200, send(filter, request("/api/v1/segment/events")).getStatus());
+        MockHttpServletRequest lease = request("/api/v1/cluster/ledger/lease");
+        lease.setAttribute(ClusterAuthFilter.MEMBER_ATTRIBUTE, Boolean.TRUE);
+        Assert.assertEquals(200, send(filter, lease).getStatus());
+        // a hop header alone does not make a request a member's
+        MockHttpServletRequest claimed = request("/api/v1/cluster/offers");
+        claimed.addHeader("X-Cluster-Hop", "replica");
+        Assert.assertEquals(503, send(filter, claimed).getStatus());
+        Assert.assertEquals(1, filter.limiter(Lane.ADMIN).getInFlight());
+    }
+
+    private int startAsync(String path) throws Exception {
+        MockHttpServletRequest request = request(path);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        }));
+        pending.add((MockAsyncContext) request.getAsyncContext());
+        return response.getStatus();
+    }
+
+    private MockHttpServletResponse send(String path) throws Exception {
+        return send(filter, request(path));
+    }
+
+    private static MockHttpServletResponse send(AdmissionControlFilter filter, MockHttpServletRequest request)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.springboot.admission;
+
+import com.springboot.property.AdmissionProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class AimdLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final AimdLimiter limiter = new AimdLimiter(new AdmissionProperties.Lane(4, 2, 6, 100));
+
+    @Test
+    public void testRequestsOverTheLimitAreRejected() {
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(AimdLimiter.Admission.ADMITTED, limiter.tryAcquire());
+        }
+        Assert.assertEquals(AimdLimiter.Admission.AT_LIMIT, limiter.tryAcquire());
+        limiter.release(0, FAST, false);
+        Assert.assertEquals(AimdLimiter.Admission.ADMITTED, limiter.tryAcquire());
+        Assert.assertEquals(1, limiter.getRejectedAtLimit());
+    }
+
+    @Test
+    public void testFastRequestsGrowTheLimitUpToItsMaximum() {
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            fill();
+            for (int j = limiter.getInFlight(); j > 0; j--) {
+                limiter.release(now, now + FAST, false);
+            }
+            now += FAST;
+        }
+        Assert.assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void testSlowRequestsShrinkTheLimitOncePerRound() {
+        fill();
+        // all four were admitted before the first of them came back slow
+        for (int i = 0; i < 4; i++) {
+            limiter.release(0, SLOW, false);
+        }
+        Assert.assertEquals(3, limiter.getLimit());
+
+        long now = SLOW;
+        for (int round = 0; round < 10; round++) {
+            limiter.tryAcquire();
+            limiter.release(now, now + SLOW, round % 2 == 0);
+            now += SLOW;
+        }
+        Assert.assertEquals(2, limiter.getLimit());
+        fill();
+        Assert.assertEquals(AimdLimiter.Admission.OVERLOADED, limiter.tryAcquire());
+        Assert.assertEquals(1, limiter.getRejectedOverloaded());
+    }
+
+    private void fill() {
+        while (limiter.getInFlight() < limiter.getLimit()) {
+            limiter.tryAcquire();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.springboot.budget;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class StripedAllowanceTest {
+
+    private static final int THREADS = 64;
+
+    @Test
+    public void testContendedRedemptionsSpendTheLimitExactly() throws Exception {
+        LocalBudgetLedger ledger = new LocalBudgetLedger();
+        ledger.limit("offer", 10_000);
+        StripedAllowance allowance = new StripedAllowance(8, 64, units -> ledger.lease("offer", units));
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(pool.submit(() -> {
+                start.await();
+                long redeemed = 0;
+                while (allowance.acquire(1) == 1) {
+                    redeemed++;
+                }
+                return redeemed;
+            }));
+        }
+        start.countDown();
+        long redeemed = 0;
+        for (Future<Long> thread : threads) {
+            redeemed += thread.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        Assert.assertEquals(10_000, redeemed);
+        Assert.assertEquals(10_000, ledger.leased("offer"));
+        Assert.assertEquals(0, allowance.local());
+        Assert.assertTrue(allowance.isExhausted());
+        // the ledger was touched about once per 64 redemptions, not once per redemption
+        Assert.assertTrue(allowance.leases() <= 10_000 / 64 + 1);
+    }
+
+    @Test
+    public void testTheLastOfABudgetIsGrantedInPartAndRaisingItReopens() {
+        LocalBudgetLedger ledger = new LocalBudgetLedger();
+        ledger.limit("offer", 250);
+        StripedAllowance allowance = new StripedAllowance(4, 2, units -> ledger.lease("offer", units));
+        Assert.assertEquals(100, allowance.acquire(100));
+        Assert.assertEquals(100, allowance.acquire(100));
+        Assert.assertFalse(allowance.isExhausted());
+        Assert.assertEquals(50, allowance.acquire(100));
+        Assert.assertTrue(allowance.isExhausted());
+        Assert.assertEquals(0, allowance.acquire(1));
+
+        allowance.release(30);
+        Assert.assertEquals(30, allowance.acquire(30));
+        ledger.limit("offer", 400);
+        allowance.reopen();
+        Assert.assertEquals(100, allowance.acquire(100));
+        Assert.assertEquals(50, allowance.acquire(100));
+        Assert.assertEquals(400, ledger.leased("offer"));
+    }
+
+    @Test
+    public void testASlowLeaseDoesNotHoldUpOtherLeases() throws Exception {
+        LocalBudgetLedger ledger = new LocalBudgetLedger();
+        ledger.limit("offer", 100);
+        CountDownLatch bothLeasing = new CountDownLatch(2);
+        AtomicBoolean overlapped = new AtomicBoolean(true);
+        StripedAllowance allowance = new StripedAllowance(1, 1, units -> {
+            bothLeasing.countDown();
+            try {
+                // under a lock the second lease could not start until this one gave up
+                if (!bothLeasing.await(5, TimeUnit.SECONDS)) {
+                    overlapped.set(false);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ledger.lease("offer", units);
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Long> first = pool.submit(() -> allowance.acquire(10));
+        Future<Long> second = pool.submit(() -> allowance.acquire(10));
+        Assert.assertEquals(10, (long) first.get(30, TimeUnit.SECONDS));
+        Assert.assertEquals(10, (long) second.get(30, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        Assert.assertTrue(overlapped.get());
+        Assert.assertEquals(20, ledger.leased("offer"));
+        Assert.assertFalse(allowance.isExhausted());
+    }
+}
@@ -0,0 +1,68 @@
+package com.springboot.cluster;
+
+import com.springboot.property.ClusterProperties;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletRequest;
+
+public class ClusterAuthFilterTest {
+
+    @Test
+    public void testOnlyRequestsWithTheSecretAreMembers() throws Exception {
+        ClusterAuthFilter filter = new ClusterAuthFilter(properties(true, "s3cret"));
+
+        HttpServletRequest member = pass(filter, request("/api/v1/offer", "forward", "s3cret"));
+        Assert.assertTrue(ClusterAuthFilter.isMember(member));
+        Assert.assertEquals("forward", member.getHeader(ClusterClient.HOP_HEADER));
+
+        HttpServletRequest claimed = pass(filter, request("/api/v1/cluster/members", "replica", "guess"));
+        Assert.assertFalse(ClusterAuthFilter.isMember(claimed));
+        Assert.assertNull(claimed.getHeader(ClusterClient.HOP_HEADER));
+        Assert.assertFalse(claimed.getHeaders(ClusterClient.HOP_HEADER).hasMoreElements());
+
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        filter.doFilter(request("/api/v1/cluster/ledger/lease", "replica", null), refused, new MockFilterChain());
+        Assert.assertEquals(403, refused.getStatus());
+    }
+
+    @Test
+    public void testNoRequestIsAMemberWhileClusteringIsOff() throws Exception {
+        ClusterAuthFilter filter = new ClusterAuthFilter(properties(false, "s3cret"));
+
+        HttpServletRequest claimed = pass(filter, request("/api/v1/cart/apply_offer", "forward", "s3cret"));
+        Assert.assertFalse(ClusterAuthFilter.isMember(claimed));
+        Assert.assertNull(claimed.getHeader(ClusterClient.HOP_HEADER));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAClusterNeedsASecret() {
+        new ClusterAuthFilter(properties(true, null));
+    }
+
+    private static HttpServletRequest pass(ClusterAuthFilter filter, MockHttpServletRequest request) throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        return (HttpServletRequest) chain.getRequest();
+    }
+
+    private static MockHttpServletRequest request(String path, String hop, String secret) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.addHeader(ClusterClient.HOP_HEADER, hop);
+        if (secret != null) {
+            request.addHeader(ClusterClient.SECRET_HEADER, secret);
+        }
+        return request;
+    }
+
+    private static ClusterProperties properties(boolean enabled, String secret) {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setEnabled(enabled);
+        properties.setSecret(secret);
+        return properties;
+    }
+
+}
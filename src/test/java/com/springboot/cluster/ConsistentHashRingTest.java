@@ -0,0 +1,64 @@
+package com.springboot.cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class ConsistentHashRingTest {
+
+    private static final int RESTAURANTS = 100_000;
+
+    private static final List<String> NODES = Arrays.asList("http://a:8081", "http://b:8081", "http://c:8081",
+            "http://d:8081");
+
+    @Test
+    public void testRestaurantsSpreadEvenlyOverNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 64);
+        Map<String, Integer> primaries = new HashMap<>();
+        for (int restaurantId = 0; restaurantId < RESTAURANTS; restaurantId++) {
+            primaries.merge(ring.primary(restaurantId), 1, Integer::sum);
+            List<String> owners = ring.owners(restaurantId, 2);
+            Assert.assertEquals(2, new HashSet<>(owners).size());
+            Assert.assertEquals(ring.primary(restaurantId), owners.get(0));
+        }
+        Assert.assertEquals(NODES.size(), primaries.size());
+        for (int restaurants : primaries.values()) {
+            // 64 points per node keep every node within a third of its fair share
+            Assert.assertTrue(restaurants + " restaurants", Math.abs(restaurants - RESTAURANTS / NODES.size())
+                    < RESTAURANTS / NODES.size() / 3);
+        }
+    }
+
+    @Test
+    public void testJoiningNodeOnlyTakesRestaurantsOver() {
+        ConsistentHashRing before = new ConsistentHashRing(NODES, 64);
+        ConsistentHashRing after = before.with("http://e:8081");
+        int moved = 0;
+        for (int restaurantId = 0; restaurantId < RESTAURANTS; restaurantId++) {
+            String primary = after.primary(restaurantId);
+            if (!primary.equals(before.primary(restaurantId))) {
+                Assert.assertEquals("http://e:8081", primary);
+                moved++;
+            }
+        }
+        // about a fifth of the restaurants move, all of them to the new node
+        Assert.assertTrue(moved + " moved", moved > RESTAURANTS / 5 * 2 / 3 && moved < RESTAURANTS / 5 * 4 / 3);
+    }
+
+    @Test
+    public void testMembersBuildTheSameRingWhateverTheOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 16);
+        ConsistentHashRing reversed = new ConsistentHashRing(Arrays.asList(NODES.get(3), NODES.get(2),
+                NODES.get(1), NODES.get(0)), 16);
+        for (int restaurantId = 0; restaurantId < 1000; restaurantId++) {
+            Assert.assertEquals(ring.owners(restaurantId, 3), reversed.owners(restaurantId, 3));
+        }
+        Assert.assertEquals(1, new ConsistentHashRing(NODES.subList(0, 1), 16).owners(7, 2).size());
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.springboot.repository;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class CompactOfferRepositoryTest {
+
+    private static final List<String> SEGMENTS = Arrays.asList("p1", "p2", "p3", "p4");
+
+    @Test
+    public void testAnswersLikeTheHeapRepository() {
+        Random random = new Random(11);
+        CompactOfferRepository compact = new CompactOfferRepository();
+        InMemoryOfferRepository heap = new InMemoryOfferRepository();
+        List<OfferRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            List<String> segments = new ArrayList<>(SEGMENTS);
+            Collections.shuffle(segments, random);
+            OfferRequest offer = new OfferRequest(random.nextInt(50), random.nextBoolean() ? "FLATX" : "FLATP",
+                    random.nextInt(60), segments.subList(0, 1 + random.nextInt(segments.size())));
+            if (random.nextInt(5) == 0) {
+                offer.setMax_discount(random.nextInt(100));
+            }
+            if (i % 3 == 0) {
+                batch.add(offer);
+            } else {
+                compact.save(offer);
+                heap.save(offer);
+            }
+            if (batch.size() == 10) {
+                compact.saveAll(batch);
+                heap.saveAll(batch);
+                batch.clear();
+            }
+        }
+
+        Assert.assertEquals(heap.size(), compact.size());
+        Assert.assertEquals(heap.restaurantCount(), compact.restaurantCount());
+        Assert.assertEquals(heap.maxOffersPerRestaurant(), compact.maxOffersPerRestaurant());
+        for (int restaurant = -1; restaurant <= 50; restaurant++) {
+            for (String segment : Arrays.asList("p1", "p2", "p3", "p4", "p5")) {
+                assertSameOffer(heap.findFirstMatch(restaurant, segment), compact.findFirstMatch(restaurant, segment));
+                List<String> pair = Arrays.asList(segment, "p" + (1 + (segment.charAt(1) - '0') % 4));
+                assertSameOffer(heap.findFirstMatch(restaurant, heap.segments().maskOf(pair)),
+                        compact.findFirstMatch(restaurant, compact.segments().maskOf(pair)));
+                for (int cart = 0; cart < 1_000; cart += 97) {
+                    Offer expected = heap.findBestMatch(restaurant, segment, cart);
+                    Offer actual = compact.findBestMatch(restaurant, segment, cart);
+                    Assert.assertEquals(expected == null, actual == null);
+                    if (expected != null) {
+                        Assert.assertEquals(expected.apply(cart), actual.apply(cart));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChurnByIdStaysFlatAndAnswersLikeTheHeapRepository() {
+        Random random = new Random(17);
+        CompactOfferRepository compact = new CompactOfferRepository();
+        InMemoryOfferRepository heap = new InMemoryOfferRepository();
+        for (int i = 0; i < 60_000; i++) {
+            String offerId = "promo-" + random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(heap.delete(offerId, null) == null, compact.delete(offerId, null) == null);
+                continue;
+            }
+            OfferRequest offer = new OfferRequest(random.nextInt(50), "FLATX", random.nextInt(60),
+                    SEGMENTS.subList(0, 1 + random.nextInt(SEGMENTS.size())));
+            offer.setOffer_id(offerId);
+            Assert.assertEquals(heap.put(offer), compact.put(offer));
+        }
+
+        Assert.assertEquals(heap.size(), compact.size());
+        Assert.assertTrue("entries=" + compact.entries(), compact.entries() < 2 * compact.size() + (1 << 15));
+        for (int restaurant = 0; restaurant < 50; restaurant++) {
+            Assert.assertEquals(heap.countForRestaurant(restaurant), compact.countForRestaurant(restaurant));
+            for (String segment : SEGMENTS) {
+                assertSameOffer(heap.findFirstMatch(restaurant, segment), compact.findFirstMatch(restaurant, segment));
+                assertSameOffer(heap.findBestMatch(restaurant, segment, 500),
+                        compact.findBestMatch(restaurant, segment, 500));
+            }
+        }
+    }
+
+    @Test
+    public void testReplacedCatalogueIsInvisibleUntilCommitted() {
+        CompactOfferRepository repository = new CompactOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+
+        OfferCatalogueBuilder catalogue = repository.newCatalogue();
+        catalogue.add(new OfferRequest(2, "FLATP", 20, Arrays.asList("p2", "p1")));
+        Assert.assertEquals(1, catalogue.size());
+        Assert.assertNotNull(repository.findFirstMatch(1, "p1"));
+
+        catalogue.commit();
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        Offer offer = repository.findFirstMatch(2, "p2");
+        Assert.assertEquals("FLATP", offer.getOfferType());
+        Assert.assertEquals(Arrays.asList("p1", "p2"), offer.getCustomerSegments());
+    }
+
+    @Test
+    public void testUpdatesKeepTheirFirstMatchPosition() {
+        InMemoryOfferRepositoryTest.assertUpdatesKeepTheirPlace(new CompactOfferRepository());
+    }
+
+    @Test
+    public void testRestaurantsMoveThroughExport() {
+        InMemoryOfferRepositoryTest.assertRestaurantMoves(new CompactOfferRepository(), new CompactOfferRepository());
+    }
+
+    @Test
+    public void testRedemptionLimitsFollowOffersThroughCompaction() {
+        CompactOfferRepository repository = new CompactOfferRepository();
+        OfferRequest capped = InMemoryOfferRepositoryTest.offer("capped", 1, 50, null, null);
+        capped.setBudget(5000L);
+        repository.put(capped);
+        for (int i = 0; i < 20_000; i++) {
+            repository.put(InMemoryOfferRepositoryTest.offer("promo", 2, i % 100, null, null));
+        }
+        Assert.assertTrue(repository.entries() < 10_000);
+        Assert.assertEquals(5000, repository.findFirstMatch(1, "p1").getCap().getBudget());
+        Assert.assertNull(repository.findFirstMatch(2, "p1").getCap());
+
+        Assert.assertNotNull(repository.suspend("capped", 1));
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        capped.setBudget(8000L);
+        repository.put(capped);
+        Assert.assertEquals(2, repository.findFirstMatch(1, "p1").getCap().getVersion());
+        Assert.assertEquals(8000, repository.findFirstMatch(1, "p1").getCap().getBudget());
+    }
+
+    private static void assertSameOffer(Offer expected, Offer actual) {
+        if (expected == null) {
+            Assert.assertNull(actual);
+            return;
+        }
+        Assert.assertEquals(expected.getOfferType(), actual.getOfferType());
+        Assert.assertEquals(expected.getOfferValue(), actual.getOfferValue());
+        Assert.assertEquals(expected.getRule().toString(), actual.getRule().toString());
+        Assert.assertEquals(expected.getCustomerSegments().size(), actual.getCustomerSegments().size());
+    }
+}
@@ -0,0 +1,258 @@
+package com.springboot.repository;
+
+import com.springboot.budget.LocalBudgetLedger;
+import com.springboot.controller.OfferRequest;
+import com.springboot.controller.OfferTier;
+import com.springboot.model.Offer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DurableOfferRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DurableOfferRepository repository;
+
+    @After
+    public void tearDown() throws IOException {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    private DurableOfferRepository reopen(long compactAfterBytes) throws IOException {
+        if (repository != null) {
+            repository.close();
+        }
+        repository = new DurableOfferRepository(new InMemoryOfferRepository(), folder.getRoot().toPath(), compactAfterBytes);
+        return repository;
+    }
+
+    @Test
+    public void testOffersSurviveRestartInOrder() throws IOException {
+        reopen(Long.MAX_VALUE);
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+        OfferRequest tiered = new OfferRequest(1, "TIERED", 0, Arrays.asList("p1", "p2"));
+        tiered.setTiers(Arrays.asList(new OfferTier(100, "FLATP", 10, 25)));
+        repository.saveAll(Arrays.asList(tiered, new OfferRequest(2, "FLATP", 20, Arrays.asList("p3"))));
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(3, repository.size());
+        Assert.assertEquals("FLATX", repository.findFirstMatch(1, "p1").getOfferType());
+        Assert.assertEquals(975, repository.findFirstMatch(1, "p2").apply(1000));
+        Assert.assertEquals(80, repository.findFirstMatch(2, "p3").apply(100));
+    }
+
+    @Test
+    public void testTornTailOfTheLogIsDropped() throws IOException {
+        reopen(Long.MAX_VALUE);
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+        repository.save(new OfferRequest(2, "FLATX", 20, Arrays.asList("p1")));
+        repository.close();
+        repository = null;
+
+        Path log = logFiles().get(0);
+        long intact = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2, 3 }));
+        }
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(2, repository.size());
+        Assert.assertEquals(intact, Files.size(log));
+        repository.save(new OfferRequest(3, "FLATX", 30, Arrays.asList("p1")));
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(30, repository.findFirstMatch(3, "p1").getOfferValue());
+    }
+
+    @Test
+    public void testReplacedCatalogueSurvivesRestart() throws IOException {
+        reopen(Long.MAX_VALUE);
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+
+        OfferCatalogueBuilder abandoned = repository.newCatalogue();
+        abandoned.add(new OfferRequest(9, "FLATX", 90, Arrays.asList("p1")));
+        abandoned.abort();
+
+        OfferCatalogueBuilder catalogue = repository.newCatalogue();
+        catalogue.add(new OfferRequest(2, "FLATP", 20, Arrays.asList("p2")));
+        catalogue.commit();
+        repository.save(new OfferRequest(3, "FLATX", 30, Arrays.asList("p3")));
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(2, repository.size());
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        Assert.assertNull(repository.findFirstMatch(9, "p1"));
+        Assert.assertEquals(20, repository.findFirstMatch(2, "p2").getOfferValue());
+        Assert.assertEquals(30, repository.findFirstMatch(3, "p3").getOfferValue());
+        Assert.assertEquals(1, logFiles().size());
+    }
+
+    @Test
+    public void testCompactionFoldsLogsIntoTheSnapshot() throws IOException {
+        reopen(4096);
+        for (int i = 0; i < 1000; i++) {
+            repository.save(new OfferRequest(i % 10, "FLATX", i, Arrays.asList("p1")));
+        }
+        repository.compact();
+        repository.save(new OfferRequest(10, "FLATX", 1000, Arrays.asList("p1")));
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(1001, repository.size());
+        for (int restaurant = 0; restaurant < 10; restaurant++) {
+            Offer first = repository.findFirstMatch(restaurant, "p1");
+            Assert.assertEquals(restaurant, first.getOfferValue());
+        }
+        Assert.assertEquals(1000, repository.findFirstMatch(10, "p1").getOfferValue());
+        Assert.assertEquals(1, logFiles().size());
+    }
+
+    @Test
+    public void testUpdatesAndDeletesSurviveRestartAndCompaction() throws IOException {
+        reopen(Long.MAX_VALUE);
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 20; i++) {
+                repository.put(InMemoryOfferRepositoryTest.offer("promo-" + i, i, round, null, null));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(repository.delete("promo-" + i, 50L));
+        }
+        repository.save(InMemoryOfferRepositoryTest.offer("gone", 30, 1, null, System.currentTimeMillis() - 1));
+
+        reopen(Long.MAX_VALUE);
+        assertLiveCatalogue();
+        long logBytes = Files.size(logFiles().get(0));
+
+        repository.compact();
+        Assert.assertTrue(Files.size(folder.getRoot().toPath().resolve(DurableOfferRepository.SNAPSHOT)) < logBytes / 20);
+        reopen(Long.MAX_VALUE);
+        assertLiveCatalogue();
+        Assert.assertEquals(51, repository.put(InMemoryOfferRepositoryTest.offer("promo-19", 19, 50, null, null)));
+    }
+
+    @Test
+    public void testRedemptionLimitsSurviveRestartAndCompaction() throws IOException {
+        reopen(Long.MAX_VALUE);
+        OfferRequest capped = InMemoryOfferRepositoryTest.offer("capped", 1, 50, null, null);
+        capped.setMax_redemptions(10_000L);
+        capped.setBudget(500_000L);
+        repository.put(capped);
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(Long.valueOf(500_000), repository.find("capped").getBudget());
+        repository.compact();
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(Long.valueOf(10_000), repository.find("capped").getMax_redemptions());
+        Assert.assertEquals(500_000, repository.findFirstMatch(1, "p1").getCap().getBudget());
+    }
+
+    @Test
+    public void testSuspensionsSurviveRestartAndCompaction() throws IOException {
+        reopen(Long.MAX_VALUE);
+        repository.put(InMemoryOfferRepositoryTest.offer("spent", 1, 50, null, null));
+        Assert.assertNotNull(repository.suspend("spent", 1));
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        repository.compact();
+        reopen(Long.MAX_VALUE);
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        Assert.assertEquals(Long.valueOf(1), repository.find("spent").getVersion());
+
+        repository.put(InMemoryOfferRepositoryTest.offer("spent", 1, 60, null, null));
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(60, repository.findFirstMatch(1, "p1").getOfferValue());
+    }
+
+    @Test
+    public void testLeasedBudgetsSurviveRestartCompactionAndCatalogueReplace() throws IOException {
+        reopen(Long.MAX_VALUE);
+        LocalBudgetLedger ledger = new LocalBudgetLedger(repository);
+        ledger.limit("capped/redemptions", 10);
+        Assert.assertEquals(4, ledger.lease("capped/redemptions", 4));
+
+        reopen(Long.MAX_VALUE);
+        ledger = new LocalBudgetLedger(repository);
+        ledger.limit("capped/redemptions", 10);
+        Assert.assertEquals(4, ledger.leased("capped/redemptions"));
+        Assert.assertEquals(3, ledger.lease("capped/redemptions", 3));
+        repository.compact();
+
+        reopen(Long.MAX_VALUE);
+        repository.newCatalogue().commit();
+        reopen(Long.MAX_VALUE);
+        ledger = new LocalBudgetLedger(repository);
+        ledger.limit("capped/redemptions", 10);
+        Assert.assertEquals(3, ledger.lease("capped/redemptions", 5));
+        Assert.assertEquals(0, ledger.lease("capped/redemptions", 1));
+    }
+
+    @Test
+    public void testWritesThatCannotBeLoggedAreNotApplied() throws IOException {
+        reopen(Long.MAX_VALUE);
+        repository.put(InMemoryOfferRepositoryTest.offer("kept", 1, 50, null, null));
+        repository.close(); // closes the log under the repository
+
+        try {
+            repository.put(InMemoryOfferRepositoryTest.offer("lost", 2, 50, null, null));
+            Assert.fail();
+        } catch (UncheckedIOException expected) {
+        }
+        try {
+            repository.delete("kept", null);
+            Assert.fail();
+        } catch (UncheckedIOException expected) {
+        }
+        Assert.assertNull(repository.find("lost"));
+        Assert.assertNull(repository.findFirstMatch(2, "p1"));
+        Assert.assertNotNull(repository.find("kept"));
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(1, repository.size());
+        Assert.assertNotNull(repository.find("kept"));
+    }
+
+    @Test
+    public void testRemovedRestaurantsStayRemovedAfterRestart() throws IOException {
+        reopen(Long.MAX_VALUE);
+        InMemoryOfferRepositoryTest.assertRestaurantMoves(repository, new InMemoryOfferRepository());
+
+        reopen(Long.MAX_VALUE);
+        Assert.assertEquals(1, repository.size());
+        Assert.assertNull(repository.find("promo"));
+        Assert.assertEquals(15, repository.findFirstMatch(2, "p1").getOfferValue());
+    }
+
+    private void assertLiveCatalogue() {
+        Assert.assertEquals(10, repository.size());
+        Assert.assertNull(repository.find("promo-3"));
+        Assert.assertNull(repository.findFirstMatch(3, "p1"));
+        Assert.assertEquals(Long.valueOf(50), repository.find("promo-12").getVersion());
+        Assert.assertEquals(49, repository.findFirstMatch(12, "p1").getOfferValue());
+    }
+
+    private List<Path> logFiles() throws IOException {
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.getRoot().toPath(), "*.log")) {
+            files.forEach(logs::add);
+        }
+        return logs;
+    }
+}
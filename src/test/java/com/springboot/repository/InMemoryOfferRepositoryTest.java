@@ -0,0 +1,366 @@
+package com.springboot.repository;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.model.Offer;
+import com.springboot.model.RedemptionCap;
+import com.springboot.rule.DiscountRuleCompiler;
+import com.springboot.rule.InvalidOfferException;
+import com.springboot.timer.HashedTimingWheel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class InMemoryOfferRepositoryTest {
+
+    private static final int RESTAURANTS = 64;
+
+    @Test
+    public void testFirstSavedOfferWins() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1", "p2")));
+        repository.save(new OfferRequest(1, "FLATP", 20, Arrays.asList("p1")));
+
+        Assert.assertEquals("FLATX", repository.findFirstMatch(1, "p1").getOfferType());
+        Assert.assertSame(repository.findFirstMatch(1, "p1"), repository.findFirstMatch(1, "p2"));
+        Assert.assertNull(repository.findFirstMatch(1, "p3"));
+        Assert.assertNull(repository.findFirstMatch(2, "p1"));
+    }
+
+    @Test
+    public void testMatchesAnyOfSeveralSegments() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p2")));
+        repository.save(new OfferRequest(1, "FLATX", 20, Arrays.asList("p1")));
+        repository.save(new OfferRequest(1, "FLATX", 30, Arrays.asList("p3")));
+        SegmentRegistry segments = repository.segments();
+
+        Assert.assertEquals(10, repository.findFirstMatch(1, segments.maskOf(Arrays.asList("p1", "p2"))).getOfferValue());
+        Assert.assertEquals(20, repository.findFirstMatch(1, segments.maskOf(Arrays.asList("p1", "gold"))).getOfferValue());
+        Assert.assertEquals(30, repository.findBestMatch(1, segments.maskOf(Arrays.asList("p1", "p3")), 100).getOfferValue());
+        Assert.assertNull(repository.findFirstMatch(1, segments.maskOf("gold")));
+    }
+
+    @Test
+    public void testBestMatchTakesMostOffTheCart() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 50, Arrays.asList("p1")));
+        repository.save(new OfferRequest(1, "FLATP", 20, Arrays.asList("p1")));
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1", "p2")));
+
+        Assert.assertEquals("FLATX", repository.findBestMatch(1, "p1", 200).getOfferType());
+        Assert.assertEquals("FLATP", repository.findBestMatch(1, "p1", 1000).getOfferType());
+        Assert.assertEquals(10, repository.findBestMatch(1, "p2", 1000).getOfferValue());
+        Assert.assertNull(repository.findBestMatch(1, "p3", 1000));
+        Assert.assertNull(repository.findBestMatch(2, "p1", 1000));
+    }
+
+    @Test
+    public void testBestMatchAgreesWithEvaluatingEveryOffer() {
+        Random random = new Random(7);
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        List<OfferRequest> offers = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            OfferRequest offer = new OfferRequest(1, random.nextBoolean() ? "FLATX" : "FLATP", random.nextInt(100),
+                    Arrays.asList("p1"));
+            if (random.nextInt(4) == 0) {
+                offer.setMax_discount(random.nextInt(300));
+            }
+            if (random.nextInt(4) == 0) {
+                offer.setMin_cart_value(random.nextInt(1000));
+            }
+            offers.add(offer);
+            repository.save(offer);
+        }
+        DiscountRuleCompiler compiler = new DiscountRuleCompiler();
+        for (int cart = 0; cart < 2000; cart += 7) {
+            int expected = 0;
+            for (OfferRequest offer : offers) {
+                expected = Math.max(expected, cart - compiler.compile(offer).apply(cart));
+            }
+            Assert.assertEquals("cart " + cart, expected, cart - repository.findBestMatch(1, "p1", cart).apply(cart));
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesAreNotLost() throws Exception {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        int writers = 8;
+        int offersPerWriter = 2_000;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            String segment = "w" + w;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < offersPerWriter; i++) {
+                    repository.save(new OfferRequest(i % RESTAURANTS, "FLATX", i, Arrays.asList(segment)));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        for (int w = 0; w < writers; w++) {
+            for (int restaurant = 0; restaurant < RESTAURANTS; restaurant++) {
+                Offer first = repository.findFirstMatch(restaurant, "w" + w);
+                Assert.assertNotNull(first);
+                // each writer saves its offers in order, so the head of the bucket is its first offer
+                Assert.assertEquals(restaurant, first.getOfferValue());
+            }
+        }
+    }
+
+    @Test
+    public void testOffersAreReplacedAndDeletedById() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+        Assert.assertEquals(1, repository.put(offer("summer", 1, 20, null, null)));
+        Assert.assertEquals(2, repository.put(offer("summer", 1, 30, null, null)));
+
+        Assert.assertEquals(2, repository.size());
+        Assert.assertEquals(Long.valueOf(2), repository.find("summer").getVersion());
+        // an update keeps the place of the version it replaces, behind the plain offer saved first
+        Assert.assertEquals(10, repository.findFirstMatch(1, "p1").getOfferValue());
+        Assert.assertEquals(30, repository.findBestMatch(1, "p1", 100).getOfferValue());
+
+        OfferRequest stale = offer("summer", 1, 40, null, null);
+        stale.setVersion(1L);
+        try {
+            repository.put(stale);
+            Assert.fail("expected a version conflict");
+        } catch (OfferVersionConflictException e) {
+            Assert.assertEquals(30, repository.findBestMatch(1, "p1", 100).getOfferValue());
+        }
+
+        Assert.assertEquals(30, repository.delete("summer", 2L).getOffer_value());
+        Assert.assertNull(repository.delete("summer", null));
+        Assert.assertNull(repository.find("summer"));
+        Assert.assertEquals(1, repository.size());
+        Assert.assertEquals(10, repository.findBestMatch(1, "p1", 100).getOfferValue());
+    }
+
+    @Test
+    public void testValidityWindowsOpenAndCloseOnTheWheel() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        HashedTimingWheel wheel = new HashedTimingWheel("test", 100, 64, clock::get);
+        InMemoryOfferRepository repository = new InMemoryOfferRepository(new DiscountRuleCompiler(), wheel);
+        List<Integer> changed = new ArrayList<>();
+        repository.onScheduledChange(changed::add);
+        long now = clock.get();
+        repository.save(offer("lunch", 1, 20, now + 1_000, now + 2_000));
+        repository.save(offer(null, 2, 30, null, now + 500));
+        repository.save(offer("expired", 3, 40, now - 2_000, now - 1_000));
+
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        Assert.assertNotNull(repository.find("lunch"));
+        Assert.assertEquals(30, repository.findFirstMatch(2, "p1").getOfferValue());
+        Assert.assertNull(repository.find("expired"));
+        Assert.assertEquals(1, repository.size());
+
+        clock.set(now + 1_000);
+        wheel.advance();
+        Assert.assertEquals(20, repository.findFirstMatch(1, "p1").getOfferValue());
+        Assert.assertNull(repository.findFirstMatch(2, "p1"));
+        Assert.assertEquals(Arrays.asList(2, 1), changed);
+
+        clock.set(now + 2_000);
+        wheel.advance();
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        Assert.assertNull(repository.find("lunch"));
+        Assert.assertEquals(0, repository.size());
+        Assert.assertEquals(0, repository.restaurantCount());
+        Assert.assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testSpentOffersAreSuspendedUntilReplaced() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        OfferRequest capped = offer("capped", 1, 50, null, null);
+        capped.setMax_redemptions(100L);
+        repository.put(capped);
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+        RedemptionCap cap = repository.findFirstMatch(1, "p1").getCap();
+        Assert.assertEquals("capped", cap.getOfferId());
+        Assert.assertEquals(100, cap.getMaxRedemptions());
+        Assert.assertEquals(0, cap.getBudget());
+
+        Assert.assertNull(repository.suspend("capped", 2));
+        Assert.assertEquals(50, repository.suspend("capped", 1).getOffer_value());
+        Assert.assertNull(repository.suspend("capped", 1));
+        Assert.assertEquals(10, repository.findFirstMatch(1, "p1").getOfferValue());
+        Assert.assertEquals(1, repository.size());
+        Assert.assertEquals(Long.valueOf(1), repository.find("capped").getVersion());
+
+        capped.setMax_redemptions(200L);
+        Assert.assertEquals(2, repository.put(capped));
+        Assert.assertEquals(2, repository.size());
+        Assert.assertEquals(200, repository.findBestMatch(1, "p1", 100).getCap().getMaxRedemptions());
+    }
+
+    @Test
+    public void testUpdatesKeepTheirFirstMatchPosition() {
+        assertUpdatesKeepTheirPlace(new InMemoryOfferRepository());
+    }
+
+    static void assertUpdatesKeepTheirPlace(OfferRepository repository) {
+        OfferRequest capped = offer("capped", 1, 50, null, null);
+        capped.setMax_redemptions(100L);
+        repository.put(capped);
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+
+        capped.setOffer_value(40);
+        Assert.assertEquals(2, repository.put(capped));
+        Assert.assertEquals(40, repository.findFirstMatch(1, "p1").getOfferValue());
+
+        repository.suspend("capped", 2);
+        Assert.assertEquals(10, repository.findFirstMatch(1, "p1").getOfferValue());
+        Assert.assertEquals(1, repository.offersOf(1).size());
+        Assert.assertEquals(1, repository.countForRestaurant(1));
+
+        capped.setOffer_value(30);
+        Assert.assertEquals(3, repository.put(capped));
+        Assert.assertEquals(30, repository.findFirstMatch(1, "p1").getOfferValue());
+        Assert.assertEquals(2, repository.size());
+        Assert.assertEquals(2, repository.countForRestaurant(1));
+    }
+
+    @Test
+    public void testRestaurantsMoveThroughExport() {
+        assertRestaurantMoves(new InMemoryOfferRepository(), new InMemoryOfferRepository());
+    }
+
+    /** Exports restaurant 1 of {@code from} into {@code to}, then removes it from {@code from}. */
+    static void assertRestaurantMoves(OfferRepository from, OfferRepository to) {
+        from.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p2", "p1")));
+        from.put(offer("promo", 1, 20, null, null));
+        Assert.assertEquals(2, from.put(offer("promo", 1, 25, null, null)));
+        from.put(offer("later", 1, 30, Long.MAX_VALUE - 1, null));
+        from.save(new OfferRequest(2, "FLATP", 15, Arrays.asList("p1")));
+
+        List<OfferRequest> exported = new ArrayList<>();
+        from.export(restaurantId -> restaurantId == 1, exported::add);
+        Assert.assertEquals(3, exported.size());
+        Assert.assertEquals(2, exported.get(0).getCustomer_segment().size());
+        Assert.assertNull(exported.get(0).getOffer_id());
+        Assert.assertEquals(Long.valueOf(2), exported.get(1).getVersion());
+        Assert.assertEquals("later", exported.get(2).getOffer_id());
+
+        to.put(offer("promo", 1, 40, null, null));
+        to.put(offer("promo", 1, 40, null, null));
+        to.put(offer("promo", 1, 40, null, null));
+        to.saveAll(exported);
+        Assert.assertEquals(2, to.countForRestaurant(1));
+        // the version stored there is newer than the exported one
+        Assert.assertEquals(Long.valueOf(3), to.find("promo").getVersion());
+        Assert.assertEquals(10, to.findFirstMatch(1, "p2").getOfferValue());
+        Assert.assertEquals(30, to.find("later").getOffer_value());
+
+        from.removeRestaurants(restaurantId -> restaurantId == 1);
+        Assert.assertEquals(0, from.countForRestaurant(1));
+        Assert.assertNull(from.find("promo"));
+        Assert.assertNull(from.find("later"));
+        Assert.assertEquals(1, from.size());
+        Assert.assertEquals(15, from.findFirstMatch(2, "p1").getOfferValue());
+    }
+
+    @Test(expected = InvalidOfferException.class)
+    public void testRedemptionLimitsNeedAnOfferId() {
+        OfferRequest offer = offer(null, 1, 50, null, null);
+        offer.setBudget(1000L);
+        new InMemoryOfferRepository().save(offer);
+    }
+
+    @Test
+    public void testABatchWithAnInvalidOfferSavesNothing() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        OfferRequest unnamedLimit = offer(null, 2, 20, null, null);
+        unnamedLimit.setMax_redemptions(10L);
+        List<List<OfferRequest>> batches = Arrays.asList(
+                Arrays.asList(offer("first", 1, 10, null, null), offer("empty", 2, 20, 2000L, 1000L)),
+                Arrays.asList(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")), unnamedLimit),
+                Arrays.asList(offer("first", 1, 10, null, null), new OfferRequest(2, "FLATX", 20, null)));
+        for (List<OfferRequest> batch : batches) {
+            try {
+                repository.saveAll(batch);
+                Assert.fail("saved " + batch);
+            } catch (InvalidOfferException expected) {
+                Assert.assertEquals(0, repository.size());
+                Assert.assertNull(repository.find("first"));
+            }
+        }
+    }
+
+    @Test
+    public void testReplacingTheCatalogueFreesTheIdsOfUnusedSegments() {
+        InMemoryOfferRepository repository = new InMemoryOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("kept")));
+        for (int generation = 0; generation < 3; generation++) {
+            OfferCatalogueBuilder catalogue = repository.newCatalogue();
+            catalogue.add(new OfferRequest(1, "FLATX", 10, Arrays.asList("kept")));
+            for (int segment = 1; segment < SegmentRegistry.MASK_BITS; segment++) {
+                catalogue.add(new OfferRequest(2, "FLATX", segment, Arrays.asList("g" + generation + "-" + segment)));
+            }
+            catalogue.commit();
+            Assert.assertEquals(SegmentRegistry.MASK_BITS, repository.segments().size());
+            Assert.assertEquals(0, repository.segments().idOf("kept"));
+            Assert.assertEquals(-1, repository.segments().idOf("g" + (generation - 1) + "-1"));
+            Assert.assertEquals(5, repository.findFirstMatch(2, "g" + generation + "-5").getOfferValue());
+        }
+    }
+
+    @Test
+    public void testSegmentsPastTheMaskBitsMatchByName() {
+        assertSegmentsPastTheMaskBitsMatchByName(new InMemoryOfferRepository());
+        assertSegmentsPastTheMaskBitsMatchByName(new CompactOfferRepository());
+    }
+
+    static void assertSegmentsPastTheMaskBitsMatchByName(OfferRepository repository) {
+        int segments = SegmentRegistry.MASK_BITS + 40;
+        for (int segment = 0; segment < segments; segment++) {
+            repository.save(new OfferRequest(1, "FLATX", 1 + segment, Arrays.asList("s" + segment)));
+        }
+        repository.save(new OfferRequest(1, "FLATX", 500, Arrays.asList("s70", "s1")));
+        for (int segment = 0; segment < segments; segment++) {
+            Assert.assertEquals(1 + segment, repository.findFirstMatch(1, "s" + segment).getOfferValue());
+            Assert.assertEquals(Arrays.asList("s" + segment),
+                    repository.findFirstMatch(1, "s" + segment).getCustomerSegments());
+        }
+        Assert.assertEquals(500, repository.findBestMatch(1, "s70", 1000).getOfferValue());
+        Assert.assertEquals(500, repository.findBestMatch(1, "s1", 1000).getOfferValue());
+        Assert.assertEquals(80, repository.findBestMatch(1, "s79", 1000).getOfferValue());
+        Assert.assertNull(repository.findFirstMatch(1, "s" + segments));
+    }
+
+    @Test(expected = InvalidOfferException.class)
+    public void testANullSegmentIsRejected() {
+        new InMemoryOfferRepository().save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1", null)));
+    }
+
+    @Test(expected = InvalidOfferException.class)
+    public void testAnOfferWithoutSegmentsIsRejected() {
+        new InMemoryOfferRepository().save(new OfferRequest(1, "FLATX", 10, null));
+    }
+
+    static OfferRequest offer(String offerId, int restaurantId, int value, Long validFrom, Long validUntil) {
+        OfferRequest offer = new OfferRequest(restaurantId, "FLATX", value, Arrays.asList("p1"));
+        offer.setOffer_id(offerId);
+        offer.setValid_from(validFrom);
+        offer.setValid_until(validUntil);
+        return offer;
+    }
+}
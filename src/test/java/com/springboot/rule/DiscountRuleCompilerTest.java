@@ -0,0 +1,90 @@
+package com.springboot.rule;
+
+import com.springboot.controller.OfferRequest;
+import com.springboot.controller.OfferTier;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+public class DiscountRuleCompilerTest {
+
+    private final DiscountRuleCompiler compiler = new DiscountRuleCompiler();
+
+    @Test
+    public void testFlatAndPercent() {
+        DiscountRule flat = compiler.compile(new OfferRequest(1, "FLATX", 10, null));
+        Assert.assertEquals(190, flat.apply(200));
+        Assert.assertEquals(0, flat.apply(5));
+
+        DiscountRule percent = compiler.compile(new OfferRequest(1, "FLATP", 33, null));
+        Assert.assertEquals(67, percent.apply(100));
+        Assert.assertEquals(0, compiler.compile(new OfferRequest(1, "FLATP", 150, null)).apply(100));
+    }
+
+    @Test
+    public void testPercentIsExactForEveryCartAndPercentage() {
+        for (int percent = 0; percent <= 100; percent++) {
+            DiscountRule rule = DiscountRule.percent(percent);
+            for (int cart = 0; cart <= 2_000; cart++) {
+                int expected = BigDecimal.valueOf(cart).multiply(BigDecimal.valueOf(100 - percent))
+                        .divide(BigDecimal.valueOf(100), 0, RoundingMode.FLOOR).intValueExact();
+                Assert.assertEquals(percent + "% of " + cart, expected, rule.apply(cart));
+            }
+        }
+        Assert.assertEquals(1_932_735_282, DiscountRule.percent(10).apply(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testMaxDiscountAndMinCartValue() {
+        OfferRequest capped = new OfferRequest(1, "FLATP", 20, null);
+        capped.setMax_discount(50);
+        Assert.assertEquals(80, compiler.compile(capped).apply(100));
+        Assert.assertEquals(950, compiler.compile(capped).apply(1000));
+
+        OfferRequest minCart = new OfferRequest(1, "FLATX", 30, null);
+        minCart.setMin_cart_value(200);
+        Assert.assertEquals(199, compiler.compile(minCart).apply(199));
+        Assert.assertEquals(170, compiler.compile(minCart).apply(200));
+    }
+
+    @Test
+    public void testTieredPicksHighestTierReached() {
+        OfferRequest tiered = new OfferRequest(1, "TIERED", 0, null);
+        tiered.setTiers(Arrays.asList(new OfferTier(500, "FLATP", 10, 80), new OfferTier(100, "FLATX", 20, null)));
+        DiscountRule rule = compiler.compile(tiered);
+
+        Assert.assertEquals(99, rule.apply(99));
+        Assert.assertEquals(80, rule.apply(100));
+        Assert.assertEquals(450, rule.apply(500));
+        Assert.assertEquals(920, rule.apply(1000));
+    }
+
+    @Test
+    public void testUnknownTypesArePricedAsPercentagesAndCustomTypesCanBeRegistered() {
+        Assert.assertEquals(90, compiler.compile(new OfferRequest(1, "BOGO", 10, null)).apply(100));
+
+        compiler.register("FREE", offer -> cartValue -> 0);
+        Assert.assertEquals(0, compiler.compile(new OfferRequest(1, "FREE", 0, null)).apply(100));
+    }
+
+    @Test
+    public void testRejectsOffersThatCannotBeCompiled() {
+        assertInvalid(new OfferRequest(1, null, 10, null));
+        assertInvalid(new OfferRequest(1, "FLATX", -10, null));
+        assertInvalid(new OfferRequest(1, "TIERED", 0, null));
+        OfferRequest negativeCap = new OfferRequest(1, "FLATP", 10, null);
+        negativeCap.setMax_discount(-1);
+        assertInvalid(negativeCap);
+    }
+
+    private void assertInvalid(OfferRequest offer) {
+        try {
+            compiler.compile(offer);
+            Assert.fail("compiled " + offer);
+        } catch (InvalidOfferException expected) {
+        }
+    }
+}
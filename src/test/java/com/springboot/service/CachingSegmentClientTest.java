@@ -0,0 +1,183 @@
+package com.springboot.service;
+
+import com.springboot.controller.SegmentCacheStats;
+import com.springboot.controller.SegmentEvent;
+import com.springboot.controller.SegmentResponse;
+import com.springboot.property.SegmentProperties;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CachingSegmentClientTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    private SegmentProperties.Cache cacheProperties;
+
+    @Before
+    public void setup() {
+        cacheProperties = new SegmentProperties.Cache();
+        cacheProperties.setMaxSize(1000);
+        cacheProperties.setTtlMs(1000);
+        cacheProperties.setNegativeTtlMs(100);
+    }
+
+    private SegmentClient upstream(String segment) {
+        return userId -> {
+            upstreamCalls.incrementAndGet();
+            SegmentResponse response = new SegmentResponse();
+            response.setSegment(segment);
+            return response;
+        };
+    }
+
+    @Test
+    public void testHitUntilTtlExpires() throws Exception {
+        CachingSegmentClient client = new CachingSegmentClient(upstream("p1"), cacheProperties, 4, now::get);
+
+        Assert.assertEquals("p1", client.fetchSegment(1).getSegment());
+        Assert.assertEquals("p1", client.fetchSegment(1).getSegment());
+        Assert.assertEquals(1, upstreamCalls.get());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+        client.fetchSegment(1);
+        Assert.assertEquals(2, upstreamCalls.get());
+
+        SegmentCacheStats stats = client.stats();
+        Assert.assertEquals(1, stats.getHits());
+        Assert.assertEquals(2, stats.getMisses());
+    }
+
+    @Test
+    public void testUnknownUsersUseTheNegativeTtl() throws Exception {
+        CachingSegmentClient client = new CachingSegmentClient(upstream(SegmentClient.UNKNOWN_SEGMENT),
+                cacheProperties, 4, now::get);
+
+        client.fetchSegment(99);
+        client.fetchSegment(99);
+        Assert.assertEquals(1, upstreamCalls.get());
+        Assert.assertEquals(1, client.stats().getNegative_hits());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(101));
+        client.fetchSegment(99);
+        Assert.assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        SegmentClient failing = userId -> {
+            upstreamCalls.incrementAndGet();
+            throw new ConnectException("refused");
+        };
+        CachingSegmentClient client = new CachingSegmentClient(failing, cacheProperties, 4, now::get);
+
+        Assert.assertEquals(SegmentClient.UNKNOWN_SEGMENT, client.getSegmentResponse(1).getSegment());
+        Assert.assertEquals(SegmentClient.UNKNOWN_SEGMENT, client.getSegmentResponse(1).getSegment());
+        Assert.assertEquals(2, upstreamCalls.get());
+        Assert.assertEquals(2, client.stats().getLoad_failures());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsEvicted() throws Exception {
+        cacheProperties.setMaxSize(1);
+        CachingSegmentClient client = new CachingSegmentClient(upstream("p1"), cacheProperties, 4, now::get);
+
+        client.fetchSegment(1);
+        client.fetchSegment(2);
+        client.fetchSegment(1);
+        Assert.assertEquals(3, upstreamCalls.get());
+        Assert.assertEquals(2, client.stats().getEvictions());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneUpstreamCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SegmentClient slow = userId -> {
+            upstreamCalls.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            SegmentResponse response = new SegmentResponse();
+            response.setSegment("p2");
+            return response;
+        };
+        CachingSegmentClient client = new CachingSegmentClient(slow, cacheProperties, 4, now::get);
+        int callers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        List<Future<SegmentResponse>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(pool.submit(() -> client.fetchSegment(2)));
+        }
+        while (upstreamCalls.get() == 0 || client.stats().getCoalesced() < callers - 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<SegmentResponse> result : results) {
+            Assert.assertEquals("p2", result.get(10, TimeUnit.SECONDS).getSegment());
+        }
+        pool.shutdown();
+
+        Assert.assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    public void testPushedSegmentsOutliveTheTtlWhileTheFeedIsLive() throws Exception {
+        SegmentProperties.Feed feedProperties = new SegmentProperties.Feed();
+        feedProperties.setMaxStalenessMs(10000);
+        feedProperties.setHeartbeatTimeoutMs(500);
+        CachingSegmentClient client = new CachingSegmentClient(upstream("p1"), cacheProperties, feedProperties, 4,
+                now::get);
+
+        Assert.assertTrue(client.push(new SegmentEvent(1, "p3", null, 2)));
+        Assert.assertFalse(client.push(new SegmentEvent(1, "p2", null, 1)));
+        for (int i = 0; i < 10; i++) {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+            client.heartbeat();
+            Assert.assertEquals("p3", client.fetchSegment(1).getSegment());
+        }
+        Assert.assertEquals(0, upstreamCalls.get());
+        Assert.assertTrue(client.stats().isFeed_live());
+
+        // the feed went quiet, so the segment is as good as its TTL again
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        Assert.assertEquals("p1", client.fetchSegment(1).getSegment());
+        Assert.assertEquals(1, upstreamCalls.get());
+        SegmentCacheStats stats = client.stats();
+        Assert.assertFalse(stats.isFeed_live());
+        Assert.assertEquals(1, stats.getFeed_events());
+        Assert.assertEquals(1, stats.getFeed_events_ignored());
+    }
+
+    @Test
+    public void testResyncReplacesEveryCachedSegment() throws Exception {
+        CachingSegmentClient client = new CachingSegmentClient(upstream("p1"), cacheProperties, 4, now::get);
+        client.fetchSegment(1);
+        client.fetchSegment(2);
+
+        now.addAndGet(1);
+        long token = client.beginResync();
+        client.restore(new SegmentEvent(2, "p2", null, 0));
+        client.finishResync(token);
+
+        Assert.assertEquals("p2", client.fetchSegment(2).getSegment());
+        Assert.assertEquals("p1", client.fetchSegment(1).getSegment());
+        Assert.assertEquals(3, upstreamCalls.get());
+        Assert.assertEquals(1, client.stats().getResyncs());
+    }
+}
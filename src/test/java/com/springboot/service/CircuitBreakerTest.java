@@ -0,0 +1,55 @@
+package com.springboot.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3, 1000, now::get);
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.recordFailure();
+        Assert.assertTrue(circuitBreaker.isOpen());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void testLetsOneTrialThroughAfterOpenPeriod() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+
+        circuitBreaker.recordSuccess();
+        Assert.assertFalse(circuitBreaker.isOpen());
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void testFailedTrialReopensTheCircuit() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        Assert.assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.recordFailure();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        Assert.assertFalse(circuitBreaker.tryAcquire());
+    }
+}
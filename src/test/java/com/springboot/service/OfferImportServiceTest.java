@@ -0,0 +1,92 @@
+package com.springboot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.controller.OfferImportResponse;
+import com.springboot.controller.OfferRequest;
+import com.springboot.property.OfferProperties;
+import com.springboot.repository.InMemoryOfferRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class OfferImportServiceTest {
+
+    private InMemoryOfferRepository repository;
+
+    private OfferImportService importService;
+
+    @Before
+    public void setup() {
+        repository = new InMemoryOfferRepository();
+        importService = new OfferImportService(new ObjectMapper());
+        ReflectionTestUtils.setField(importService, "offerRepository", repository);
+        ReflectionTestUtils.setField(importService, "offerMatchCache", new OfferMatchCache(new OfferProperties.Cache()));
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testJsonArrayReplacesCatalogue() throws Exception {
+        OfferImportResponse response = importService.replaceCatalogue(body(
+                "[{\"restaurant_id\":2,\"offer_type\":\"FLATP\",\"offer_value\":20,\"customer_segment\":[\"p1\",\"p2\"]},"
+                        + "{\"restaurant_id\":2,\"offer_type\":\"FLATX\",\"offer_value\":5,\"customer_segment\":[\"p2\"]}]"));
+
+        Assert.assertEquals(2, response.getImported());
+        Assert.assertEquals(2, repository.size());
+        Assert.assertNull(repository.findFirstMatch(1, "p1"));
+        Assert.assertEquals(20, repository.findFirstMatch(2, "p2").getOfferValue());
+    }
+
+    @Test
+    public void testNdjsonIsAppended() throws Exception {
+        OfferImportResponse response = importService.appendOffers(body(
+                "{\"restaurant_id\":1,\"offer_type\":\"FLATP\",\"offer_value\":20,\"customer_segment\":[\"p1\",\"p2\"]}\n"
+                        + "{\"restaurant_id\":3,\"offer_type\":\"FLATX\",\"offer_value\":5,\"customer_segment\":[\"p3\"]}\n"));
+
+        Assert.assertEquals(2, response.getImported());
+        Assert.assertEquals(3, repository.size());
+        Assert.assertEquals(10, repository.findFirstMatch(1, "p1").getOfferValue());
+        Assert.assertEquals(20, repository.findFirstMatch(1, "p2").getOfferValue());
+        Assert.assertEquals(5, repository.findFirstMatch(3, "p3").getOfferValue());
+    }
+
+    @Test
+    public void testLargeAppendIsSavedBatchByBatch() {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < OfferImportService.APPEND_BATCH_SIZE * 2 + 10; i++) {
+            ndjson.append("{\"restaurant_id\":").append(2 + i % 50)
+                    .append(",\"offer_type\":\"FLATX\",\"offer_value\":5,\"customer_segment\":[\"p1\"]}\n");
+        }
+        ndjson.append("42\n");
+        try {
+            importService.appendOffers(body(ndjson.toString()));
+            Assert.fail("expected the import to be rejected");
+        } catch (IOException expected) {
+            // the batches read before the error are already saved
+        }
+        Assert.assertEquals(1 + OfferImportService.APPEND_BATCH_SIZE * 2, repository.size());
+    }
+
+    @Test
+    public void testMalformedBodyLeavesCatalogueUntouched() {
+        try {
+            importService.replaceCatalogue(body(
+                    "[{\"restaurant_id\":2,\"offer_type\":\"FLATP\",\"offer_value\":20,\"customer_segment\":[\"p1\"]}, 42]"));
+            Assert.fail("expected the import to be rejected");
+        } catch (IOException expected) {
+            // the half-built catalogue must be discarded
+        }
+        Assert.assertEquals(1, repository.size());
+        Assert.assertEquals(10, repository.findFirstMatch(1, "p1").getOfferValue());
+    }
+}
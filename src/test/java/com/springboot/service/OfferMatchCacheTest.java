@@ -0,0 +1,68 @@
+package com.springboot.service;
+
+import com.springboot.controller.OfferCacheStats;
+import com.springboot.controller.OfferRequest;
+import com.springboot.property.OfferProperties;
+import com.springboot.repository.InMemoryOfferRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class OfferMatchCacheTest {
+
+    private InMemoryOfferRepository repository;
+
+    private OfferMatchCache cache;
+
+    private long p1;
+
+    @Before
+    public void setup() {
+        repository = new InMemoryOfferRepository();
+        repository.save(new OfferRequest(1, "FLATX", 10, Arrays.asList("p1")));
+        repository.save(new OfferRequest(2, "FLATX", 20, Arrays.asList("p1")));
+        cache = new OfferMatchCache(new OfferProperties.Cache());
+        p1 = repository.segments().maskOf("p1");
+    }
+
+    @Test
+    public void testRepeatedLookupIsServedFromCache() {
+        Assert.assertEquals(10, cache.findFirstMatch(repository, 1, p1).getOfferValue());
+        Assert.assertEquals(10, cache.findFirstMatch(repository, 1, p1).getOfferValue());
+        Assert.assertNull(cache.findFirstMatch(repository, 3, p1));
+        Assert.assertNull(cache.findFirstMatch(repository, 3, p1));
+
+        OfferCacheStats stats = cache.stats();
+        Assert.assertEquals(2, stats.getHits());
+        Assert.assertEquals(2, stats.getMisses());
+        Assert.assertEquals(0.5, stats.getHit_ratio(), 0.0);
+    }
+
+    @Test
+    public void testWriteInvalidatesOnlyThatRestaurant() {
+        cache.findFirstMatch(repository, 1, p1);
+        cache.findFirstMatch(repository, 2, p1);
+        cache.findFirstMatch(repository, 3, p1);
+
+        repository.save(new OfferRequest(3, "FLATX", 30, Arrays.asList("p1")));
+        cache.invalidate(3);
+
+        Assert.assertEquals(30, cache.findFirstMatch(repository, 3, p1).getOfferValue());
+        Assert.assertEquals(10, cache.findFirstMatch(repository, 1, p1).getOfferValue());
+        Assert.assertEquals(20, cache.findFirstMatch(repository, 2, p1).getOfferValue());
+        Assert.assertEquals(2, cache.stats().getHits());
+    }
+
+    @Test
+    public void testInvalidateAllDropsEveryResult() {
+        cache.findFirstMatch(repository, 1, p1);
+        repository.newCatalogue().commit();
+        cache.invalidateAll();
+
+        Assert.assertNull(cache.findFirstMatch(repository, 1, p1));
+        Assert.assertEquals(0, cache.stats().getHits());
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.springboot.timer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HashedTimingWheelTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test", 10, 8, clock::get);
+
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    public void testTasksFireAtTheirTickAndNotBefore() {
+        wheel.schedule(clock.get() + 25, () -> fired.add("a"));
+        wheel.schedule(clock.get() - 5, () -> fired.add("overdue"));
+        wheel.advance();
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("overdue", fired.get(0));
+
+        clock.addAndGet(20);
+        wheel.advance();
+        Assert.assertEquals(1, fired.size());
+
+        clock.addAndGet(10);
+        wheel.advance();
+        Assert.assertEquals("a", fired.get(1));
+        Assert.assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testTasksMoreThanOneTurnAheadWaitForTheirRound() {
+        // 8 buckets of 10ms, so 175ms is two turns and a bit ahead
+        wheel.schedule(clock.get() + 175, () -> fired.add("late"));
+        for (int i = 0; i < 17; i++) {
+            clock.addAndGet(10);
+            wheel.advance();
+        }
+        Assert.assertTrue(fired.isEmpty());
+        clock.addAndGet(10);
+        wheel.advance();
+        Assert.assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void testCancelledTasksDoNotRun() {
+        HashedTimingWheel.Timeout timeout = wheel.schedule(clock.get() + 10, () -> fired.add("cancelled"));
+        Assert.assertEquals(1, wheel.pending());
+        timeout.cancel();
+        Assert.assertEquals(0, wheel.pending());
+        clock.addAndGet(100);
+        wheel.advance();
+        Assert.assertTrue(fired.isEmpty());
+    }
+}